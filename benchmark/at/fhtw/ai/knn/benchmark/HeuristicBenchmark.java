@@ -0,0 +1,102 @@
+package at.fhtw.ai.knn.benchmark;
+
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.DoubleHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.FloatHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks a single heuristic computation of the boxed data set heuristics and the primitive heuristic. Every invocation compares
+ * one candidate with {@link #ROWS} rows, the score is the time per heuristic.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "--add-opens", "java.base/java.util=ALL-UNNAMED"})
+public class HeuristicBenchmark {
+
+    /**
+     * Number of rows compared per invocation.
+     */
+    public static final int ROWS = 1024;
+
+    @Param({"4", "11", "64", "256"})
+    public int dimensions;
+
+    @Param({"Euklid", "Manhatten"})
+    public HeuristicComputer.Heuristic heuristic;
+
+    private FloatHeuristicComputer floatComputer;
+    private DoubleHeuristicComputer doubleComputer;
+    private DataSet<Float>[] floatRows;
+    private DataSet<Double>[] doubleRows;
+    private DataSet<Float> floatCandidate;
+    private DataSet<Double> doubleCandidate;
+    private float[] data;
+    private float[] candidate;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        floatComputer = new FloatHeuristicComputer();
+        floatComputer.setHeuristic(heuristic);
+        doubleComputer = new DoubleHeuristicComputer();
+        doubleComputer.setHeuristic(heuristic);
+
+        List<DataSet<Float>> floats = SyntheticData.floatDataSets(ROWS + 1, dimensions, 1);
+        List<DataSet<Double>> doubles = SyntheticData.doubleDataSets(ROWS + 1, dimensions, 1);
+        floatCandidate = floats.remove(ROWS);
+        doubleCandidate = doubles.remove(ROWS);
+        floatRows = floats.toArray(new DataSet[ROWS]);
+        doubleRows = doubles.toArray(new DataSet[ROWS]);
+
+        TrainingMatrix matrix = SyntheticData.matrix(ROWS + 1, dimensions, 1);
+        data = matrix.getData();
+        candidate = matrix.copyRow(ROWS, new float[dimensions]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void floatDataSet(Blackhole blackhole) {
+        for (DataSet<Float> row : floatRows) {
+            blackhole.consume(floatComputer.computeHeuristic(floatCandidate, row));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void doubleDataSet(Blackhole blackhole) {
+        for (DataSet<Double> row : doubleRows) {
+            blackhole.consume(doubleComputer.computeHeuristic(doubleCandidate, row));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void primitive(Blackhole blackhole) {
+        for (int i = 0, offset = 0; i < ROWS; i++, offset += dimensions) {
+            blackhole.consume(floatComputer.computeHeuristic(candidate, data, offset));
+        }
+    }
+}
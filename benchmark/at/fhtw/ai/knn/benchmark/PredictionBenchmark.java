@@ -0,0 +1,111 @@
+package at.fhtw.ai.knn.benchmark;
+
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.KnnAI;
+import at.fhtw.ai.knn.KnnModel;
+import at.fhtw.ai.knn.LabelDictionary;
+import at.fhtw.ai.knn.Prediction;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.FloatHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.BlockedScanIndex;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks end to end predictions: a single train/test split on the data set list and the primitive paths, a full k-fold cross
+ * validation and a single query against a {@link KnnModel}. A tenth of the rows is used as test data.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "--add-opens", "java.base/java.util=ALL-UNNAMED"})
+public class PredictionBenchmark {
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    @Param({"11", "64"})
+    public int dimensions;
+
+    @Param({"1", "10"})
+    public int k;
+
+    @Param({"Euklid", "Manhatten"})
+    public HeuristicComputer.Heuristic heuristic;
+
+    private List<DataSet<Float>> data;
+    private List<DataSet<Float>> trainList;
+    private List<DataSet<Float>> testList;
+    private TrainingMatrix trainMatrix;
+    private TrainingMatrix testMatrix;
+    private FloatHeuristicComputer heuristicComputer;
+    private BlockedScanIndex blockedIndex;
+    private KnnModel model;
+    private float[] query;
+    private Prediction prediction;
+
+    @Setup
+    public void setup() {
+        heuristicComputer = new FloatHeuristicComputer();
+        heuristicComputer.setHeuristic(heuristic);
+
+        int testRows = Math.max(1, rows / 10);
+        data = SyntheticData.floatDataSets(rows, dimensions, 1);
+        trainList = data.subList(testRows, rows);
+        testList = data.subList(0, testRows);
+
+        LabelDictionary labels = new LabelDictionary();
+        trainMatrix = TrainingMatrix.of(trainList, labels);
+        testMatrix = TrainingMatrix.of(testList, labels);
+        blockedIndex = new BlockedScanIndex(trainMatrix, heuristicComputer);
+
+        model = new KnnModel(TrainingMatrix.of(trainList), heuristicComputer, null);
+        model.setK(k);
+        query = testMatrix.copyRow(0, new float[dimensions]);
+        prediction = new Prediction(k);
+    }
+
+    @Benchmark
+    public ConfusionMatrix listPrediction() {
+        return KnnAI.predict(trainList, testList, heuristicComputer, k, null, heuristic);
+    }
+
+    @Benchmark
+    public ConfusionMatrix matrixPrediction() {
+        return KnnAI.predict(new LinearScanIndex(trainMatrix, heuristicComputer), testMatrix, k);
+    }
+
+    @Benchmark
+    public ConfusionMatrix blockedPrediction() {
+        return KnnAI.predict(blockedIndex, testMatrix, k);
+    }
+
+    @Benchmark
+    public ConfusionMatrix crossValidation() {
+        return KnnAI.predict(data, heuristicComputer, 10, null, heuristic);
+    }
+
+    @Benchmark
+    public Prediction singleQuery() {
+        return model.predict(query, prediction);
+    }
+}
@@ -0,0 +1,109 @@
+package at.fhtw.ai.knn.benchmark;
+
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.TrainingMatrix;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates seeded synthetic data for the benchmarks: gaussian clusters around one center per class, similar in shape to the wine
+ * quality data.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class SyntheticData {
+
+    /**
+     * Number of classes.
+     */
+    public static final int CLASSES = 7;
+
+    /**
+     * Nobody is allowed to create an instance of the SyntheticData class.
+     */
+    private SyntheticData() {
+    }
+
+    /**
+     * Creates a primitive training matrix.
+     *
+     * @param rows Number of rows.
+     * @param dimensions Number of attributes.
+     * @param seed Random seed.
+     * @return Training matrix.
+     */
+    public static TrainingMatrix matrix(int rows, int dimensions, long seed) {
+        Random random = new Random(seed);
+        float[][] centers = centers(dimensions);
+        TrainingMatrix result = new TrainingMatrix(dimensions, rows);
+        float[] values = new float[dimensions];
+        for (int i = 0; i < rows; i++) {
+            int label = random.nextInt(CLASSES);
+            for (int a = 0; a < dimensions; a++) {
+                values[a] = centers[label][a] + (float) random.nextGaussian();
+            }
+            result.add(values, String.valueOf(label + 3));
+        }
+        return result;
+    }
+
+    /**
+     * Creates float data sets containing the same values as {@link #matrix(int, int, long)}.
+     *
+     * @param rows Number of rows.
+     * @param dimensions Number of attributes.
+     * @param seed Random seed.
+     * @return Data sets.
+     */
+    public static List<DataSet<Float>> floatDataSets(int rows, int dimensions, long seed) {
+        TrainingMatrix matrix = matrix(rows, dimensions, seed);
+        List<DataSet<Float>> result = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            DataSet<Float> dataSet = new DataSet<>();
+            for (int a = 0; a < dimensions; a++) {
+                dataSet.getAttributes().add(matrix.get(i, a));
+            }
+            dataSet.setQualityAttribute(matrix.getQualityAttribute(i));
+            result.add(dataSet);
+        }
+        return result;
+    }
+
+    /**
+     * Creates double data sets containing the same values as {@link #matrix(int, int, long)}.
+     *
+     * @param rows Number of rows.
+     * @param dimensions Number of attributes.
+     * @param seed Random seed.
+     * @return Data sets.
+     */
+    public static List<DataSet<Double>> doubleDataSets(int rows, int dimensions, long seed) {
+        TrainingMatrix matrix = matrix(rows, dimensions, seed);
+        List<DataSet<Double>> result = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            DataSet<Double> dataSet = new DataSet<>();
+            for (int a = 0; a < dimensions; a++) {
+                dataSet.getAttributes().add((double) matrix.get(i, a));
+            }
+            dataSet.setQualityAttribute(matrix.getQualityAttribute(i));
+            result.add(dataSet);
+        }
+        return result;
+    }
+
+    /**
+     * Creates the class centers, using a fixed seed so train and test data share them.
+     */
+    private static float[][] centers(int dimensions) {
+        Random random = new Random(dimensions);
+        float[][] result = new float[CLASSES][dimensions];
+        for (int c = 0; c < CLASSES; c++) {
+            for (int a = 0; a < dimensions; a++) {
+                result[c][a] = 2 * (float) random.nextGaussian();
+            }
+        }
+        return result;
+    }
+}
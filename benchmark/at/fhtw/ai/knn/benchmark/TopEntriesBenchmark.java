@@ -0,0 +1,98 @@
+package at.fhtw.ai.knn.benchmark;
+
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.FloatHeuristicComputer;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the top-k selection used by every prediction. The selection alone offers precomputed heuristics to the bounded heap of
+ * {@link Neighbours}, the scan adds the heuristic computation of a {@link LinearScanIndex}. <code>KnnAI.topEntries</code> is private,
+ * so the data set benchmark repeats its loop over {@link DataSet} rows with the same bounded heuristic calls.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "--add-opens", "java.base/java.util=ALL-UNNAMED"})
+public class TopEntriesBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    @Param({"11", "64"})
+    public int dimensions;
+
+    @Param({"1", "10", "100"})
+    public int k;
+
+    private float[] heuristics;
+    private float[] candidate;
+    private Neighbours neighbours;
+    private LinearScanIndex index;
+    private DataSet<Float>[] dataSets;
+    private DataSet<Float> dataSetCandidate;
+    private FloatHeuristicComputer heuristicComputer;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        heuristics = new float[rows];
+        for (int i = 0; i < rows; i++) {
+            heuristics[i] = random.nextFloat();
+        }
+        neighbours = new Neighbours(k);
+
+        TrainingMatrix matrix = SyntheticData.matrix(rows, dimensions, 1);
+        index = new LinearScanIndex(matrix, new FloatHeuristicComputer());
+        candidate = SyntheticData.matrix(1, dimensions, 2).copyRow(0, new float[dimensions]);
+
+        List<DataSet<Float>> trainData = SyntheticData.floatDataSets(rows, dimensions, 1);
+        dataSets = trainData.toArray(new DataSet[rows]);
+        dataSetCandidate = SyntheticData.floatDataSets(1, dimensions, 2).get(0);
+        heuristicComputer = new FloatHeuristicComputer();
+    }
+
+    @Benchmark
+    public Neighbours selection() {
+        neighbours.clear();
+        for (int i = 0; i < heuristics.length; i++) {
+            neighbours.offer(i, heuristics[i]);
+        }
+        return neighbours;
+    }
+
+    @Benchmark
+    public Neighbours scan() {
+        index.search(candidate, neighbours);
+        return neighbours;
+    }
+
+    @Benchmark
+    public Neighbours dataSets() {
+        neighbours.clear();
+        for (int i = 0; i < dataSets.length; i++) {
+            neighbours.offer(i, heuristicComputer.computeHeuristic(dataSetCandidate, dataSets[i], neighbours.worst()));
+        }
+        return neighbours;
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * JMH benchmarks for the heuristics, the top-k selection and end to end predictions on seeded synthetic data.
+ * <p>
+ * The benchmarks need JMH (<code>org.openjdk.jmh:jmh-core</code> and the annotation processor
+ * <code>jmh-generator-annprocess</code>). <code>benchmark/pom.xml</code> compiles this source root together with <code>src</code> into a
+ * self contained jar, then run e.g.
+ * <pre>
+ * mvn -f benchmark/pom.xml package
+ * java -jar target/benchmark/benchmarks.jar -prof gc
+ * java -jar target/benchmark/benchmarks.jar HeuristicBenchmark -p dimensions=11 -prof gc
+ * </pre>
+ * <code>-prof gc</code> reports the allocation rate per operation next to the score, so allocation regressions show up as well.
+ */
+package at.fhtw.ai.knn.benchmark;
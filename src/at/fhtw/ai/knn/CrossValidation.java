@@ -0,0 +1,240 @@
+package at.fhtw.ai.knn;
+
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import at.fhtw.ai.knn.index.Neighbours;
+import at.fhtw.ai.knn.voting.Voting;
+
+/**
+ * Cross validation which computes every pairwise heuristic of the data only once. Every row keeps the nearest neighbours among the rows
+ * of the other folds, which are exactly its neighbours if its fold is the test data, hence all folds are predicted after a single pass
+ * over the pairs of rows. Since the heuristic is symmetric, every pair is compared once and offered to the neighbours of both rows, so
+ * the pass costs about half of the comparisons of predicting the folds one by one.
+ * <p>
+ * Optionally the same pass also keeps the nearest neighbours among all other rows for leave-one-out cross validation, which only costs
+ * the pairs of rows in the same fold in addition.
+ * <p>
+ * The neighbours are kept, so the folds can be predicted using any number of voting strategies without comparing rows again, also by
+ * many threads at the same time. Rows with the same heuristic are ordered by their row index in the data.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public final class CrossValidation {
+
+    /**
+     * Number of rows compared to each other at once, chosen so the attributes of both blocks stay in the cache.
+     */
+    private static final int BLOCK_ROWS = 256;
+
+    private final TrainingMatrix data;
+    private final Folds folds;
+
+    // Neighbours of every row among the other folds and among all other rows, the latter may be null
+    private final Neighbours[] foldNeighbours;
+    private final Neighbours[] leaveOneOutNeighbours;
+
+    // Time spent comparing the rows in milliseconds
+    private final long computationTime;
+
+    /**
+     * Creates a new cross validation.
+     */
+    private CrossValidation(TrainingMatrix data, Folds folds, Neighbours[] foldNeighbours, Neighbours[] leaveOneOutNeighbours, long computationTime) {
+        this.data = data;
+        this.folds = folds;
+        this.foldNeighbours = foldNeighbours;
+        this.leaveOneOutNeighbours = leaveOneOutNeighbours;
+        this.computationTime = computationTime;
+    }
+
+    /**
+     * Computes the nearest neighbours of every row among the rows of the other folds. The distance function must be symmetric, which
+     * holds for the Euklid and Manhatten heuristic, weighted or not. Matrices without array are copied onto the heap once.
+     *
+     * @param data Data matrix.
+     * @param folds Partition of the data into folds.
+     * @param distanceFunction Distance function, e.g. a heuristic computer.
+     * @param k Number of nearest neighbours.
+     * @param leaveOneOut Keep the neighbours for leave-one-out cross validation as well.
+     * @return Cross validation.
+     */
+    public static CrossValidation compute(TrainingMatrix data, Folds folds, DistanceFunction distanceFunction, int k, boolean leaveOneOut) {
+        if (folds.getRows() != data.getRows()) {
+            throw new IllegalArgumentException("Folds have " + folds.getRows() + " rows, expected " + data.getRows() + "!");
+        }
+        long startTime = System.currentTimeMillis();
+        int rows = data.getRows();
+        int dimensions = data.getDimensions();
+        float[] values = data.hasArray() ? data.getData() : data.copyRows(0, rows, new float[rows * dimensions], 0);
+
+        Neighbours[] foldNeighbours = new Neighbours[rows];
+        Neighbours[] leaveOneOutNeighbours = leaveOneOut ? new Neighbours[rows] : null;
+        for (int i = 0; i < rows; i++) {
+            foldNeighbours[i] = new Neighbours(k);
+            if (leaveOneOut) {
+                leaveOneOutNeighbours[i] = new Neighbours(k);
+            }
+        }
+
+        // Compare every pair of rows once, a block of rows against a block of rows
+        for (int blockI = 0; blockI < rows; blockI += BLOCK_ROWS) {
+            int endI = Math.min(rows, blockI + BLOCK_ROWS);
+            for (int blockJ = blockI; blockJ < rows; blockJ += BLOCK_ROWS) {
+                int endJ = Math.min(rows, blockJ + BLOCK_ROWS);
+                for (int i = blockI; i < endI; i++) {
+                    int foldI = folds.getFold(i);
+                    int offsetI = i * dimensions;
+                    Neighbours neighboursI = foldNeighbours[i];
+                    Neighbours looI = leaveOneOut ? leaveOneOutNeighbours[i] : null;
+                    for (int j = Math.max(blockJ, i + 1); j < endJ; j++) {
+                        boolean otherFold = folds.getFold(j) != foldI;
+                        if (!otherFold && !leaveOneOut) {
+                            continue;
+                        }
+
+                        // The leave-one-out neighbours of a row are never worse than its fold neighbours, so the fold bound covers both
+                        float bound = otherFold
+                                ? Math.max(neighboursI.worst(), foldNeighbours[j].worst())
+                                : Math.max(looI.worst(), leaveOneOutNeighbours[j].worst());
+                        float heuristic = distanceFunction.distance(values, offsetI, values, j * dimensions, dimensions, bound);
+                        if (otherFold) {
+                            neighboursI.offer(j, heuristic);
+                            foldNeighbours[j].offer(i, heuristic);
+                        }
+                        if (leaveOneOut) {
+                            looI.offer(j, heuristic);
+                            leaveOneOutNeighbours[j].offer(i, heuristic);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Sorted neighbours are not modified by voting, so the folds can be predicted concurrently
+        for (int i = 0; i < rows; i++) {
+            foldNeighbours[i].sort();
+            if (leaveOneOut) {
+                leaveOneOutNeighbours[i].sort();
+            }
+        }
+        return new CrossValidation(data, folds, foldNeighbours, leaveOneOutNeighbours, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Predicts every fold using the given voting strategy.
+     *
+     * @param voting Voting strategy.
+     * @return Confision matrix for AI analysis.
+     */
+    public ConfusionMatrix predict(Voting voting) {
+        long startTime = System.currentTimeMillis();
+        ConfusionMatrix result = new ConfusionMatrix(data.getLabels());
+        for (int fold = 0; fold < folds.getFolds(); fold++) {
+            result.merge(predictFold(fold, voting));
+        }
+        result.setPredictionTime(computationTime + System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    /**
+     * Predicts the test rows of the given fold using the given voting strategy.
+     *
+     * @param fold Fold.
+     * @param voting Voting strategy.
+     * @return Confision matrix for AI analysis.
+     */
+    public ConfusionMatrix predictFold(int fold, Voting voting) {
+        long startTime = System.currentTimeMillis();
+        ConfusionMatrix result = new ConfusionMatrix(data.getLabels());
+        float[] scratch = new float[Voting.scratchSize(data.getLabels().size(), getK())];
+        for (int position = folds.getTestStart(fold); position < folds.getTestEnd(fold); position++) {
+            int row = folds.getRow(position);
+            predict(row, foldNeighbours[row], voting, scratch, result);
+        }
+        result.setPredictionTime(System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    /**
+     * Predicts every row using all other rows as train data.
+     *
+     * @param voting Voting strategy.
+     * @return Confision matrix for AI analysis.
+     * @throws UnsupportedOperationException If the leave-one-out neighbours were not computed.
+     */
+    public ConfusionMatrix predictLeaveOneOut(Voting voting) {
+        if (leaveOneOutNeighbours == null) {
+            throw new UnsupportedOperationException("Leave-one-out neighbours were not computed!");
+        }
+        long startTime = System.currentTimeMillis();
+        ConfusionMatrix result = new ConfusionMatrix(data.getLabels());
+        float[] scratch = new float[Voting.scratchSize(data.getLabels().size(), getK())];
+        for (int row = 0; row < data.getRows(); row++) {
+            predict(row, leaveOneOutNeighbours[row], voting, scratch, result);
+        }
+        result.setPredictionTime(computationTime + System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    /**
+     * Votes for the given row and updates the confusion matrix.
+     */
+    private void predict(int row, Neighbours neighbours, Voting voting, float[] scratch, ConfusionMatrix confusionMatrix) {
+        LabelDictionary labels = data.getLabels();
+        if (voting.isRegression()) {
+            float value = voting.regress(neighbours, data.getClassIds(), labels, scratch);
+            confusionMatrix.record(data.getClassId(row), labels.nearestClassId(value));
+            confusionMatrix.recordRegression(labels.getNumericValue(data.getClassId(row)), value);
+        } else {
+            confusionMatrix.record(data.getClassId(row), voting.vote(neighbours, data.getClassIds(), labels, scratch));
+        }
+    }
+
+    /**
+     * Returns the nearest neighbours of the given row among the rows of the other folds.
+     *
+     * @param row Row index.
+     * @return Neighbours, must not be modified.
+     */
+    public Neighbours getNeighbours(int row) {
+        return foldNeighbours[row];
+    }
+
+    /**
+     * Returns the nearest neighbours of the given row among all other rows.
+     *
+     * @param row Row index.
+     * @return Neighbours, must not be modified, or <code>null</code> if they were not computed.
+     */
+    public Neighbours getLeaveOneOutNeighbours(int row) {
+        return leaveOneOutNeighbours == null ? null : leaveOneOutNeighbours[row];
+    }
+
+    /**
+     * Returns the number of nearest neighbours.
+     *
+     * @return k.
+     */
+    public int getK() {
+        return foldNeighbours.length == 0 ? 0 : foldNeighbours[0].capacity();
+    }
+
+    /**
+     * Returns the folds.
+     *
+     * @return Folds.
+     */
+    public Folds getFolds() {
+        return folds;
+    }
+
+    /**
+     * Returns the data matrix.
+     *
+     * @return Data matrix.
+     */
+    public TrainingMatrix getData() {
+        return data;
+    }
+}
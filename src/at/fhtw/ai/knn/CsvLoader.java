@@ -0,0 +1,687 @@
+package at.fhtw.ai.knn;
+
+import at.fhtw.ai.knn.metrics.Instrumentation;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A streaming loader for character separated files, e.g. the semicolon separated wine quality data. The file is read in chunks of
+ * whole lines which are parsed byte by byte, without creating a string per line or cell. Attributes are parsed using a hand-rolled
+ * float parser and labels are looked up in a small per chunk table, so only the distinct labels are ever created as strings.
+ * <p>
+ * Rows are passed to a {@link RowConsumer} in file order while the file is read, hence files larger than the memory can be converted or
+ * indexed incrementally, e.g. using {@link #convert(Path, Path, ExecutorService)}. Given an executor, chunks are parsed in parallel and still delivered in file order.
+ * <p>
+ * All columns except the label column must be numeric. Quoted cells containing the separator are not supported.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class CsvLoader {
+
+    /**
+     * Receives the parsed rows.
+     */
+    public interface RowConsumer {
+
+        /**
+         * Called for every row in file order. The attribute array is reused, copy the values to keep them.
+         *
+         * @param values Attributes of the row and possibly other rows.
+         * @param offset Offset of the row in the array.
+         * @param dimensions Number of attributes.
+         * @param label Label of the row.
+         */
+        void accept(float[] values, int offset, int dimensions, Object label);
+    }
+
+    /**
+     * Size of a chunk in bytes.
+     */
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    /**
+     * Maximum number of chunks parsed at the same time.
+     */
+    private static final int MAX_PENDING_CHUNKS = 16;
+
+    /**
+     * Exactly representable powers of ten.
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private char separator = ';';
+    private boolean skipHeader = true;
+    private boolean decimalComma = false;
+    private int labelColumn = -1;
+    private Instrumentation instrumentation = Instrumentation.NONE;
+
+    /**
+     * Sets the character separating the cells of a line (default <code>';'</code>).
+     *
+     * @param separator Separator.
+     */
+    public void setSeparator(char separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * Returns the character separating the cells of a line.
+     *
+     * @return Separator.
+     */
+    public char getSeparator() {
+        return separator;
+    }
+
+    /**
+     * Sets if the first line is a header which is skipped (default <code>true</code>).
+     *
+     * @param skipHeader Skip the first line.
+     */
+    public void setSkipHeader(boolean skipHeader) {
+        this.skipHeader = skipHeader;
+    }
+
+    /**
+     * Checks if the first line is skipped.
+     *
+     * @return Skip the first line.
+     */
+    public boolean isSkipHeader() {
+        return skipHeader;
+    }
+
+    /**
+     * Sets if numbers may use a decimal comma in addition to a decimal point (default <code>false</code>). The separator must not be a
+     * comma in this case.
+     *
+     * @param decimalComma Allow decimal comma.
+     */
+    public void setDecimalComma(boolean decimalComma) {
+        this.decimalComma = decimalComma;
+    }
+
+    /**
+     * Checks if numbers may use a decimal comma.
+     *
+     * @return Allow decimal comma.
+     */
+    public boolean isDecimalComma() {
+        return decimalComma;
+    }
+
+    /**
+     * Sets the index of the label column. Negative indices count from the end, <code>-1</code> (default) is the last column.
+     *
+     * @param labelColumn Label column.
+     */
+    public void setLabelColumn(int labelColumn) {
+        this.labelColumn = labelColumn;
+    }
+
+    /**
+     * Returns the index of the label column.
+     *
+     * @return Label column.
+     */
+    public int getLabelColumn() {
+        return labelColumn;
+    }
+
+    /**
+     * Sets the instrumentation receiving the time spent reading every file as {@link Instrumentation.Stage#INGEST} (default
+     * {@link Instrumentation#NONE}).
+     *
+     * @param instrumentation Instrumentation.
+     */
+    public void setInstrumentation(Instrumentation instrumentation) {
+        if (instrumentation == null) {
+            throw new NullPointerException("Instrumentation must not be null!");
+        }
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Returns the instrumentation.
+     *
+     * @return Instrumentation.
+     */
+    public Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * Reads the given file into a new training matrix.
+     *
+     * @param file File.
+     * @return Training matrix.
+     * @throws IOException If the file could not be read.
+     */
+    public TrainingMatrix readMatrix(Path file) throws IOException {
+        return readMatrix(file, new LabelDictionary(), null);
+    }
+
+    /**
+     * Reads the given file into a new training matrix, parsing chunks in parallel.
+     *
+     * @param file File.
+     * @param labels Label dictionary used by the matrix.
+     * @param executor Executor used to parse chunks or <code>null</code> to parse in the current thread.
+     * @return Training matrix.
+     * @throws IOException If the file could not be read.
+     */
+    public TrainingMatrix readMatrix(Path file, final LabelDictionary labels, ExecutorService executor) throws IOException {
+        final TrainingMatrix[] result = new TrainingMatrix[1];
+        read(file, new RowConsumer() {
+            @Override
+            public void accept(float[] values, int offset, int dimensions, Object label) {
+                if (result[0] == null) {
+                    result[0] = new TrainingMatrix(dimensions, 1024, labels);
+                }
+                result[0].add(values, offset, label);
+            }
+        }, executor);
+
+        if (result[0] == null) {
+            throw new IllegalArgumentException("File " + file + " contains no rows!");
+        }
+        return result[0];
+    }
+
+    /**
+     * Converts the given file into a memory mapped training matrix file without loading the rows onto the heap. If the file cannot be
+     * parsed, the target is deleted.
+     *
+     * @param file File.
+     * @param target Training matrix file, an existing file is replaced.
+     * @param executor Executor used to parse chunks or <code>null</code> to parse in the current thread.
+     * @return Number of rows written.
+     * @throws IOException If the file could not be read or the target could not be written.
+     * @see MappedTrainingMatrix#open(Path)
+     */
+    public int convert(Path file, final Path target, ExecutorService executor) throws IOException {
+        final MappedTrainingMatrix.Writer[] writer = new MappedTrainingMatrix.Writer[1];
+        boolean complete = false;
+        try {
+            read(file, new RowConsumer() {
+                @Override
+                public void accept(float[] values, int offset, int dimensions, Object label) {
+                    try {
+                        if (writer[0] == null) {
+                            writer[0] = new MappedTrainingMatrix.Writer(target, dimensions);
+                        }
+                        writer[0].add(values, offset, label);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            }, executor);
+            complete = true;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            // A file of a failed conversion must not look valid
+            if (writer[0] != null) {
+                if (complete) {
+                    writer[0].close();
+                } else {
+                    writer[0].abort();
+                }
+            }
+        }
+
+        if (writer[0] == null) {
+            throw new IllegalArgumentException("File " + file + " contains no rows!");
+        }
+        return writer[0].getRows();
+    }
+
+    /**
+     * Reads the given file into a list of data sets.
+     *
+     * @param file File.
+     * @return Data sets.
+     * @throws IOException If the file could not be read.
+     */
+    public List<DataSet<Float>> readDataSets(Path file) throws IOException {
+        final List<DataSet<Float>> result = new ArrayList<>(2048);
+        read(file, new RowConsumer() {
+            @Override
+            public void accept(float[] values, int offset, int dimensions, Object label) {
+                DataSet<Float> dataSet = new DataSet<>();
+                for (int i = 0; i < dimensions; i++) {
+                    dataSet.getAttributes().add(values[offset + i]);
+                }
+                dataSet.setQualityAttribute(label);
+                result.add(dataSet);
+            }
+        }, null);
+        return result;
+    }
+
+    /**
+     * Reads the given file and passes every row to the consumer.
+     *
+     * @param file File.
+     * @param consumer Row consumer.
+     * @throws IOException If the file could not be read.
+     */
+    public void read(Path file, RowConsumer consumer) throws IOException {
+        read(file, consumer, null);
+    }
+
+    /**
+     * Reads the given file and passes every row to the consumer. The consumer is always called from the current thread in file order.
+     *
+     * @param file File.
+     * @param consumer Row consumer.
+     * @param executor Executor used to parse chunks or <code>null</code> to parse in the current thread.
+     * @throws IOException If the file could not be read.
+     */
+    public void read(Path file, RowConsumer consumer, ExecutorService executor) throws IOException {
+        Deque<Future<Chunk>> pending = new ArrayDeque<>(MAX_PENDING_CHUNKS);
+        int[] dimensions = {-1};
+        boolean first = true;
+        long startTime = instrumentation.isEnabled() ? System.nanoTime() : 0;
+
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[CHUNK_BYTES];
+            int length = 0;
+            while (true) {
+                int read = in.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+                if (length < buffer.length) {
+                    continue;
+                }
+
+                // Cut the chunk after its last complete line, lines longer than a chunk grow the buffer
+                int end = length;
+                while (end > 0 && buffer[end - 1] != '\n') {
+                    end--;
+                }
+                if (end == 0) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+                byte[] next = new byte[Math.max(CHUNK_BYTES, 2 * (length - end))];
+                System.arraycopy(buffer, end, next, 0, length - end);
+                submit(buffer, end, first, executor, pending, consumer, dimensions);
+                first = false;
+                buffer = next;
+                length -= end;
+            }
+            if (length > 0) {
+                submit(buffer, length, first, executor, pending, consumer, dimensions);
+            }
+            while (!pending.isEmpty()) {
+                deliver(await(pending.removeFirst()), consumer, dimensions);
+            }
+            if (instrumentation.isEnabled()) {
+                instrumentation.recordStage(Instrumentation.Stage.INGEST, System.nanoTime() - startTime);
+            }
+        } finally {
+            for (Future<Chunk> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Parses a chunk in the current thread or using the executor. Parsed chunks are delivered in order as soon as too many are pending.
+     */
+    private void submit(final byte[] bytes, final int length, final boolean first, ExecutorService executor,
+            Deque<Future<Chunk>> pending, RowConsumer consumer, int[] dimensions) {
+        if (executor == null) {
+            deliver(parse(bytes, length, first), consumer, dimensions);
+            return;
+        }
+
+        pending.addLast(executor.submit(new Callable<Chunk>() {
+            @Override
+            public Chunk call() {
+                return parse(bytes, length, first);
+            }
+        }));
+        while (pending.size() >= MAX_PENDING_CHUNKS || (!pending.isEmpty() && pending.peekFirst().isDone())) {
+            deliver(await(pending.removeFirst()), consumer, dimensions);
+        }
+    }
+
+    /**
+     * Waits for a parsed chunk.
+     */
+    private static Chunk await(Future<Chunk> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("Parsing failed!", ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parsing was interrupted!", ex);
+        }
+    }
+
+    /**
+     * Passes all rows of a parsed chunk to the consumer.
+     */
+    private static void deliver(Chunk chunk, RowConsumer consumer, int[] dimensions) {
+        if (chunk.rows == 0) {
+            return;
+        }
+        if (dimensions[0] < 0) {
+            dimensions[0] = chunk.dimensions;
+        } else if (dimensions[0] != chunk.dimensions) {
+            throw new IllegalArgumentException("Row has " + (chunk.dimensions + 1) + " columns, expected " + (dimensions[0] + 1) + "!");
+        }
+
+        for (int row = 0, offset = 0; row < chunk.rows; row++, offset += chunk.dimensions) {
+            consumer.accept(chunk.values, offset, chunk.dimensions, chunk.labels.get(chunk.classIds[row]));
+        }
+    }
+
+    /**
+     * Parses the lines of a chunk.
+     *
+     * @param bytes Chunk.
+     * @param length Number of bytes in use.
+     * @param first If this is the first chunk of the file.
+     * @return Parsed chunk.
+     */
+    private Chunk parse(byte[] bytes, int length, boolean first) {
+        Chunk chunk = new Chunk();
+        int position = 0;
+
+        // Skip the byte order mark and the header
+        if (first && length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            position = 3;
+        }
+        if (first && skipHeader) {
+            position = lineEnd(bytes, position, length) + 1;
+        }
+
+        int columns = -1;
+        int label = -1;
+        while (position < length) {
+            int end = lineEnd(bytes, position, length);
+            int next = end + 1;
+            if (end > position && bytes[end - 1] == '\r') {
+                end--;
+            }
+            if (isBlank(bytes, position, end)) {
+                position = next;
+                continue;
+            }
+
+            // The first line of the chunk determines the number of columns
+            if (columns < 0) {
+                columns = 1;
+                for (int i = position; i < end; i++) {
+                    if (bytes[i] == separator) {
+                        columns++;
+                    }
+                }
+                label = labelColumn < 0 ? columns + labelColumn : labelColumn;
+                if (label < 0 || label >= columns || columns < 2) {
+                    throw new IllegalArgumentException("Label column " + labelColumn + " does not exist in " + columns + " columns!");
+                }
+                chunk.dimensions = columns - 1;
+            }
+
+            chunk.ensureCapacity(chunk.rows + 1);
+            int offset = chunk.rows * chunk.dimensions;
+            int column = 0;
+            int start = position;
+            for (int i = position; i <= end; i++) {
+                if (i < end && bytes[i] != separator) {
+                    continue;
+                }
+                if (column >= columns) {
+                    throw new IllegalArgumentException("Row has more than " + columns + " columns!");
+                }
+                if (column == label) {
+                    chunk.classIds[chunk.rows] = chunk.labelId(bytes, start, i);
+                } else {
+                    chunk.values[offset++] = parseFloat(bytes, start, i, decimalComma);
+                }
+                column++;
+                start = i + 1;
+            }
+            if (column != columns) {
+                throw new IllegalArgumentException("Row has " + column + " columns, expected " + columns + "!");
+            }
+            chunk.rows++;
+            position = next;
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns the index of the next line feed or the length if there is none.
+     */
+    private static int lineEnd(byte[] bytes, int position, int length) {
+        while (position < length && bytes[position] != '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Checks if the given range contains only white space.
+     */
+    private static boolean isBlank(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isTrimmed(bytes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the given character is removed from both ends of a cell.
+     */
+    private static boolean isTrimmed(byte b) {
+        return b == ' ' || b == '\t' || b == '"';
+    }
+
+    /**
+     * Parses a decimal number of the form <code>[+-]digits[(.|,)digits][(e|E)[+-]digits]</code>. Other forms, e.g. <code>NaN</code>, and
+     * numbers with more than 18 significant digits or large exponents are passed to {@link Float#parseFloat(String)}.
+     *
+     * @param bytes Bytes.
+     * @param start First byte (inclusive).
+     * @param end Last byte (exclusive).
+     * @param decimalComma Allow decimal comma.
+     * @return Number.
+     */
+    static float parseFloat(byte[] bytes, int start, int end, boolean decimalComma) {
+        while (start < end && isTrimmed(bytes[start])) {
+            start++;
+        }
+        while (end > start && isTrimmed(bytes[end - 1])) {
+            end--;
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        // Up to 18 significant digits fit into a long
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean valid = false;
+        for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (bytes[i] - '0');
+                digits += mantissa == 0 ? 0 : 1;
+            } else {
+                exponent++;
+            }
+            valid = true;
+        }
+        if (i < end && (bytes[i] == '.' || (decimalComma && bytes[i] == ','))) {
+            for (i++; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (bytes[i] - '0');
+                    digits += mantissa == 0 ? 0 : 1;
+                    exponent--;
+                }
+                valid = true;
+            }
+        }
+        if (valid && i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            int value = 0;
+            valid = i < end;
+            for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                value = Math.min(value * 10 + (bytes[i] - '0'), 1000);
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (!valid || i != end || exponent <= -POWERS_OF_TEN.length || exponent >= POWERS_OF_TEN.length) {
+            return parseFloatSlow(bytes, start, end, decimalComma);
+        }
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return (float) (negative ? -value : value);
+    }
+
+    /**
+     * Parses a number using {@link Float#parseFloat(String)}.
+     */
+    private static float parseFloatSlow(byte[] bytes, int start, int end, boolean decimalComma) {
+        String text = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        try {
+            return Float.parseFloat(decimalComma ? text.replace(',', '.') : text);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid number: '" + text + "'!", ex);
+        }
+    }
+
+    /**
+     * The rows of a parsed chunk. Labels are encoded using chunk local ids.
+     */
+    private static class Chunk {
+
+        int dimensions;
+        int rows;
+        float[] values = new float[0];
+        int[] classIds = new int[0];
+
+        // Distinct labels in order of appearance and an open addressing hash table of their ids
+        final List<String> labels = new ArrayList<>(16);
+        final List<byte[]> labelBytes = new ArrayList<>(16);
+        int[] table = new int[32];
+
+        /**
+         * Makes sure the chunk can hold the given number of rows.
+         */
+        void ensureCapacity(int capacity) {
+            if (capacity <= classIds.length) {
+                return;
+            }
+            int newCapacity = Math.max(capacity, classIds.length * 2 + 256);
+            values = Arrays.copyOf(values, newCapacity * dimensions);
+            classIds = Arrays.copyOf(classIds, newCapacity);
+        }
+
+        /**
+         * Returns the chunk local id of the label in the given range.
+         */
+        int labelId(byte[] bytes, int start, int end) {
+            while (start < end && isTrimmed(bytes[start])) {
+                start++;
+            }
+            while (end > start && isTrimmed(bytes[end - 1])) {
+                end--;
+            }
+
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            int mask = table.length - 1;
+            for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+                int id = table[slot] - 1;
+                if (id < 0) {
+                    byte[] label = Arrays.copyOfRange(bytes, start, end);
+                    labelBytes.add(label);
+                    labels.add(new String(label, StandardCharsets.UTF_8));
+                    table[slot] = labels.size();
+                    if (2 * labels.size() > table.length) {
+                        rehash();
+                    }
+                    return labels.size() - 1;
+                }
+                if (equals(labelBytes.get(id), bytes, start, end)) {
+                    return id;
+                }
+            }
+        }
+
+        /**
+         * Doubles the size of the hash table.
+         */
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int id = 0; id < labelBytes.size(); id++) {
+                int hash = 1;
+                for (byte b : labelBytes.get(id)) {
+                    hash = 31 * hash + b;
+                }
+                int slot = hash & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = id + 1;
+            }
+        }
+
+        /**
+         * Compares a label to the given range.
+         */
+        private static boolean equals(byte[] label, byte[] bytes, int start, int end) {
+            if (label.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < label.length; i++) {
+                if (label[i] != bytes[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
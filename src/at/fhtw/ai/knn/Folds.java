@@ -0,0 +1,277 @@
+package at.fhtw.ai.knn;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/**
+ * A partition of the rows of a data set into folds for cross validation. The rows are shuffled using a seeded random generator, hence
+ * the same seed always yields the same folds, and the partition is computed in <code>O(n)</code>. Stratified folds contain about the same
+ * share of every quality attribute, the sizes of any two folds differ by at most one row.
+ * <p>
+ * The partition only consists of the row indices ordered fold by fold, the test rows of a fold are one contiguous range of this order
+ * and the train rows are the two ranges before and after it. The {@link #test(List, int)} and {@link #train(List, int)} views expose
+ * these ranges of the shared data without copying it.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public final class Folds {
+
+    /**
+     * Seed used if no seed is given.
+     */
+    public static final long DEFAULT_SEED = 0x5DEECE66DL;
+
+    // Row indices fold by fold, first position of every fold and fold of every row
+    private final int[] order;
+    private final int[] starts;
+    private final int[] foldOf;
+
+    /**
+     * Creates new folds.
+     */
+    private Folds(int[] order, int[] starts, int[] foldOf) {
+        this.order = order;
+        this.starts = starts;
+        this.foldOf = foldOf;
+    }
+
+    /**
+     * Partitions the given number of rows into folds without stratification.
+     *
+     * @param rows Number of rows.
+     * @param folds Number of folds.
+     * @param seed Random seed.
+     * @return Folds.
+     */
+    public static Folds of(int rows, int folds, long seed) {
+        return stratified(new int[rows], rows, folds, seed);
+    }
+
+    /**
+     * Partitions the rows of the given data into stratified folds.
+     *
+     * @param <T> Generic data type.
+     * @param data Data.
+     * @param folds Number of folds.
+     * @param seed Random seed.
+     * @return Folds.
+     */
+    public static <T> Folds stratified(List<DataSet<T>> data, int folds, long seed) {
+        LabelDictionary labels = new LabelDictionary();
+        int[] classIds = new int[data.size()];
+        int row = 0;
+        for (DataSet<T> current : data) {
+            classIds[row++] = labels.classIdOf(current.getQualityAttribute());
+        }
+        return stratified(classIds, classIds.length, folds, seed);
+    }
+
+    /**
+     * Partitions the rows of the given matrix into stratified folds.
+     *
+     * @param data Data matrix.
+     * @param folds Number of folds.
+     * @param seed Random seed.
+     * @return Folds.
+     */
+    public static Folds stratified(TrainingMatrix data, int folds, long seed) {
+        return stratified(data.getClassIds(), data.getRows(), folds, seed);
+    }
+
+    /**
+     * Partitions the rows into stratified folds. The rows of every class are shuffled and then dealt to the folds in turn, continuing
+     * with the next fold when the next class starts.
+     *
+     * @param classIds Class id of every row, non negative.
+     * @param rows Number of rows.
+     * @param folds Number of folds.
+     * @param seed Random seed.
+     * @return Folds.
+     */
+    public static Folds stratified(int[] classIds, int rows, int folds, long seed) {
+        if (folds <= 0) {
+            throw new IllegalArgumentException("Number of folds must be positive!");
+        }
+
+        // Group the rows by class using a counting sort
+        int classes = 0;
+        for (int i = 0; i < rows; i++) {
+            classes = Math.max(classes, classIds[i] + 1);
+        }
+        int[] classStarts = new int[classes + 1];
+        for (int i = 0; i < rows; i++) {
+            classStarts[classIds[i] + 1]++;
+        }
+        for (int c = 0; c < classes; c++) {
+            classStarts[c + 1] += classStarts[c];
+        }
+        int[] grouped = new int[rows];
+        int[] next = classStarts.clone();
+        for (int i = 0; i < rows; i++) {
+            grouped[next[classIds[i]]++] = i;
+        }
+
+        // Fisher-Yates shuffle of every class
+        Random random = new Random(seed);
+        for (int c = 0; c < classes; c++) {
+            for (int i = classStarts[c + 1] - 1; i > classStarts[c]; i--) {
+                int j = classStarts[c] + random.nextInt(i - classStarts[c] + 1);
+                int swap = grouped[i];
+                grouped[i] = grouped[j];
+                grouped[j] = swap;
+            }
+        }
+
+        // Deal the rows to the folds in turn and order them fold by fold
+        int[] foldOf = new int[rows];
+        int[] starts = new int[folds + 1];
+        for (int i = 0; i < rows; i++) {
+            int fold = i % folds;
+            foldOf[grouped[i]] = fold;
+            starts[fold + 1]++;
+        }
+        for (int f = 0; f < folds; f++) {
+            starts[f + 1] += starts[f];
+        }
+        int[] order = new int[rows];
+        int[] positions = starts.clone();
+        for (int i = 0; i < rows; i++) {
+            order[positions[i % folds]++] = grouped[i];
+        }
+        return new Folds(order, starts, foldOf);
+    }
+
+    /**
+     * Returns the number of folds.
+     *
+     * @return Folds.
+     */
+    public int getFolds() {
+        return starts.length - 1;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return Rows.
+     */
+    public int getRows() {
+        return order.length;
+    }
+
+    /**
+     * Returns the fold which uses the given row as test row.
+     *
+     * @param row Row index.
+     * @return Fold.
+     */
+    public int getFold(int row) {
+        return foldOf[row];
+    }
+
+    /**
+     * Returns the row at the given position of the order.
+     *
+     * @param position Position, the test rows of a fold are at positions <code>[getTestStart(fold); getTestEnd(fold))</code>.
+     * @return Row index.
+     */
+    public int getRow(int position) {
+        return order[position];
+    }
+
+    /**
+     * Returns the first position of the test rows of the given fold.
+     *
+     * @param fold Fold.
+     * @return Position (inclusive).
+     */
+    public int getTestStart(int fold) {
+        return starts[fold];
+    }
+
+    /**
+     * Returns the end of the test rows of the given fold.
+     *
+     * @param fold Fold.
+     * @return Position (exclusive).
+     */
+    public int getTestEnd(int fold) {
+        return starts[fold + 1];
+    }
+
+    /**
+     * Returns the number of test rows of the given fold.
+     *
+     * @param fold Fold.
+     * @return Test rows.
+     */
+    public int getTestSize(int fold) {
+        return starts[fold + 1] - starts[fold];
+    }
+
+    /**
+     * Returns a read only view of the test rows of the given fold. The data should support fast random access, e.g. an
+     * {@link java.util.ArrayList}.
+     *
+     * @param <E> Element type.
+     * @param data Data the folds were created for.
+     * @param fold Fold.
+     * @return Test rows.
+     */
+    public <E> List<E> test(List<E> data, int fold) {
+        return new FoldView<>(data, starts[fold], starts[fold + 1], false);
+    }
+
+    /**
+     * Returns a read only view of the train rows of the given fold, i.e. the test rows of all other folds. The data should support fast
+     * random access, e.g. an {@link java.util.ArrayList}.
+     *
+     * @param <E> Element type.
+     * @param data Data the folds were created for.
+     * @param fold Fold.
+     * @return Train rows.
+     */
+    public <E> List<E> train(List<E> data, int fold) {
+        return new FoldView<>(data, starts[fold], starts[fold + 1], true);
+    }
+
+    /**
+     * View of the rows inside or outside of a range of positions.
+     */
+    private final class FoldView<E> extends AbstractList<E> implements RandomAccess {
+
+        private final List<E> data;
+        private final int start;
+        private final int end;
+        private final boolean outside;
+
+        FoldView(List<E> data, int start, int end, boolean outside) {
+            if (data.size() != order.length) {
+                throw new IllegalArgumentException("Data has " + data.size() + " rows, expected " + order.length + "!");
+            }
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            this.outside = outside;
+        }
+
+        @Override
+        public E get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Row " + index + " does not exist!");
+            }
+            if (!outside) {
+                return data.get(order[start + index]);
+            }
+            return data.get(order[index < start ? index : index + end - start]);
+        }
+
+        @Override
+        public int size() {
+            return outside ? order.length - (end - start) : end - start;
+        }
+    }
+}
@@ -1,11 +1,22 @@
 package at.fhtw.ai.knn;
 
 import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.Distance;
 import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.BatchNeighbourIndex;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.index.NeighbourIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import at.fhtw.ai.knn.metrics.Instrumentation;
+import at.fhtw.ai.knn.voting.Voting;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * The k-Nearest-Neighbor artificial intelligence AI.
@@ -16,10 +27,37 @@ import java.util.Map;
 public class KnnAI {
 
     /**
-     * If debug outputs should be printed or not.
+     * Number of test rows passed to the index at once, a {@link BatchNeighbourIndex} searches them together.
      */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * If debug outputs should be printed or not. Prints the progress of the cross validations which are not given an instrumentation.
+     *
+     * @deprecated Pass an {@link Instrumentation} instead, e.g. a {@link at.fhtw.ai.knn.metrics.RecordingInstrumentation}.
+     */
+    @Deprecated
     public static boolean debugMode = false;
 
+    /**
+     * Prints the progress of every fold, used in {@link #debugMode}.
+     */
+    private static final Instrumentation DEBUG = new Instrumentation() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void recordFold(int fold, int folds, ConfusionMatrix confusionMatrix) {
+            System.out.println("Progress: " + (((fold + 1) / (double) folds) * 100.0) + "%");
+            System.out.println(" -> Prediction Time: " + confusionMatrix.getPredictionTime() + " ms");
+            System.out.println(" -> Correct Predictions: " + confusionMatrix.getNumberOfCorrectPredictions());
+            System.out.println(" -> Wrong Predictions: " + confusionMatrix.getNumberOfWrongPredictions());
+            System.out.println();
+        }
+    };
+
     /**
      * Nobody is allowed to create an instance of the KnnAI class.
      */
@@ -48,7 +86,7 @@ public class KnnAI {
      * @param trainData Train data set.
      * @param testData Test data set.
      * @param heuristicComputer Heuristic computer for correct prediction.
-     * @param k k-NN prediction part (default 10).
+     * @param k Number of nearest neighbours used for the prediction (default 10).
      * @return Confision matrix for AI analysis.
      */
     public static <T> ConfusionMatrix predict(List<DataSet<T>> trainData, List<DataSet<T>> testData, HeuristicComputer heuristicComputer, int k) {
@@ -63,7 +101,7 @@ public class KnnAI {
      * @param trainData Train data set.
      * @param testData Test data set.
      * @param heuristicComputer Heuristic computer for correct prediction.
-     * @param k k-NN prediction part (default 10).
+     * @param k Number of nearest neighbours used for the prediction (default 10).
      * @param weights Weights.
      * @return Confision matrix for AI analysis.
      */
@@ -79,313 +117,819 @@ public class KnnAI {
      * @param trainData Train data set.
      * @param testData Test data set.
      * @param heuristicComputer Heuristic computer for correct prediction.
-     * @param k k-NN prediction part (default 10).
+     * @param k Number of nearest neighbours used for the prediction (default 10).
      * @param weights Weights.
      * @param heuristic Heuristic algorithm used.
      * @return Confision matrix for AI analysis.
      */
     public static <T> ConfusionMatrix predict(List<DataSet<T>> trainData, List<DataSet<T>> testData, HeuristicComputer heuristicComputer, int k, List<T> weights, HeuristicComputer.Heuristic heuristic) {
-        heuristicComputer.setHeuristic(heuristic);
+        return predict(trainData, testData, heuristicComputer, k, weights, heuristic, Voting.MAJORITY);
+    }
+
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> set. The algorithm will use the <code>trainData</code> data set to
+     * learn specific abstract concepts about the information given.
+     *
+     * @param <T> Generic data type.
+     * @param trainData Train data set.
+     * @param testData Test data set.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @param weights Weights.
+     * @param heuristic Heuristic algorithm used.
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @return Confision matrix for AI analysis.
+     */
+    public static <T> ConfusionMatrix predict(List<DataSet<T>> trainData, List<DataSet<T>> testData, HeuristicComputer heuristicComputer, int k, List<T> weights, HeuristicComputer.Heuristic heuristic, Voting voting) {
+        return predict(trainData, testData, heuristicComputer, k, weights, heuristic, voting, Instrumentation.NONE);
+    }
+
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> set. The algorithm will use the <code>trainData</code> data set to
+     * learn specific abstract concepts about the information given.
+     *
+     * @param <T> Generic data type.
+     * @param trainData Train data set.
+     * @param testData Test data set.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @param weights Weights used instead of the weights of the heuristic computer or <code>null</code> to keep its weights. The computer
+     * itself is not changed, a copy is configured. Matrices use a {@link Normalizer} to fold the weights into the attributes instead.
+     * @param heuristic Heuristic algorithm used.
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @param instrumentation Instrumentation receiving the timings of every stage and query.
+     * @return Confision matrix for AI analysis.
+     */
+    public static <T> ConfusionMatrix predict(List<DataSet<T>> trainData, List<DataSet<T>> testData, HeuristicComputer heuristicComputer, int k, List<T> weights, HeuristicComputer.Heuristic heuristic, Voting voting, Instrumentation instrumentation) {
+        long startTime = System.currentTimeMillis();
+        boolean instrumented = instrumentation.isEnabled();
+        long time = instrumented ? System.nanoTime() : 0;
+        EncodedDataSets<T> encoded = new EncodedDataSets<>(trainData);
+        if (instrumented) {
+            record(instrumentation, Instrumentation.Stage.INGEST, time);
+        }
+
+        ConfusionMatrix confusionMatrix = predict(encoded, testData, configure(heuristicComputer, heuristic, weights), k, voting, instrumentation);
+        confusionMatrix.setPredictionTime(System.currentTimeMillis() - startTime);
+        return confusionMatrix;
+    }
+
+    /**
+     * Returns a copy of the given heuristic computer using the given heuristic algorithm and weights, so the computer of the caller is
+     * never changed.
+     *
+     * @param heuristicComputer Heuristic computer.
+     * @param heuristic Heuristic algorithm used.
+     * @param weights Weights or <code>null</code> to keep the weights of the computer.
+     * @return Configured copy.
+     */
+    private static HeuristicComputer configure(HeuristicComputer heuristicComputer, HeuristicComputer.Heuristic heuristic, List<?> weights) {
+        HeuristicComputer result = heuristicComputer.copy();
+        result.setHeuristic(heuristic);
+        if (weights != null) {
+            result.setWeights(weights);
+        }
+        return result;
+    }
 
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> set using the encoded train data, which may be shared by many
+     * threads.
+     *
+     * @param <T> Generic data type.
+     * @param trainData Encoded train data set.
+     * @param testData Test data set.
+     * @param heuristicComputer Configured heuristic computer, only used by the calling thread.
+     * @param k Number of nearest neighbours.
+     * @param voting Voting strategy.
+     * @param instrumentation Instrumentation.
+     * @return Confision matrix for AI analysis.
+     */
+    private static <T> ConfusionMatrix predict(EncodedDataSets<T> trainData, List<DataSet<T>> testData, HeuristicComputer heuristicComputer, int k, Voting voting, Instrumentation instrumentation) {
         ConfusionMatrix confusionMatrix = new ConfusionMatrix();
-        confusionMatrix.setPredictionTime(System.currentTimeMillis());
+        boolean instrumented = instrumentation.isEnabled();
+        long time = instrumented ? System.nanoTime() : 0;
 
-        DataSet<T>[] trainDataArray = trainData.toArray(new DataSet[trainData.size()]);
+        DataSet<T>[] trainDataArray = trainData.dataSets;
+        LabelDictionary labels = trainData.labels;
+        int[] classIds = trainData.classIds;
+        Neighbours neighbours = new Neighbours(k);
+        float[] scratch = new float[Voting.scratchSize(labels.size(), k)];
 
         for (DataSet<T> currentTestDataSet : testData) {
-            heuristicComputer.setCandidate(currentTestDataSet);
-            SimplePair<DataSet<T>, Float>[] topKValues = topEntries(trainDataArray, heuristicComputer, 11);
-
-            Object qualityAttribute;
-            Map<Object, Integer> appearances = new HashMap<>(k);
-            for (int i = 0; i < 11; i++) {              // Use prime number as prediction factor
-                qualityAttribute = topKValues[i].key.getQualityAttribute();
-
-                // Increase appearance counter to find the most often used quality attribute
-                appearances.putIfAbsent(qualityAttribute, 1);
-                if (appearances.containsKey(qualityAttribute)) {
-                    appearances.put(qualityAttribute, appearances.get(qualityAttribute) + 1);
-                }
+            long queryTime = time;
+            topEntries(trainDataArray, currentTestDataSet, heuristicComputer, neighbours);
+            if (instrumented) {
+                time = record(instrumentation, Instrumentation.Stage.SEARCH, time);
             }
-
-            // Retrieve the most often appearance entry
-            Map.Entry<Object, Integer> mostOften = null;
-            for (Map.Entry<Object, Integer> entry : appearances.entrySet()) {
-                if (mostOften == null) {
-                    mostOften = entry;
-                    break;
-                }
-
-                if (entry.getValue() > mostOften.getValue()) {
-                    mostOften = entry;
-                }
+            float value = Float.NaN;
+            int classId;
+            if (voting.isRegression()) {
+                value = voting.regress(neighbours, classIds, labels, scratch);
+                classId = labels.nearestClassId(value);
+            } else {
+                classId = voting.vote(neighbours, classIds, labels, scratch);
+            }
+            if (instrumented) {
+                time = record(instrumentation, Instrumentation.Stage.VOTING, time);
             }
 
             // Set confusion matrix
             Object obj = currentTestDataSet.getQualityAttribute();
-            if (mostOften != null
-                    && ((obj == null && mostOften.getKey() == null)
-                    || obj.equals(mostOften.getKey()))) {
+            Object predicted = classId < 0 ? null : labels.getLabel(classId);
+            if (voting.isRegression()) {
+                confusionMatrix.recordRegression(LabelDictionary.toNumber(obj), value);
+            }
+            if (classId >= 0 && Objects.equals(obj, predicted)) {
                 confusionMatrix.updateCorrectPredictions(1);
             } else {
                 confusionMatrix.updateWrongPredictions(1);
             }
 
             // Update prediction matrix
-            confusionMatrix.updatePredictionMatrix(obj, mostOften.getKey(), 1);
+            confusionMatrix.updatePredictionMatrix(obj, predicted, 1);
+            if (instrumented) {
+                time = record(instrumentation, Instrumentation.Stage.MATRIX_UPDATE, time);
+                instrumentation.recordQuery(time - queryTime, neighbours.getEvaluations());
+            }
         }
 
-        // Calculate computation time
-        confusionMatrix.setPredictionTime(System.currentTimeMillis() - confusionMatrix.getPredictionTime());
         return confusionMatrix;
     }
 
     /**
-     * Tries to correctly predict the <code>1/k</code> quality attribute of the test data part of the given data set.
+     * Train data sets whose quality attributes are encoded once, so that votes use primitive counters. Never changed after creation,
+     * hence shared by the parts of a parallel prediction.
      *
+     * @author Daniel Kleebinder
      * @param <T> Generic data type.
-     * @param data Data.
+     * @since 0.2
+     */
+    private static final class EncodedDataSets<T> {
+
+        final DataSet<T>[] dataSets;
+        final LabelDictionary labels = new LabelDictionary();
+        final int[] classIds;
+
+        /**
+         * Encodes the given data sets.
+         *
+         * @param data Data sets.
+         */
+        @SuppressWarnings("unchecked")
+        EncodedDataSets(List<DataSet<T>> data) {
+            dataSets = data.toArray(new DataSet[data.size()]);
+            classIds = new int[dataSets.length];
+            for (int i = 0; i < dataSets.length; i++) {
+                classIds[i] = labels.classIdOf(dataSets[i].getQualityAttribute());
+            }
+        }
+    }
+
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> matrix using the primitive <code>trainData</code> matrix.
+     *
+     * @param trainData Train data matrix.
+     * @param testData Test data matrix.
      * @param heuristicComputer Heuristic computer for correct prediction.
      * @return Confision matrix for AI analysis.
      */
-    public static <T> ConfusionMatrix predict(List<DataSet<T>> data, HeuristicComputer heuristicComputer) {
-        return predict(data, heuristicComputer, 10);
+    public static ConfusionMatrix predict(TrainingMatrix trainData, TrainingMatrix testData, HeuristicComputer heuristicComputer) {
+        return predict(trainData, testData, heuristicComputer, 10);
     }
 
     /**
-     * Tries to correctly predict the <code>1/k</code> quality attribute of the test data part of the given data set.
+     * Predicts the quality attribute of the given <code>testData</code> matrix using the primitive <code>trainData</code> matrix.
      *
-     * @param <T> Generic data type.
-     * @param data Data.
+     * @param trainData Train data matrix.
+     * @param testData Test data matrix.
      * @param heuristicComputer Heuristic computer for correct prediction.
-     * @param k k-NN prediction part (default 10).
+     * @param k Number of nearest neighbours used for the prediction (default 10).
      * @return Confision matrix for AI analysis.
      */
-    public static <T> ConfusionMatrix predict(List<DataSet<T>> data, HeuristicComputer heuristicComputer, int k) {
-        return predict(data, heuristicComputer, k, null);
+    public static ConfusionMatrix predict(TrainingMatrix trainData, TrainingMatrix testData, HeuristicComputer heuristicComputer, int k) {
+        return predict(trainData, testData, heuristicComputer, k, HeuristicComputer.Heuristic.Euklid);
     }
 
     /**
-     * Tries to correctly predict the <code>1/k</code> quality attribute of the test data part of the given data set.
+     * Predicts the quality attribute of the given <code>testData</code> matrix using the primitive <code>trainData</code> matrix. No
+     * attribute is boxed and no object is allocated per compared row.
      *
-     * @param <T> Generic data type.
-     * @param data Data.
+     * @param trainData Train data matrix.
+     * @param testData Test data matrix.
      * @param heuristicComputer Heuristic computer for correct prediction.
-     * @param k k-NN prediction part (default 10).
-     * @param weights Weights.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @param heuristic Heuristic algorithm used.
      * @return Confision matrix for AI analysis.
      */
-    public static <T> ConfusionMatrix predict(List<DataSet<T>> data, HeuristicComputer heuristicComputer, int k, List<T> weights) {
-        return predict(data, heuristicComputer, k, weights, HeuristicComputer.Heuristic.Euklid);
+    public static ConfusionMatrix predict(TrainingMatrix trainData, TrainingMatrix testData, HeuristicComputer heuristicComputer, int k, HeuristicComputer.Heuristic heuristic) {
+        if (trainData.getDimensions() != testData.getDimensions()) {
+            throw new IllegalArgumentException("Train and test data dimensions do not match!");
+        }
+        return predict(new LinearScanIndex(trainData, configure(heuristicComputer, heuristic, null)), testData, k);
     }
 
     /**
-     * Tries to correctly predict the <code>1/k</code> quality attribute of the test data part of the given data set.
+     * Predicts the quality attribute of the given <code>testData</code> matrix after transforming both matrices using the given
+     * normalizer, which is usually fitted on the train data. The weights are folded into the transformed attributes, hence the rows are
+     * compared using the unweighted heuristic.
      *
-     * @param <T> Generic data type.
-     * @param data Data.
-     * @param heuristicComputer Heuristic computer for correct prediction.
-     * @param k k-NN prediction part (default 10).
-     * @param weights Weights.
+     * @param trainData Train data matrix in raw units.
+     * @param testData Test data matrix in raw units.
+     * @param normalizer Normalizer containing the scaling and weights.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
      * @param heuristic Heuristic algorithm used.
      * @return Confision matrix for AI analysis.
      */
-    public static <T> ConfusionMatrix predict(List<DataSet<T>> data, HeuristicComputer heuristicComputer, int k, List<T> weights, HeuristicComputer.Heuristic heuristic) {
-        int randomIndex = 0;
-        int dataSize = data.size();
-        int batchSize = dataSize / k;
-
-        // Resulting confusion matrix
-        final ConfusionMatrix result = new ConfusionMatrix();
-        result.setPredictionTime(System.currentTimeMillis());
-
-        // Split data into quality groups
-        Map<Object, List<DataSet<T>>> qualityAttributeBlocks = new HashMap<>();
-        for (DataSet<T> current : data) {
-            qualityAttributeBlocks.putIfAbsent(current.qualityAttribute, new ArrayList<>(512));
-            qualityAttributeBlocks.get(current.qualityAttribute).add(current);
+    public static ConfusionMatrix predict(TrainingMatrix trainData, TrainingMatrix testData, Normalizer normalizer, int k, HeuristicComputer.Heuristic heuristic) {
+        if (trainData.getDimensions() != testData.getDimensions()) {
+            throw new IllegalArgumentException("Train and test data dimensions do not match!");
         }
+        NeighbourIndex index = new LinearScanIndex(normalizer.transform(trainData), new Distance(heuristic, null));
+        return predict(index, normalizer.transform(testData), k);
+    }
+
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> matrix using the neighbour index built over the train data. A
+     * {@link BatchNeighbourIndex}, e.g. a {@link at.fhtw.ai.knn.index.BlockedScanIndex}, is queried with blocks of test rows.
+     *
+     * @param index Neighbour index over the train data matrix.
+     * @param testData Test data matrix.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @return Confision matrix for AI analysis.
+     */
+    public static ConfusionMatrix predict(NeighbourIndex index, TrainingMatrix testData, int k) {
+        return predict(index, testData, k, Voting.MAJORITY);
+    }
+
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> matrix using the neighbour index built over the train data. A
+     * {@link BatchNeighbourIndex}, e.g. a {@link at.fhtw.ai.knn.index.BlockedScanIndex}, is queried with blocks of test rows.
+     *
+     * @param index Neighbour index over the train data matrix.
+     * @param testData Test data matrix.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @return Confision matrix for AI analysis.
+     */
+    public static ConfusionMatrix predict(NeighbourIndex index, TrainingMatrix testData, int k, Voting voting) {
+        return predict(index, testData, k, voting, Instrumentation.NONE);
+    }
 
-        // Initialize data blocks
-        List<List<DataSet<T>>> blocks = new ArrayList<>(k);
-        for (int i = 0; i < k; i++) {
-            blocks.add(new ArrayList<>(batchSize));
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> matrix using the neighbour index built over the train data. A
+     * {@link BatchNeighbourIndex}, e.g. a {@link at.fhtw.ai.knn.index.BlockedScanIndex}, is queried with blocks of test rows.
+     *
+     * @param index Neighbour index over the train data matrix.
+     * @param testData Test data matrix.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @param instrumentation Instrumentation receiving the timings of every stage and query.
+     * @return Confision matrix for AI analysis.
+     */
+    public static ConfusionMatrix predict(NeighbourIndex index, TrainingMatrix testData, int k, Voting voting, Instrumentation instrumentation) {
+        if (index.getTrainData().getDimensions() != testData.getDimensions()) {
+            throw new IllegalArgumentException("Train and test data dimensions do not match!");
         }
 
-        // Retreive test and train data sets
-        for (List<DataSet<T>> current : qualityAttributeBlocks.values()) {
+        long startTime = System.currentTimeMillis();
+        ConfusionMatrix confusionMatrix = predictRows(index, testData, 0, testData.getRows(), k, voting, instrumentation);
+        confusionMatrix.setPredictionTime(System.currentTimeMillis() - startTime);
+        return confusionMatrix;
+    }
 
-            // Calculate batch size for current quality group
-            int batchDataSize = Math.max(current.size() / k, 1);
+    /**
+     * Predicts the quality attribute of the rows <code>[from; to)</code> of the given <code>testData</code> matrix.
+     *
+     * @param index Neighbour index over the train data matrix.
+     * @param testData Test data matrix.
+     * @param from First test row (inclusive).
+     * @param to Last test row (exclusive).
+     * @param k Number of nearest neighbours.
+     * @param voting Voting strategy.
+     * @param instrumentation Instrumentation.
+     * @return Confision matrix for AI analysis.
+     */
+    private static ConfusionMatrix predictRows(NeighbourIndex index, TrainingMatrix testData, int from, int to, int k, Voting voting, Instrumentation instrumentation) {
+        BlockPrediction prediction = new BlockPrediction(index.getTrainData(), testData, k, voting, instrumentation);
+        Neighbours[] neighbours = new Neighbours[BATCH_SIZE];
+        for (int i = 0; i < neighbours.length; i++) {
+            neighbours[i] = new Neighbours(k);
+        }
 
-            // Every data block needs <batchDataSize>-many entries from the quality group
-            for (List<DataSet<T>> dataBlock : blocks) {
+        // The index keeps its rows from changing until every block is voted
+        for (int start = from; start < to; start += neighbours.length) {
+            index.search(testData, start, Math.min(to, start + neighbours.length), neighbours, prediction);
+        }
+        return prediction.confusionMatrix;
+    }
 
-                // Use <batchDataSize>-many data sets
-                for (int i = 0; i < batchDataSize; i++) {
-                    if (current.isEmpty()) {
-                        break;
-                    }
+    /**
+     * Votes the neighbours of every block of test rows and records them in a confusion matrix.
+     *
+     * @author Daniel Kleebinder
+     * @since 0.2
+     */
+    private static final class BlockPrediction implements NeighbourIndex.BlockConsumer {
+
+        private final TrainingMatrix trainData;
+        private final LabelDictionary labels;
+        private final int k;
+        private final Voting voting;
+        private final Instrumentation instrumentation;
+        private final boolean instrumented;
+        private final boolean sharedLabels;
+        private final ConfusionMatrix confusionMatrix;
+        private float[] scratch;
+        private long time;
+
+        /**
+         * Creates a new block prediction.
+         *
+         * @param trainData Train data matrix.
+         * @param testData Test data matrix.
+         * @param k Number of nearest neighbours.
+         * @param voting Voting strategy.
+         * @param instrumentation Instrumentation.
+         */
+        BlockPrediction(TrainingMatrix trainData, TrainingMatrix testData, int k, Voting voting, Instrumentation instrumentation) {
+            this.trainData = trainData;
+            this.labels = trainData.getLabels();
+            this.k = k;
+            this.voting = voting;
+            this.instrumentation = instrumentation;
+            this.instrumented = instrumentation.isEnabled();
+
+            // Test data sharing the label dictionary is recorded by class id, unknown labels must not grow the dictionary while voting
+            this.sharedLabels = testData.getLabels() == labels;
+            this.confusionMatrix = sharedLabels ? new ConfusionMatrix(labels) : new ConfusionMatrix();
+            this.scratch = new float[Voting.scratchSize(labels.size(), k)];
+            this.time = instrumented ? System.nanoTime() : 0;
+        }
 
-                    // Generate a random index
-                    randomIndex = (int) (Math.random() * (current.size() - 1));
-                    dataBlock.add(current.get(randomIndex));
+        @Override
+        public void accept(TrainingMatrix testData, int start, int end, Neighbours[] neighbours) {
+            // Labels added since the last block need a bigger voting scratch
+            int scratchSize = Voting.scratchSize(labels.size(), k);
+            if (scratch.length < scratchSize) {
+                scratch = new float[scratchSize + (scratchSize >> 1)];
+            }
+
+            // The rows of a block share its search time
+            long searchTime = 0;
+            if (instrumented) {
+                long searchStart = time;
+                time = record(instrumentation, Instrumentation.Stage.SEARCH, time);
+                searchTime = (time - searchStart) / (end - start);
+            }
+
+            for (int row = start; row < end; row++) {
+                long queryTime = time;
+                int classId;
+                if (voting.isRegression()) {
+                    float value = voting.regress(neighbours[row - start], trainData.getClassIds(), labels, scratch);
+                    classId = labels.nearestClassId(value);
+                    confusionMatrix.recordRegression(testData.getLabels().getNumericValue(testData.getClassId(row)), value);
+                } else {
+                    classId = voting.vote(neighbours[row - start], trainData.getClassIds(), labels, scratch);
+                }
+                if (instrumented) {
+                    time = record(instrumentation, Instrumentation.Stage.VOTING, time);
+                }
 
-                    // Remove from list in map to prevent the same data set from occurring multiple times
-                    current.remove(randomIndex);
+                // Set confusion matrix
+                if (sharedLabels) {
+                    confusionMatrix.record(testData.getClassId(row), classId);
+                } else {
+                    Object obj = testData.getQualityAttribute(row);
+                    Object predicted = classId < 0 ? null : labels.getLabel(classId);
+                    if (classId >= 0 && Objects.equals(obj, predicted)) {
+                        confusionMatrix.updateCorrectPredictions(1);
+                    } else {
+                        confusionMatrix.updateWrongPredictions(1);
+                    }
+                    confusionMatrix.updatePredictionMatrix(obj, predicted, 1);
+                }
+                if (instrumented) {
+                    time = record(instrumentation, Instrumentation.Stage.MATRIX_UPDATE, time);
+                    instrumentation.recordQuery(searchTime + time - queryTime, neighbours[row - start].getEvaluations());
                 }
             }
         }
+    }
 
-        // Track preparation time
-        result.setPredictionTime(System.currentTimeMillis() - result.getPredictionTime());
+    /**
+     * Records the time since the given start time for the given stage.
+     *
+     * @param instrumentation Instrumentation.
+     * @param stage Stage.
+     * @param startTime Start time of the stage in nanoseconds.
+     * @return Current time in nanoseconds.
+     */
+    private static long record(Instrumentation instrumentation, Instrumentation.Stage stage, long startTime) {
+        long time = System.nanoTime();
+        instrumentation.recordStage(stage, time - startTime);
+        return time;
+    }
 
-        // Use every data block once as test data set
-        List<DataSet<T>> train = new ArrayList<>(data.size());
-        for (int i = 0; i < k; i++) {
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> set in parallel. The test data is partitioned into one part per
+     * available processor and every part is predicted by the given executor using its own copy of the heuristic computer.
+     *
+     * @param <T> Generic data type.
+     * @param trainData Train data set.
+     * @param testData Test data set.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @param weights Weights.
+     * @param heuristic Heuristic algorithm used.
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @param executor Executor used to run the prediction parts.
+     * @return Confision matrix for AI analysis.
+     */
+    public static <T> ConfusionMatrix predict(List<DataSet<T>> trainData, List<DataSet<T>> testData, HeuristicComputer heuristicComputer, int k, List<T> weights, HeuristicComputer.Heuristic heuristic, Voting voting, ExecutorService executor) {
+        return predict(trainData, testData, heuristicComputer, k, weights, heuristic, voting, Instrumentation.NONE, executor);
+    }
 
-            // Clear train data set
-            train.clear();
-            for (int j = 0; j < k; j++) {
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> set in parallel. The test data is partitioned into one part per
+     * available processor and every part is predicted by the given executor using its own copy of the heuristic computer.
+     *
+     * @param <T> Generic data type.
+     * @param trainData Train data set.
+     * @param testData Test data set.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @param weights Weights.
+     * @param heuristic Heuristic algorithm used.
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @param instrumentation Instrumentation receiving the timings of every stage and query.
+     * @param executor Executor used to run the prediction parts.
+     * @return Confision matrix for AI analysis.
+     */
+    public static <T> ConfusionMatrix predict(List<DataSet<T>> trainData, List<DataSet<T>> testData, HeuristicComputer heuristicComputer, final int k, List<T> weights, HeuristicComputer.Heuristic heuristic, final Voting voting, final Instrumentation instrumentation, ExecutorService executor) {
+        long startTime = System.currentTimeMillis();
+        long time = instrumentation.isEnabled() ? System.nanoTime() : 0;
+        final EncodedDataSets<T> encoded = new EncodedDataSets<>(trainData);
+        if (instrumentation.isEnabled()) {
+            record(instrumentation, Instrumentation.Stage.INGEST, time);
+        }
 
-                // Index i is used as test block
-                if (i == j) {
-                    continue;
+        // All parts share the encoded train data, every part gets its own copy of the configured computer
+        HeuristicComputer configured = configure(heuristicComputer, heuristic, weights);
+        int parts = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), testData.size()));
+        List<Callable<ConfusionMatrix>> tasks = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++) {
+            final List<DataSet<T>> part = testData.subList(i * testData.size() / parts, (i + 1) * testData.size() / parts);
+            final HeuristicComputer partHeuristicComputer = i == 0 ? configured : configured.copy();
+            tasks.add(new Callable<ConfusionMatrix>() {
+                @Override
+                public ConfusionMatrix call() {
+                    return predict(encoded, part, partHeuristicComputer, k, voting, instrumentation);
                 }
+            });
+        }
 
-                // Rest is added to train data
-                train.addAll(blocks.get(j));
-            }
+        ConfusionMatrix result = invokeAll(executor, tasks);
+        result.setPredictionTime(System.currentTimeMillis() - startTime);
+        return result;
+    }
 
-            // Predict the test data and update the confusion matrix
-            ConfusionMatrix currentConfusionMatrix = predict(train, blocks.get(i), heuristicComputer, k, weights, heuristic);
-            result.updatePredictionMatrix(currentConfusionMatrix);
-            result.updateCorrectPredictions(currentConfusionMatrix.getNumberOfCorrectPredictions());
-            result.updateWrongPredictions(currentConfusionMatrix.getNumberOfWrongPredictions());
-            result.setPredictionTime(result.getPredictionTime() + currentConfusionMatrix.getPredictionTime());
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> matrix in parallel. The test rows are partitioned into one part
+     * per available processor. The primitive heuristic is stateless, hence all parts share the heuristic computer.
+     *
+     * @param trainData Train data matrix.
+     * @param testData Test data matrix.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @param heuristic Heuristic algorithm used.
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @param executor Executor used to run the prediction parts.
+     * @return Confision matrix for AI analysis.
+     */
+    public static ConfusionMatrix predict(TrainingMatrix trainData, TrainingMatrix testData, HeuristicComputer heuristicComputer, int k, HeuristicComputer.Heuristic heuristic, Voting voting, ExecutorService executor) {
+        return predict(new LinearScanIndex(trainData, configure(heuristicComputer, heuristic, null)), testData, k, voting, executor);
+    }
 
-            // Debug output log
-            if (debugMode) {
-                System.out.println("Progress: " + (((i + 1) / (double) k) * 100.0) + "%");
-                System.out.println(" -> Total Time: " + result.getPredictionTime() + " ms");
-                System.out.println(" -> Prediction Time: " + currentConfusionMatrix.getPredictionTime() + " ms");
-                System.out.println(" -> Correct Predictions: " + currentConfusionMatrix.getNumberOfCorrectPredictions());
-                System.out.println(" -> Wrong Predictions: " + currentConfusionMatrix.getNumberOfWrongPredictions());
-                System.out.println();
-            }
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> matrix in parallel using the neighbour index built over the train
+     * data. The test rows are partitioned into one part per available processor and all parts share the index.
+     *
+     * @param index Neighbour index over the train data matrix.
+     * @param testData Test data matrix.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @param executor Executor used to run the prediction parts.
+     * @return Confision matrix for AI analysis.
+     */
+    public static ConfusionMatrix predict(NeighbourIndex index, TrainingMatrix testData, int k, Voting voting, ExecutorService executor) {
+        return predict(index, testData, k, voting, Instrumentation.NONE, executor);
+    }
+
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> matrix in parallel using the neighbour index built over the train
+     * data. The test rows are partitioned into one part per available processor and all parts share the index.
+     *
+     * @param index Neighbour index over the train data matrix.
+     * @param testData Test data matrix.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @param instrumentation Instrumentation receiving the timings of every stage and query.
+     * @param executor Executor used to run the prediction parts.
+     * @return Confision matrix for AI analysis.
+     */
+    public static ConfusionMatrix predict(final NeighbourIndex index, final TrainingMatrix testData, final int k, final Voting voting, final Instrumentation instrumentation, ExecutorService executor) {
+        if (index.getTrainData().getDimensions() != testData.getDimensions()) {
+            throw new IllegalArgumentException("Train and test data dimensions do not match!");
+        }
+        long startTime = System.currentTimeMillis();
+
+        int rows = testData.getRows();
+        int parts = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), rows));
+        List<Callable<ConfusionMatrix>> tasks = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++) {
+            final int from = (int) ((long) i * rows / parts);
+            final int to = (int) ((long) (i + 1) * rows / parts);
+            tasks.add(new Callable<ConfusionMatrix>() {
+                @Override
+                public ConfusionMatrix call() {
+                    return predictRows(index, testData, from, to, k, voting, instrumentation);
+                }
+            });
         }
 
+        ConfusionMatrix result = invokeAll(executor, tasks);
+        result.setPredictionTime(System.currentTimeMillis() - startTime);
         return result;
     }
 
     /**
-     * Calculates and returns an array of the top n values in the given list.
+     * Runs all given prediction tasks using the executor and merges their confusion matrices.
+     *
+     * @param executor Executor.
+     * @param tasks Prediction tasks.
+     * @return Merged confusion matrix.
+     */
+    private static ConfusionMatrix invokeAll(ExecutorService executor, List<Callable<ConfusionMatrix>> tasks) {
+        ConfusionMatrix result = new ConfusionMatrix();
+        try {
+            for (Future<ConfusionMatrix> future : executor.invokeAll(tasks)) {
+                result.merge(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parallel prediction was interrupted!", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("Parallel prediction failed!", ex.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * Tries to correctly predict the <code>1/k</code> quality attribute of the test data part of the given data set.
      *
      * @param <T> Generic data type.
-     * @param trainData Train data.
-     * @param heuristicComputer Heuristic computer.
-     * @param n Top n values.
-     * @return Array containing the top n values.
+     * @param data Data.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @return Confision matrix for AI analysis.
      */
-    private static <T> SimplePair<DataSet<T>, Float>[] topEntries(DataSet<T>[] trainData, HeuristicComputer heuristicComputer, int n) {
-        SimplePair<DataSet<T>, Float>[] result = new SimplePair[n];
-        SimplePair<Integer, Float> buffer = new SimplePair<>();
+    public static <T> ConfusionMatrix predict(List<DataSet<T>> data, HeuristicComputer heuristicComputer) {
+        return predict(data, heuristicComputer, 10);
+    }
 
-        // Pre initialize variables
-        int currentIndex = 0;
-        int biggestHeuristicIndex = 0;
-        float currentHeuristic = 0;
-        float biggestHeuristicInResult = Float.NEGATIVE_INFINITY;
-        DataSet<T> current;
+    /**
+     * Tries to correctly predict the <code>1/k</code> quality attribute of the test data part of the given data set.
+     *
+     * @param <T> Generic data type.
+     * @param data Data.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k k-NN prediction part (default 10), used as number of folds and as number of nearest neighbours.
+     * @return Confision matrix for AI analysis.
+     */
+    public static <T> ConfusionMatrix predict(List<DataSet<T>> data, HeuristicComputer heuristicComputer, int k) {
+        return predict(data, heuristicComputer, k, null);
+    }
 
-        for (int i = 0; i < trainData.length; i++) {
-            current = trainData[i];
-            // Compute heuristic of the current data set
-            currentHeuristic = heuristicComputer.computeHeuristic(current);
-
-            // Fill result set with n values at the beginning
-            if (currentIndex < n) {
-                result[currentIndex] = new SimplePair<>(current, currentHeuristic);
-
-                // Set current biggest value in result set and corresponding index
-                // for performance optimization
-                if (biggestHeuristicInResult < currentHeuristic) {
-                    biggestHeuristicInResult = currentHeuristic;
-                    biggestHeuristicIndex = currentIndex;
-                }
+    /**
+     * Tries to correctly predict the <code>1/k</code> quality attribute of the test data part of the given data set.
+     *
+     * @param <T> Generic data type.
+     * @param data Data.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k k-NN prediction part (default 10), used as number of folds and as number of nearest neighbours.
+     * @param weights Weights.
+     * @return Confision matrix for AI analysis.
+     */
+    public static <T> ConfusionMatrix predict(List<DataSet<T>> data, HeuristicComputer heuristicComputer, int k, List<T> weights) {
+        return predict(data, heuristicComputer, k, weights, HeuristicComputer.Heuristic.Euklid);
+    }
 
-                currentIndex++;
-                continue;
-            }
+    /**
+     * Tries to correctly predict the <code>1/k</code> quality attribute of the test data part of the given data set.
+     *
+     * @param <T> Generic data type.
+     * @param data Data.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k k-NN prediction part (default 10), used as number of folds and as number of nearest neighbours.
+     * @param weights Weights.
+     * @param heuristic Heuristic algorithm used.
+     * @return Confision matrix for AI analysis.
+     */
+    public static <T> ConfusionMatrix predict(List<DataSet<T>> data, HeuristicComputer heuristicComputer, int k, List<T> weights, HeuristicComputer.Heuristic heuristic) {
+        return predict(data, heuristicComputer, k, weights, heuristic, Voting.MAJORITY);
+    }
 
-            // Check if the biggest heuristic in the result set is smaller
-            // than the current heuristic
-            if (biggestHeuristicInResult < currentHeuristic) {
-                continue;
-            }
+    /**
+     * Tries to correctly predict the <code>1/k</code> quality attribute of the test data part of the given data set.
+     *
+     * @param <T> Generic data type.
+     * @param data Data.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k k-NN prediction part (default 10), used as number of folds and as number of nearest neighbours.
+     * @param weights Weights.
+     * @param heuristic Heuristic algorithm used.
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @return Confision matrix for AI analysis.
+     */
+    public static <T> ConfusionMatrix predict(List<DataSet<T>> data, HeuristicComputer heuristicComputer, int k, List<T> weights, HeuristicComputer.Heuristic heuristic, Voting voting) {
+        return predict(data, heuristicComputer, k, weights, heuristic, voting, debugMode ? DEBUG : Instrumentation.NONE);
+    }
+
+    /**
+     * Tries to correctly predict the <code>1/k</code> quality attribute of the test data part of the given data set.
+     *
+     * @param <T> Generic data type.
+     * @param data Data.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k k-NN prediction part (default 10), used as number of folds and as number of nearest neighbours.
+     * @param weights Weights.
+     * @param heuristic Heuristic algorithm used.
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @param instrumentation Instrumentation receiving the timings of every stage, query and fold.
+     * @return Confision matrix for AI analysis.
+     */
+    public static <T> ConfusionMatrix predict(List<DataSet<T>> data, HeuristicComputer heuristicComputer, int k, List<T> weights, HeuristicComputer.Heuristic heuristic, Voting voting, Instrumentation instrumentation) {
+        long startTime = System.currentTimeMillis();
+        long ingestTime = instrumentation.isEnabled() ? System.nanoTime() : 0;
+        Folds folds = Folds.stratified(data, k, Folds.DEFAULT_SEED);
+        if (instrumentation.isEnabled()) {
+            record(instrumentation, Instrumentation.Stage.INGEST, ingestTime);
+        }
+        long partitionTime = System.currentTimeMillis() - startTime;
 
-            // Replace old highest value with the new, smaller one
-            result[biggestHeuristicIndex].set(current, currentHeuristic);
-            buffer.set(biggestHeuristicIndex, currentHeuristic);
+        ConfusionMatrix result = predict(data, folds, heuristicComputer, k, weights, heuristic, voting, instrumentation);
+        result.setPredictionTime(result.getPredictionTime() + partitionTime);
+        return result;
+    }
 
-            // Fetch new highest value in result
-            for (int j = 0; j < result.length; j++) {
-                if (buffer.value < result[j].value) {
-                    buffer.value = result[j].value;
-                    buffer.key = j;
-                }
-            }
-            biggestHeuristicInResult = buffer.value;
-            biggestHeuristicIndex = buffer.key;
+    /**
+     * Predicts the quality attribute of every row of the given data set once, using every fold of the given partition as test data and
+     * the other folds as train data. The folds are views of the data, no data set is copied.
+     *
+     * @param <T> Generic data type.
+     * @param data Data.
+     * @param folds Partition of the data into folds, see {@link Folds#stratified(List, int, long)}.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @param weights Weights.
+     * @param heuristic Heuristic algorithm used.
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @param instrumentation Instrumentation receiving the timings of every stage, query and fold.
+     * @return Confision matrix for AI analysis.
+     */
+    public static <T> ConfusionMatrix predict(List<DataSet<T>> data, Folds folds, HeuristicComputer heuristicComputer, int k, List<T> weights, HeuristicComputer.Heuristic heuristic, Voting voting, Instrumentation instrumentation) {
+        ConfusionMatrix result = new ConfusionMatrix();
+
+        // Use every fold once as test data set
+        for (int i = 0; i < folds.getFolds(); i++) {
+            ConfusionMatrix currentConfusionMatrix = predict(folds.train(data, i), folds.test(data, i), heuristicComputer, k, weights, heuristic, voting, instrumentation);
+            result.merge(currentConfusionMatrix);
+            result.setPredictionTime(result.getPredictionTime() + currentConfusionMatrix.getPredictionTime());
+            instrumentation.recordFold(i, folds.getFolds(), currentConfusionMatrix);
         }
         return result;
     }
 
     /**
-     * A simple pair class with key and value.
+     * Predicts the quality attribute of every row of the given data matrix once, using every fold of the given partition as test data and
+     * the other folds as train data. Every pair of rows is compared only once for all folds, see {@link CrossValidation}.
      *
-     * @author Daniel Kleebinder
-     * @param <K> Key data type.
-     * @param <V> Value data type.
-     * @since 0.1
+     * @param data Data matrix.
+     * @param folds Partition of the data into folds, see {@link Folds#stratified(TrainingMatrix, int, long)}.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @param heuristic Heuristic algorithm used.
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @return Confision matrix for AI analysis.
      */
-    private static class SimplePair<K, V> {
+    public static ConfusionMatrix predict(TrainingMatrix data, Folds folds, HeuristicComputer heuristicComputer, int k, HeuristicComputer.Heuristic heuristic, Voting voting) {
+        return CrossValidation.compute(data, folds, configure(heuristicComputer, heuristic, null), k, false).predict(voting);
+    }
 
-        /**
-         * Key.
-         */
-        public K key;
-        /**
-         * Value.
-         */
-        public V value;
+    /**
+     * Tries to correctly predict the <code>1/k</code> quality attribute of the test data part of the given data set. All k folds are
+     * predicted concurrently by the given executor, every fold using its own train data set and copy of the heuristic computer.
+     *
+     * @param <T> Generic data type.
+     * @param data Data.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k k-NN prediction part (default 10), used as number of folds and as number of nearest neighbours.
+     * @param weights Weights.
+     * @param heuristic Heuristic algorithm used.
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @param executor Executor used to run the folds.
+     * @return Confision matrix for AI analysis.
+     */
+    public static <T> ConfusionMatrix predict(List<DataSet<T>> data, HeuristicComputer heuristicComputer, int k, List<T> weights, HeuristicComputer.Heuristic heuristic, Voting voting, ExecutorService executor) {
+        return predict(data, heuristicComputer, k, weights, heuristic, voting, debugMode ? DEBUG : Instrumentation.NONE, executor);
+    }
 
-        /**
-         * Creates a new simple pair.
-         */
-        public SimplePair() {
+    /**
+     * Tries to correctly predict the <code>1/k</code> quality attribute of the test data part of the given data set. All k folds are
+     * predicted concurrently by the given executor, every fold using its own train data set and copy of the heuristic computer.
+     *
+     * @param <T> Generic data type.
+     * @param data Data.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k k-NN prediction part (default 10), used as number of folds and as number of nearest neighbours.
+     * @param weights Weights.
+     * @param heuristic Heuristic algorithm used.
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @param instrumentation Instrumentation receiving the timings of every stage, query and fold.
+     * @param executor Executor used to run the folds.
+     * @return Confision matrix for AI analysis.
+     */
+    public static <T> ConfusionMatrix predict(List<DataSet<T>> data, HeuristicComputer heuristicComputer, int k, List<T> weights, HeuristicComputer.Heuristic heuristic, Voting voting, Instrumentation instrumentation, ExecutorService executor) {
+        long startTime = System.currentTimeMillis();
+        long ingestTime = instrumentation.isEnabled() ? System.nanoTime() : 0;
+        Folds folds = Folds.stratified(data, k, Folds.DEFAULT_SEED);
+        if (instrumentation.isEnabled()) {
+            record(instrumentation, Instrumentation.Stage.INGEST, ingestTime);
         }
 
-        /**
-         * Creates a new simple pair with the given key and value.
-         *
-         * @param key Key.
-         * @param value Value.
-         */
-        public SimplePair(K key, V value) {
-            this.key = key;
-            this.value = value;
+        ConfusionMatrix result = predict(data, folds, heuristicComputer, k, weights, heuristic, voting, instrumentation, executor);
+        result.setPredictionTime(System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    /**
+     * Predicts the quality attribute of every row of the given data set once, using every fold of the given partition as test data and
+     * the other folds as train data. All folds are predicted concurrently by the given executor, every fold using its own copy of the
+     * heuristic computer. The folds are views of the data, no data set is copied.
+     *
+     * @param <T> Generic data type.
+     * @param data Data.
+     * @param folds Partition of the data into folds, see {@link Folds#stratified(List, int, long)}.
+     * @param heuristicComputer Heuristic computer for correct prediction.
+     * @param k Number of nearest neighbours used for the prediction (default 10).
+     * @param weights Weights.
+     * @param heuristic Heuristic algorithm used.
+     * @param voting Voting strategy used to decide the quality attribute of the neighbours.
+     * @param instrumentation Instrumentation receiving the timings of every stage, query and fold.
+     * @param executor Executor used to run the folds.
+     * @return Confision matrix for AI analysis.
+     */
+    public static <T> ConfusionMatrix predict(final List<DataSet<T>> data, final Folds folds, HeuristicComputer heuristicComputer, final int k, List<T> weights, final HeuristicComputer.Heuristic heuristic, final Voting voting, final Instrumentation instrumentation, ExecutorService executor) {
+        long startTime = System.currentTimeMillis();
+
+        // Every fold predicts with its own copy of the configured computer
+        final HeuristicComputer configured = configure(heuristicComputer, heuristic, weights);
+        List<Callable<ConfusionMatrix>> tasks = new ArrayList<>(folds.getFolds());
+        for (int i = 0; i < folds.getFolds(); i++) {
+            final int testFold = i;
+            tasks.add(new Callable<ConfusionMatrix>() {
+                @Override
+                public ConfusionMatrix call() {
+                    ConfusionMatrix foldConfusionMatrix = predict(folds.train(data, testFold), folds.test(data, testFold), configured, k, null, heuristic, voting, instrumentation);
+                    instrumentation.recordFold(testFold, folds.getFolds(), foldConfusionMatrix);
+                    return foldConfusionMatrix;
+                }
+            });
         }
 
-        /**
-         * Sets the key and value of the pair.
-         *
-         * @param key Key.
-         * @param value Value.
-         */
-        public void set(K key, V value) {
-            this.key = key;
-            this.value = value;
+        ConfusionMatrix result = invokeAll(executor, tasks);
+        result.setPredictionTime(System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    /**
+     * Calculates the top n values in the given list, where n is the capacity of the given neighbours. No object is allocated. Once n rows
+     * are found, every row is only compared until its partial heuristic exceeds the worst of them.
+     *
+     * @param <T> Generic data type.
+     * @param trainData Train data.
+     * @param candidate Candidate.
+     * @param heuristicComputer Heuristic computer.
+     * @param neighbours Receives the indices of the top n values.
+     */
+    private static <T> void topEntries(DataSet<T>[] trainData, DataSet<T> candidate, HeuristicComputer<T, ?> heuristicComputer, Neighbours neighbours) {
+        neighbours.clear();
+        for (int i = 0; i < trainData.length; i++) {
+            neighbours.offer(i, heuristicComputer.computeHeuristic(candidate, trainData[i], neighbours.worst()));
         }
     }
 }
@@ -0,0 +1,775 @@
+package at.fhtw.ai.knn;
+
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.NeighbourIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import at.fhtw.ai.knn.index.RowFilter;
+import at.fhtw.ai.knn.metrics.Instrumentation;
+import at.fhtw.ai.knn.voting.Voting;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A long lived k-NN model which owns its training data and neighbour index. Labeled rows can be added, updated and deleted at any time
+ * while queries are served, without rebuilding the model for every change.
+ * <p>
+ * Without an {@link IndexFactory} every query scans all live rows. With an index factory the model keeps an index over a snapshot of
+ * the rows. Rows added or updated after the snapshot are scanned linearly, deleted and outdated rows are skipped by the index search
+ * using a {@link RowFilter}. Once the changes exceed an eighth of the rows, the index is rebuilt on a background thread, so the cost of
+ * the rebuild is amortized over the changes. Queries and changes keep running while the index is rebuilt, changes made meanwhile stay in
+ * the delta list until the next rebuild.
+ * <p>
+ * Every row is identified by the row index returned by {@link #add(float[], Object)}. The ids of deleted rows are reused by later
+ * additions. The model implements {@link NeighbourIndex}, hence it can be passed to
+ * {@link KnnAI#predict(NeighbourIndex, TrainingMatrix, int, Voting)}, the neighbours it returns are row ids. Single unlabeled queries are
+ * answered by {@link #predict(float[])}.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class KnnModel implements NeighbourIndex {
+
+    /**
+     * Creates the neighbour index over a snapshot of the rows of a model.
+     */
+    public interface IndexFactory {
+
+        /**
+         * Creates a new neighbour index.
+         *
+         * @param trainData Snapshot of the rows.
+         * @param heuristicComputer Heuristic computer of the model.
+         * @return Neighbour index.
+         */
+        NeighbourIndex create(TrainingMatrix trainData, HeuristicComputer heuristicComputer);
+    }
+
+    /**
+     * Minimum number of changed rows before the index is rebuilt.
+     */
+    private static final int MIN_REBUILD_ROWS = 1024;
+
+    /**
+     * Share of changed rows, relative to the live rows, before the index is rebuilt.
+     */
+    private static final float REBUILD_FRACTION = 0.125f;
+
+    private final TrainingMatrix store;
+    private final HeuristicComputer heuristicComputer;
+    private final IndexFactory indexFactory;
+
+    // Queries hold the read lock, changes the write lock. Changes are serialized by the change lock, so a rebuild can copy the rows
+    // without blocking queries. Rebuilds are serialized by the rebuild lock and build the index without holding any other lock.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock changeLock = new ReentrantLock();
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    // Live flag of every row and the deleted rows available for reuse
+    private boolean[] live;
+    private int liveRows;
+    private int[] free = new int[16];
+    private int freeCount;
+
+    // Index over a snapshot of the rows, the store row of every snapshot position and the snapshot position of every store row (or -1)
+    private NeighbourIndex index;
+    private int[] snapshotRows = new int[0];
+    private int[] snapshotPositions;
+    private boolean[] excluded = new boolean[0];
+    private int excludedCount;
+
+    // Rows added or updated after the snapshot and their position in the delta list (or -1)
+    private int[] delta = new int[16];
+    private int deltaCount;
+    private int[] deltaPositions;
+
+    // Set while a rebuild copied the rows but did not install its index yet, rows changed meanwhile are marked
+    private boolean rebuilding;
+    private boolean rebuildScheduled;
+    private boolean[] changedDuringRebuild;
+
+    // Skips the excluded snapshot positions, only called under the read lock
+    private final RowFilter excludedFilter = new RowFilter() {
+        @Override
+        public boolean accept(int row) {
+            return !excluded[row];
+        }
+    };
+
+    // Per thread result set for the index
+    private final ThreadLocal<Neighbours> indexResults = new ThreadLocal<>();
+
+    // Per thread neighbours and voting scratch of single queries
+    private final ThreadLocal<Neighbours> queryResults = new ThreadLocal<>();
+    private final ThreadLocal<float[]> voteScratches = new ThreadLocal<>();
+
+    private volatile int k = 10;
+    private volatile Voting voting = Voting.MAJORITY;
+    private volatile Instrumentation instrumentation = Instrumentation.NONE;
+
+    /**
+     * Creates a new empty model which scans all rows.
+     *
+     * @param dimensions Number of attributes per row.
+     * @param heuristicComputer Heuristic computer.
+     */
+    public KnnModel(int dimensions, HeuristicComputer heuristicComputer) {
+        this(dimensions, heuristicComputer, null);
+    }
+
+    /**
+     * Creates a new empty model.
+     *
+     * @param dimensions Number of attributes per row.
+     * @param heuristicComputer Heuristic computer.
+     * @param indexFactory Index factory or <code>null</code> to scan all rows.
+     */
+    public KnnModel(int dimensions, HeuristicComputer heuristicComputer, IndexFactory indexFactory) {
+        this(new TrainingMatrix(dimensions, 1024), heuristicComputer, indexFactory);
+    }
+
+    /**
+     * Creates a new model containing all rows of the given training matrix. The model takes ownership of the matrix, it must not be
+     * changed by others afterwards. Matrices without array, e.g. a {@link MappedTrainingMatrix}, are copied.
+     *
+     * @param trainData Train data matrix.
+     * @param heuristicComputer Heuristic computer.
+     * @param indexFactory Index factory or <code>null</code> to scan all rows.
+     */
+    public KnnModel(TrainingMatrix trainData, HeuristicComputer heuristicComputer, IndexFactory indexFactory) {
+        if (heuristicComputer == null) {
+            throw new NullPointerException("Heuristic computer must not be null!");
+        }
+        this.heuristicComputer = heuristicComputer;
+        this.indexFactory = indexFactory;
+
+        if (trainData.hasArray()) {
+            store = trainData;
+        } else {
+            store = new TrainingMatrix(trainData.getDimensions(), trainData.getRows(), trainData.getLabels());
+            float[] row = new float[trainData.getDimensions()];
+            for (int i = 0; i < trainData.getRows(); i++) {
+                store.add(trainData.copyRow(i, row), trainData.getQualityAttribute(i));
+            }
+        }
+
+        int rows = store.getRows();
+        live = new boolean[Math.max(rows, 16)];
+        Arrays.fill(live, 0, rows, true);
+        liveRows = rows;
+        snapshotPositions = new int[live.length];
+        deltaPositions = new int[live.length];
+        changedDuringRebuild = new boolean[live.length];
+        Arrays.fill(snapshotPositions, -1);
+        Arrays.fill(deltaPositions, -1);
+        if (indexFactory != null && rows > 0) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Adds a labeled row.
+     *
+     * @param values Attributes.
+     * @param label Quality attribute.
+     * @return Row id.
+     */
+    public int add(float[] values, Object label) {
+        if (values.length != store.getDimensions()) {
+            throw new IllegalArgumentException("Row has " + values.length + " dimensions, expected " + store.getDimensions() + "!");
+        }
+
+        changeLock.lock();
+        try {
+            int row;
+            lock.writeLock().lock();
+            try {
+                if (freeCount > 0) {
+                    row = free[--freeCount];
+                    store.set(row, values, label);
+                } else {
+                    row = store.add(values, label);
+                    ensureCapacity(row + 1);
+                }
+                live[row] = true;
+                liveRows++;
+                addDelta(row);
+                markChanged(row);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            rebuildIfNeeded();
+            return row;
+        } finally {
+            changeLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the attributes and the quality attribute of a row.
+     *
+     * @param row Row id.
+     * @param values Attributes.
+     * @param label Quality attribute.
+     */
+    public void update(int row, float[] values, Object label) {
+        changeLock.lock();
+        try {
+            lock.writeLock().lock();
+            try {
+                if (!contains(row)) {
+                    throw new IllegalArgumentException("Row " + row + " does not exist!");
+                }
+                store.set(row, values, label);
+                exclude(row);
+                addDelta(row);
+                markChanged(row);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            rebuildIfNeeded();
+        } finally {
+            changeLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes a row.
+     *
+     * @param row Row id.
+     * @return <code>true</code> if the row existed.
+     */
+    public boolean delete(int row) {
+        changeLock.lock();
+        try {
+            lock.writeLock().lock();
+            try {
+                if (!contains(row)) {
+                    return false;
+                }
+                live[row] = false;
+                liveRows--;
+                if (freeCount == free.length) {
+                    free = Arrays.copyOf(free, free.length * 2);
+                }
+                free[freeCount++] = row;
+                exclude(row);
+                removeDelta(row);
+                markChanged(row);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            rebuildIfNeeded();
+            return true;
+        } finally {
+            changeLock.unlock();
+        }
+    }
+
+    /**
+     * Checks if the given row exists.
+     *
+     * @param row Row id.
+     * @return <code>true</code> if the row exists.
+     */
+    public boolean contains(int row) {
+        lock.readLock().lock();
+        try {
+            return row >= 0 && row < store.getRows() && live[row];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the attributes of a row into the target array.
+     *
+     * @param row Row id.
+     * @param target Target array with at least {@link #getDimensions()} elements.
+     * @return Target array.
+     */
+    public float[] get(int row, float[] target) {
+        lock.readLock().lock();
+        try {
+            if (!contains(row)) {
+                throw new IllegalArgumentException("Row " + row + " does not exist!");
+            }
+            return store.copyRow(row, target);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the quality attribute of a row.
+     *
+     * @param row Row id.
+     * @return Quality attribute.
+     */
+    public Object getLabel(int row) {
+        lock.readLock().lock();
+        try {
+            if (!contains(row)) {
+                throw new IllegalArgumentException("Row " + row + " does not exist!");
+            }
+            return store.getQualityAttribute(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return Number of rows.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveRows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of attributes per row.
+     *
+     * @return Dimensions.
+     */
+    public int getDimensions() {
+        return store.getDimensions();
+    }
+
+    /**
+     * Grows the row state arrays if needed.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= live.length) {
+            return;
+        }
+        int oldCapacity = live.length;
+        int newCapacity = Math.max(capacity, oldCapacity + (oldCapacity >> 1));
+        live = Arrays.copyOf(live, newCapacity);
+        snapshotPositions = Arrays.copyOf(snapshotPositions, newCapacity);
+        deltaPositions = Arrays.copyOf(deltaPositions, newCapacity);
+        changedDuringRebuild = Arrays.copyOf(changedDuringRebuild, newCapacity);
+        Arrays.fill(snapshotPositions, oldCapacity, newCapacity, -1);
+        Arrays.fill(deltaPositions, oldCapacity, newCapacity, -1);
+    }
+
+    /**
+     * Adds a row to the delta list unless it is already contained.
+     */
+    private void addDelta(int row) {
+        if (indexFactory == null || deltaPositions[row] >= 0) {
+            return;
+        }
+        if (deltaCount == delta.length) {
+            delta = Arrays.copyOf(delta, delta.length * 2);
+        }
+        deltaPositions[row] = deltaCount;
+        delta[deltaCount++] = row;
+    }
+
+    /**
+     * Removes a row from the delta list by moving the last row into its place.
+     */
+    private void removeDelta(int row) {
+        int position = deltaPositions[row];
+        if (position < 0) {
+            return;
+        }
+        int last = delta[--deltaCount];
+        delta[position] = last;
+        deltaPositions[last] = position;
+        deltaPositions[row] = -1;
+    }
+
+    /**
+     * Marks a row changed while a rebuild builds its index, so the rebuild does not trust its copy of the row.
+     */
+    private void markChanged(int row) {
+        if (rebuilding) {
+            changedDuringRebuild[row] = true;
+        }
+    }
+
+    /**
+     * Excludes the snapshot copy of a row from the index results.
+     */
+    private void exclude(int row) {
+        int position = snapshotPositions[row];
+        if (position < 0) {
+            return;
+        }
+        excluded[position] = true;
+        excludedCount++;
+        snapshotPositions[row] = -1;
+    }
+
+    /**
+     * Starts a rebuild of the index on a background thread if too many rows changed since the last snapshot. Must be called holding the
+     * change lock.
+     */
+    private void rebuildIfNeeded() {
+        if (indexFactory == null || rebuildScheduled || deltaCount + excludedCount <= Math.max(MIN_REBUILD_ROWS, REBUILD_FRACTION * liveRows)) {
+            return;
+        }
+
+        rebuildScheduled = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebuild();
+                } finally {
+                    changeLock.lock();
+                    try {
+                        rebuildScheduled = false;
+                    } finally {
+                        changeLock.unlock();
+                    }
+                }
+            }
+        }, "KnnModel-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Rebuilds the index over a snapshot of all rows on the calling thread. Queries and changes are served while the index is built, rows
+     * changed meanwhile are kept in the delta list. Waits for a running rebuild first. Does nothing if the model has no index factory.
+     */
+    public void rebuild() {
+        if (indexFactory == null) {
+            return;
+        }
+
+        Instrumentation instrumentation = this.instrumentation;
+        long startTime = instrumentation.isEnabled() ? System.nanoTime() : 0;
+        rebuildLock.lock();
+        try {
+            // No change can happen while the change lock is held, hence the rows are copied without blocking queries
+            TrainingMatrix snapshot;
+            int[] rows;
+            changeLock.lock();
+            try {
+                int dimensions = store.getDimensions();
+                snapshot = new TrainingMatrix(dimensions, liveRows, store.getLabels());
+                rows = new int[liveRows];
+                float[] values = new float[dimensions];
+                for (int row = 0, position = 0; row < store.getRows(); row++) {
+                    if (live[row]) {
+                        rows[position++] = row;
+                        snapshot.add(store.copyRow(row, values), store.getQualityAttribute(row));
+                    }
+                }
+                rebuilding = true;
+            } finally {
+                changeLock.unlock();
+            }
+
+            NeighbourIndex newIndex = null;
+            try {
+                newIndex = rows.length == 0 ? null : indexFactory.create(snapshot, heuristicComputer);
+            } finally {
+                changeLock.lock();
+                lock.writeLock().lock();
+                try {
+                    if (newIndex != null || rows.length == 0) {
+                        install(newIndex, rows);
+                    }
+                    rebuilding = false;
+                    Arrays.fill(changedDuringRebuild, false);
+                } finally {
+                    lock.writeLock().unlock();
+                    changeLock.unlock();
+                }
+            }
+        } finally {
+            rebuildLock.unlock();
+        }
+        if (instrumentation.isEnabled()) {
+            instrumentation.recordStage(Instrumentation.Stage.INDEX_BUILD, System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Replaces the index by one built over a snapshot of the given rows. Rows changed since the snapshot are excluded from the new index
+     * and stay in the delta list, all other rows leave it. Must be called holding the write lock.
+     */
+    private void install(NeighbourIndex newIndex, int[] rows) {
+        index = newIndex;
+        snapshotRows = rows;
+        excluded = new boolean[rows.length];
+        excludedCount = 0;
+        Arrays.fill(snapshotPositions, -1);
+        for (int position = 0; position < rows.length; position++) {
+            if (changedDuringRebuild[rows[position]]) {
+                excluded[position] = true;
+                excludedCount++;
+            } else {
+                snapshotPositions[rows[position]] = position;
+            }
+        }
+
+        int kept = 0;
+        for (int i = 0; i < deltaCount; i++) {
+            int row = delta[i];
+            if (changedDuringRebuild[row]) {
+                deltaPositions[row] = kept;
+                delta[kept++] = row;
+            } else {
+                deltaPositions[row] = -1;
+            }
+        }
+        deltaCount = kept;
+    }
+
+    @Override
+    public void search(float[] candidate, Neighbours result) {
+        lock.readLock().lock();
+        try {
+            result.clear();
+            float[] data = store.getData();
+            int dimensions = store.getDimensions();
+
+            if (indexFactory == null) {
+                int rows = store.getRows();
+                for (int row = 0, offset = 0; row < rows; row++, offset += dimensions) {
+                    if (live[row]) {
+                        result.offer(row, heuristicComputer.computeHeuristic(candidate, 0, data, offset, dimensions, result.worst()));
+                    }
+                }
+                return;
+            }
+
+            // The index skips the excluded snapshot positions itself
+            int evaluations = deltaCount;
+            if (index != null) {
+                Neighbours indexResult = indexResults.get();
+                if (indexResult == null || indexResult.capacity() != result.capacity()) {
+                    indexResult = new Neighbours(result.capacity());
+                    indexResults.set(indexResult);
+                }
+                index.search(candidate, indexResult, excludedCount > 0 ? excludedFilter : null);
+                evaluations += indexResult.getEvaluations();
+                for (int i = 0; i < indexResult.size(); i++) {
+                    result.offer(snapshotRows[indexResult.getIndex(i)], indexResult.getHeuristic(i));
+                }
+            }
+            for (int i = 0; i < deltaCount; i++) {
+                int row = delta[i];
+                result.offer(row, heuristicComputer.computeHeuristic(candidate, 0, data, row * dimensions, dimensions, result.worst()));
+            }
+            result.setEvaluations(evaluations);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches and passes every block under the read lock, so the consumer sees the rows, labels and class ids the neighbours were found
+     * in.
+     */
+    @Override
+    public void search(TrainingMatrix queries, int from, int to, Neighbours[] results, BlockConsumer consumer) {
+        lock.readLock().lock();
+        try {
+            NeighbourIndex.super.search(queries, from, to, results, consumer);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Predicts the quality attribute of a single query.
+     *
+     * @param features Attributes of the query.
+     * @return Prediction.
+     */
+    public Prediction predict(float[] features) {
+        return predict(features, new Prediction(k));
+    }
+
+    /**
+     * Predicts the quality attribute of a single query, reusing the given prediction. Apart from growing the prediction, nothing is
+     * allocated.
+     *
+     * @param features Attributes of the query.
+     * @param result Receives the prediction.
+     * @return Given prediction.
+     */
+    public Prediction predict(float[] features, Prediction result) {
+        if (features.length != store.getDimensions()) {
+            throw new IllegalArgumentException("Query has " + features.length + " dimensions, expected " + store.getDimensions() + "!");
+        }
+
+        int k = this.k;
+        Voting voting = this.voting;
+        Instrumentation instrumentation = this.instrumentation;
+        boolean instrumented = instrumentation.isEnabled();
+        long startTime = instrumented ? System.nanoTime() : 0;
+        Neighbours neighbours = queryResults.get();
+        if (neighbours == null || neighbours.capacity() != k) {
+            neighbours = new Neighbours(k);
+            queryResults.set(neighbours);
+        }
+
+        // Search and vote under the same lock, so the labels match the neighbours
+        lock.readLock().lock();
+        try {
+            search(features, neighbours);
+            long searchTime = instrumented ? System.nanoTime() : 0;
+
+            LabelDictionary labels = store.getLabels();
+            int scratchSize = Voting.scratchSize(labels.size(), k);
+            float[] scratch = voteScratches.get();
+            if (scratch == null || scratch.length < scratchSize) {
+                scratch = new float[scratchSize + (scratchSize >> 1)];
+                voteScratches.set(scratch);
+            }
+            float value = Float.NaN;
+            int classId;
+            if (voting.isRegression()) {
+                value = voting.regress(neighbours, store.getClassIds(), labels, scratch);
+                classId = labels.nearestClassId(value);
+            } else {
+                classId = voting.vote(neighbours, store.getClassIds(), labels, scratch);
+            }
+
+            neighbours.sort();
+            result.reset(classId, classId < 0 ? null : labels.getLabel(classId), neighbours.size());
+            result.setValue(value);
+            for (int i = 0; i < neighbours.size(); i++) {
+                result.addNeighbour(neighbours.getIndex(i), heuristicComputer.toMetric(neighbours.getHeuristic(i)));
+            }
+
+            if (instrumented) {
+                long endTime = System.nanoTime();
+                instrumentation.recordStage(Instrumentation.Stage.SEARCH, searchTime - startTime);
+                instrumentation.recordStage(Instrumentation.Stage.VOTING, endTime - searchTime);
+                instrumentation.recordQuery(endTime - startTime, neighbours.getEvaluations());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Predicts the quality attribute of a batch of queries. All queries see the same rows of the model.
+     *
+     * @param features Attributes of every query.
+     * @return Prediction of every query.
+     */
+    public Prediction[] predict(float[][] features) {
+        Prediction[] result = new Prediction[features.length];
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < features.length; i++) {
+                result[i] = predict(features[i]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> matrix using the current rows of the model.
+     *
+     * @param testData Test data matrix.
+     * @return Confision matrix for AI analysis.
+     */
+    public ConfusionMatrix predict(TrainingMatrix testData) {
+        return KnnAI.predict(this, testData, k, voting, instrumentation);
+    }
+
+    /**
+     * Predicts the quality attribute of the given <code>testData</code> matrix in parallel using the current rows of the model.
+     *
+     * @param testData Test data matrix.
+     * @param executor Executor used to run the prediction parts.
+     * @return Confision matrix for AI analysis.
+     */
+    public ConfusionMatrix predict(TrainingMatrix testData, ExecutorService executor) {
+        return KnnAI.predict(this, testData, k, voting, instrumentation, executor);
+    }
+
+    /**
+     * Returns the training data of the model. Deleted rows are still contained, the matrix must not be changed.
+     *
+     * @return Training data.
+     */
+    @Override
+    public TrainingMatrix getTrainData() {
+        return store;
+    }
+
+    /**
+     * Sets the number of nearest neighbours used for the prediction (default 10).
+     *
+     * @param k Number of nearest neighbours.
+     */
+    public void setK(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive!");
+        }
+        this.k = k;
+    }
+
+    /**
+     * Returns the number of nearest neighbours used for the prediction.
+     *
+     * @return Number of nearest neighbours.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Sets the voting strategy (default {@link Voting#MAJORITY}).
+     *
+     * @param voting Voting strategy.
+     */
+    public void setVoting(Voting voting) {
+        if (voting == null) {
+            throw new NullPointerException("Voting must not be null!");
+        }
+        this.voting = voting;
+    }
+
+    /**
+     * Returns the voting strategy.
+     *
+     * @return Voting strategy.
+     */
+    public Voting getVoting() {
+        return voting;
+    }
+
+    /**
+     * Sets the instrumentation receiving the timings of queries and index rebuilds (default {@link Instrumentation#NONE}).
+     *
+     * @param instrumentation Instrumentation.
+     */
+    public void setInstrumentation(Instrumentation instrumentation) {
+        if (instrumentation == null) {
+            throw new NullPointerException("Instrumentation must not be null!");
+        }
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Returns the instrumentation.
+     *
+     * @return Instrumentation.
+     */
+    public Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+}
@@ -0,0 +1,247 @@
+package at.fhtw.ai.knn;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A label dictionary maps quality attributes to dense integer class ids and back. Class ids are assigned in order of first appearance.
+ * <p>
+ * The dictionary is thread safe, labels may be added while others are looked up. Lookups read a concurrent map and a snapshot of the
+ * labels without locking, only adding a label is synchronized. The label arrays grow geometrically, a new label is written behind the
+ * size of the current snapshot and published by a new snapshot of the same arrays.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class LabelDictionary {
+
+    /**
+     * Type tags of encoded labels.
+     */
+    private static final byte NULL = 0, STRING = 1, INTEGER = 2, LONG = 3, FLOAT = 4, DOUBLE = 5;
+
+    /**
+     * Key of the <code>null</code> label, which cannot be stored in a concurrent map.
+     */
+    private static final Object NULL_LABEL = new Object();
+
+    /**
+     * Class id of every label, a label is put after the snapshot containing it was published.
+     */
+    private final ConcurrentHashMap<Object, Integer> classIds = new ConcurrentHashMap<>();
+
+    /**
+     * Current snapshot of all labels.
+     */
+    private volatile Snapshot snapshot = new Snapshot(new Object[8], new float[8], 0);
+
+    /**
+     * Returns the class id of the given label. Unknown labels are added to the dictionary.
+     *
+     * @param label Label (may be <code>null</code>).
+     * @return Class id.
+     */
+    public int classIdOf(Object label) {
+        Integer classId = classIds.get(label == null ? NULL_LABEL : label);
+        return classId != null ? classId : add(label);
+    }
+
+    /**
+     * Adds the given label unless another thread added it meanwhile.
+     */
+    private synchronized int add(Object label) {
+        Object key = label == null ? NULL_LABEL : label;
+        Integer classId = classIds.get(key);
+        if (classId != null) {
+            return classId;
+        }
+
+        // Readers of the current snapshot never look behind its size, hence the arrays are only copied when they are full
+        Snapshot current = snapshot;
+        int size = current.size;
+        Object[] labels = current.labels;
+        float[] values = current.values;
+        if (size == labels.length) {
+            labels = Arrays.copyOf(labels, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        labels[size] = label;
+        values[size] = toNumber(label);
+        snapshot = new Snapshot(labels, values, size + 1);
+        classIds.put(key, size);
+        return size;
+    }
+
+    /**
+     * Returns the class id of the given label without adding it to the dictionary.
+     *
+     * @param label Label (may be <code>null</code>).
+     * @return Class id or <code>-1</code> if the label is unknown.
+     */
+    public int find(Object label) {
+        Integer classId = classIds.get(label == null ? NULL_LABEL : label);
+        return classId == null ? -1 : classId;
+    }
+
+    /**
+     * Returns the label of the given class id.
+     *
+     * @param classId Class id.
+     * @return Label.
+     */
+    public Object getLabel(int classId) {
+        Snapshot current = snapshot;
+        return current.labels[Objects.checkIndex(classId, current.size)];
+    }
+
+    /**
+     * Returns the numeric value of the label of the given class id. Labels are either numbers or strings containing a number, e.g. the
+     * wine quality.
+     *
+     * @param classId Class id.
+     * @return Numeric value or <code>NaN</code> if the label is not numeric.
+     */
+    public float getNumericValue(int classId) {
+        Snapshot current = snapshot;
+        return current.values[Objects.checkIndex(classId, current.size)];
+    }
+
+    /**
+     * Returns the class id of the numeric label nearest to the given value.
+     *
+     * @param value Value.
+     * @return Class id or <code>-1</code> if there is no numeric label.
+     */
+    public int nearestClassId(float value) {
+        Snapshot current = snapshot;
+        float[] values = current.values;
+        int result = -1;
+        float nearest = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < current.size; i++) {
+            float distance = Math.abs(values[i] - value);
+            if (distance < nearest) {
+                nearest = distance;
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts a label to a number. Labels are either numbers or strings containing a number, a decimal comma is accepted.
+     *
+     * @param label Label (may be <code>null</code>).
+     * @return Numeric value or <code>NaN</code> if the label is not numeric.
+     */
+    public static float toNumber(Object label) {
+        if (label instanceof Number) {
+            return ((Number) label).floatValue();
+        }
+        if (label != null) {
+            try {
+                return Float.parseFloat(label.toString().trim().replace(',', '.'));
+            } catch (NumberFormatException ex) {
+                // Not numeric
+            }
+        }
+        return Float.NaN;
+    }
+
+    /**
+     * Encodes a label including its type, so that {@link #decode(byte[])} restores an equal label. Strings, integers, longs, floats,
+     * doubles and <code>null</code> keep their type, labels of any other type are encoded as their string representation.
+     * <p>
+     * The encoding is a type tag byte followed by the little endian value or the UTF-8 bytes of the string.
+     *
+     * @param label Label (may be <code>null</code>).
+     * @return Encoded label.
+     */
+    public static byte[] encode(Object label) {
+        if (label == null) {
+            return new byte[]{NULL};
+        }
+        if (label instanceof Integer) {
+            return ByteBuffer.allocate(5).order(ByteOrder.LITTLE_ENDIAN).put(INTEGER).putInt((Integer) label).array();
+        }
+        if (label instanceof Long) {
+            return ByteBuffer.allocate(9).order(ByteOrder.LITTLE_ENDIAN).put(LONG).putLong((Long) label).array();
+        }
+        if (label instanceof Float) {
+            return ByteBuffer.allocate(5).order(ByteOrder.LITTLE_ENDIAN).put(FLOAT).putFloat((Float) label).array();
+        }
+        if (label instanceof Double) {
+            return ByteBuffer.allocate(9).order(ByteOrder.LITTLE_ENDIAN).put(DOUBLE).putDouble((Double) label).array();
+        }
+        byte[] string = label.toString().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + string.length).put(STRING).put(string).array();
+    }
+
+    /**
+     * Decodes a label encoded by {@link #encode(Object)}.
+     *
+     * @param bytes Encoded label.
+     * @return Label (may be <code>null</code>).
+     * @throws IllegalArgumentException If the bytes are not a valid label.
+     */
+    public static Object decode(byte[] bytes) {
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("Empty label encoding!");
+        }
+        switch (bytes[0]) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+            case INTEGER:
+                return checkLength(bytes, 5).getInt();
+            case LONG:
+                return checkLength(bytes, 9).getLong();
+            case FLOAT:
+                return checkLength(bytes, 5).getFloat();
+            case DOUBLE:
+                return checkLength(bytes, 9).getDouble();
+            default:
+                throw new IllegalArgumentException("Unknown label type " + bytes[0] + "!");
+        }
+    }
+
+    /**
+     * Checks the length of an encoded number and returns a buffer positioned at the value.
+     */
+    private static ByteBuffer checkLength(byte[] bytes, int length) {
+        if (bytes.length != length) {
+            throw new IllegalArgumentException("Invalid label encoding of " + bytes.length + " bytes!");
+        }
+        return ByteBuffer.wrap(bytes, 1, length - 1).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Returns the number of known labels.
+     *
+     * @return Number of labels.
+     */
+    public int size() {
+        return snapshot.size;
+    }
+
+    /**
+     * A state of the dictionary. The first <code>size</code> elements of the arrays are never changed once published, labels added
+     * later are only written behind them.
+     */
+    private static final class Snapshot {
+
+        final Object[] labels;
+        final float[] values;
+        final int size;
+
+        Snapshot(Object[] labels, float[] values, int size) {
+            this.labels = labels;
+            this.values = values;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package at.fhtw.ai.knn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A read only training matrix whose attributes stay in a memory mapped file instead of the heap. Opening a file only parses the small
+ * header, the attributes are paged in by the operating system while they are read, so even training sets larger than the heap load
+ * within seconds.
+ * <p>
+ * The file format is little endian and consists of
+ * <ul>
+ * <li>a header with the magic number <code>KNNM</code>, the format version, the number of dimensions and rows, the number of labels and
+ * the offsets of the attribute and label blocks,</li>
+ * <li>the attribute block, aligned to 64 bytes, containing <code>rows * dimensions</code> floats row by row,</li>
+ * <li>the class id block containing one int per row and</li>
+ * <li>the label dictionary, every label encoded by {@link LabelDictionary#encode(Object)} and prefixed by its length in bytes.</li>
+ * </ul>
+ * Labels keep their type if they are strings, integers, longs, floats or doubles, other labels are restored as strings. The class ids
+ * are copied onto the heap (4 bytes per row) since they are needed by every vote.
+ * <p>
+ * Files are written using {@link #write(TrainingMatrix, Path)} or row by row using a {@link Writer}, and opened using {@link #open(Path)}.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class MappedTrainingMatrix extends TrainingMatrix {
+
+    /**
+     * Magic number at the start of every file, "KNNM".
+     */
+    private static final int MAGIC = 0x4B4E4E4D;
+
+    /**
+     * Format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the fixed part of the header in bytes.
+     */
+    private static final int HEADER_BYTES = 36;
+
+    /**
+     * Alignment of the attribute block in bytes.
+     */
+    private static final int ALIGNMENT = 64;
+
+    /**
+     * Size of the write buffer in bytes.
+     */
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    /**
+     * Mapped attributes, a single mapping is limited to 2 GB, hence large files are mapped in chunks of whole rows.
+     */
+    private final FloatBuffer[] chunks;
+
+    /**
+     * Number of rows per chunk.
+     */
+    private final int chunkRows;
+
+    /**
+     * Creates a new mapped training matrix.
+     */
+    private MappedTrainingMatrix(int dimensions, LabelDictionary labels, int[] classIds, int rows, FloatBuffer[] chunks, int chunkRows) {
+        super(dimensions, labels, null, classIds, rows);
+        this.chunks = chunks;
+        this.chunkRows = chunkRows;
+    }
+
+    /**
+     * Writes the given training matrix to the given file. An existing file is replaced. The file keeps the class ids of the matrix.
+     *
+     * @param matrix Training matrix.
+     * @param file File.
+     * @throws IOException If the file could not be written.
+     */
+    public static void write(TrainingMatrix matrix, Path file) throws IOException {
+        int dimensions = matrix.getDimensions();
+        int rows = matrix.getRows();
+        int[] classIds = matrix.getClassIds();
+
+        Writer writer = new Writer(file, dimensions, matrix.getLabels());
+        boolean complete = false;
+        try {
+            int blockRows = Math.max(1, BUFFER_BYTES / (4 * dimensions));
+            float[] block = new float[blockRows * dimensions];
+            for (int row = 0; row < rows; row += blockRows) {
+                int count = Math.min(blockRows, rows - row);
+                matrix.copyRows(row, count, block, 0);
+                writer.add(block, count, classIds, row);
+            }
+            complete = true;
+        } finally {
+            if (complete) {
+                writer.close();
+            } else {
+                writer.abort();
+            }
+        }
+    }
+
+    /**
+     * Flushes the buffer if it has less than the given number of bytes remaining.
+     */
+    private static void ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Writes the content of the buffer to the channel and clears the buffer.
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Opens the given file by mapping it into memory. The file must not be modified while the matrix is in use.
+     *
+     * @param file File written by {@link #write(TrainingMatrix, Path)} or a {@link Writer}.
+     * @return Mapped training matrix.
+     * @throws IOException If the file could not be read or is not a valid training matrix file.
+     */
+    public static MappedTrainingMatrix open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a training matrix file: " + file + "!");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported training matrix file version " + version + "!");
+            }
+            int dimensions = header.getInt();
+            int rows = header.getInt();
+            int labelCount = header.getInt();
+            long dataOffset = header.getLong();
+            long classIdOffset = dataOffset + 4L * dimensions * rows;
+            long labelOffset = header.getLong();
+            long labelEnd = channel.size();
+            if (dimensions <= 0 || rows < 0 || labelCount < 0 || dataOffset < HEADER_BYTES || channel.size() < classIdOffset + 4L * rows
+                    || labelOffset < classIdOffset + 4L * rows || labelEnd - labelOffset > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt or truncated training matrix file: " + file + "!");
+            }
+
+            // Label dictionary, class ids are assigned in order of appearance
+            LabelDictionary labels = new LabelDictionary();
+            ByteBuffer labelBlock = read(channel, labelOffset, (int) (labelEnd - labelOffset));
+            try {
+                for (int i = 0; i < labelCount; i++) {
+                    int length = labelBlock.getInt();
+                    byte[] bytes = new byte[Math.max(0, length)];
+                    labelBlock.get(bytes);
+                    labels.classIdOf(LabelDictionary.decode(bytes));
+                }
+            } catch (RuntimeException ex) {
+                throw new IOException("Corrupt label dictionary in training matrix file: " + file + "!", ex);
+            }
+            if (labels.size() != labelCount) {
+                throw new IOException("Duplicate labels in training matrix file: " + file + "!");
+            }
+
+            // Map the attributes in chunks of whole rows
+            int chunkRows = Math.max(1, Integer.MAX_VALUE / (4 * dimensions));
+            FloatBuffer[] chunks = new FloatBuffer[(rows + chunkRows - 1) / chunkRows];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i * chunkRows;
+                long size = 4L * dimensions * Math.min(chunkRows, rows - start);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + 4L * dimensions * start, size)
+                        .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+
+            // Copy the class ids onto the heap
+            int[] classIds = new int[rows];
+            int blockIds = Integer.MAX_VALUE / 4;
+            for (int row = 0; row < rows; row += blockIds) {
+                int count = Math.min(blockIds, rows - row);
+                IntBuffer ids = channel.map(FileChannel.MapMode.READ_ONLY, classIdOffset + 4L * row, 4L * count)
+                        .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                ids.get(classIds, row, count);
+            }
+            for (int row = 0; row < rows; row++) {
+                if (classIds[row] < 0 || classIds[row] >= labelCount) {
+                    throw new IOException("Invalid class id " + classIds[row] + " in row " + row + "!");
+                }
+            }
+            return new MappedTrainingMatrix(dimensions, labels, classIds, rows, chunks, chunkRows);
+        }
+    }
+
+    /**
+     * Reads the given number of bytes starting at the given position.
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of training matrix file!");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public float[] copyRow(int row, float[] target, int offset) {
+        return copyRows(row, 1, target, offset);
+    }
+
+    @Override
+    public float[] copyRows(int row, int count, float[] target, int offset) {
+        while (count > 0) {
+            int chunk = row / chunkRows;
+            int chunkRow = row - chunk * chunkRows;
+            int n = Math.min(count, chunkRows - chunkRow);
+
+            // Duplicates have their own position, so concurrent reads do not interfere
+            FloatBuffer buffer = chunks[chunk].duplicate();
+            buffer.position(chunkRow * dimensions);
+            buffer.get(target, offset, n * dimensions);
+
+            row += n;
+            count -= n;
+            offset += n * dimensions;
+        }
+        return target;
+    }
+
+    @Override
+    public float get(int row, int column) {
+        int chunk = row / chunkRows;
+        return chunks[chunk].get((row - chunk * chunkRows) * dimensions + column);
+    }
+
+    @Override
+    public float[] getData() {
+        throw new UnsupportedOperationException("Mapped training matrix is not backed by an array!");
+    }
+
+    @Override
+    public boolean hasArray() {
+        return false;
+    }
+
+    @Override
+    public void set(int row, float[] values, Object label) {
+        throw new UnsupportedOperationException("Mapped training matrix is read only!");
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if (capacity > rows) {
+            throw new UnsupportedOperationException("Mapped training matrix is read only!");
+        }
+    }
+
+    /**
+     * Writes a training matrix file row by row, so that data sets larger than the heap can be converted, e.g. rows read by a
+     * {@link CsvLoader}. The attributes are streamed to the file, only the class ids (4 bytes per row) and the label dictionary are kept
+     * on the heap until the file is closed. The file is complete once {@link #close()} returned, {@link #abort()} discards it.
+     * <p>
+     * A writer is not thread safe.
+     */
+    public static final class Writer implements Closeable {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int dimensions;
+        private final LabelDictionary labels;
+        private int[] classIds = new int[1024];
+        private int rows;
+        private boolean closed;
+
+        /**
+         * Creates a new file, an existing file is replaced.
+         *
+         * @param file File.
+         * @param dimensions Number of attributes per row.
+         * @throws IOException If the file could not be created.
+         */
+        public Writer(Path file, int dimensions) throws IOException {
+            this(file, dimensions, new LabelDictionary());
+        }
+
+        /**
+         * Creates a new file, an existing file is replaced. The class ids of the file are the ones of the given label dictionary.
+         *
+         * @param file File.
+         * @param dimensions Number of attributes per row.
+         * @param labels Label dictionary used to assign class ids.
+         * @throws IOException If the file could not be created.
+         */
+        public Writer(Path file, int dimensions, LabelDictionary labels) throws IOException {
+            if (dimensions <= 0) {
+                throw new IllegalArgumentException("Invalid number of dimensions " + dimensions + "!");
+            }
+            this.file = file;
+            this.dimensions = dimensions;
+            this.labels = labels;
+            this.buffer = ByteBuffer.allocate(Math.max(BUFFER_BYTES, 4 * dimensions)).order(ByteOrder.LITTLE_ENDIAN);
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+
+            // The header is written on close, the attributes start at the first aligned offset behind it
+            channel.position(ALIGNMENT);
+        }
+
+        /**
+         * Appends a row.
+         *
+         * @param values Attributes.
+         * @param label Label (may be <code>null</code>).
+         * @throws IOException If the row could not be written.
+         */
+        public void add(float[] values, Object label) throws IOException {
+            add(values, 0, label);
+        }
+
+        /**
+         * Appends a row.
+         *
+         * @param values Array containing the attributes.
+         * @param offset Offset of the attributes in the array.
+         * @param label Label (may be <code>null</code>).
+         * @throws IOException If the row could not be written.
+         */
+        public void add(float[] values, int offset, Object label) throws IOException {
+            checkOpen();
+            if (rows == classIds.length) {
+                classIds = Arrays.copyOf(classIds, (int) Math.min(Integer.MAX_VALUE - 8, 2L * rows));
+            }
+            if (rows == classIds.length) {
+                throw new IllegalStateException("Too many rows!");
+            }
+            ensureRemaining(channel, buffer, 4 * dimensions);
+            buffer.asFloatBuffer().put(values, offset, dimensions);
+            buffer.position(buffer.position() + 4 * dimensions);
+            classIds[rows++] = labels.classIdOf(label);
+        }
+
+        /**
+         * Appends consecutive rows whose class ids are already known, the rows must fit into the write buffer.
+         */
+        private void add(float[] values, int count, int[] classIds, int classIdOffset) throws IOException {
+            checkOpen();
+            if (this.classIds.length < rows + count) {
+                this.classIds = Arrays.copyOf(this.classIds, Math.max(rows + count, 2 * this.classIds.length));
+            }
+            ensureRemaining(channel, buffer, 4 * dimensions * count);
+            buffer.asFloatBuffer().put(values, 0, dimensions * count);
+            buffer.position(buffer.position() + 4 * dimensions * count);
+            System.arraycopy(classIds, classIdOffset, this.classIds, rows, count);
+            rows += count;
+        }
+
+        /**
+         * Returns the number of rows written so far.
+         *
+         * @return Number of rows.
+         */
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * Returns the label dictionary used to assign class ids.
+         *
+         * @return Label dictionary.
+         */
+        public LabelDictionary getLabels() {
+            return labels;
+        }
+
+        /**
+         * Throws an exception if the writer was closed.
+         */
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Writer is closed!");
+            }
+        }
+
+        /**
+         * Discards the file, e.g. after the rows could not be read. The file is closed without writing the header and deleted. Failures
+         * are ignored, a file left behind has no header and is rejected by {@link #open(Path)}.
+         */
+        public void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException ex) {
+                // The file has no header and cannot be opened
+            }
+        }
+
+        /**
+         * Writes the class ids, the label dictionary and the header and closes the file.
+         *
+         * @throws IOException If the file could not be written.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try (FileChannel channel = this.channel) {
+                // Class ids
+                int blockIds = buffer.capacity() / 4;
+                for (int row = 0; row < rows; row += blockIds) {
+                    int count = Math.min(blockIds, rows - row);
+                    ensureRemaining(channel, buffer, count * 4);
+                    buffer.asIntBuffer().put(classIds, row, count);
+                    buffer.position(buffer.position() + count * 4);
+                }
+                flush(channel, buffer);
+
+                // Label dictionary
+                long labelOffset = channel.position();
+                int labelCount = labels.size();
+                for (int i = 0; i < labelCount; i++) {
+                    byte[] label = LabelDictionary.encode(labels.getLabel(i));
+                    if (buffer.remaining() < 4 + label.length) {
+                        flush(channel, buffer);
+                    }
+                    if (buffer.remaining() < 4 + label.length) {
+                        ByteBuffer large = ByteBuffer.allocate(4 + label.length).order(ByteOrder.LITTLE_ENDIAN);
+                        large.putInt(label.length).put(label);
+                        flush(channel, large);
+                    } else {
+                        buffer.putInt(label.length).put(label);
+                    }
+                }
+                flush(channel, buffer);
+
+                // Header, padded up to the attribute block
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(dimensions).putInt(rows).putInt(labelCount).putLong(ALIGNMENT)
+                        .putLong(labelOffset);
+                while (buffer.position() < ALIGNMENT) {
+                    buffer.put((byte) 0);
+                }
+                channel.position(0);
+                flush(channel, buffer);
+            }
+        }
+    }
+}
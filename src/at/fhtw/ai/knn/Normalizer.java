@@ -0,0 +1,255 @@
+package at.fhtw.ai.knn;
+
+/**
+ * A preprocessing stage which scales every attribute to a comparable range and folds the attribute weights into the values. Attributes in
+ * raw units, e.g. the sulfur dioxide of a wine, otherwise dominate the heuristic just because their values are larger.
+ * <p>
+ * Every attribute is transformed using <code>(x - offset) * scale</code>, where the offset and scale are fitted on the training matrix
+ * and the scale already contains the weight of the attribute. The transformed training matrix is stored once, queries are transformed
+ * using the same normalizer, hence the heuristic can be computed without weights and weighting costs nothing per compared row. Both
+ * weighted heuristics multiply both operands by the weight, so the unweighted heuristic of the transformed rows is the weighted
+ * heuristic of the scaled rows.
+ * <p>
+ * A normalizer is immutable and can be shared by many threads.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public final class Normalizer {
+
+    /**
+     * Contains the available scaling methods.
+     *
+     * @author Daniel Kleebinder
+     * @since 0.2
+     */
+    public static enum Scaling {
+        /**
+         * Keeps the values, only the weights are applied.
+         */
+        NONE,
+        /**
+         * Scales every attribute to <code>[0; 1]</code> using its minimum and maximum.
+         */
+        MIN_MAX,
+        /**
+         * Scales every attribute to a mean of 0 and a standard deviation of 1.
+         */
+        Z_SCORE
+    }
+
+    private final float[] offsets;
+    private final float[] scales;
+
+    /**
+     * Creates a new normalizer.
+     *
+     * @param offsets Offset of every attribute. The array is copied.
+     * @param scales Scale of every attribute, including its weight. The array is copied.
+     */
+    public Normalizer(float[] offsets, float[] scales) {
+        if (offsets.length != scales.length) {
+            throw new IllegalArgumentException("Offsets and scales must have the same length!");
+        }
+        this.offsets = offsets.clone();
+        this.scales = scales.clone();
+    }
+
+    /**
+     * Fits a normalizer without weights on the given training matrix.
+     *
+     * @param trainData Train data matrix.
+     * @param scaling Scaling method.
+     * @return Normalizer.
+     */
+    public static Normalizer fit(TrainingMatrix trainData, Scaling scaling) {
+        return fit(trainData, scaling, null);
+    }
+
+    /**
+     * Fits a normalizer on the given training matrix. Constant attributes are not scaled, only weighted.
+     *
+     * @param trainData Train data matrix.
+     * @param scaling Scaling method.
+     * @param weights Weight of every attribute or <code>null</code> for no weights.
+     * @return Normalizer.
+     */
+    public static Normalizer fit(TrainingMatrix trainData, Scaling scaling, float[] weights) {
+        int dimensions = trainData.getDimensions();
+        if (weights != null && weights.length != dimensions) {
+            throw new IllegalArgumentException("Got " + weights.length + " weights, expected " + dimensions + "!");
+        }
+
+        float[] offsets = new float[dimensions];
+        float[] ranges = new float[dimensions];
+        switch (scaling) {
+            case NONE:
+                break;
+            case MIN_MAX:
+                fitMinMax(trainData, offsets, ranges);
+                break;
+            case Z_SCORE:
+                fitZScore(trainData, offsets, ranges);
+                break;
+            default:
+                throw new IllegalArgumentException("Given scaling not supported!");
+        }
+
+        float[] scales = new float[dimensions];
+        for (int a = 0; a < dimensions; a++) {
+            float weight = weights != null ? weights[a] : 1;
+            scales[a] = ranges[a] > 0 ? weight / ranges[a] : weight;
+        }
+        return new Normalizer(offsets, scales);
+    }
+
+    /**
+     * Computes the minimum and the range of every attribute.
+     */
+    private static void fitMinMax(TrainingMatrix trainData, float[] minimums, float[] ranges) {
+        int dimensions = trainData.getDimensions();
+        float[] maximums = new float[dimensions];
+        float[] row = new float[dimensions];
+        for (int i = 0; i < trainData.getRows(); i++) {
+            trainData.copyRow(i, row);
+            for (int a = 0; a < dimensions; a++) {
+                if (i == 0 || row[a] < minimums[a]) {
+                    minimums[a] = row[a];
+                }
+                if (i == 0 || row[a] > maximums[a]) {
+                    maximums[a] = row[a];
+                }
+            }
+        }
+        for (int a = 0; a < dimensions; a++) {
+            ranges[a] = maximums[a] - minimums[a];
+        }
+    }
+
+    /**
+     * Computes the mean and the standard deviation of every attribute.
+     */
+    private static void fitZScore(TrainingMatrix trainData, float[] means, float[] deviations) {
+        int dimensions = trainData.getDimensions();
+        double[] mean = new double[dimensions];
+        double[] squares = new double[dimensions];
+        float[] row = new float[dimensions];
+
+        // Welford's online algorithm
+        for (int i = 0; i < trainData.getRows(); i++) {
+            trainData.copyRow(i, row);
+            for (int a = 0; a < dimensions; a++) {
+                double delta = row[a] - mean[a];
+                mean[a] += delta / (i + 1);
+                squares[a] += delta * (row[a] - mean[a]);
+            }
+        }
+        for (int a = 0; a < dimensions; a++) {
+            means[a] = (float) mean[a];
+            deviations[a] = (float) Math.sqrt(squares[a] / Math.max(1, trainData.getRows()));
+        }
+    }
+
+    /**
+     * Transforms the given row, e.g. a query, into a new array.
+     *
+     * @param values Attributes in raw units.
+     * @return Transformed attributes.
+     */
+    public float[] transform(float[] values) {
+        return transform(values, 0, new float[scales.length], 0);
+    }
+
+    /**
+     * Transforms {@link #getDimensions()} attributes of the given array into the target array. Source and target may be the same.
+     *
+     * @param values Attributes in raw units.
+     * @param offset Offset of the row in the attribute array.
+     * @param target Target array.
+     * @param targetOffset Offset in the target array.
+     * @return Target array.
+     */
+    public float[] transform(float[] values, int offset, float[] target, int targetOffset) {
+        for (int a = 0; a < scales.length; a++) {
+            target[targetOffset + a] = (values[offset + a] - offsets[a]) * scales[a];
+        }
+        return target;
+    }
+
+    /**
+     * Transforms every row of the given matrix into a new heap backed matrix which shares the label dictionary. Matrices without array
+     * are transformed a block of rows at a time.
+     *
+     * @param matrix Training matrix.
+     * @return Transformed training matrix.
+     */
+    public TrainingMatrix transform(TrainingMatrix matrix) {
+        int dimensions = matrix.getDimensions();
+        if (dimensions != scales.length) {
+            throw new IllegalArgumentException("Matrix has " + dimensions + " dimensions, expected " + scales.length + "!");
+        }
+
+        int rows = matrix.getRows();
+        TrainingMatrix result = new TrainingMatrix(dimensions, rows, matrix.getLabels());
+        matrix.copyRows(0, rows, result.data, 0);
+        for (int i = 0, offset = 0; i < rows; i++, offset += dimensions) {
+            transform(result.data, offset, result.data, offset);
+        }
+        System.arraycopy(matrix.getClassIds(), 0, result.classIds, 0, rows);
+        result.rows = rows;
+        return result;
+    }
+
+    /**
+     * Transforms the given row back into raw units. Attributes with a weight of 0 cannot be restored and keep their offset.
+     *
+     * @param values Transformed attributes.
+     * @param offset Offset of the row in the attribute array.
+     * @param target Target array.
+     * @param targetOffset Offset in the target array.
+     * @return Target array.
+     */
+    public float[] inverse(float[] values, int offset, float[] target, int targetOffset) {
+        for (int a = 0; a < scales.length; a++) {
+            target[targetOffset + a] = scales[a] != 0 ? values[offset + a] / scales[a] + offsets[a] : offsets[a];
+        }
+        return target;
+    }
+
+    /**
+     * Transforms the given row back into raw units using a new array.
+     *
+     * @param values Transformed attributes.
+     * @return Attributes in raw units.
+     */
+    public float[] inverse(float[] values) {
+        return inverse(values, 0, new float[scales.length], 0);
+    }
+
+    /**
+     * Returns the number of attributes.
+     *
+     * @return Dimensions.
+     */
+    public int getDimensions() {
+        return scales.length;
+    }
+
+    /**
+     * Returns a copy of the offsets.
+     *
+     * @return Offset of every attribute.
+     */
+    public float[] getOffsets() {
+        return offsets.clone();
+    }
+
+    /**
+     * Returns a copy of the scales, including the weights.
+     *
+     * @return Scale of every attribute.
+     */
+    public float[] getScales() {
+        return scales.clone();
+    }
+}
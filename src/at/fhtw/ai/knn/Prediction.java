@@ -0,0 +1,137 @@
+package at.fhtw.ai.knn;
+
+import java.util.Arrays;
+
+/**
+ * The result of a single query: the predicted quality attribute and the nearest neighbours it is based on, ordered by ascending distance.
+ * Regression votings additionally predict a numeric value, see {@link #getValue()}. A prediction can be passed to
+ * {@link KnnModel#predict(float[], Prediction)} again to be reused without allocating.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class Prediction {
+
+    private Object label;
+    private int classId = -1;
+    private float value = Float.NaN;
+    private int[] neighbours;
+    private float[] distances;
+    private int size;
+
+    /**
+     * Creates a new empty prediction.
+     *
+     * @param capacity Expected number of neighbours.
+     */
+    public Prediction(int capacity) {
+        neighbours = new int[Math.max(capacity, 1)];
+        distances = new float[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Clears the prediction and makes sure it can hold the given number of neighbours.
+     *
+     * @param classId Predicted class id or <code>-1</code>.
+     * @param label Predicted quality attribute.
+     * @param capacity Number of neighbours.
+     */
+    protected void reset(int classId, Object label, int capacity) {
+        this.classId = classId;
+        this.label = label;
+        this.value = Float.NaN;
+        this.size = 0;
+        if (neighbours.length < capacity) {
+            neighbours = new int[capacity];
+            distances = new float[capacity];
+        }
+    }
+
+    /**
+     * Sets the predicted numeric value.
+     *
+     * @param value Value or <code>NaN</code>.
+     */
+    protected void setValue(float value) {
+        this.value = value;
+    }
+
+    /**
+     * Appends a neighbour.
+     *
+     * @param row Row id.
+     * @param distance Distance.
+     */
+    protected void addNeighbour(int row, float distance) {
+        neighbours[size] = row;
+        distances[size++] = distance;
+    }
+
+    /**
+     * Returns the predicted quality attribute.
+     *
+     * @return Quality attribute or <code>null</code> if there was nothing to predict from.
+     */
+    public Object getLabel() {
+        return label;
+    }
+
+    /**
+     * Returns the predicted class id of the label dictionary of the model.
+     *
+     * @return Class id or <code>-1</code> if there was nothing to predict from.
+     */
+    public int getClassId() {
+        return classId;
+    }
+
+    /**
+     * Returns the numeric value predicted by a regression voting, e.g. the mean quality of the neighbours. Unlike the label it is not
+     * restricted to the known labels.
+     *
+     * @return Value or <code>NaN</code> if the voting does not predict values or no neighbour has a numeric label.
+     */
+    public float getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the number of neighbours.
+     *
+     * @return Number of neighbours.
+     */
+    public int getNeighbourCount() {
+        return size;
+    }
+
+    /**
+     * Returns the row id of the neighbour at the given position.
+     *
+     * @param i Position, the nearest neighbour is at position 0.
+     * @return Row id.
+     */
+    public int getNeighbour(int i) {
+        if (i >= size) {
+            throw new IndexOutOfBoundsException("Neighbour " + i + " does not exist!");
+        }
+        return neighbours[i];
+    }
+
+    /**
+     * Returns the metric distance of the neighbour at the given position.
+     *
+     * @param i Position, the nearest neighbour is at position 0.
+     * @return Distance.
+     */
+    public float getDistance(int i) {
+        if (i >= size) {
+            throw new IndexOutOfBoundsException("Neighbour " + i + " does not exist!");
+        }
+        return distances[i];
+    }
+
+    @Override
+    public String toString() {
+        return label + (Float.isNaN(value) ? "" : " (" + value + ")") + " " + Arrays.toString(Arrays.copyOf(neighbours, size)) + " " + Arrays.toString(Arrays.copyOf(distances, size));
+    }
+}
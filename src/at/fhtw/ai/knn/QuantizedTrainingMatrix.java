@@ -0,0 +1,324 @@
+package at.fhtw.ai.knn;
+
+/**
+ * A read only training matrix which keeps its attributes in reduced precision. Attributes are either stored as half precision floats
+ * (2 bytes per value) or as per attribute scaled 8 bit codes (1 byte per value), which fits two or four times as many rows into the same
+ * memory as a {@link TrainingMatrix} and reduces the memory bandwidth of every scan by the same factor.
+ * <p>
+ * The int8 encoding maps the range of every attribute linearly to the codes <code>0</code> to <code>255</code>, the value of a code is
+ * <code>offset + scale * code</code>. The half precision encoding keeps about three significant decimal digits of every value.
+ * <p>
+ * Rows are decoded by {@link #copyRows(int, int, float[], int)}, hence the matrix works with every neighbour index. The
+ * {@link at.fhtw.ai.knn.index.QuantizedScanIndex} computes the heuristic directly on the codes.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class QuantizedTrainingMatrix extends TrainingMatrix {
+
+    /**
+     * Contains the available encodings.
+     *
+     * @author Daniel Kleebinder
+     * @since 0.2
+     */
+    public static enum Encoding {
+        /**
+         * IEEE 754 half precision floats.
+         */
+        FLOAT16,
+        /**
+         * Unsigned 8 bit codes, scaled per attribute.
+         */
+        INT8
+    }
+
+    /**
+     * Number of rows quantized at once.
+     */
+    private static final int BLOCK_ROWS = 1024;
+
+    /**
+     * Value of every half precision float.
+     */
+    private static final float[] HALF_VALUES = new float[1 << 16];
+
+    static {
+        for (int i = 0; i < HALF_VALUES.length; i++) {
+            HALF_VALUES[i] = halfToFloat(i);
+        }
+    }
+
+    private final Encoding encoding;
+
+    // Half precision floats or 8 bit codes row by row, the other one is null
+    private final short[] halves;
+    private final byte[] codes;
+
+    // Offset and scale of the 8 bit codes of every attribute
+    private final float[] offsets;
+    private final float[] scales;
+
+    /**
+     * Creates a new quantized training matrix.
+     */
+    private QuantizedTrainingMatrix(TrainingMatrix source, Encoding encoding, short[] halves, byte[] codes, float[] offsets, float[] scales) {
+        super(source.getDimensions(), source.getLabels(), null, copyClassIds(source), source.getRows());
+        this.encoding = encoding;
+        this.halves = halves;
+        this.codes = codes;
+        this.offsets = offsets;
+        this.scales = scales;
+    }
+
+    /**
+     * Copies the class ids in use.
+     */
+    private static int[] copyClassIds(TrainingMatrix source) {
+        int[] result = new int[Math.max(1, source.getRows())];
+        System.arraycopy(source.getClassIds(), 0, result, 0, source.getRows());
+        return result;
+    }
+
+    /**
+     * Quantizes the given training matrix. The class ids are copied and the label dictionary is shared, the source matrix is not needed
+     * afterwards unless it is used to re-rank the neighbours at full precision.
+     *
+     * @param source Training matrix.
+     * @param encoding Encoding.
+     * @return Quantized training matrix.
+     */
+    public static QuantizedTrainingMatrix quantize(TrainingMatrix source, Encoding encoding) {
+        int dimensions = source.getDimensions();
+        int rows = source.getRows();
+        int blockRows = Math.min(BLOCK_ROWS, Math.max(1, rows));
+        float[] block = new float[blockRows * dimensions];
+
+        switch (encoding) {
+            case FLOAT16: {
+                short[] halves = new short[rows * dimensions];
+                for (int start = 0; start < rows; start += blockRows) {
+                    int count = Math.min(blockRows, rows - start);
+                    source.copyRows(start, count, block, 0);
+                    for (int i = 0; i < count * dimensions; i++) {
+                        halves[start * dimensions + i] = floatToHalf(block[i]);
+                    }
+                }
+                return new QuantizedTrainingMatrix(source, encoding, halves, null, null, null);
+            }
+            case INT8: {
+                // The range of every attribute is needed before the first row can be encoded
+                float[] minimums = new float[dimensions];
+                float[] maximums = new float[dimensions];
+                for (int start = 0; start < rows; start += blockRows) {
+                    int count = Math.min(blockRows, rows - start);
+                    source.copyRows(start, count, block, 0);
+                    for (int i = 0, offset = 0; i < count; i++, offset += dimensions) {
+                        for (int a = 0; a < dimensions; a++) {
+                            float value = block[offset + a];
+                            if ((start == 0 && i == 0) || value < minimums[a]) {
+                                minimums[a] = value;
+                            }
+                            if ((start == 0 && i == 0) || value > maximums[a]) {
+                                maximums[a] = value;
+                            }
+                        }
+                    }
+                }
+                float[] scales = new float[dimensions];
+                for (int a = 0; a < dimensions; a++) {
+                    scales[a] = (maximums[a] - minimums[a]) / 255;
+                }
+
+                byte[] codes = new byte[rows * dimensions];
+                for (int start = 0; start < rows; start += blockRows) {
+                    int count = Math.min(blockRows, rows - start);
+                    source.copyRows(start, count, block, 0);
+                    for (int i = 0, offset = 0; i < count; i++, offset += dimensions) {
+                        for (int a = 0; a < dimensions; a++) {
+                            int code = scales[a] > 0 ? Math.round((block[offset + a] - minimums[a]) / scales[a]) : 0;
+                            codes[start * dimensions + offset + a] = (byte) Math.max(0, Math.min(255, code));
+                        }
+                    }
+                }
+                return new QuantizedTrainingMatrix(source, encoding, null, codes, minimums, scales);
+            }
+            default:
+                throw new IllegalArgumentException("Given encoding not supported!");
+        }
+    }
+
+    /**
+     * Converts a float into the nearest half precision float. Values too large for half precision become infinite.
+     *
+     * @param value Value.
+     * @return Half precision bits.
+     */
+    public static short floatToHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+
+        // Infinity, NaN and overflow
+        if (exponent >= 0x1F) {
+            boolean nan = ((bits >>> 23) & 0xFF) == 0xFF && mantissa != 0;
+            return (short) (sign | (nan ? 0x7E00 : 0x7C00));
+        }
+
+        // Subnormal half precision floats and zero
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            int rest = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (rest > halfway || (rest == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+
+        // Round to nearest even, a carry correctly increments the exponent
+        int half = (exponent << 10) | (mantissa >> 13);
+        int rest = mantissa & 0x1FFF;
+        if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    /**
+     * Converts half precision bits into a float.
+     */
+    private static float halfToFloat(int half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            float value = mantissa / (float) (1 << 24);
+            return sign != 0 ? -value : value;
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+
+    /**
+     * Returns the value of the given half precision float.
+     *
+     * @param half Half precision bits.
+     * @return Value.
+     */
+    public static float halfValue(short half) {
+        return HALF_VALUES[half & 0xFFFF];
+    }
+
+    @Override
+    public float[] copyRow(int row, float[] target, int offset) {
+        return copyRows(row, 1, target, offset);
+    }
+
+    @Override
+    public float[] copyRows(int row, int count, float[] target, int offset) {
+        int start = row * dimensions;
+        int length = count * dimensions;
+        if (encoding == Encoding.FLOAT16) {
+            for (int i = 0; i < length; i++) {
+                target[offset + i] = HALF_VALUES[halves[start + i] & 0xFFFF];
+            }
+        } else {
+            for (int i = 0, a = 0; i < length; i++, a = a + 1 == dimensions ? 0 : a + 1) {
+                target[offset + i] = offsets[a] + scales[a] * (codes[start + i] & 0xFF);
+            }
+        }
+        return target;
+    }
+
+    @Override
+    public float get(int row, int column) {
+        int index = row * dimensions + column;
+        return encoding == Encoding.FLOAT16
+                ? HALF_VALUES[halves[index] & 0xFFFF]
+                : offsets[column] + scales[column] * (codes[index] & 0xFF);
+    }
+
+    /**
+     * Returns the encoding.
+     *
+     * @return Encoding.
+     */
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Returns the raw half precision floats row by row.
+     *
+     * @return Half precision bits.
+     * @throws UnsupportedOperationException If the matrix does not use the {@link Encoding#FLOAT16} encoding.
+     */
+    public short[] getHalves() {
+        if (halves == null) {
+            throw new UnsupportedOperationException("Quantized training matrix does not use half precision floats!");
+        }
+        return halves;
+    }
+
+    /**
+     * Returns the raw unsigned 8 bit codes row by row.
+     *
+     * @return Codes.
+     * @throws UnsupportedOperationException If the matrix does not use the {@link Encoding#INT8} encoding.
+     */
+    public byte[] getCodes() {
+        if (codes == null) {
+            throw new UnsupportedOperationException("Quantized training matrix does not use 8 bit codes!");
+        }
+        return codes;
+    }
+
+    /**
+     * Returns a copy of the offset of every attribute, the value of the code <code>0</code>.
+     *
+     * @return Offsets or <code>null</code> for the {@link Encoding#FLOAT16} encoding.
+     */
+    public float[] getOffsets() {
+        return offsets == null ? null : offsets.clone();
+    }
+
+    /**
+     * Returns a copy of the scale of every attribute, the value difference of two adjacent codes.
+     *
+     * @return Scales or <code>null</code> for the {@link Encoding#FLOAT16} encoding.
+     */
+    public float[] getScales() {
+        return scales == null ? null : scales.clone();
+    }
+
+    @Override
+    public float[] getData() {
+        throw new UnsupportedOperationException("Quantized training matrix is not backed by a float array!");
+    }
+
+    @Override
+    public boolean hasArray() {
+        return false;
+    }
+
+    @Override
+    public void set(int row, float[] values, Object label) {
+        throw new UnsupportedOperationException("Quantized training matrix is read only!");
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if (capacity > rows) {
+            throw new UnsupportedOperationException("Quantized training matrix is read only!");
+        }
+    }
+}
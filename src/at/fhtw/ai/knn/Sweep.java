@@ -0,0 +1,226 @@
+package at.fhtw.ai.knn;
+
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.Distance;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import at.fhtw.ai.knn.voting.Voting;
+
+/**
+ * A grid search over the number of neighbours, the distance function and the voting strategy. The nearest <code>kMax</code> neighbours
+ * of every test row are searched only once per distance function, every smaller k uses the nearest k of them. Every voting strategy
+ * votes on the same neighbours, hence the whole grid costs about as much as a single prediction with <code>kMax</code> neighbours.
+ * <p>
+ * The result is a table of confusion matrices indexed by distance function, k and voting strategy. The prediction time of every
+ * confusion matrix is the time of the neighbour search of its distance function.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public final class Sweep {
+
+    private final DistanceFunction[] distanceFunctions;
+    private final Voting[] votings;
+    private final int kMax;
+
+    // Confusion matrices by distance function, k - 1 and voting strategy
+    private final ConfusionMatrix[][][] table;
+
+    /**
+     * Creates a new sweep with empty confusion matrices.
+     */
+    private Sweep(DistanceFunction[] distanceFunctions, int kMax, Voting[] votings, LabelDictionary labels) {
+        if (kMax <= 0) {
+            throw new IllegalArgumentException("Maximum number of neighbours must be positive!");
+        }
+        this.distanceFunctions = distanceFunctions.clone();
+        this.votings = votings.clone();
+        this.kMax = kMax;
+        this.table = new ConfusionMatrix[distanceFunctions.length][kMax][votings.length];
+        for (ConfusionMatrix[][] byK : table) {
+            for (ConfusionMatrix[] byVoting : byK) {
+                for (int v = 0; v < byVoting.length; v++) {
+                    byVoting[v] = new ConfusionMatrix(labels);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates unweighted distance functions for the given heuristics.
+     *
+     * @param heuristics Heuristics.
+     * @return Distance functions.
+     */
+    public static DistanceFunction[] distances(HeuristicComputer.Heuristic... heuristics) {
+        DistanceFunction[] result = new DistanceFunction[heuristics.length];
+        for (int i = 0; i < heuristics.length; i++) {
+            result[i] = new Distance(heuristics[i], null);
+        }
+        return result;
+    }
+
+    /**
+     * Predicts every row of the test data using the train data for every combination of distance function, k and voting strategy.
+     *
+     * @param trainData Train data matrix.
+     * @param testData Test data matrix, using the same label dictionary.
+     * @param distanceFunctions Distance functions, e.g. {@link #distances(HeuristicComputer.Heuristic...)}.
+     * @param kMax Maximum number of nearest neighbours, every k from 1 to kMax is evaluated.
+     * @param votings Voting strategies.
+     * @return Sweep.
+     */
+    public static Sweep run(TrainingMatrix trainData, TrainingMatrix testData, DistanceFunction[] distanceFunctions, int kMax, Voting... votings) {
+        if (trainData.getDimensions() != testData.getDimensions()) {
+            throw new IllegalArgumentException("Train and test data dimensions do not match!");
+        }
+        if (trainData.getLabels() != testData.getLabels()) {
+            throw new IllegalArgumentException("Train and test data must share their label dictionary!");
+        }
+
+        Sweep result = new Sweep(distanceFunctions, kMax, votings, trainData.getLabels());
+        Neighbours neighbours = new Neighbours(kMax);
+        Evaluator evaluator = result.new Evaluator(trainData);
+        float[] candidate = new float[testData.getDimensions()];
+        for (int d = 0; d < distanceFunctions.length; d++) {
+            long startTime = System.currentTimeMillis();
+            LinearScanIndex index = new LinearScanIndex(trainData, distanceFunctions[d]);
+            for (int row = 0; row < testData.getRows(); row++) {
+                index.search(testData.copyRow(row, candidate), neighbours);
+                evaluator.evaluate(d, neighbours, testData.getClassId(row));
+            }
+            result.setPredictionTime(d, System.currentTimeMillis() - startTime);
+        }
+        return result;
+    }
+
+    /**
+     * Cross validates the given data for every combination of distance function, k and voting strategy. The neighbours of every distance
+     * function are computed in a single pass using {@link CrossValidation}.
+     *
+     * @param data Data matrix.
+     * @param folds Partition of the data into folds.
+     * @param distanceFunctions Distance functions, e.g. {@link #distances(HeuristicComputer.Heuristic...)}.
+     * @param kMax Maximum number of nearest neighbours, every k from 1 to kMax is evaluated.
+     * @param votings Voting strategies.
+     * @return Sweep.
+     */
+    public static Sweep crossValidate(TrainingMatrix data, Folds folds, DistanceFunction[] distanceFunctions, int kMax, Voting... votings) {
+        Sweep result = new Sweep(distanceFunctions, kMax, votings, data.getLabels());
+        Evaluator evaluator = result.new Evaluator(data);
+        for (int d = 0; d < distanceFunctions.length; d++) {
+            long startTime = System.currentTimeMillis();
+            CrossValidation crossValidation = CrossValidation.compute(data, folds, distanceFunctions[d], kMax, false);
+            for (int row = 0; row < data.getRows(); row++) {
+                evaluator.evaluate(d, crossValidation.getNeighbours(row), data.getClassId(row));
+            }
+            result.setPredictionTime(d, System.currentTimeMillis() - startTime);
+        }
+        return result;
+    }
+
+    /**
+     * Sets the prediction time of every confusion matrix of the given distance function.
+     */
+    private void setPredictionTime(int distance, long predictionTime) {
+        for (ConfusionMatrix[] byVoting : table[distance]) {
+            for (ConfusionMatrix confusionMatrix : byVoting) {
+                confusionMatrix.setPredictionTime(predictionTime);
+            }
+        }
+    }
+
+    /**
+     * Votes on the nearest k of a neighbour list for every k and voting strategy.
+     */
+    private final class Evaluator {
+
+        private final TrainingMatrix trainData;
+        private final Neighbours prefix = new Neighbours(kMax);
+        private final float[] scratch;
+
+        Evaluator(TrainingMatrix trainData) {
+            this.trainData = trainData;
+            this.scratch = new float[Voting.scratchSize(trainData.getLabels().size(), kMax)];
+        }
+
+        /**
+         * Updates the confusion matrices of the given distance function using the given neighbours of a test row.
+         */
+        void evaluate(int distance, Neighbours neighbours, int actualClassId) {
+            LabelDictionary labels = trainData.getLabels();
+            neighbours.sort();
+            prefix.clear();
+            for (int k = 1; k <= kMax; k++) {
+
+                // Neighbours are added nearest first, so the prefix always holds the nearest k
+                if (k <= neighbours.size()) {
+                    prefix.offer(neighbours.getIndex(k - 1), neighbours.getHeuristic(k - 1));
+                }
+                for (int v = 0; v < votings.length; v++) {
+                    ConfusionMatrix confusionMatrix = table[distance][k - 1][v];
+                    if (votings[v].isRegression()) {
+                        float value = votings[v].regress(prefix, trainData.getClassIds(), labels, scratch);
+                        confusionMatrix.record(actualClassId, labels.nearestClassId(value));
+                        confusionMatrix.recordRegression(actualClassId < 0 ? Float.NaN : labels.getNumericValue(actualClassId), value);
+                    } else {
+                        confusionMatrix.record(actualClassId, votings[v].vote(prefix, trainData.getClassIds(), labels, scratch));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the confusion matrix of the given combination.
+     *
+     * @param distance Index of the distance function.
+     * @param k Number of nearest neighbours, from 1 to {@link #getKMax()}.
+     * @param voting Index of the voting strategy.
+     * @return Confision matrix for AI analysis.
+     */
+    public ConfusionMatrix get(int distance, int k, int voting) {
+        if (k <= 0 || k > kMax) {
+            throw new IllegalArgumentException("k must be between 1 and " + kMax + "!");
+        }
+        return table[distance][k - 1][voting];
+    }
+
+    /**
+     * Returns the whole table of confusion matrices indexed by distance function, <code>k - 1</code> and voting strategy.
+     *
+     * @return Confusion matrices, must not be modified.
+     */
+    public ConfusionMatrix[][][] getTable() {
+        return table;
+    }
+
+    /**
+     * Returns the distance functions.
+     *
+     * @return Distance functions.
+     */
+    public DistanceFunction[] getDistanceFunctions() {
+        return distanceFunctions.clone();
+    }
+
+    /**
+     * Returns the voting strategies.
+     *
+     * @return Voting strategies.
+     */
+    public Voting[] getVotings() {
+        return votings.clone();
+    }
+
+    /**
+     * Returns the maximum number of nearest neighbours.
+     *
+     * @return kMax.
+     */
+    public int getKMax() {
+        return kMax;
+    }
+}
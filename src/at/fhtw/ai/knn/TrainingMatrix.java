@@ -0,0 +1,341 @@
+package at.fhtw.ai.knn;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A dense, primitive backed store for data sets. All attributes are kept in one contiguous <code>float</code> array using a fixed stride
+ * of {@link #getDimensions()} values per row and the quality attributes are encoded as integer class ids using a {@link LabelDictionary}.
+ * <p>
+ * Heuristics are always computed in single precision, hence <code>double</code> attributes are narrowed once when they are added.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class TrainingMatrix {
+
+    /**
+     * Contains all attributes row by row.
+     */
+    protected float[] data;
+
+    /**
+     * Contains the class id of every row.
+     */
+    protected int[] classIds;
+
+    /**
+     * Number of attributes per row.
+     */
+    protected final int dimensions;
+
+    /**
+     * Number of rows in use.
+     */
+    protected int rows;
+
+    /**
+     * Label dictionary used to encode the quality attributes.
+     */
+    protected final LabelDictionary labels;
+
+    /**
+     * Creates a new training matrix.
+     *
+     * @param dimensions Number of attributes per row.
+     * @param capacity Initial row capacity.
+     */
+    public TrainingMatrix(int dimensions, int capacity) {
+        this(dimensions, capacity, new LabelDictionary());
+    }
+
+    /**
+     * Creates a new training matrix which shares the given label dictionary.
+     *
+     * @param dimensions Number of attributes per row.
+     * @param capacity Initial row capacity.
+     * @param labels Label dictionary.
+     */
+    public TrainingMatrix(int dimensions, int capacity, LabelDictionary labels) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("Dimensions must be positive!");
+        }
+        this.dimensions = dimensions;
+        this.labels = labels;
+        this.data = new float[dimensions * Math.max(capacity, 1)];
+        this.classIds = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Creates a new training matrix using the given storage. Used by subclasses which keep the attributes outside of the heap.
+     *
+     * @param dimensions Number of attributes per row.
+     * @param labels Label dictionary.
+     * @param data Attributes or <code>null</code> if the subclass provides them.
+     * @param classIds Class ids.
+     * @param rows Number of rows in use.
+     */
+    protected TrainingMatrix(int dimensions, LabelDictionary labels, float[] data, int[] classIds, int rows) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("Dimensions must be positive!");
+        }
+        this.dimensions = dimensions;
+        this.labels = labels;
+        this.data = data;
+        this.classIds = classIds;
+        this.rows = rows;
+    }
+
+    /**
+     * Creates a new training matrix containing all of the given data sets.
+     *
+     * @param <T> Generic data type.
+     * @param data Data sets.
+     * @return Training matrix.
+     */
+    public static <T> TrainingMatrix of(List<DataSet<T>> data) {
+        return of(data, new LabelDictionary());
+    }
+
+    /**
+     * Creates a new training matrix containing all of the given data sets. Use the same label dictionary for train and test data to
+     * compare class ids directly.
+     *
+     * @param <T> Generic data type.
+     * @param data Data sets.
+     * @param labels Label dictionary.
+     * @return Training matrix.
+     */
+    public static <T> TrainingMatrix of(List<DataSet<T>> data, LabelDictionary labels) {
+        if (data.isEmpty()) {
+            throw new IllegalArgumentException("Data must not be empty!");
+        }
+
+        TrainingMatrix result = new TrainingMatrix(data.get(0).getDimensions(), data.size(), labels);
+        for (DataSet<T> current : data) {
+            result.add(current);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the given data set as new row.
+     *
+     * @param dataSet Data set with numeric attributes.
+     * @return Row index.
+     */
+    public int add(DataSet<?> dataSet) {
+        if (dataSet.getDimensions() != dimensions) {
+            throw new IllegalArgumentException("Data set has " + dataSet.getDimensions() + " dimensions, expected " + dimensions + "!");
+        }
+
+        ensureCapacity(rows + 1);
+        List<?> attributes = dataSet.getAttributes();
+        int offset = rows * dimensions;
+        for (int i = 0; i < dimensions; i++) {
+            data[offset + i] = ((Number) attributes.get(i)).floatValue();
+        }
+        classIds[rows] = labels.classIdOf(dataSet.getQualityAttribute());
+        return rows++;
+    }
+
+    /**
+     * Adds the given attributes as new row.
+     *
+     * @param values Attributes.
+     * @param label Quality attribute.
+     * @return Row index.
+     */
+    public int add(float[] values, Object label) {
+        if (values.length != dimensions) {
+            throw new IllegalArgumentException("Row has " + values.length + " dimensions, expected " + dimensions + "!");
+        }
+
+        ensureCapacity(rows + 1);
+        System.arraycopy(values, 0, data, rows * dimensions, dimensions);
+        classIds[rows] = labels.classIdOf(label);
+        return rows++;
+    }
+
+    /**
+     * Adds {@link #getDimensions()} attributes of the given array, starting at the given offset, as new row.
+     *
+     * @param values Attributes.
+     * @param offset Offset of the row in the array.
+     * @param label Quality attribute.
+     * @return Row index.
+     */
+    public int add(float[] values, int offset, Object label) {
+        ensureCapacity(rows + 1);
+        System.arraycopy(values, offset, data, rows * dimensions, dimensions);
+        classIds[rows] = labels.classIdOf(label);
+        return rows++;
+    }
+
+    /**
+     * Replaces the attributes and the quality attribute of an existing row.
+     *
+     * @param row Row index.
+     * @param values Attributes.
+     * @param label Quality attribute.
+     */
+    public void set(int row, float[] values, Object label) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("Row " + row + " does not exist!");
+        }
+        if (values.length != dimensions) {
+            throw new IllegalArgumentException("Row has " + values.length + " dimensions, expected " + dimensions + "!");
+        }
+
+        System.arraycopy(values, 0, data, row * dimensions, dimensions);
+        classIds[row] = labels.classIdOf(label);
+    }
+
+    /**
+     * Makes sure the matrix can hold the given number of rows without growing.
+     *
+     * @param capacity Row capacity.
+     */
+    protected void ensureCapacity(int capacity) {
+        if (capacity <= classIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, classIds.length + (classIds.length >> 1));
+        data = Arrays.copyOf(data, newCapacity * dimensions);
+        classIds = Arrays.copyOf(classIds, newCapacity);
+    }
+
+    /**
+     * Copies the attributes of the given row into the target array.
+     *
+     * @param row Row index.
+     * @param target Target array with at least {@link #getDimensions()} elements.
+     * @return Target array.
+     */
+    public float[] copyRow(int row, float[] target) {
+        return copyRow(row, target, 0);
+    }
+
+    /**
+     * Copies the attributes of the given row into the target array starting at the given offset.
+     *
+     * @param row Row index.
+     * @param target Target array.
+     * @param offset Offset in the target array.
+     * @return Target array.
+     */
+    public float[] copyRow(int row, float[] target, int offset) {
+        System.arraycopy(data, row * dimensions, target, offset, dimensions);
+        return target;
+    }
+
+    /**
+     * Copies the attributes of <code>count</code> consecutive rows, starting at the given row, into the target array.
+     *
+     * @param row First row index.
+     * @param count Number of rows.
+     * @param target Target array.
+     * @param offset Offset in the target array.
+     * @return Target array.
+     */
+    public float[] copyRows(int row, int count, float[] target, int offset) {
+        System.arraycopy(data, row * dimensions, target, offset, count * dimensions);
+        return target;
+    }
+
+    /**
+     * Returns a single attribute.
+     *
+     * @param row Row index.
+     * @param column Attribute index.
+     * @return Value.
+     */
+    public float get(int row, int column) {
+        return data[row * dimensions + column];
+    }
+
+    /**
+     * Returns the offset of the given row in the {@link #getData()} array.
+     *
+     * @param row Row index.
+     * @return Offset.
+     */
+    public int offset(int row) {
+        return row * dimensions;
+    }
+
+    /**
+     * Returns the raw attribute array. Only the first <code>rows * dimensions</code> values are in use.
+     *
+     * @return Attributes.
+     * @throws UnsupportedOperationException If the attributes are not backed by an array, see {@link #hasArray()}.
+     */
+    public float[] getData() {
+        return data;
+    }
+
+    /**
+     * Checks if the attributes are backed by an array which can be accessed using {@link #getData()}.
+     *
+     * @return <code>true</code> if backed by an array.
+     */
+    public boolean hasArray() {
+        return true;
+    }
+
+    /**
+     * Returns the class id of the given row.
+     *
+     * @param row Row index.
+     * @return Class id.
+     */
+    public int getClassId(int row) {
+        return classIds[row];
+    }
+
+    /**
+     * Returns the raw class id array. Only the first {@link #getRows()} values are in use.
+     *
+     * @return Class ids.
+     */
+    public int[] getClassIds() {
+        return classIds;
+    }
+
+    /**
+     * Returns the quality attribute of the given row.
+     *
+     * @param row Row index.
+     * @return Quality attribute.
+     */
+    public Object getQualityAttribute(int row) {
+        return labels.getLabel(classIds[row]);
+    }
+
+    /**
+     * Returns the label dictionary.
+     *
+     * @return Label dictionary.
+     */
+    public LabelDictionary getLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns the number of attributes per row.
+     *
+     * @return Dimensions.
+     */
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return Rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+}
@@ -1,10 +1,18 @@
 package at.fhtw.ai.knn.analysis;
 
-import java.util.HashMap;
-import java.util.Map;
+import at.fhtw.ai.knn.LabelDictionary;
+import java.util.Arrays;
 
 /**
  * A multiclass confusion matrix implementation for the prediction and calculation of AI accuracy.
+ * <p>
+ * The quality attributes are encoded as class ids by a {@link LabelDictionary} and the counts are kept in a primitive square matrix, so
+ * recording a prediction neither hashes nor boxes. A confusion matrix which shares the label dictionary of the train data records class
+ * ids directly using {@link #record(int, int)}. The first row and column of the matrix count the missing quality attributes, i.e. rows
+ * without prediction.
+ * <p>
+ * A confusion matrix is updated by a single thread. Parallel predictions record into one confusion matrix per thread and merge them,
+ * {@link #merge(ConfusionMatrix)} may be called by many threads at the same time and only adds the counts.
  *
  * @author Daniel Kleebinder
  * @since 0.1
@@ -16,7 +24,81 @@ public class ConfusionMatrix {
 
     private long predictionTime = 0;
 
-    private Map<Object, Map<Object, Integer>> matrix = new HashMap<>();
+    // Number of regressed rows and the sums of their absolute and squared errors
+    private int regressions = 0;
+    private double absoluteErrors = 0;
+    private double squaredErrors = 0;
+
+    /**
+     * Label dictionary encoding the quality attributes.
+     */
+    private final LabelDictionary labels;
+
+    /**
+     * Counts by actual and predicted class id plus one, row by row. Index 0 is used for missing quality attributes.
+     */
+    private long[] counts = new long[0];
+
+    /**
+     * Number of rows and columns of the counts.
+     */
+    private int size = 0;
+
+    /**
+     * Creates a new confusion matrix using its own label dictionary.
+     */
+    public ConfusionMatrix() {
+        this(new LabelDictionary());
+    }
+
+    /**
+     * Creates a new confusion matrix using the given label dictionary, usually the one of the train data.
+     *
+     * @param labels Label dictionary.
+     */
+    public ConfusionMatrix(LabelDictionary labels) {
+        if (labels == null) {
+            throw new NullPointerException("Label dictionary must not be null!");
+        }
+        this.labels = labels;
+    }
+
+    /**
+     * Records a single prediction using the class ids of the label dictionary of this confusion matrix. The prediction is correct if
+     * both class ids are the same.
+     *
+     * @param actualClassId Class id of the actual quality attribute or <code>-1</code> if unknown.
+     * @param predictedClassId Class id of the predicted quality attribute or <code>-1</code> if no prediction was possible.
+     */
+    public void record(int actualClassId, int predictedClassId) {
+        if (actualClassId >= 0 && actualClassId == predictedClassId) {
+            correctPredictions++;
+        } else {
+            wrongPredictions++;
+        }
+        int slots = Math.max(actualClassId, predictedClassId) + 2;
+        if (slots > size) {
+            grow(slots);
+        }
+        counts[(actualClassId + 1) * size + predictedClassId + 1]++;
+    }
+
+    /**
+     * Records the error of a single regressed value, see {@link at.fhtw.ai.knn.voting.Voting#regress}. Rows without a numeric actual or
+     * predicted value are ignored.
+     *
+     * @param actual Numeric value of the actual quality attribute or <code>NaN</code>.
+     * @param predicted Predicted value or <code>NaN</code>.
+     */
+    public void recordRegression(float actual, float predicted) {
+        if (Float.isNaN(actual) || Float.isNaN(predicted)) {
+            return;
+        }
+        double error = predicted - actual;
+        regressions++;
+        absoluteErrors += Math.abs(error);
+        squaredErrors += error * error;
+    }
 
     /**
      * Updates the prediction matrix.
@@ -26,68 +108,267 @@ public class ConfusionMatrix {
      * @param delta Delta.
      */
     public void updatePredictionMatrix(Object x, Object y, int delta) {
-        matrix.putIfAbsent(x, new HashMap<>());
-        matrix.get(x).putIfAbsent(y, 0);
+        int slotX = slotOf(x);
+        int slotY = slotOf(y);
+        int slots = Math.max(slotX, slotY) + 1;
+        if (slots > size) {
+            grow(slots);
+        }
+        counts[slotX * size + slotY] += delta;
+    }
 
-        matrix.get(x).put(y, matrix.get(x).get(y) + delta);
+    /**
+     * Returns the slot of the given quality attribute, <code>null</code> uses slot 0 unless it is a known label.
+     */
+    private int slotOf(Object label) {
+        int classId = labels.find(label);
+        if (classId < 0 && label != null) {
+            classId = labels.classIdOf(label);
+        }
+        return classId + 1;
+    }
+
+    /**
+     * Grows the counts to at least the given number of rows and columns.
+     */
+    private void grow(int slots) {
+        int newSize = Math.max(slots, Math.max(labels.size() + 1, size * 2));
+        long[] newCounts = new long[newSize * newSize];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(counts, i * size, newCounts, i * newSize, size);
+        }
+        counts = newCounts;
+        size = newSize;
     }
 
     /**
      * Updates this prediction matrix using the given one. The values of the prediction matrix from the other confusion matrix will be added
-     * to the values of the prediction matrix of this confusion matrix.
+     * to the values of the prediction matrix of this confusion matrix. Matrices sharing the same label dictionary are added directly.
      *
      * @param other Other confusion matrix.
      */
-    public void updatePredictionMatrix(ConfusionMatrix other) {
+    public synchronized void updatePredictionMatrix(ConfusionMatrix other) {
         if (other == null) {
             throw new NullPointerException("The other confusion matrix is null!");
         }
+        if (other.size > size) {
+            grow(other.size);
+        }
 
-        for (Map.Entry<Object, Map<Object, Integer>> row : other.matrix.entrySet()) {
-            if (!matrix.containsKey(row.getKey())) {
-                matrix.put(row.getKey(), new HashMap<>(row.getValue()));
-                continue;
-            }
-            for (Map.Entry<Object, Integer> value : row.getValue().entrySet()) {
-                if (matrix.get(row.getKey()).containsKey(value.getKey())) {
-                    matrix.get(row.getKey()).put(
-                            value.getKey(),
-                            matrix.get(row.getKey()).get(value.getKey()) + value.getValue()
-                    );
+        if (other.labels == labels) {
+            for (int x = 0; x < other.size; x++) {
+                for (int y = 0; y < other.size; y++) {
+                    counts[x * size + y] += other.counts[x * other.size + y];
                 }
-                matrix.get(row.getKey()).putIfAbsent(value.getKey(), value.getValue());
+            }
+            return;
+        }
+
+        // Translate the class ids of the other label dictionary
+        int[] slots = new int[other.size];
+        for (int i = 1; i < other.size; i++) {
+            slots[i] = i - 1 < other.labels.size() ? slotOf(other.labels.getLabel(i - 1)) : 0;
+        }
+        int maxSlot = 0;
+        for (int slot : slots) {
+            maxSlot = Math.max(maxSlot, slot);
+        }
+        if (maxSlot >= size) {
+            grow(maxSlot + 1);
+        }
+        for (int x = 0; x < other.size; x++) {
+            for (int y = 0; y < other.size; y++) {
+                counts[slots[x] * size + slots[y]] += other.counts[x * other.size + y];
             }
         }
     }
 
     /**
-     * Computes and returns the true confusion matrix as two dimensional object array.
+     * Adds the prediction matrix and the number of correct and wrong predictions of the other confusion matrix to this confusion matrix.
+     * The prediction time is left untouched. Many threads may merge into the same confusion matrix at the same time, the other confusion
+     * matrix must not be updated while it is merged.
+     *
+     * @param other Other confusion matrix.
+     */
+    public synchronized void merge(ConfusionMatrix other) {
+        updatePredictionMatrix(other);
+        updateCorrectPredictions(other.getNumberOfCorrectPredictions());
+        updateWrongPredictions(other.getNumberOfWrongPredictions());
+        regressions += other.regressions;
+        absoluteErrors += other.absoluteErrors;
+        squaredErrors += other.squaredErrors;
+    }
+
+    /**
+     * Computes and returns the true confusion matrix as two dimensional object array. The first row and column contain the quality
+     * attributes which were predicted or actual at least once, the other cells the number of rows by actual (row) and predicted (column)
+     * quality attribute.
      *
      * @return True confusion matrix.
      */
-    public Object[][] confusionMatrix() {
-        Object[][] result = new Object[matrix.size() + 1][matrix.size() + 1];
+    public synchronized Object[][] confusionMatrix() {
+        int[] used = usedSlots();
+        Object[][] result = new Object[used.length + 1][used.length + 1];
+        for (int x = 0; x < used.length; x++) {
+            result[x + 1][0] = labelOf(used[x]);
+            result[0][x + 1] = labelOf(used[x]);
+            for (int y = 0; y < used.length; y++) {
+                result[x + 1][y + 1] = (int) counts[used[x] * size + used[y]];
+            }
+        }
+        return result;
+    }
 
-        Object[] a = matrix.keySet().toArray(new Object[matrix.size()]);
+    /**
+     * Returns all slots with at least one count in their row or column.
+     */
+    private int[] usedSlots() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (rowSum(i) != 0 || columnSum(i) != 0) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
 
-        int x = 0;
-        for (Object key : matrix.keySet()) {
-            int y = 0;
-            for (Object key2 : matrix.keySet()) {
-                if (y == 0) {
-                    result[x + 1][y] = key;
-                }
-                if (x == 0) {
-                    result[x][y + 1] = key2;
-                }
-                if (x != 0 && y != 0) {
-                    result[x][y] = matrix.get(key).get(key2);
-                }
-                y++;
+    /**
+     * Returns the quality attribute of the given slot.
+     */
+    private Object labelOf(int slot) {
+        return slot == 0 ? null : labels.getLabel(slot - 1);
+    }
+
+    /**
+     * Returns the number of rows of the given actual slot.
+     */
+    private long rowSum(int slot) {
+        long sum = 0;
+        for (int y = 0; y < size; y++) {
+            sum += counts[slot * size + y];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of rows predicted as the given slot.
+     */
+    private long columnSum(int slot) {
+        long sum = 0;
+        for (int x = 0; x < size; x++) {
+            sum += counts[x * size + slot];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the slot of a known quality attribute or -1.
+     */
+    private int findSlot(Object label) {
+        int classId = labels.find(label);
+        if (classId < 0) {
+            return label == null && size > 0 ? 0 : -1;
+        }
+        return classId + 1 < size ? classId + 1 : -1;
+    }
+
+    /**
+     * Returns the number of rows with the given actual and predicted quality attribute.
+     *
+     * @param actual Actual quality attribute.
+     * @param predicted Predicted quality attribute, <code>null</code> for rows without prediction.
+     * @return Count.
+     */
+    public synchronized long getCount(Object actual, Object predicted) {
+        int x = findSlot(actual);
+        int y = findSlot(predicted);
+        return x < 0 || y < 0 ? 0 : counts[x * size + y];
+    }
+
+    /**
+     * Computes the precision of the given quality attribute, the share of the rows predicted as this quality attribute which actually
+     * have it.
+     *
+     * @param label Quality attribute.
+     * @return Precision [0;1] or <code>NaN</code> if it was never predicted.
+     */
+    public synchronized double precision(Object label) {
+        int slot = findSlot(label);
+        long predicted = slot < 0 ? 0 : columnSum(slot);
+        return predicted == 0 ? Double.NaN : counts[slot * size + slot] / (double) predicted;
+    }
+
+    /**
+     * Computes the recall of the given quality attribute, the share of the rows having this quality attribute which are predicted
+     * correctly.
+     *
+     * @param label Quality attribute.
+     * @return Recall [0;1] or <code>NaN</code> if no row has it.
+     */
+    public synchronized double recall(Object label) {
+        int slot = findSlot(label);
+        long actual = slot < 0 ? 0 : rowSum(slot);
+        return actual == 0 ? Double.NaN : counts[slot * size + slot] / (double) actual;
+    }
+
+    /**
+     * Computes the F1 score of the given quality attribute, the harmonic mean of its precision and recall.
+     *
+     * @param label Quality attribute.
+     * @return F1 score [0;1], 0 if it was never predicted correctly or <code>NaN</code> if no row has it.
+     */
+    public synchronized double f1(Object label) {
+        double recall = recall(label);
+        if (Double.isNaN(recall)) {
+            return Double.NaN;
+        }
+        double precision = precision(label);
+        return recall == 0 || Double.isNaN(precision) ? 0 : 2 * precision * recall / (precision + recall);
+    }
+
+    /**
+     * Computes the unweighted mean of the F1 scores of all quality attributes at least one row has.
+     *
+     * @return Macro F1 score [0;1] or <code>NaN</code> if there are no rows.
+     */
+    public synchronized double macroF1() {
+        double sum = 0;
+        int classes = 0;
+        for (int slot = 1; slot < size; slot++) {
+            if (rowSum(slot) != 0) {
+                sum += f1(labelOf(slot));
+                classes++;
             }
-            x++;
         }
-        return result;
+        return classes == 0 ? Double.NaN : sum / classes;
+    }
+
+    /**
+     * Returns the number of rows whose regressed value was recorded.
+     *
+     * @return Number of regressed rows.
+     */
+    public int getNumberOfRegressions() {
+        return regressions;
+    }
+
+    /**
+     * Computes the mean absolute error of the regressed values.
+     *
+     * @return Mean absolute error or <code>NaN</code> if no value was regressed.
+     */
+    public double meanAbsoluteError() {
+        return regressions == 0 ? Double.NaN : absoluteErrors / regressions;
+    }
+
+    /**
+     * Computes the root mean squared error of the regressed values.
+     *
+     * @return Root mean squared error or <code>NaN</code> if no value was regressed.
+     */
+    public double rootMeanSquaredError() {
+        return regressions == 0 ? Double.NaN : Math.sqrt(squaredErrors / regressions);
     }
 
     /**
@@ -153,6 +434,15 @@ public class ConfusionMatrix {
         return predictionTime;
     }
 
+    /**
+     * Returns the label dictionary encoding the quality attributes.
+     *
+     * @return Label dictionary.
+     */
+    public LabelDictionary getLabels() {
+        return labels;
+    }
+
     /**
      * Computes the total accuracy of the AI. The accuracy is a floating point value between 0.0 and 1.0. An accuracy of 1 is an AI with
      * 100% correct predictability.
@@ -0,0 +1,63 @@
+package at.fhtw.ai.knn.analysis;
+
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.index.NeighbourIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import java.util.Arrays;
+
+/**
+ * Measures the recall of an approximate neighbour index, i.e. the share of the exact nearest neighbours it finds.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class Recall {
+
+    /**
+     * Nobody is allowed to create an instance of the Recall class.
+     */
+    private Recall() {
+    }
+
+    /**
+     * Computes the recall of the approximate index compared to the exact index for all rows of the given queries. Neighbours with the same
+     * heuristic as the k-th exact neighbour count as found, since they are equally near.
+     *
+     * @param approximate Approximate neighbour index.
+     * @param exact Exact neighbour index, e.g. a linear scan.
+     * @param queries Query matrix.
+     * @param k Number of neighbours per query.
+     * @return Recall [0;1].
+     */
+    public static double measure(NeighbourIndex approximate, NeighbourIndex exact, TrainingMatrix queries, int k) {
+        Neighbours approximateNeighbours = new Neighbours(k);
+        Neighbours exactNeighbours = new Neighbours(k);
+        float[] candidate = new float[queries.getDimensions()];
+        int[] exactIndices = new int[k];
+
+        long found = 0;
+        long total = 0;
+        for (int row = 0; row < queries.getRows(); row++) {
+            queries.copyRow(row, candidate);
+            approximate.search(candidate, approximateNeighbours);
+            exact.search(candidate, exactNeighbours);
+
+            exactNeighbours.sort();
+            int size = exactNeighbours.size();
+            for (int i = 0; i < size; i++) {
+                exactIndices[i] = exactNeighbours.getIndex(i);
+            }
+            Arrays.sort(exactIndices, 0, size);
+
+            float worst = size == 0 ? Float.NEGATIVE_INFINITY : exactNeighbours.getHeuristic(size - 1);
+            for (int i = 0; i < approximateNeighbours.size(); i++) {
+                if (Arrays.binarySearch(exactIndices, 0, size, approximateNeighbours.getIndex(i)) >= 0
+                        || approximateNeighbours.getHeuristic(i) <= worst) {
+                    found++;
+                }
+            }
+            total += size;
+        }
+        return total == 0 ? 1.0 : found / (double) total;
+    }
+}
@@ -0,0 +1,102 @@
+package at.fhtw.ai.knn.heuristic;
+
+/**
+ * An immutable distance function for one of the {@link HeuristicComputer.Heuristic heuristics}, optionally weighted. Unlike a heuristic
+ * computer its configuration cannot change, hence it can be shared freely between threads and indices.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public final class Distance implements DistanceFunction {
+
+    /**
+     * Unweighted Euklid heuristic, the squared euclidean distance.
+     */
+    public static final Distance EUKLID = new Distance(HeuristicComputer.Heuristic.Euklid, null);
+
+    /**
+     * Unweighted Manhatten heuristic.
+     */
+    public static final Distance MANHATTEN = new Distance(HeuristicComputer.Heuristic.Manhatten, null);
+
+    private final HeuristicComputer.Heuristic heuristic;
+    private final float[] weights;
+
+    /**
+     * Creates a new distance function.
+     *
+     * @param heuristic Heuristic.
+     * @param weights Weight of every attribute or <code>null</code> for no weights. The array is copied.
+     */
+    public Distance(HeuristicComputer.Heuristic heuristic, float[] weights) {
+        if (heuristic == null) {
+            throw new NullPointerException("Heuristic must not be null!");
+        }
+        this.heuristic = heuristic;
+        this.weights = weights == null ? null : weights.clone();
+    }
+
+    @Override
+    public float distance(float[] query, int queryOffset, float[] data, int offset, int length) {
+        if (heuristic == HeuristicComputer.Heuristic.Manhatten) {
+            return weights == null
+                    ? HeuristicKernels.manhatten(data, offset, query, queryOffset, length)
+                    : HeuristicKernels.weightedManhatten(data, offset, query, queryOffset, weights, length);
+        }
+        return weights == null
+                ? HeuristicKernels.euklid(data, offset, query, queryOffset, length)
+                : HeuristicKernels.weightedEuklid(data, offset, query, queryOffset, weights, length);
+    }
+
+    @Override
+    public float distance(float[] query, int queryOffset, float[] data, int offset, int length, float bound) {
+        return heuristic == HeuristicComputer.Heuristic.Manhatten
+                ? HeuristicKernels.boundedManhatten(data, offset, query, queryOffset, weights, length, bound)
+                : HeuristicKernels.boundedEuklid(data, offset, query, queryOffset, weights, length, bound);
+    }
+
+    @Override
+    public Distance reorder(int[] order) {
+        if (weights == null) {
+            return this;
+        }
+        float[] reordered = new float[order.length];
+        for (int i = 0; i < order.length; i++) {
+            reordered[i] = weights[order[i]];
+        }
+        return new Distance(heuristic, reordered);
+    }
+
+    @Override
+    public float distance(int attribute, float diff) {
+        if (weights != null) {
+            diff *= weights[attribute];
+        }
+        return heuristic == HeuristicComputer.Heuristic.Manhatten ? Math.abs(diff) : diff * diff;
+    }
+
+    @Override
+    public float toMetric(float distance) {
+        return distance == Float.POSITIVE_INFINITY || heuristic == HeuristicComputer.Heuristic.Manhatten
+                ? distance
+                : (float) Math.sqrt(distance);
+    }
+
+    /**
+     * Returns the heuristic.
+     *
+     * @return Heuristic.
+     */
+    public HeuristicComputer.Heuristic getHeuristic() {
+        return heuristic;
+    }
+
+    /**
+     * Returns a copy of the weights.
+     *
+     * @return Weights or <code>null</code>.
+     */
+    public float[] getWeights() {
+        return weights == null ? null : weights.clone();
+    }
+}
@@ -0,0 +1,112 @@
+package at.fhtw.ai.knn.heuristic;
+
+/**
+ * A stateless distance function over primitive attribute arrays. Implementations must not keep any per query state, so a single
+ * instance can be shared by any number of threads.
+ * <p>
+ * The distance is a heuristic: smaller is nearer, but it does not have to be a metric. It must be the sum of
+ * {@link #distance(int, float)} over all attributes, which spatial indices use as lower bound, and {@link #toMetric(float)} must turn it
+ * into a metric.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public interface DistanceFunction {
+
+    /**
+     * Computes the distance between two rows of primitive attribute arrays.
+     *
+     * @param query Query attribute array.
+     * @param queryOffset Offset of the query in its array.
+     * @param data Attribute array.
+     * @param offset Offset of the row in the attribute array.
+     * @param length Number of attributes.
+     * @return Distance.
+     */
+    float distance(float[] query, int queryOffset, float[] data, int offset, int length);
+
+    /**
+     * Computes the distance between the query and a row of a primitive attribute array, e.g. the data of a
+     * {@link at.fhtw.ai.knn.TrainingMatrix}.
+     *
+     * @param query Query attributes.
+     * @param data Attribute array.
+     * @param offset Offset of the row in the attribute array.
+     * @return Distance.
+     */
+    default float distance(float[] query, float[] data, int offset) {
+        return distance(query, 0, data, offset, query.length);
+    }
+
+    /**
+     * Computes the distance between two rows.
+     *
+     * @param query Query attributes.
+     * @param row Row attributes.
+     * @return Distance.
+     */
+    default float distance(float[] query, float[] row) {
+        return distance(query, 0, row, 0, query.length);
+    }
+
+    /**
+     * Computes the distance between two rows of primitive attribute arrays, but may stop as soon as the partial distance exceeds the
+     * bound. Scans pass the distance of their k-th best row, rows further away are rejected after a fraction of the attributes. The
+     * default implementation computes the full distance.
+     *
+     * @param query Query attribute array.
+     * @param queryOffset Offset of the query in its array.
+     * @param data Attribute array.
+     * @param offset Offset of the row in the attribute array.
+     * @param length Number of attributes.
+     * @param bound Bound, <code>Float.POSITIVE_INFINITY</code> for the full distance.
+     * @return Distance if it does not exceed the bound, otherwise any value greater than the bound.
+     */
+    default float distance(float[] query, int queryOffset, float[] data, int offset, int length, float bound) {
+        return distance(query, queryOffset, data, offset, length);
+    }
+
+    /**
+     * Computes the distance between the query and a row of a primitive attribute array, but may stop as soon as the partial distance
+     * exceeds the bound.
+     *
+     * @param query Query attributes.
+     * @param data Attribute array.
+     * @param offset Offset of the row in the attribute array.
+     * @param bound Bound, <code>Float.POSITIVE_INFINITY</code> for the full distance.
+     * @return Distance if it does not exceed the bound, otherwise any value greater than the bound.
+     */
+    default float distance(float[] query, float[] data, int offset, float bound) {
+        return distance(query, 0, data, offset, query.length, bound);
+    }
+
+    /**
+     * Creates a distance function over rows whose attributes are reordered, i.e. attribute <code>i</code> of a reordered row is attribute
+     * <code>order[i]</code> of the original row. Both functions compute the same distance for reordered rows, up to rounding. The
+     * default implementation does not support reordering.
+     *
+     * @param order Original attribute index of every reordered attribute.
+     * @return Distance function over reordered rows.
+     * @throws UnsupportedOperationException If the distance function cannot be reordered.
+     */
+    default DistanceFunction reorder(int[] order) {
+        throw new UnsupportedOperationException("Distance function " + getClass().getName() + " cannot be reordered!");
+    }
+
+    /**
+     * Computes the share of a single attribute difference in the distance.
+     *
+     * @param attribute Attribute index.
+     * @param diff Difference of the attribute values.
+     * @return Distance share.
+     */
+    float distance(int attribute, float diff);
+
+    /**
+     * Converts a distance into a metric distance which satisfies the triangle inequality. The conversion must be monotonic.
+     *
+     * @param distance Distance.
+     * @return Metric distance.
+     */
+    float toMetric(float distance);
+}
@@ -1,9 +1,12 @@
 package at.fhtw.ai.knn.heuristic;
 
 import at.fhtw.ai.knn.DataSet;
+import java.util.List;
 
 /**
- * Heuristic computer for double data sets.
+ * Heuristic computer for double data sets. Data sets are compared using the weights in double precision, the primitive attribute arrays
+ * of a {@link at.fhtw.ai.knn.TrainingMatrix} and the {@link #toDistance() distance function} store floats and use the weights rounded to
+ * float.
  *
  * @author Daniel Kleebinder
  * @since 0.1
@@ -15,6 +18,11 @@ public class DoubleHeuristicComputer extends HeuristicComputer<Double, Double> {
      */
     private double heuristicAlgorithmValue = 2;
 
+    /**
+     * Weights in double precision for the data set heuristic.
+     */
+    private double[] doubleWeightValues;
+
     /**
      * Creates a new double heuristic computer.
      */
@@ -50,50 +58,64 @@ public class DoubleHeuristicComputer extends HeuristicComputer<Double, Double> {
     }
 
     @Override
-    public void setCandidate(DataSet<Double> candidate) {
-        super.setCandidate(candidate);
-        dimensions = candidate.getDimensions();
-    }
+    public void setWeights(List<Double> weights) {
+        super.setWeights(weights);
+        if (weights == null) {
+            doubleWeightValues = null;
+            return;
+        }
 
-    // Runtime optimization
-    int dimensions;
-    double dist;
-    double x1, c, weight;
-    double diff;
+        doubleWeightValues = new double[weights.size()];
+        for (int i = 0; i < doubleWeightValues.length; i++) {
+            doubleWeightValues[i] = weights.get(i);
+        }
+    }
 
-    // Extract for optimization
-    Object[] elementData, candidateElementData;
+    @Override
+    public DoubleHeuristicComputer copy() {
+        DoubleHeuristicComputer result = new DoubleHeuristicComputer();
+        result.setHeuristic(heuristic);
+        result.setWeights(weights);
+        return result;
+    }
 
     @Override
     public float computeHeuristic(DataSet<Double> ds) {
-        elementData = (Object[]) ds.elementData;
-        candidateElementData = (Object[]) candidate.elementData;
+        return computeHeuristic(candidate, ds);
+    }
 
-        // Compute heuristic distance between the n-dimensional vectors
-        weight = 1.0f;
-        dist = 0.0f;
-        for (int i = 0; i < dimensions; i++) {
-            if (weights != null) {
-                weight = weights.get(i);
-            }
+    @Override
+    public float computeHeuristic(DataSet<Double> candidate, DataSet<Double> ds) {
+        return computeHeuristic(candidate, ds, Float.POSITIVE_INFINITY);
+    }
 
-            // Use API reflection hack to accelerate API
-            //  x1 = ds.fastAttributeGet(i) * weight;
-            //  c = candidate.fastAttributeGet(i) * weight;
-            x1 = ((double) elementData[i]) * weight;
-            c = ((double) candidateElementData[i]) * weight;
+    @Override
+    public float computeHeuristic(DataSet<Double> candidate, DataSet<Double> ds, float bound) {
+        // Use API reflection hack to accelerate API, all state is kept in local variables
+        Object[] elementData = (Object[]) ds.elementData;
+        Object[] candidateElementData = (Object[]) candidate.elementData;
+        int dimensions = candidate.getDimensions();
+        boolean manhatten = heuristicAlgorithmValue == 1;
+        double[] w = doubleWeightValues;
 
-            // Calculate distance heuristic
-            diff = x1 - c;
+        // Compute heuristic distance between the n-dimensional vectors
+        double dist = 0;
+        for (int i = 0; i < dimensions; i++) {
+            double weight = w != null ? w[i] : 1;
+            double diff = ((double) elementData[i]) * weight - ((double) candidateElementData[i]) * weight;
 
             // Use CPU optimized code instead of:
             //  pow(abs(x - c)), p)
-            //  dist1 += Math.pow(Math.abs(x1 - c), heuristicAlgorithmValue);
-            if (heuristicAlgorithmValue == 1) {
+            if (manhatten) {
                 dist += Math.abs(diff);
             } else {
                 dist += diff * diff;
             }
+
+            // The row cannot be nearer than the bound any more
+            if ((float) dist > bound) {
+                break;
+            }
         }
 
         return (float) dist;
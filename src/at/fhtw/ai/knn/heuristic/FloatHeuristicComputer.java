@@ -50,50 +50,50 @@ public class FloatHeuristicComputer extends HeuristicComputer<Float, Float> {
     }
 
     @Override
-    public void setCandidate(DataSet<Float> candidate) {
-        super.setCandidate(candidate);
-        dimensions = candidate.getDimensions();
+    public FloatHeuristicComputer copy() {
+        FloatHeuristicComputer result = new FloatHeuristicComputer();
+        result.setHeuristic(heuristic);
+        result.setWeights(weights);
+        return result;
     }
 
-    // Runtime optimization
-    int dimensions;
-    float dist;
-    float x1, c, weight;
-    float diff;
+    @Override
+    public float computeHeuristic(DataSet<Float> ds) {
+        return computeHeuristic(candidate, ds);
+    }
 
-    // Extract for optimization
-    Object[] elementData, candidateElementData;
+    @Override
+    public float computeHeuristic(DataSet<Float> candidate, DataSet<Float> ds) {
+        return computeHeuristic(candidate, ds, Float.POSITIVE_INFINITY);
+    }
 
     @Override
-    public float computeHeuristic(DataSet<Float> ds) {
-        elementData = (Object[]) ds.elementData;
-        candidateElementData = (Object[]) candidate.elementData;
+    public float computeHeuristic(DataSet<Float> candidate, DataSet<Float> ds, float bound) {
+        // Use API reflection hack to accelerate API, all state is kept in local variables
+        Object[] elementData = (Object[]) ds.elementData;
+        Object[] candidateElementData = (Object[]) candidate.elementData;
+        int dimensions = candidate.getDimensions();
+        boolean manhatten = heuristicAlgorithmValue == 1;
+        float[] w = weightValues;
 
         // Compute heuristic distance between the n-dimensional vectors
-        weight = 1.0f;
-        dist = 0.0f;
+        float dist = 0;
         for (int i = 0; i < dimensions; i++) {
-            if (weights != null) {
-                weight = weights.get(i);
-            }
-
-            // Use API reflection hack to accelerate API
-            //  x1 = ds.fastAttributeGet(i) * weight;
-            //  c = candidate.fastAttributeGet(i) * weight;
-            x1 = ((float) elementData[i]) * weight;
-            c = ((float) candidateElementData[i]) * weight;
-
-            // Calculate distance heuristic
-            diff = x1 - c;
+            float weight = w != null ? w[i] : 1;
+            float diff = ((float) elementData[i]) * weight - ((float) candidateElementData[i]) * weight;
 
             // Use CPU optimized code instead of:
             //  pow(abs(x - c)), p)
-            //  dist1 += Math.pow(Math.abs(x1 - c), heuristicAlgorithmValue);
-            if (heuristicAlgorithmValue == 1) {
+            if (manhatten) {
                 dist += Math.abs(diff);
             } else {
                 dist += diff * diff;
             }
+
+            // The row cannot be nearer than the bound any more
+            if (dist > bound) {
+                break;
+            }
         }
 
         return dist;
@@ -1,17 +1,22 @@
 package at.fhtw.ai.knn.heuristic;
 
 import at.fhtw.ai.knn.DataSet;
+import java.lang.reflect.Constructor;
 import java.util.List;
 
 /**
  * Computer for heuristics.
+ * <p>
+ * The primitive heuristic methods and {@link #computeHeuristic(DataSet, DataSet)} are stateless, so a single computer can be shared by
+ * many threads as long as its heuristic and weights do not change. Only the candidate based {@link #computeHeuristic(DataSet)} needs a
+ * computer per thread. Use {@link #toDistance()} to get an immutable distance function.
  *
  * @author Daniel Kleebinder
  * @param <T> Generic data set type.
  * @param <Q> Weight attribute data type.
  * @since 0.1
  */
-public abstract class HeuristicComputer<T, Q> {
+public abstract class HeuristicComputer<T, Q> implements DistanceFunction {
 
     /**
      * Contains the available heuristic calculation methods.
@@ -39,6 +44,11 @@ public abstract class HeuristicComputer<T, Q> {
      */
     protected List<Q> weights;
 
+    /**
+     * Primitive copy of the weights used by the primitive heuristic.
+     */
+    protected float[] weightValues;
+
     /**
      * Sets the heuristic algorithm.
      *
@@ -82,6 +92,15 @@ public abstract class HeuristicComputer<T, Q> {
      */
     public void setWeights(List<Q> weights) {
         this.weights = weights;
+        if (weights == null) {
+            weightValues = null;
+            return;
+        }
+
+        weightValues = new float[weights.size()];
+        for (int i = 0; i < weightValues.length; i++) {
+            weightValues[i] = ((Number) weights.get(i)).floatValue();
+        }
     }
 
     /**
@@ -93,6 +112,43 @@ public abstract class HeuristicComputer<T, Q> {
         return weights;
     }
 
+    /**
+     * Creates a new heuristic computer of the same type using the same heuristic algorithm and weights. Heuristic computers keep the
+     * current candidate, hence every thread using {@link #setCandidate(DataSet)} needs its own copy.
+     * <p>
+     * The default implementation creates the copy using the no argument constructor of the runtime class and copies the heuristic and
+     * weights. Subclasses without such a constructor or with additional state have to override this method.
+     *
+     * @return Copy of this heuristic computer.
+     * @throws UnsupportedOperationException If the computer cannot be created using a no argument constructor.
+     */
+    @SuppressWarnings("unchecked")
+    public HeuristicComputer<T, Q> copy() {
+        HeuristicComputer<T, Q> result;
+        try {
+            Constructor<? extends HeuristicComputer> constructor = getClass().getDeclaredConstructor();
+            constructor.setAccessible(true);
+            result = constructor.newInstance();
+        } catch (NoSuchMethodException ex) {
+            throw new UnsupportedOperationException(getClass().getName() + " has no no argument constructor, override copy()!", ex);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new UnsupportedOperationException("Could not create a copy of " + getClass().getName() + "!", ex);
+        }
+        result.setHeuristic(heuristic);
+        result.setWeights(weights);
+        return result;
+    }
+
+    /**
+     * Creates an immutable distance function using the current heuristic algorithm and weights of this computer. Subclasses which
+     * override the primitive heuristic have to override this method as well.
+     *
+     * @return Distance function.
+     */
+    public DistanceFunction toDistance() {
+        return new Distance(heuristic, weightValues);
+    }
+
     /**
      * Computes the heuristic of the given data set to the current candidate.
      *
@@ -100,4 +156,146 @@ public abstract class HeuristicComputer<T, Q> {
      * @return Heuristic.
      */
     public abstract float computeHeuristic(DataSet<T> ds1);
+
+    /**
+     * Computes the heuristic between the given candidate and data set without touching the current candidate, hence it can be called by
+     * many threads at the same time. Subclasses should override this method with a stateless implementation. The default implementation
+     * adapts {@link #computeHeuristic(DataSet)} by temporarily replacing the current candidate, calls are serialized.
+     *
+     * @param candidate Candidate.
+     * @param ds Data set.
+     * @return Heuristic.
+     */
+    public float computeHeuristic(DataSet<T> candidate, DataSet<T> ds) {
+        synchronized (this) {
+            DataSet<T> current = this.candidate;
+            try {
+                setCandidate(candidate);
+                return computeHeuristic(ds);
+            } finally {
+                if (current != null) {
+                    setCandidate(current);
+                } else {
+                    this.candidate = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the heuristic between the given candidate and a row of a primitive attribute array, e.g. the data of a
+     * {@link at.fhtw.ai.knn.TrainingMatrix}. This method only uses local state and does not touch the current candidate. The distance is
+     * computed by the {@link HeuristicKernels}, using SIMD instructions where available.
+     *
+     * @param candidate Candidate attributes.
+     * @param data Attribute array.
+     * @param offset Offset of the row in the attribute array.
+     * @return Heuristic.
+     */
+    public float computeHeuristic(float[] candidate, float[] data, int offset) {
+        return computeHeuristic(candidate, 0, data, offset, candidate.length);
+    }
+
+    /**
+     * Computes the heuristic between two rows of primitive attribute arrays. This method only uses local state and does not touch the
+     * current candidate.
+     *
+     * @param candidate Candidate attribute array.
+     * @param candidateOffset Offset of the candidate in its array.
+     * @param data Attribute array.
+     * @param offset Offset of the row in the attribute array.
+     * @param length Number of attributes.
+     * @return Heuristic.
+     */
+    public float computeHeuristic(float[] candidate, int candidateOffset, float[] data, int offset, int length) {
+        float[] w = weightValues;
+        if (heuristic == Heuristic.Manhatten) {
+            return w == null
+                    ? HeuristicKernels.manhatten(data, offset, candidate, candidateOffset, length)
+                    : HeuristicKernels.weightedManhatten(data, offset, candidate, candidateOffset, w, length);
+        }
+        return w == null
+                ? HeuristicKernels.euklid(data, offset, candidate, candidateOffset, length)
+                : HeuristicKernels.weightedEuklid(data, offset, candidate, candidateOffset, w, length);
+    }
+
+    /**
+     * Computes the heuristic between two rows of primitive attribute arrays, but stops as soon as the partial heuristic exceeds the bound.
+     * Subclasses which override the primitive heuristic have to override this method as well.
+     *
+     * @param candidate Candidate attribute array.
+     * @param candidateOffset Offset of the candidate in its array.
+     * @param data Attribute array.
+     * @param offset Offset of the row in the attribute array.
+     * @param length Number of attributes.
+     * @param bound Bound, <code>Float.POSITIVE_INFINITY</code> for the full heuristic.
+     * @return Heuristic if it does not exceed the bound, otherwise a partial heuristic greater than the bound.
+     */
+    public float computeHeuristic(float[] candidate, int candidateOffset, float[] data, int offset, int length, float bound) {
+        return heuristic == Heuristic.Manhatten
+                ? HeuristicKernels.boundedManhatten(data, offset, candidate, candidateOffset, weightValues, length, bound)
+                : HeuristicKernels.boundedEuklid(data, offset, candidate, candidateOffset, weightValues, length, bound);
+    }
+
+    /**
+     * Computes the heuristic between the given candidate and data set, but may stop as soon as the partial heuristic exceeds the bound.
+     * The default implementation computes the full heuristic using {@link #computeHeuristic(DataSet, DataSet)}.
+     *
+     * @param candidate Candidate.
+     * @param ds Data set.
+     * @param bound Bound, <code>Float.POSITIVE_INFINITY</code> for the full heuristic.
+     * @return Heuristic if it does not exceed the bound, otherwise a partial heuristic greater than the bound.
+     */
+    public float computeHeuristic(DataSet<T> candidate, DataSet<T> ds, float bound) {
+        return computeHeuristic(candidate, ds);
+    }
+
+    /**
+     * Computes the share of a single attribute difference in the primitive heuristic. The primitive heuristic is the sum of these shares
+     * over all attributes, hence spatial indices use this method as lower bound for pruning. Subclasses which override the primitive
+     * heuristic have to keep both methods consistent.
+     *
+     * @param attribute Attribute index.
+     * @param diff Difference of the attribute values.
+     * @return Heuristic share.
+     */
+    public float computeHeuristic(int attribute, float diff) {
+        if (weightValues != null) {
+            diff *= weightValues[attribute];
+        }
+        return heuristic == Heuristic.Manhatten ? Math.abs(diff) : diff * diff;
+    }
+
+    /**
+     * Converts a primitive heuristic into a metric distance which satisfies the triangle inequality. The Euklid heuristic is the squared
+     * distance and has to be rooted, the Manhatten heuristic already is a metric. The conversion must be monotonic, so metric indices
+     * find the same neighbours as the heuristic itself.
+     *
+     * @param heuristic Primitive heuristic.
+     * @return Metric distance.
+     */
+    @Override
+    public float toMetric(float heuristic) {
+        return heuristic == Float.POSITIVE_INFINITY || this.heuristic == Heuristic.Manhatten ? heuristic : (float) Math.sqrt(heuristic);
+    }
+
+    @Override
+    public float distance(float[] query, int queryOffset, float[] data, int offset, int length) {
+        return computeHeuristic(query, queryOffset, data, offset, length);
+    }
+
+    @Override
+    public float distance(float[] query, int queryOffset, float[] data, int offset, int length, float bound) {
+        return computeHeuristic(query, queryOffset, data, offset, length, bound);
+    }
+
+    @Override
+    public DistanceFunction reorder(int[] order) {
+        return toDistance().reorder(order);
+    }
+
+    @Override
+    public float distance(int attribute, float diff) {
+        return computeHeuristic(attribute, diff);
+    }
 }
@@ -0,0 +1,346 @@
+package at.fhtw.ai.knn.heuristic;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Distance kernels over primitive attribute arrays. If the incubating <code>jdk.incubator.vector</code> module is available (start the
+ * JVM using <code>--add-modules jdk.incubator.vector</code>) SIMD kernels are used, otherwise the kernels fall back to scalar loops. Set
+ * the system property <code>knn.vector</code> to <code>false</code> to force the scalar kernels.
+ * <p>
+ * All kernels compare <code>length</code> values of <code>a</code> starting at <code>aOffset</code> with the values of <code>b</code>
+ * starting at <code>bOffset</code>. The Euklid kernels return the squared distance.
+ * <p>
+ * The bounded kernels stop accumulating once the partial distance exceeds a bound, e.g. the k-th best distance found so far. Every
+ * {@link #BOUND_CHECK_INTERVAL} attributes the partial distance is compared to the bound. Distances not exceeding the bound are equal to
+ * the result of the unbounded kernels, since the attributes are summed up in the same order.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public final class HeuristicKernels {
+
+    /**
+     * Kernel implementation used.
+     */
+    private static final Kernels KERNELS = loadKernels();
+
+    /**
+     * Number of attributes accumulated by the bounded kernels between two comparisons with the bound.
+     */
+    public static final int BOUND_CHECK_INTERVAL = 16;
+
+    /**
+     * Nobody is allowed to create an instance of the HeuristicKernels class.
+     */
+    private HeuristicKernels() {
+    }
+
+    /**
+     * Loads the vector kernels if possible and the scalar kernels otherwise.
+     *
+     * @return Kernels.
+     */
+    private static Kernels loadKernels() {
+        if (!Boolean.parseBoolean(System.getProperty("knn.vector", "true"))) {
+            return new ScalarKernels();
+        }
+        try {
+            return (Kernels) Class.forName(HeuristicKernels.class.getPackage().getName() + ".VectorKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            Logger.getLogger(HeuristicKernels.class.getName()).log(Level.FINE, "Vector API not available, using scalar kernels", ex);
+            return new ScalarKernels();
+        }
+    }
+
+    /**
+     * Checks if the SIMD kernels are used.
+     *
+     * @return <code>true</code> if vectorized.
+     */
+    public static boolean isVectorized() {
+        return !(KERNELS instanceof ScalarKernels);
+    }
+
+    /**
+     * Computes the squared Euklid distance.
+     *
+     * @param a First array.
+     * @param aOffset Offset in the first array.
+     * @param b Second array.
+     * @param bOffset Offset in the second array.
+     * @param length Number of attributes.
+     * @return Squared distance.
+     */
+    public static float euklid(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNELS.euklid(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the Manhatten distance.
+     *
+     * @param a First array.
+     * @param aOffset Offset in the first array.
+     * @param b Second array.
+     * @param bOffset Offset in the second array.
+     * @param length Number of attributes.
+     * @return Distance.
+     */
+    public static float manhatten(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNELS.manhatten(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the squared Euklid distance where every attribute difference is multiplied by its weight.
+     *
+     * @param a First array.
+     * @param aOffset Offset in the first array.
+     * @param b Second array.
+     * @param bOffset Offset in the second array.
+     * @param weights Weights, starting at index 0.
+     * @param length Number of attributes.
+     * @return Squared distance.
+     */
+    public static float weightedEuklid(float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length) {
+        return KERNELS.weightedEuklid(a, aOffset, b, bOffset, weights, length);
+    }
+
+    /**
+     * Computes the Manhatten distance where every attribute difference is multiplied by its weight.
+     *
+     * @param a First array.
+     * @param aOffset Offset in the first array.
+     * @param b Second array.
+     * @param bOffset Offset in the second array.
+     * @param weights Weights, starting at index 0.
+     * @param length Number of attributes.
+     * @return Distance.
+     */
+    public static float weightedManhatten(float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length) {
+        return KERNELS.weightedManhatten(a, aOffset, b, bOffset, weights, length);
+    }
+
+    /**
+     * Computes the squared Euklid distance, but stops as soon as the partial distance exceeds the bound.
+     *
+     * @param a First array.
+     * @param aOffset Offset in the first array.
+     * @param b Second array.
+     * @param bOffset Offset in the second array.
+     * @param weights Weights, starting at index 0, or <code>null</code>.
+     * @param length Number of attributes.
+     * @param bound Bound.
+     * @return Squared distance if it does not exceed the bound, otherwise a partial distance greater than the bound.
+     */
+    public static float boundedEuklid(float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length, float bound) {
+        return KERNELS.bounded(false, a, aOffset, b, bOffset, weights, length, bound);
+    }
+
+    /**
+     * Computes the Manhatten distance, but stops as soon as the partial distance exceeds the bound.
+     *
+     * @param a First array.
+     * @param aOffset Offset in the first array.
+     * @param b Second array.
+     * @param bOffset Offset in the second array.
+     * @param weights Weights, starting at index 0, or <code>null</code>.
+     * @param length Number of attributes.
+     * @param bound Bound.
+     * @return Distance if it does not exceed the bound, otherwise a partial distance greater than the bound.
+     */
+    public static float boundedManhatten(float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length, float bound) {
+        return KERNELS.bounded(true, a, aOffset, b, bOffset, weights, length, bound);
+    }
+
+    /**
+     * Computes the dot product.
+     *
+     * @param a First array.
+     * @param aOffset Offset in the first array.
+     * @param b Second array.
+     * @param bOffset Offset in the second array.
+     * @param length Number of attributes.
+     * @return Dot product.
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNELS.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the dot products of a query with all rows of a transposed tile. A transposed tile stores the first attribute of all of its
+     * rows, followed by the second attribute of all rows and so on.
+     *
+     * @param query Query array.
+     * @param queryOffset Offset of the query.
+     * @param tile Tile array.
+     * @param tileOffset Offset of the tile.
+     * @param tileRows Number of rows in the tile.
+     * @param length Number of attributes.
+     * @param result Receives the dot product of every row of the tile.
+     */
+    public static void dotTile(float[] query, int queryOffset, float[] tile, int tileOffset, int tileRows, int length, float[] result) {
+        KERNELS.dotTile(query, queryOffset, tile, tileOffset, tileRows, length, result);
+    }
+
+    /**
+     * Computes the squared Euklid distances of a query to all rows of a transposed tile, see
+     * {@link #dotTile(float[], int, float[], int, int, int, float[])}.
+     *
+     * @param query Query array.
+     * @param queryOffset Offset of the query.
+     * @param tile Tile array.
+     * @param tileOffset Offset of the tile.
+     * @param tileRows Number of rows in the tile.
+     * @param weights Weights, starting at index 0, or <code>null</code>.
+     * @param length Number of attributes.
+     * @param result Receives the squared distance of every row of the tile.
+     */
+    public static void euklidTile(float[] query, int queryOffset, float[] tile, int tileOffset, int tileRows, float[] weights, int length, float[] result) {
+        KERNELS.tile(false, query, queryOffset, tile, tileOffset, tileRows, weights, length, result);
+    }
+
+    /**
+     * Computes the Manhatten distances of a query to all rows of a transposed tile, see
+     * {@link #dotTile(float[], int, float[], int, int, int, float[])}.
+     *
+     * @param query Query array.
+     * @param queryOffset Offset of the query.
+     * @param tile Tile array.
+     * @param tileOffset Offset of the tile.
+     * @param tileRows Number of rows in the tile.
+     * @param weights Weights, starting at index 0, or <code>null</code>.
+     * @param length Number of attributes.
+     * @param result Receives the distance of every row of the tile.
+     */
+    public static void manhattenTile(float[] query, int queryOffset, float[] tile, int tileOffset, int tileRows, float[] weights, int length, float[] result) {
+        KERNELS.tile(true, query, queryOffset, tile, tileOffset, tileRows, weights, length, result);
+    }
+
+    /**
+     * A set of distance kernels.
+     */
+    interface Kernels {
+
+        float euklid(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+        float manhatten(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+        float weightedEuklid(float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length);
+
+        float weightedManhatten(float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length);
+
+        float bounded(boolean manhatten, float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length, float bound);
+
+        float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+        void dotTile(float[] query, int queryOffset, float[] tile, int tileOffset, int tileRows, int length, float[] result);
+
+        void tile(boolean manhatten, float[] query, int queryOffset, float[] tile, int tileOffset, int tileRows, float[] weights, int length, float[] result);
+    }
+
+    /**
+     * Scalar kernels which run on every JVM.
+     */
+    static final class ScalarKernels implements Kernels {
+
+        @Override
+        public float euklid(float[] a, int aOffset, float[] b, int bOffset, int length) {
+            float dist = 0.0f;
+            for (int i = 0; i < length; i++) {
+                float diff = a[aOffset + i] - b[bOffset + i];
+                dist += diff * diff;
+            }
+            return dist;
+        }
+
+        @Override
+        public float manhatten(float[] a, int aOffset, float[] b, int bOffset, int length) {
+            float dist = 0.0f;
+            for (int i = 0; i < length; i++) {
+                dist += Math.abs(a[aOffset + i] - b[bOffset + i]);
+            }
+            return dist;
+        }
+
+        @Override
+        public float weightedEuklid(float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length) {
+            float dist = 0.0f;
+            for (int i = 0; i < length; i++) {
+                float diff = (a[aOffset + i] - b[bOffset + i]) * weights[i];
+                dist += diff * diff;
+            }
+            return dist;
+        }
+
+        @Override
+        public float weightedManhatten(float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length) {
+            float dist = 0.0f;
+            for (int i = 0; i < length; i++) {
+                dist += Math.abs((a[aOffset + i] - b[bOffset + i]) * weights[i]);
+            }
+            return dist;
+        }
+
+        @Override
+        public float bounded(boolean manhatten, float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length, float bound) {
+            float dist = 0.0f;
+            for (int i = 0; i < length;) {
+                int end = Math.min(length, i + BOUND_CHECK_INTERVAL);
+                if (manhatten) {
+                    for (; i < end; i++) {
+                        dist += Math.abs(weights == null ? a[aOffset + i] - b[bOffset + i] : (a[aOffset + i] - b[bOffset + i]) * weights[i]);
+                    }
+                } else {
+                    for (; i < end; i++) {
+                        float diff = weights == null ? a[aOffset + i] - b[bOffset + i] : (a[aOffset + i] - b[bOffset + i]) * weights[i];
+                        dist += diff * diff;
+                    }
+                }
+                if (dist > bound) {
+                    return dist;
+                }
+            }
+            return dist;
+        }
+
+        @Override
+        public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+            float sum = 0.0f;
+            for (int i = 0; i < length; i++) {
+                sum += a[aOffset + i] * b[bOffset + i];
+            }
+            return sum;
+        }
+
+        @Override
+        public void dotTile(float[] query, int queryOffset, float[] tile, int tileOffset, int tileRows, int length, float[] result) {
+            Arrays.fill(result, 0, tileRows, 0.0f);
+            for (int a = 0, base = tileOffset; a < length; a++, base += tileRows) {
+                float value = query[queryOffset + a];
+                for (int i = 0; i < tileRows; i++) {
+                    result[i] += value * tile[base + i];
+                }
+            }
+        }
+
+        @Override
+        public void tile(boolean manhatten, float[] query, int queryOffset, float[] tile, int tileOffset, int tileRows, float[] weights, int length, float[] result) {
+            Arrays.fill(result, 0, tileRows, 0.0f);
+            for (int a = 0, base = tileOffset; a < length; a++, base += tileRows) {
+                float value = query[queryOffset + a];
+                float weight = weights == null ? 1.0f : weights[a];
+                if (manhatten) {
+                    for (int i = 0; i < tileRows; i++) {
+                        result[i] += Math.abs((tile[base + i] - value) * weight);
+                    }
+                } else {
+                    for (int i = 0; i < tileRows; i++) {
+                        float diff = (tile[base + i] - value) * weight;
+                        result[i] += diff * diff;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package at.fhtw.ai.knn.heuristic;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD distance kernels based on the incubating Vector API. This class is only loaded by {@link HeuristicKernels} if the
+ * <code>jdk.incubator.vector</code> module is available. Every kernel processes full vectors of the preferred species and the remaining
+ * attributes using scalar code.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+final class VectorKernels implements HeuristicKernels.Kernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    // Number of attributes between two comparisons of the bounded kernel, a multiple of the vector length
+    private static final int CHECK_INTERVAL = Math.max(1, HeuristicKernels.BOUND_CHECK_INTERVAL / SPECIES.length()) * SPECIES.length();
+
+    @Override
+    public float euklid(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            FloatVector diff = FloatVector.fromArray(SPECIES, a, aOffset + i).sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+            sum = diff.fma(diff, sum);
+        }
+
+        float dist = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float diff = a[aOffset + i] - b[bOffset + i];
+            dist += diff * diff;
+        }
+        return dist;
+    }
+
+    @Override
+    public float manhatten(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            sum = sum.add(FloatVector.fromArray(SPECIES, a, aOffset + i).sub(FloatVector.fromArray(SPECIES, b, bOffset + i)).abs());
+        }
+
+        float dist = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            dist += Math.abs(a[aOffset + i] - b[bOffset + i]);
+        }
+        return dist;
+    }
+
+    @Override
+    public float weightedEuklid(float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            FloatVector diff = FloatVector.fromArray(SPECIES, a, aOffset + i).sub(FloatVector.fromArray(SPECIES, b, bOffset + i))
+                    .mul(FloatVector.fromArray(SPECIES, weights, i));
+            sum = diff.fma(diff, sum);
+        }
+
+        float dist = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float diff = (a[aOffset + i] - b[bOffset + i]) * weights[i];
+            dist += diff * diff;
+        }
+        return dist;
+    }
+
+    @Override
+    public float weightedManhatten(float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            sum = sum.add(FloatVector.fromArray(SPECIES, a, aOffset + i).sub(FloatVector.fromArray(SPECIES, b, bOffset + i))
+                    .mul(FloatVector.fromArray(SPECIES, weights, i)).abs());
+        }
+
+        float dist = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            dist += Math.abs((a[aOffset + i] - b[bOffset + i]) * weights[i]);
+        }
+        return dist;
+    }
+
+    /**
+     * Computes a bounded distance. Every {@link #CHECK_INTERVAL} attributes the lanes are reduced and the partial distance is compared to
+     * the bound. The lanes only grow, so a partial distance exceeding the bound proves the distance exceeds it.
+     */
+    @Override
+    public float bounded(boolean manhatten, float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length, float bound) {
+        // Every variant has its own loop, so the vectors stay in registers
+        if (manhatten) {
+            return weights == null
+                    ? boundedManhatten(a, aOffset, b, bOffset, length, bound)
+                    : boundedWeightedManhatten(a, aOffset, b, bOffset, weights, length, bound);
+        }
+        return weights == null
+                ? boundedEuklid(a, aOffset, b, bOffset, length, bound)
+                : boundedWeightedEuklid(a, aOffset, b, bOffset, weights, length, bound);
+    }
+
+    private static float boundedEuklid(float[] a, int aOffset, float[] b, int bOffset, int length, float bound) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int loopBound = SPECIES.loopBound(length); i < loopBound; i += SPECIES.length()) {
+            FloatVector diff = FloatVector.fromArray(SPECIES, a, aOffset + i).sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+            sum = diff.fma(diff, sum);
+            if ((i + SPECIES.length()) % CHECK_INTERVAL == 0) {
+                float partial = sum.reduceLanes(VectorOperators.ADD);
+                if (partial > bound) {
+                    return partial;
+                }
+            }
+        }
+
+        float dist = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float diff = a[aOffset + i] - b[bOffset + i];
+            dist += diff * diff;
+        }
+        return dist;
+    }
+
+    private static float boundedManhatten(float[] a, int aOffset, float[] b, int bOffset, int length, float bound) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int loopBound = SPECIES.loopBound(length); i < loopBound; i += SPECIES.length()) {
+            sum = sum.add(FloatVector.fromArray(SPECIES, a, aOffset + i).sub(FloatVector.fromArray(SPECIES, b, bOffset + i)).abs());
+            if ((i + SPECIES.length()) % CHECK_INTERVAL == 0) {
+                float partial = sum.reduceLanes(VectorOperators.ADD);
+                if (partial > bound) {
+                    return partial;
+                }
+            }
+        }
+
+        float dist = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            dist += Math.abs(a[aOffset + i] - b[bOffset + i]);
+        }
+        return dist;
+    }
+
+    private static float boundedWeightedEuklid(float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length, float bound) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int loopBound = SPECIES.loopBound(length); i < loopBound; i += SPECIES.length()) {
+            FloatVector diff = FloatVector.fromArray(SPECIES, a, aOffset + i).sub(FloatVector.fromArray(SPECIES, b, bOffset + i))
+                    .mul(FloatVector.fromArray(SPECIES, weights, i));
+            sum = diff.fma(diff, sum);
+            if ((i + SPECIES.length()) % CHECK_INTERVAL == 0) {
+                float partial = sum.reduceLanes(VectorOperators.ADD);
+                if (partial > bound) {
+                    return partial;
+                }
+            }
+        }
+
+        float dist = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float diff = (a[aOffset + i] - b[bOffset + i]) * weights[i];
+            dist += diff * diff;
+        }
+        return dist;
+    }
+
+    private static float boundedWeightedManhatten(float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length, float bound) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int loopBound = SPECIES.loopBound(length); i < loopBound; i += SPECIES.length()) {
+            sum = sum.add(FloatVector.fromArray(SPECIES, a, aOffset + i).sub(FloatVector.fromArray(SPECIES, b, bOffset + i))
+                    .mul(FloatVector.fromArray(SPECIES, weights, i)).abs());
+            if ((i + SPECIES.length()) % CHECK_INTERVAL == 0) {
+                float partial = sum.reduceLanes(VectorOperators.ADD);
+                if (partial > bound) {
+                    return partial;
+                }
+            }
+        }
+
+        float dist = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            dist += Math.abs((a[aOffset + i] - b[bOffset + i]) * weights[i]);
+        }
+        return dist;
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            sum = FloatVector.fromArray(SPECIES, a, aOffset + i).fma(FloatVector.fromArray(SPECIES, b, bOffset + i), sum);
+        }
+
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[aOffset + i] * b[bOffset + i];
+        }
+        return result;
+    }
+
+    @Override
+    public void dotTile(float[] query, int queryOffset, float[] tile, int tileOffset, int tileRows, int length, float[] result) {
+        int lanes = SPECIES.length();
+        int i = 0;
+
+        // Keep four vectors of rows in registers while walking through all attributes
+        for (; i + 4 * lanes <= tileRows; i += 4 * lanes) {
+            FloatVector sum0 = FloatVector.zero(SPECIES);
+            FloatVector sum1 = sum0;
+            FloatVector sum2 = sum0;
+            FloatVector sum3 = sum0;
+            for (int a = 0, base = tileOffset + i; a < length; a++, base += tileRows) {
+                FloatVector value = FloatVector.broadcast(SPECIES, query[queryOffset + a]);
+                sum0 = FloatVector.fromArray(SPECIES, tile, base).fma(value, sum0);
+                sum1 = FloatVector.fromArray(SPECIES, tile, base + lanes).fma(value, sum1);
+                sum2 = FloatVector.fromArray(SPECIES, tile, base + 2 * lanes).fma(value, sum2);
+                sum3 = FloatVector.fromArray(SPECIES, tile, base + 3 * lanes).fma(value, sum3);
+            }
+            sum0.intoArray(result, i);
+            sum1.intoArray(result, i + lanes);
+            sum2.intoArray(result, i + 2 * lanes);
+            sum3.intoArray(result, i + 3 * lanes);
+        }
+        for (; i < tileRows; i++) {
+            float sum = 0.0f;
+            for (int a = 0, base = tileOffset + i; a < length; a++, base += tileRows) {
+                sum += query[queryOffset + a] * tile[base];
+            }
+            result[i] = sum;
+        }
+    }
+
+    @Override
+    public void tile(boolean manhatten, float[] query, int queryOffset, float[] tile, int tileOffset, int tileRows, float[] weights, int length, float[] result) {
+        int lanes = SPECIES.length();
+        int i = 0;
+
+        // Keep two vectors of rows in registers while walking through all attributes
+        for (; i + 2 * lanes <= tileRows; i += 2 * lanes) {
+            FloatVector sum0 = FloatVector.zero(SPECIES);
+            FloatVector sum1 = sum0;
+            for (int a = 0, base = tileOffset + i; a < length; a++, base += tileRows) {
+                FloatVector value = FloatVector.broadcast(SPECIES, query[queryOffset + a]);
+                FloatVector diff0 = FloatVector.fromArray(SPECIES, tile, base).sub(value);
+                FloatVector diff1 = FloatVector.fromArray(SPECIES, tile, base + lanes).sub(value);
+                if (weights != null) {
+                    diff0 = diff0.mul(weights[a]);
+                    diff1 = diff1.mul(weights[a]);
+                }
+                if (manhatten) {
+                    sum0 = sum0.add(diff0.abs());
+                    sum1 = sum1.add(diff1.abs());
+                } else {
+                    sum0 = diff0.fma(diff0, sum0);
+                    sum1 = diff1.fma(diff1, sum1);
+                }
+            }
+            sum0.intoArray(result, i);
+            sum1.intoArray(result, i + lanes);
+        }
+        for (; i < tileRows; i++) {
+            float sum = 0.0f;
+            for (int a = 0, base = tileOffset + i; a < length; a++, base += tileRows) {
+                float diff = (tile[base] - query[queryOffset + a]) * (weights == null ? 1.0f : weights[a]);
+                sum += manhatten ? Math.abs(diff) : diff * diff;
+            }
+            result[i] = sum;
+        }
+    }
+}
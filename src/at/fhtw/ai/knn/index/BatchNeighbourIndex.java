@@ -0,0 +1,32 @@
+package at.fhtw.ai.knn.index;
+
+import at.fhtw.ai.knn.TrainingMatrix;
+
+/**
+ * A neighbour index which can search the neighbours of a whole block of candidates at once, which is usually faster than searching them
+ * one by one.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public interface BatchNeighbourIndex extends NeighbourIndex {
+
+    /**
+     * Searches the nearest neighbours of the rows <code>[from; to)</code> of the given query matrix.
+     *
+     * @param queries Query matrix.
+     * @param from First query row (inclusive).
+     * @param to Last query row (exclusive).
+     * @param results One result set per query row, starting at index 0. Every result set will be cleared first.
+     */
+    void search(TrainingMatrix queries, int from, int to, Neighbours[] results);
+
+    /**
+     * Searches the whole block at once using {@link #search(TrainingMatrix, int, int, Neighbours[])}.
+     */
+    @Override
+    default void search(TrainingMatrix queries, int from, int to, Neighbours[] results, BlockConsumer consumer) {
+        search(queries, from, to, results);
+        consumer.accept(queries, from, to, results);
+    }
+}
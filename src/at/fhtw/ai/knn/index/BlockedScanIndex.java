@@ -0,0 +1,231 @@
+package at.fhtw.ai.knn.index;
+
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.Distance;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicKernels;
+import java.util.Arrays;
+
+/**
+ * Brute force neighbour search which compares a block of candidates with a cache sized tile of train rows at a time. Every tile is
+ * loaded into the cache once per block of candidates instead of once per candidate. The tiles are stored transposed, attribute by
+ * attribute, so the {@link HeuristicKernels} accumulate the heuristics of many rows side by side in SIMD registers.
+ * <p>
+ * For the unweighted Euklid heuristic the squared distance is expanded to <code>|a|^2 + |b|^2 - 2 a*b</code>, using precomputed norms of
+ * the train rows, which leaves a single multiply-add per attribute. The rows are centered at their mean first to keep the rounding error
+ * of the expansion small, but the heuristics may still differ from the exact ones in the last digits. All other heuristics are computed
+ * exactly.
+ * <p>
+ * The tile kernels only compute the known heuristics, hence the distance function must be a {@link Distance} or a heuristic computer
+ * whose {@link HeuristicComputer#toDistance()} is one.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class BlockedScanIndex implements BatchNeighbourIndex {
+
+    /**
+     * Size of a train tile in bytes, chosen to fit into the L2 cache.
+     */
+    private static final int TILE_BYTES = 128 * 1024;
+
+    private final TrainingMatrix trainData;
+    private final HeuristicComputer.Heuristic heuristic;
+    private final float[] weights;
+    private final int dimensions;
+    private final int tileRows;
+    private final boolean expand;
+
+    // Transposed tiles, the mean the rows are centered at and the squared norms, the last two only used for the expansion
+    private final float[] tiles;
+    private final float[] mean;
+    private final float[] norms;
+
+    // Centered queries, their norms and the heuristics of one tile, per thread
+    private final ThreadLocal<Scratch> scratches = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch(tileRows);
+        }
+    };
+
+    /**
+     * Creates a new blocked scan over the given training matrix.
+     *
+     * @param trainData Train data matrix.
+     * @param distanceFunction Distance function, a {@link Distance} or a heuristic computer.
+     * @throws IllegalArgumentException If the distance function is not a {@link Distance} and does not convert into one.
+     */
+    public BlockedScanIndex(TrainingMatrix trainData, DistanceFunction distanceFunction) {
+        DistanceFunction distance = distanceFunction instanceof HeuristicComputer
+                ? ((HeuristicComputer<?, ?>) distanceFunction).toDistance()
+                : distanceFunction;
+        if (!(distance instanceof Distance)) {
+            throw new IllegalArgumentException("Distance function " + distanceFunction.getClass().getName() + " is not supported by the blocked scan!");
+        }
+
+        this.trainData = trainData;
+        this.heuristic = ((Distance) distance).getHeuristic();
+        this.dimensions = trainData.getDimensions();
+        this.tileRows = Math.max(64, TILE_BYTES / (4 * dimensions) / 64 * 64);
+        this.weights = ((Distance) distance).getWeights();
+        this.expand = heuristic == HeuristicComputer.Heuristic.Euklid && weights == null;
+
+        int rows = trainData.getRows();
+        float[] row = new float[dimensions];
+        mean = new float[dimensions];
+        norms = new float[rows];
+        if (expand && rows > 0) {
+            double[] sum = new double[dimensions];
+            for (int i = 0; i < rows; i++) {
+                trainData.copyRow(i, row);
+                for (int a = 0; a < dimensions; a++) {
+                    sum[a] += row[a];
+                }
+            }
+            for (int a = 0; a < dimensions; a++) {
+                mean[a] = (float) (sum[a] / rows);
+            }
+        }
+
+        // Copy the (centered) rows into transposed tiles
+        int tileCount = (rows + tileRows - 1) / tileRows;
+        tiles = new float[tileCount * tileRows * dimensions];
+        for (int i = 0; i < rows; i++) {
+            int base = (i / tileRows) * tileRows * dimensions + (i % tileRows);
+            trainData.copyRow(i, row);
+            float norm = 0;
+            for (int a = 0; a < dimensions; a++) {
+                float value = row[a] - mean[a];
+                tiles[base + a * tileRows] = value;
+                norm += value * value;
+            }
+            norms[i] = norm;
+        }
+    }
+
+    @Override
+    public void search(float[] candidate, Neighbours result) {
+        Scratch scratch = scratches.get();
+        scratch.ensureCapacity(1, dimensions);
+        scratch.blockNorms[0] = center(candidate, 0, scratch.block, 0);
+        scratch.results[0] = result;
+        try {
+            search(scratch.block, scratch.blockNorms, 1, scratch.results, scratch.heuristics);
+        } finally {
+            scratch.results[0] = null;
+        }
+    }
+
+    @Override
+    public void search(TrainingMatrix queries, int from, int to, Neighbours[] results) {
+        int count = to - from;
+        Scratch scratch = scratches.get();
+        scratch.ensureCapacity(count, dimensions);
+        float[] block = queries.copyRows(from, count, scratch.block, 0);
+        for (int q = 0, offset = 0; q < count; q++, offset += dimensions) {
+            scratch.blockNorms[q] = center(block, offset, block, offset);
+        }
+        search(block, scratch.blockNorms, count, results, scratch.heuristics);
+    }
+
+    /**
+     * Centers a query at the mean of the train rows.
+     *
+     * @param query Query attributes.
+     * @param queryOffset Offset of the query.
+     * @param target Receives the centered query.
+     * @param targetOffset Offset in the target.
+     * @return Squared norm of the centered query.
+     */
+    private float center(float[] query, int queryOffset, float[] target, int targetOffset) {
+        float norm = 0;
+        for (int a = 0; a < dimensions; a++) {
+            float value = query[queryOffset + a] - mean[a];
+            target[targetOffset + a] = value;
+            norm += value * value;
+        }
+        return norm;
+    }
+
+    /**
+     * Searches the neighbours of a block of centered queries.
+     *
+     * @param block Centered query attributes.
+     * @param blockNorms Squared norms of the centered queries.
+     * @param count Number of queries.
+     * @param results Receives the neighbours of every query.
+     * @param heuristics Receives the heuristics of one tile.
+     */
+    private void search(float[] block, float[] blockNorms, int count, Neighbours[] results, float[] heuristics) {
+        for (int q = 0; q < count; q++) {
+            results[q].clear();
+        }
+
+        int rows = trainData.getRows();
+        for (int tileStart = 0, tileOffset = 0; tileStart < rows; tileStart += tileRows, tileOffset += tileRows * dimensions) {
+            int tileSize = Math.min(rows - tileStart, tileRows);
+            for (int q = 0; q < count; q++) {
+                accumulate(block, q * dimensions, tileOffset, heuristics);
+
+                Neighbours result = results[q];
+                if (expand) {
+                    float queryNorm = blockNorms[q];
+                    for (int i = 0; i < tileSize; i++) {
+                        result.offer(tileStart + i, Math.max(queryNorm + norms[tileStart + i] - 2 * heuristics[i], 0.0f));
+                    }
+                } else {
+                    for (int i = 0; i < tileSize; i++) {
+                        result.offer(tileStart + i, heuristics[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the dot products (expansion) or heuristics of a query with all rows of a tile.
+     *
+     * @param block Query attributes.
+     * @param queryOffset Offset of the query.
+     * @param tileOffset Offset of the tile.
+     * @param heuristics Receives one value per tile row.
+     */
+    private void accumulate(float[] block, int queryOffset, int tileOffset, float[] heuristics) {
+        if (expand) {
+            HeuristicKernels.dotTile(block, queryOffset, tiles, tileOffset, tileRows, dimensions, heuristics);
+        } else if (heuristic == HeuristicComputer.Heuristic.Manhatten) {
+            HeuristicKernels.manhattenTile(block, queryOffset, tiles, tileOffset, tileRows, weights, dimensions, heuristics);
+        } else {
+            HeuristicKernels.euklidTile(block, queryOffset, tiles, tileOffset, tileRows, weights, dimensions, heuristics);
+        }
+    }
+
+    @Override
+    public TrainingMatrix getTrainData() {
+        return trainData;
+    }
+
+    /**
+     * Per thread scratch memory of the search, grown to the biggest block of queries.
+     */
+    private static class Scratch {
+
+        final float[] heuristics;
+        final Neighbours[] results = new Neighbours[1];
+        float[] block = new float[0];
+        float[] blockNorms = new float[0];
+
+        Scratch(int tileRows) {
+            heuristics = new float[tileRows];
+        }
+
+        void ensureCapacity(int queries, int dimensions) {
+            if (blockNorms.length < queries) {
+                blockNorms = Arrays.copyOf(blockNorms, queries);
+                block = new float[queries * dimensions];
+            }
+        }
+    }
+}
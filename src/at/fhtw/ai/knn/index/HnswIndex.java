@@ -0,0 +1,475 @@
+package at.fhtw.ai.knn.index;
+
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * An approximate neighbour index based on a hierarchical navigable small world (HNSW) graph. Every row is linked to its nearest rows on
+ * one or more graph layers, the search descends greedily from the sparse top layer and explores the bottom layer with a bounded beam.
+ * <p>
+ * The accuracy is controlled by three knobs: <code>m</code>, the number of links per row, <code>efConstruction</code>, the beam width
+ * used while building, and {@link #setEfSearch(int)}, the beam width used while searching. Bigger values improve the recall at the cost
+ * of build and query time. Use {@link at.fhtw.ai.knn.analysis.Recall} to measure the recall against an exact index.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class HnswIndex implements NeighbourIndex {
+
+    /**
+     * Default number of links per row and layer.
+     */
+    public static final int DEFAULT_M = 16;
+
+    /**
+     * Default beam width used while building.
+     */
+    public static final int DEFAULT_EF_CONSTRUCTION = 100;
+
+    /**
+     * Default beam width used while searching.
+     */
+    public static final int DEFAULT_EF_SEARCH = 64;
+
+    private final TrainingMatrix trainData;
+    private final DistanceFunction distanceFunction;
+    private final boolean hasArray;
+    private final int m;
+    private final int efConstruction;
+    private final double levelFactor;
+    private volatile int efSearch = DEFAULT_EF_SEARCH;
+
+    // links[row][level][0] contains the number of links, the links follow
+    private final int[][][] links;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private final ThreadLocal<SearchState> searchStates = new ThreadLocal<SearchState>() {
+        @Override
+        protected SearchState initialValue() {
+            return new SearchState(links.length, trainData.getDimensions());
+        }
+    };
+
+    /**
+     * Creates a new HNSW index using the default parameters.
+     *
+     * @param trainData Train data matrix.
+     * @param distanceFunction Distance function, e.g. a heuristic computer.
+     */
+    public HnswIndex(TrainingMatrix trainData, DistanceFunction distanceFunction) {
+        this(trainData, distanceFunction, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, 42);
+    }
+
+    /**
+     * Creates a new HNSW index.
+     *
+     * @param trainData Train data matrix.
+     * @param distanceFunction Distance function, e.g. a heuristic computer.
+     * @param m Number of links per row and layer, the bottom layer uses twice as many.
+     * @param efConstruction Beam width used while building.
+     * @param seed Seed for the random layer assignment.
+     */
+    public HnswIndex(TrainingMatrix trainData, DistanceFunction distanceFunction, int m, int efConstruction, long seed) {
+        if (m < 2) {
+            throw new IllegalArgumentException("M must be at least 2!");
+        }
+        if (efConstruction <= 0) {
+            throw new IllegalArgumentException("Beam width must be positive!");
+        }
+
+        this.trainData = trainData;
+        this.distanceFunction = distanceFunction;
+        this.hasArray = trainData.hasArray();
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.levelFactor = 1.0 / Math.log(m);
+        this.links = new int[trainData.getRows()][][];
+
+        Random random = new Random(seed);
+        SearchState state = searchStates.get();
+        for (int row = 0; row < links.length; row++) {
+            insert(row, (int) (-Math.log(1.0 - random.nextDouble()) * levelFactor), state);
+        }
+    }
+
+    /**
+     * Sets the beam width used while searching. The beam is never smaller than the number of requested neighbours.
+     *
+     * @param efSearch Beam width.
+     */
+    public void setEfSearch(int efSearch) {
+        if (efSearch <= 0) {
+            throw new IllegalArgumentException("Beam width must be positive!");
+        }
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * Returns the beam width used while searching.
+     *
+     * @return Beam width.
+     */
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    /**
+     * Returns the maximum number of links of a row on the given level.
+     */
+    private int maxLinks(int level) {
+        return level == 0 ? 2 * m : m;
+    }
+
+    /**
+     * Inserts the given row into the graph.
+     */
+    private void insert(int row, int level, SearchState state) {
+        links[row] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[row][l] = new int[maxLinks(l) + 1];
+        }
+
+        if (entryPoint < 0) {
+            entryPoint = row;
+            maxLevel = level;
+            return;
+        }
+
+        float[] query = trainData.copyRow(row, state.query);
+        int nearest = entryPoint;
+        float nearestHeuristic = heuristic(query, nearest, state);
+        for (int l = maxLevel; l > level; l--) {
+            nearest = greedySearch(query, nearest, l, state);
+            nearestHeuristic = heuristic(query, nearest, state);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            int count = searchLayer(query, nearest, nearestHeuristic, efConstruction, l, null, state);
+            int selected = selectNeighbours(state.ids, state.heuristics, count, maxLinks(l), state);
+            int[] rowLinks = links[row][l];
+            rowLinks[0] = selected;
+            System.arraycopy(state.ids, 0, rowLinks, 1, selected);
+
+            for (int i = 0; i < selected; i++) {
+                link(state.ids[i], row, state.heuristics[i], l, state);
+            }
+            nearest = state.ids[0];
+            nearestHeuristic = state.heuristics[0];
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = row;
+        }
+    }
+
+    /**
+     * Adds a link from the row <code>from</code> to the row <code>to</code>. If the row already has the maximum number of links, its
+     * links are selected again from all existing links and the new one.
+     */
+    private void link(int from, int to, float heuristic, int level, SearchState state) {
+        int[] rowLinks = links[from][level];
+        int count = rowLinks[0];
+        if (count < rowLinks.length - 1) {
+            rowLinks[count + 1] = to;
+            rowLinks[0] = count + 1;
+            return;
+        }
+
+        // Collect all links sorted by heuristic to the row
+        float[] origin = trainData.copyRow(from, state.other);
+        state.results.clear();
+        state.results.push(-heuristic, to);
+        for (int i = 1; i <= count; i++) {
+            state.results.push(-heuristic(origin, rowLinks[i], state), rowLinks[i]);
+        }
+        int total = drainSorted(state);
+        int selected = selectNeighbours(state.linkIds, state.linkHeuristics, total, count, state);
+        rowLinks[0] = selected;
+        System.arraycopy(state.linkIds, 0, rowLinks, 1, selected);
+    }
+
+    /**
+     * Selects at most <code>max</code> neighbours of the sorted candidates. A candidate is preferred if it is nearer to the origin than to
+     * every neighbour selected so far, which keeps links pointing into different directions. Remaining places are filled with the nearest
+     * skipped candidates. The selection is stored at the front of the given arrays.
+     *
+     * @return Number of selected neighbours.
+     */
+    private int selectNeighbours(int[] ids, float[] heuristics, int count, int max, SearchState state) {
+        if (count <= max) {
+            return count;
+        }
+
+        int selected = 0;
+        int skipped = 0;
+        for (int i = 0; i < count && selected < max; i++) {
+            float[] candidate = trainData.copyRow(ids[i], state.candidate);
+            boolean diverse = true;
+            for (int j = 0; j < selected; j++) {
+                if (heuristic(candidate, ids[j], state) < heuristics[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+
+            if (diverse) {
+                ids[selected] = ids[i];
+                heuristics[selected] = heuristics[i];
+                selected++;
+            } else {
+                state.skippedIds[skipped] = ids[i];
+                state.skippedHeuristics[skipped] = heuristics[i];
+                skipped++;
+            }
+        }
+        for (int i = 0; i < skipped && selected < max; i++) {
+            ids[selected] = state.skippedIds[i];
+            heuristics[selected] = state.skippedHeuristics[i];
+            selected++;
+        }
+        return selected;
+    }
+
+    /**
+     * Greedily walks to the nearest row on the given level.
+     */
+    private int greedySearch(float[] query, int start, int level, SearchState state) {
+        int nearest = start;
+        float nearestHeuristic = heuristic(query, nearest, state);
+        state.evaluations++;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] rowLinks = links[nearest][level];
+            for (int i = 1; i <= rowLinks[0]; i++) {
+                float current = heuristic(query, rowLinks[i], state);
+                state.evaluations++;
+                if (current < nearestHeuristic) {
+                    nearestHeuristic = current;
+                    nearest = rowLinks[i];
+                    changed = true;
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Explores the given level starting at the entry row using a beam of width <code>ef</code>. The found rows are stored sorted by
+     * heuristic in <code>state.ids</code> and <code>state.heuristics</code>.
+     *
+     * @return Number of found rows.
+     */
+    private int searchLayer(float[] query, int entry, float entryHeuristic, int ef, int level, RowFilter filter, SearchState state) {
+        int stamp = state.nextStamp();
+        state.visited[entry] = stamp;
+        state.candidates.clear();
+        state.results.clear();
+        state.candidates.push(entryHeuristic, entry);
+        if (filter == null || filter.accept(entry)) {
+            state.results.push(-entryHeuristic, entry);
+        }
+
+        // Rejected rows are still explored, the search stops early only once the beam is full of accepted rows
+        while (state.candidates.size() > 0) {
+            float current = state.candidates.peekKey();
+            int row = state.candidates.pop();
+            if (state.results.size() > 0 && current > -state.results.peekKey() && (filter == null || state.results.size() >= ef)) {
+                break;
+            }
+
+            int[] rowLinks = links[row][level];
+            for (int i = 1; i <= rowLinks[0]; i++) {
+                int neighbour = rowLinks[i];
+                if (state.visited[neighbour] == stamp) {
+                    continue;
+                }
+                state.visited[neighbour] = stamp;
+
+                float heuristic = heuristic(query, neighbour, state);
+                state.evaluations++;
+                if (state.results.size() < ef || heuristic < -state.results.peekKey()) {
+                    state.candidates.push(heuristic, neighbour);
+                    if (filter == null || filter.accept(neighbour)) {
+                        state.results.push(-heuristic, neighbour);
+                        if (state.results.size() > ef) {
+                            state.results.pop();
+                        }
+                    }
+                }
+            }
+        }
+
+        int count = drainSorted(state);
+        System.arraycopy(state.linkIds, 0, state.ids, 0, count);
+        System.arraycopy(state.linkHeuristics, 0, state.heuristics, 0, count);
+        return count;
+    }
+
+    /**
+     * Empties the result heap into <code>state.linkIds</code> and <code>state.linkHeuristics</code>, sorted by ascending heuristic.
+     *
+     * @return Number of rows.
+     */
+    private int drainSorted(SearchState state) {
+        int count = state.results.size();
+        state.ensureCapacity(count);
+        for (int i = count - 1; i >= 0; i--) {
+            state.linkHeuristics[i] = -state.results.peekKey();
+            state.linkIds[i] = state.results.pop();
+        }
+        return count;
+    }
+
+    /**
+     * Computes the heuristic between the query and a row. Rows of a matrix without array, e.g. a
+     * {@link at.fhtw.ai.knn.MappedTrainingMatrix}, are copied into the scratch row of the search state first.
+     */
+    private float heuristic(float[] query, int row, SearchState state) {
+        if (hasArray) {
+            return distanceFunction.distance(query, trainData.getData(), trainData.offset(row));
+        }
+        return distanceFunction.distance(query, trainData.copyRow(row, state.row), 0);
+    }
+
+    @Override
+    public void search(float[] candidate, Neighbours result) {
+        result.clear();
+        if (entryPoint < 0) {
+            return;
+        }
+
+        SearchState state = searchStates.get();
+        state.evaluations = 1;
+        int nearest = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            nearest = greedySearch(candidate, nearest, l, state);
+        }
+
+        int count = searchLayer(candidate, nearest, heuristic(candidate, nearest, state), Math.max(efSearch, result.capacity()), 0, result.getFilter(), state);
+        for (int i = 0; i < count; i++) {
+            result.offer(state.ids[i], state.heuristics[i]);
+        }
+        result.setEvaluations(state.evaluations);
+    }
+
+    @Override
+    public TrainingMatrix getTrainData() {
+        return trainData;
+    }
+
+    /**
+     * Per thread scratch memory of the graph search.
+     */
+    private static class SearchState {
+
+        final int[] visited;
+        int stamp;
+
+        // Number of distances computed by the current search
+        int evaluations;
+
+        final Heap candidates = new Heap();
+        final Heap results = new Heap();
+
+        final float[] query, other, candidate, row;
+        int[] ids = new int[64], linkIds = new int[64], skippedIds = new int[64];
+        float[] heuristics = new float[64], linkHeuristics = new float[64], skippedHeuristics = new float[64];
+
+        SearchState(int rows, int dimensions) {
+            visited = new int[rows];
+            query = new float[dimensions];
+            other = new float[dimensions];
+            candidate = new float[dimensions];
+            row = new float[dimensions];
+        }
+
+        int nextStamp() {
+            if (++stamp == 0) {
+                Arrays.fill(visited, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (capacity > ids.length) {
+                int newCapacity = Math.max(capacity, ids.length * 2);
+                ids = Arrays.copyOf(ids, newCapacity);
+                linkIds = Arrays.copyOf(linkIds, newCapacity);
+                heuristics = Arrays.copyOf(heuristics, newCapacity);
+                linkHeuristics = Arrays.copyOf(linkHeuristics, newCapacity);
+                skippedIds = Arrays.copyOf(skippedIds, newCapacity);
+                skippedHeuristics = Arrays.copyOf(skippedHeuristics, newCapacity);
+            }
+        }
+    }
+
+    /**
+     * A growable binary min heap of primitive key and value pairs. Max heaps are built by negating the keys.
+     */
+    private static class Heap {
+
+        private float[] keys = new float[64];
+        private int[] values = new int[64];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        float peekKey() {
+            return keys[0];
+        }
+
+        void push(float key, int value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                values[i] = values[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        int pop() {
+            int result = values[0];
+            float key = keys[--size];
+            int value = values[size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (key <= keys[child]) {
+                    break;
+                }
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            values[i] = value;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package at.fhtw.ai.knn.index;
+
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import java.util.Arrays;
+
+/**
+ * A kd-tree for exact nearest neighbour search in low dimensional data. The tree is built once over a training matrix by splitting at the
+ * median of the attribute with the biggest spread. The rows are copied in tree order, so every leaf is one contiguous block of memory.
+ * <p>
+ * Sub trees are pruned using {@link DistanceFunction#distance(int, float)} as lower bound, which makes the search return the same
+ * neighbours as a {@link LinearScanIndex} for every distance which is the sum of its attribute shares, e.g. the Euklid and Manhatten
+ * heuristic, weighted or not. The distance function must not change after the tree was built.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class KdTree implements NeighbourIndex {
+
+    /**
+     * Default maximum number of rows in a leaf.
+     */
+    public static final int DEFAULT_LEAF_SIZE = 16;
+
+    private final TrainingMatrix trainData;
+    private final DistanceFunction distanceFunction;
+    private final int dimensions;
+    private final int leafSize;
+
+    // Rows in tree order and their original row index
+    private final float[] points;
+    private final int[] rowIds;
+
+    // Node data, a split attribute of -1 marks a leaf
+    private int[] splitAttributes;
+    private float[] splitValues;
+    private int[] leftChildren, rightChildren;
+    private int[] from, to;
+    private int nodes;
+
+    /**
+     * Creates a new kd-tree using the default leaf size.
+     *
+     * @param trainData Train data matrix.
+     * @param distanceFunction Distance function, e.g. a heuristic computer.
+     */
+    public KdTree(TrainingMatrix trainData, DistanceFunction distanceFunction) {
+        this(trainData, distanceFunction, DEFAULT_LEAF_SIZE);
+    }
+
+    /**
+     * Creates a new kd-tree.
+     *
+     * @param trainData Train data matrix.
+     * @param distanceFunction Distance function, e.g. a heuristic computer.
+     * @param leafSize Maximum number of rows in a leaf.
+     */
+    public KdTree(TrainingMatrix trainData, DistanceFunction distanceFunction, int leafSize) {
+        if (leafSize <= 0) {
+            throw new IllegalArgumentException("Leaf size must be positive!");
+        }
+
+        this.trainData = trainData;
+        this.distanceFunction = distanceFunction;
+        this.dimensions = trainData.getDimensions();
+        this.leafSize = leafSize;
+
+        int rows = trainData.getRows();
+        int capacity = 2 * (rows / leafSize) + 3;
+        splitAttributes = new int[capacity];
+        splitValues = new float[capacity];
+        leftChildren = new int[capacity];
+        rightChildren = new int[capacity];
+        from = new int[capacity];
+        to = new int[capacity];
+
+        rowIds = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            rowIds[i] = i;
+        }
+        build(0, rows);
+
+        // Copy rows in tree order
+        points = new float[rows * dimensions];
+        for (int i = 0; i < rows; i++) {
+            trainData.copyRow(rowIds[i], points, i * dimensions);
+        }
+    }
+
+    /**
+     * Builds the sub tree of the rows <code>[start; end)</code>.
+     *
+     * @param start First row (inclusive).
+     * @param end Last row (exclusive).
+     * @return Node index.
+     */
+    private int build(int start, int end) {
+        int node = nodes++;
+        ensureCapacity(nodes);
+        from[node] = start;
+        to[node] = end;
+        splitAttributes[node] = -1;
+
+        if (end - start <= leafSize) {
+            return node;
+        }
+
+        // Split at the attribute with the biggest spread
+        int attribute = -1;
+        float biggestSpread = 0;
+        for (int a = 0; a < dimensions; a++) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                float value = trainData.get(rowIds[i], a);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > biggestSpread) {
+                biggestSpread = max - min;
+                attribute = a;
+            }
+        }
+
+        // All rows are equal
+        if (attribute < 0) {
+            return node;
+        }
+
+        int middle = (start + end) >>> 1;
+        select(start, end, middle, attribute);
+        splitAttributes[node] = attribute;
+        splitValues[node] = trainData.get(rowIds[middle], attribute);
+
+        int left = build(start, middle);
+        int right = build(middle, end);
+        leftChildren[node] = left;
+        rightChildren[node] = right;
+        return node;
+    }
+
+    /**
+     * Reorders the rows <code>[start; end)</code> such that the row at position <code>nth</code> has the value it would have when
+     * sorted by the given attribute, all rows before are smaller or equal and all rows after are bigger or equal.
+     */
+    private void select(int start, int end, int nth, int attribute) {
+        int lo = start;
+        int hi = end - 1;
+        while (lo < hi) {
+            float pivot = trainData.get(rowIds[(lo + hi) >>> 1], attribute);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (trainData.get(rowIds[i], attribute) < pivot) {
+                    i++;
+                }
+                while (trainData.get(rowIds[j], attribute) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = rowIds[i];
+                    rowIds[i] = rowIds[j];
+                    rowIds[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (nth <= j) {
+                hi = j;
+            } else if (nth >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Grows the node arrays if needed.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= splitAttributes.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, splitAttributes.length * 2);
+        splitAttributes = Arrays.copyOf(splitAttributes, newCapacity);
+        splitValues = Arrays.copyOf(splitValues, newCapacity);
+        leftChildren = Arrays.copyOf(leftChildren, newCapacity);
+        rightChildren = Arrays.copyOf(rightChildren, newCapacity);
+        from = Arrays.copyOf(from, newCapacity);
+        to = Arrays.copyOf(to, newCapacity);
+    }
+
+    @Override
+    public void search(float[] candidate, Neighbours result) {
+        result.clear();
+        if (rowIds.length > 0) {
+            search(0, candidate, result);
+        }
+    }
+
+    /**
+     * Searches the sub tree of the given node.
+     */
+    private void search(int node, float[] candidate, Neighbours result) {
+        int attribute = splitAttributes[node];
+        if (attribute < 0) {
+            for (int i = from[node], offset = i * dimensions; i < to[node]; i++, offset += dimensions) {
+                result.offer(rowIds[i], distanceFunction.distance(candidate, points, offset, result.worst()));
+            }
+            return;
+        }
+
+        // Visit the near side first, the far side only if it may contain a better row
+        float diff = candidate[attribute] - splitValues[node];
+        search(diff < 0 ? leftChildren[node] : rightChildren[node], candidate, result);
+        if (distanceFunction.distance(attribute, diff) <= result.worst()) {
+            search(diff < 0 ? rightChildren[node] : leftChildren[node], candidate, result);
+        }
+    }
+
+    @Override
+    public TrainingMatrix getTrainData() {
+        return trainData;
+    }
+}
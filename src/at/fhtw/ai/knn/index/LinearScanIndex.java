@@ -0,0 +1,190 @@
+package at.fhtw.ai.knn.index;
+
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Brute force neighbour search which compares the candidate to every row of the training matrix. Matrices which are not backed by an
+ * array, e.g. a {@link at.fhtw.ai.knn.MappedTrainingMatrix}, are streamed through a small per thread buffer a block of rows at a time.
+ * <p>
+ * Once the result set is full, the heuristic of its worst neighbour is passed to the distance function as bound, so rows further away
+ * are rejected after a part of their attributes. Optionally the attributes are reordered by descending variance, which makes the
+ * partial heuristic grow fastest and exceed the bound early. Reordering keeps a reordered copy of the training matrix on the heap.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class LinearScanIndex implements NeighbourIndex {
+
+    /**
+     * Size of the block of rows copied from a matrix without array in bytes.
+     */
+    private static final int BLOCK_BYTES = 64 * 1024;
+
+    private final TrainingMatrix trainData;
+    private final DistanceFunction distanceFunction;
+    private final int blockRows;
+
+    // Attribute order, reordered copy of the rows and distance function over reordered rows, or null without reordering
+    private final int[] order;
+    private final float[] reorderedData;
+    private final DistanceFunction reorderedFunction;
+
+    // Block of rows per thread, only used for matrices without array
+    private final ThreadLocal<float[]> blocks = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            return new float[blockRows * trainData.getDimensions()];
+        }
+    };
+
+    // Reordered candidate per thread, only used with reordering
+    private final ThreadLocal<float[]> candidates = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            return new float[trainData.getDimensions()];
+        }
+    };
+
+    /**
+     * Creates a new linear scan over the given training matrix.
+     *
+     * @param trainData Train data matrix.
+     * @param distanceFunction Distance function, e.g. a heuristic computer.
+     */
+    public LinearScanIndex(TrainingMatrix trainData, DistanceFunction distanceFunction) {
+        this(trainData, distanceFunction, false);
+    }
+
+    /**
+     * Creates a new linear scan over the given training matrix.
+     *
+     * @param trainData Train data matrix.
+     * @param distanceFunction Distance function, e.g. a heuristic computer. It must support {@link DistanceFunction#reorder(int[])}
+     * if the attributes are reordered.
+     * @param reorder Reorder the attributes by descending variance.
+     */
+    public LinearScanIndex(TrainingMatrix trainData, DistanceFunction distanceFunction, boolean reorder) {
+        this.trainData = trainData;
+        this.distanceFunction = distanceFunction;
+        this.blockRows = Math.max(1, BLOCK_BYTES / (4 * trainData.getDimensions()));
+
+        if (!reorder) {
+            order = null;
+            reorderedData = null;
+            reorderedFunction = null;
+            return;
+        }
+        order = varianceOrder(trainData, distanceFunction);
+        reorderedFunction = distanceFunction.reorder(order);
+
+        int dimensions = trainData.getDimensions();
+        reorderedData = new float[trainData.getRows() * dimensions];
+        float[] row = new float[dimensions];
+        for (int i = 0, offset = 0; i < trainData.getRows(); i++, offset += dimensions) {
+            trainData.copyRow(i, row);
+            for (int a = 0; a < dimensions; a++) {
+                reorderedData[offset + a] = row[order[a]];
+            }
+        }
+    }
+
+    /**
+     * Orders the attributes by their expected share in the heuristic, i.e. the share of the standard deviation of the attribute.
+     *
+     * @param trainData Train data matrix.
+     * @param distanceFunction Distance function.
+     * @return Attribute indices ordered by descending share.
+     */
+    private static int[] varianceOrder(TrainingMatrix trainData, DistanceFunction distanceFunction) {
+        int dimensions = trainData.getDimensions();
+        double[] means = new double[dimensions];
+        double[] squares = new double[dimensions];
+        float[] row = new float[dimensions];
+
+        // Welford's online algorithm
+        for (int i = 0; i < trainData.getRows(); i++) {
+            trainData.copyRow(i, row);
+            for (int a = 0; a < dimensions; a++) {
+                double delta = row[a] - means[a];
+                means[a] += delta / (i + 1);
+                squares[a] += delta * (row[a] - means[a]);
+            }
+        }
+
+        Integer[] attributes = new Integer[dimensions];
+        final float[] shares = new float[dimensions];
+        for (int a = 0; a < dimensions; a++) {
+            attributes[a] = a;
+            shares[a] = distanceFunction.distance(a, (float) Math.sqrt(squares[a] / Math.max(1, trainData.getRows())));
+        }
+        Arrays.sort(attributes, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Float.compare(shares[b], shares[a]);
+            }
+        });
+
+        int[] result = new int[dimensions];
+        for (int a = 0; a < dimensions; a++) {
+            result[a] = attributes[a];
+        }
+        return result;
+    }
+
+    @Override
+    public void search(float[] candidate, Neighbours result) {
+        result.clear();
+        if (order != null) {
+            float[] reorderedCandidate = candidates.get();
+            for (int a = 0; a < order.length; a++) {
+                reorderedCandidate[a] = candidate[order[a]];
+            }
+            scan(reorderedCandidate, reorderedData, 0, trainData.getRows(), reorderedFunction, result);
+        } else if (trainData.hasArray()) {
+            scan(candidate, trainData.getData(), 0, trainData.getRows(), distanceFunction, result);
+        } else {
+            searchBlocks(candidate, result);
+        }
+    }
+
+    /**
+     * Compares the candidate to every row, copying a block of rows at a time.
+     */
+    private void searchBlocks(float[] candidate, Neighbours result) {
+        float[] block = blocks.get();
+        int rows = trainData.getRows();
+        for (int start = 0; start < rows; start += blockRows) {
+            int count = Math.min(blockRows, rows - start);
+            trainData.copyRows(start, count, block, 0);
+            scan(candidate, block, start, count, distanceFunction, result);
+        }
+    }
+
+    /**
+     * Compares the candidate to the given rows, which start at index 0 of the data array, bounded by the worst neighbour.
+     *
+     * @param candidate Candidate.
+     * @param data Rows.
+     * @param start Row index of the first row.
+     * @param count Number of rows.
+     * @param function Distance function.
+     * @param result Result set.
+     */
+    private void scan(float[] candidate, float[] data, int start, int count, DistanceFunction function, Neighbours result) {
+        int dimensions = trainData.getDimensions();
+        float bound = result.worst();
+        for (int i = 0, offset = 0; i < count; i++, offset += dimensions) {
+            if (result.offer(start + i, function.distance(candidate, 0, data, offset, dimensions, bound))) {
+                bound = result.worst();
+            }
+        }
+    }
+
+    @Override
+    public TrainingMatrix getTrainData() {
+        return trainData;
+    }
+}
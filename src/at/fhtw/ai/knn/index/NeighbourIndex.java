@@ -0,0 +1,85 @@
+package at.fhtw.ai.knn.index;
+
+import at.fhtw.ai.knn.TrainingMatrix;
+
+/**
+ * A neighbour index finds the nearest rows of a training matrix to a candidate. Implementations must be safe to query from multiple
+ * threads once they are built.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public interface NeighbourIndex {
+
+    /**
+     * Searches the nearest neighbours of the given candidate. The number of neighbours is given by the capacity of the result set.
+     *
+     * @param candidate Candidate attributes.
+     * @param result Result set, will be cleared first.
+     */
+    void search(float[] candidate, Neighbours result);
+
+    /**
+     * Searches the nearest neighbours of the given candidate among the rows accepted by the given filter. Rejected rows are skipped
+     * inside the search, so the index still prunes using the requested number of neighbours.
+     *
+     * @param candidate Candidate attributes.
+     * @param result Result set, will be cleared first.
+     * @param filter Row filter or <code>null</code> to accept every row.
+     */
+    default void search(float[] candidate, Neighbours result, RowFilter filter) {
+        RowFilter previous = result.getFilter();
+        result.setFilter(filter);
+        try {
+            search(candidate, result);
+        } finally {
+            result.setFilter(previous);
+        }
+    }
+
+    /**
+     * Searches the nearest neighbours of the rows <code>[from; to)</code> of the given query matrix and passes the results to the given
+     * consumer. The rows of the training matrix, their class ids and labels do not change until the consumer returns, hence it can
+     * resolve the found rows, e.g. to vote. Indices whose training matrix changes have to override this method, the default
+     * implementation searches the queries one by one.
+     *
+     * @param queries Query matrix.
+     * @param from First query row (inclusive).
+     * @param to Last query row (exclusive).
+     * @param results One result set per query row, starting at index 0. Every result set will be cleared first.
+     * @param consumer Consumer of the results.
+     */
+    default void search(TrainingMatrix queries, int from, int to, Neighbours[] results, BlockConsumer consumer) {
+        float[] candidate = new float[queries.getDimensions()];
+        for (int row = from; row < to; row++) {
+            search(queries.copyRow(row, candidate), results[row - from]);
+        }
+        consumer.accept(queries, from, to, results);
+    }
+
+    /**
+     * Returns the indexed training matrix.
+     *
+     * @return Training matrix.
+     */
+    TrainingMatrix getTrainData();
+
+    /**
+     * Consumer of the neighbours of a block of queries.
+     *
+     * @author Daniel Kleebinder
+     * @since 0.2
+     */
+    interface BlockConsumer {
+
+        /**
+         * Receives the neighbours of the rows <code>[from; to)</code> of the given query matrix.
+         *
+         * @param queries Query matrix.
+         * @param from First query row (inclusive).
+         * @param to Last query row (exclusive).
+         * @param results One result set per query row, starting at index 0.
+         */
+        void accept(TrainingMatrix queries, int from, int to, Neighbours[] results);
+    }
+}
@@ -0,0 +1,275 @@
+package at.fhtw.ai.knn.index;
+
+import java.util.Arrays;
+
+/**
+ * A bounded, reusable result set of the nearest neighbours of a candidate. It keeps the row indices and heuristics of the best
+ * {@link #capacity()} rows offered to it in two parallel primitive arrays organized as a max heap, so offering a row costs
+ * <code>O(log k)</code> and never allocates. Rows with the same heuristic are ordered by their row index, which makes the result
+ * independent of the order in which rows are offered.
+ * <p>
+ * The neighbours are kept in heap order. Call {@link #sort()} to order them by ascending heuristic.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class Neighbours {
+
+    /**
+     * Row indices in heap order.
+     */
+    private final int[] indices;
+
+    /**
+     * Heuristics in heap order.
+     */
+    private final float[] heuristics;
+
+    /**
+     * Number of neighbours in use.
+     */
+    private int size;
+
+    /**
+     * If the arrays are sorted ascending instead of being a max heap.
+     */
+    private boolean sorted;
+
+    /**
+     * Number of rows offered since the last clear.
+     */
+    private int evaluations;
+
+    /**
+     * Filter of the offered rows or <code>null</code> to accept every row.
+     */
+    private RowFilter filter;
+
+    /**
+     * Creates a new neighbour result set.
+     *
+     * @param capacity Maximum number of neighbours.
+     */
+    public Neighbours(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive!");
+        }
+        indices = new int[capacity];
+        heuristics = new float[capacity];
+    }
+
+    /**
+     * Removes all neighbours.
+     */
+    public void clear() {
+        size = 0;
+        sorted = false;
+        evaluations = 0;
+    }
+
+    /**
+     * Offers a row to the result set. The row is kept if it is accepted by the filter and the result set is not full yet or the row is
+     * better than the worst neighbour.
+     *
+     * @param index Row index.
+     * @param heuristic Heuristic of the row.
+     * @return <code>true</code> if the row was added.
+     */
+    public boolean offer(int index, float heuristic) {
+        evaluations++;
+        if (filter != null && !filter.accept(index)) {
+            return false;
+        }
+        if (sorted) {
+            reverse();
+        }
+
+        if (size < indices.length) {
+            siftUp(size++, index, heuristic);
+            return true;
+        }
+        if (!isBetter(index, heuristic, indices[0], heuristics[0])) {
+            return false;
+        }
+        siftDown(0, size, index, heuristic);
+        return true;
+    }
+
+    /**
+     * Orders the neighbours by ascending heuristic. Offering another row restores the heap order.
+     */
+    public void sort() {
+        if (sorted) {
+            return;
+        }
+        for (int end = size - 1; end > 0; end--) {
+            int index = indices[end];
+            float heuristic = heuristics[end];
+            indices[end] = indices[0];
+            heuristics[end] = heuristics[0];
+            siftDown(0, end, index, heuristic);
+        }
+        sorted = true;
+    }
+
+    /**
+     * Reverses the ascending order, which turns it into a valid max heap.
+     */
+    private void reverse() {
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            int index = indices[i];
+            indices[i] = indices[j];
+            indices[j] = index;
+            float heuristic = heuristics[i];
+            heuristics[i] = heuristics[j];
+            heuristics[j] = heuristic;
+        }
+        sorted = false;
+    }
+
+    /**
+     * Moves the given row up from position <code>i</code> until its parent is worse.
+     */
+    private void siftUp(int i, int index, float heuristic) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!isBetter(indices[parent], heuristics[parent], index, heuristic)) {
+                break;
+            }
+            indices[i] = indices[parent];
+            heuristics[i] = heuristics[parent];
+            i = parent;
+        }
+        indices[i] = index;
+        heuristics[i] = heuristic;
+    }
+
+    /**
+     * Moves the given row down from position <code>i</code> until both children within <code>[0; end)</code> are better.
+     */
+    private void siftDown(int i, int end, int index, float heuristic) {
+        int half = end >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < end && isBetter(indices[child], heuristics[child], indices[child + 1], heuristics[child + 1])) {
+                child++;
+            }
+            if (!isBetter(index, heuristic, indices[child], heuristics[child])) {
+                break;
+            }
+            indices[i] = indices[child];
+            heuristics[i] = heuristics[child];
+            i = child;
+        }
+        indices[i] = index;
+        heuristics[i] = heuristic;
+    }
+
+    /**
+     * Checks if the first row is ordered before the second row.
+     */
+    private static boolean isBetter(int index1, float heuristic1, int index2, float heuristic2) {
+        return heuristic1 < heuristic2 || (heuristic1 == heuristic2 && index1 < index2);
+    }
+
+    /**
+     * Returns the heuristic a row must not exceed to be added. This is positive infinity as long as the result set is not full.
+     *
+     * @return Worst accepted heuristic.
+     */
+    public float worst() {
+        if (size < indices.length) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return sorted ? heuristics[size - 1] : heuristics[0];
+    }
+
+    /**
+     * Returns the row index of the neighbour at the given position.
+     *
+     * @param i Position.
+     * @return Row index.
+     */
+    public int getIndex(int i) {
+        return indices[i];
+    }
+
+    /**
+     * Returns the heuristic of the neighbour at the given position.
+     *
+     * @param i Position.
+     * @return Heuristic.
+     */
+    public float getHeuristic(int i) {
+        return heuristics[i];
+    }
+
+    /**
+     * Returns the number of neighbours.
+     *
+     * @return Size.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the maximum number of neighbours.
+     *
+     * @return Capacity.
+     */
+    public int capacity() {
+        return indices.length;
+    }
+
+    /**
+     * Checks if the result set holds {@link #capacity()} neighbours.
+     *
+     * @return <code>true</code> if full.
+     */
+    public boolean isFull() {
+        return size == indices.length;
+    }
+
+    /**
+     * Returns the number of distances computed to find the neighbours. Every offered row counts as one evaluation, indices computing
+     * distances of rows they do not offer report their count using {@link #setEvaluations(int)}.
+     *
+     * @return Number of distance evaluations since the last clear.
+     */
+    public int getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Sets the number of distances computed to find the neighbours.
+     *
+     * @param evaluations Number of distance evaluations.
+     */
+    public void setEvaluations(int evaluations) {
+        this.evaluations = evaluations;
+    }
+
+    /**
+     * Sets the filter of the offered rows. The filter is kept when the result set is cleared.
+     *
+     * @param filter Row filter or <code>null</code> to accept every row.
+     */
+    public void setFilter(RowFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the filter of the offered rows.
+     *
+     * @return Row filter or <code>null</code> if every row is accepted.
+     */
+    public RowFilter getFilter() {
+        return filter;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(Arrays.copyOf(indices, size)) + " " + Arrays.toString(Arrays.copyOf(heuristics, size));
+    }
+}
@@ -0,0 +1,241 @@
+package at.fhtw.ai.knn.index;
+
+import at.fhtw.ai.knn.QuantizedTrainingMatrix;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.Distance;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicKernels;
+
+/**
+ * Brute force neighbour search over a {@link QuantizedTrainingMatrix}. The heuristic of a {@link Distance}, or of a heuristic computer
+ * which converts into one, is computed directly on the codes, so every row is read at two or four times less memory bandwidth than a
+ * {@link LinearScanIndex} needs. Other distance functions compare decoded rows.
+ * <p>
+ * The heuristics of the codes are approximate, the nearest neighbours may differ from those of the full precision rows. Optionally the
+ * scan collects a larger set of candidates which are re-ranked using the full precision training matrix, e.g. a
+ * {@link at.fhtw.ai.knn.MappedTrainingMatrix} which does not occupy the heap. The result then contains exact heuristics.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class QuantizedScanIndex implements NeighbourIndex {
+
+    private final QuantizedTrainingMatrix trainData;
+    private final DistanceFunction distanceFunction;
+    private final int dimensions;
+
+    // Heuristic and weight times scale of every attribute if the codes are compared directly, otherwise null
+    private final HeuristicComputer.Heuristic heuristic;
+    private final float[] weights;
+    private final float[] codeWeights;
+    private final float[] offsets;
+
+    // Full precision rows and number of candidates to re-rank, or null
+    private final TrainingMatrix exactData;
+    private final int candidates;
+
+    // Query transformed for the comparison with the codes or a decoded row, per thread
+    private final ThreadLocal<float[]> queries = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            return new float[dimensions];
+        }
+    };
+
+    // Candidates to re-rank and a full precision row, per thread
+    private final ThreadLocal<Neighbours> coarseResults = new ThreadLocal<>();
+    private final ThreadLocal<float[]> rows = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            return new float[dimensions];
+        }
+    };
+
+    /**
+     * Creates a new scan over the codes without re-ranking, the heuristics of the result are approximate.
+     *
+     * @param trainData Quantized train data matrix.
+     * @param distanceFunction Distance function, e.g. a heuristic computer.
+     */
+    public QuantizedScanIndex(QuantizedTrainingMatrix trainData, DistanceFunction distanceFunction) {
+        this(trainData, distanceFunction, null, 0);
+    }
+
+    /**
+     * Creates a new scan over the codes which re-ranks the best candidates at full precision.
+     *
+     * @param trainData Quantized train data matrix.
+     * @param distanceFunction Distance function, e.g. a heuristic computer.
+     * @param exactData Full precision train data matrix with the same rows or <code>null</code> to skip re-ranking.
+     * @param candidates Number of candidates re-ranked, at least the number of requested neighbours are.
+     */
+    public QuantizedScanIndex(QuantizedTrainingMatrix trainData, DistanceFunction distanceFunction, TrainingMatrix exactData, int candidates) {
+        if (exactData != null && (exactData.getRows() != trainData.getRows() || exactData.getDimensions() != trainData.getDimensions())) {
+            throw new IllegalArgumentException("Full precision train data does not match the quantized train data!");
+        }
+        if (candidates < 0) {
+            throw new IllegalArgumentException("Number of candidates must not be negative!");
+        }
+        this.trainData = trainData;
+        this.distanceFunction = distanceFunction;
+        this.dimensions = trainData.getDimensions();
+        this.exactData = exactData;
+        this.candidates = candidates;
+
+        // Only the known heuristics can be computed on the codes
+        DistanceFunction distance = distanceFunction instanceof HeuristicComputer
+                ? ((HeuristicComputer) distanceFunction).toDistance()
+                : distanceFunction;
+        if (!(distance instanceof Distance)) {
+            heuristic = null;
+            weights = null;
+            codeWeights = null;
+            offsets = null;
+            return;
+        }
+        heuristic = ((Distance) distance).getHeuristic();
+        float[] w = ((Distance) distance).getWeights();
+        weights = new float[dimensions];
+        codeWeights = new float[dimensions];
+        float[] scales = trainData.getScales();
+        for (int a = 0; a < dimensions; a++) {
+            weights[a] = w != null ? w[a] : 1;
+            codeWeights[a] = scales != null ? weights[a] * scales[a] : weights[a];
+        }
+        offsets = trainData.getOffsets();
+    }
+
+    @Override
+    public void search(float[] candidate, Neighbours result) {
+        if (exactData == null) {
+            scan(candidate, result);
+            return;
+        }
+
+        Neighbours coarse = coarseResults.get();
+        int capacity = Math.max(candidates, result.capacity());
+        if (coarse == null || coarse.capacity() != capacity) {
+            coarse = new Neighbours(capacity);
+            coarseResults.set(coarse);
+        }
+        coarse.setFilter(result.getFilter());
+        scan(candidate, coarse);
+
+        // Re-rank the candidates using the full precision rows
+        result.clear();
+        float[] row = exactData.hasArray() ? null : rows.get();
+        for (int i = 0; i < coarse.size(); i++) {
+            int index = coarse.getIndex(i);
+            float heuristic = row == null
+                    ? distanceFunction.distance(candidate, 0, exactData.getData(), exactData.offset(index), dimensions, result.worst())
+                    : distanceFunction.distance(candidate, 0, exactData.copyRow(index, row), 0, dimensions, result.worst());
+            result.offer(index, heuristic);
+        }
+        result.setEvaluations(coarse.getEvaluations() + coarse.size());
+    }
+
+    /**
+     * Compares the candidate to every row of the quantized matrix.
+     */
+    private void scan(float[] candidate, Neighbours result) {
+        result.clear();
+        if (heuristic == null) {
+            scanDecoded(candidate, result);
+            return;
+        }
+
+        // Every attribute difference is weight * (candidate - offset) - weight * scale * code
+        float[] query = queries.get();
+        for (int a = 0; a < dimensions; a++) {
+            query[a] = weights[a] * (offsets != null ? candidate[a] - offsets[a] : candidate[a]);
+        }
+
+        boolean manhatten = heuristic == HeuristicComputer.Heuristic.Manhatten;
+        float bound = result.worst();
+        int rowCount = trainData.getRows();
+        if (trainData.getEncoding() == QuantizedTrainingMatrix.Encoding.FLOAT16) {
+            short[] halves = trainData.getHalves();
+            for (int i = 0, offset = 0; i < rowCount; i++, offset += dimensions) {
+                if (result.offer(i, halfDistance(manhatten, query, codeWeights, halves, offset, dimensions, bound))) {
+                    bound = result.worst();
+                }
+            }
+        } else {
+            byte[] codes = trainData.getCodes();
+            for (int i = 0, offset = 0; i < rowCount; i++, offset += dimensions) {
+                if (result.offer(i, codeDistance(manhatten, query, codeWeights, codes, offset, dimensions, bound))) {
+                    bound = result.worst();
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the candidate to every decoded row, used by distance functions which cannot be computed on the codes.
+     */
+    private void scanDecoded(float[] candidate, Neighbours result) {
+        float[] row = queries.get();
+        float bound = result.worst();
+        for (int i = 0; i < trainData.getRows(); i++) {
+            if (result.offer(i, distanceFunction.distance(candidate, 0, trainData.copyRow(i, row), 0, dimensions, bound))) {
+                bound = result.worst();
+            }
+        }
+    }
+
+    /**
+     * Computes the heuristic between a transformed query and a row of half precision floats, but stops as soon as the partial heuristic
+     * exceeds the bound.
+     */
+    private static float halfDistance(boolean manhatten, float[] query, float[] weights, short[] halves, int offset, int length, float bound) {
+        float dist = 0;
+        for (int start = 0; start < length; start += HeuristicKernels.BOUND_CHECK_INTERVAL) {
+            int end = Math.min(length, start + HeuristicKernels.BOUND_CHECK_INTERVAL);
+            if (manhatten) {
+                for (int a = start; a < end; a++) {
+                    dist += Math.abs(query[a] - weights[a] * QuantizedTrainingMatrix.halfValue(halves[offset + a]));
+                }
+            } else {
+                for (int a = start; a < end; a++) {
+                    float diff = query[a] - weights[a] * QuantizedTrainingMatrix.halfValue(halves[offset + a]);
+                    dist += diff * diff;
+                }
+            }
+            if (dist > bound) {
+                return dist;
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Computes the heuristic between a transformed query and a row of 8 bit codes, but stops as soon as the partial heuristic exceeds
+     * the bound.
+     */
+    private static float codeDistance(boolean manhatten, float[] query, float[] weights, byte[] codes, int offset, int length, float bound) {
+        float dist = 0;
+        for (int start = 0; start < length; start += HeuristicKernels.BOUND_CHECK_INTERVAL) {
+            int end = Math.min(length, start + HeuristicKernels.BOUND_CHECK_INTERVAL);
+            if (manhatten) {
+                for (int a = start; a < end; a++) {
+                    dist += Math.abs(query[a] - weights[a] * (codes[offset + a] & 0xFF));
+                }
+            } else {
+                for (int a = start; a < end; a++) {
+                    float diff = query[a] - weights[a] * (codes[offset + a] & 0xFF);
+                    dist += diff * diff;
+                }
+            }
+            if (dist > bound) {
+                return dist;
+            }
+        }
+        return dist;
+    }
+
+    @Override
+    public TrainingMatrix getTrainData() {
+        return trainData;
+    }
+}
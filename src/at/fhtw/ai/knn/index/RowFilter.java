@@ -0,0 +1,20 @@
+package at.fhtw.ai.knn.index;
+
+/**
+ * Decides which rows of a training matrix may be returned as neighbours. A filter is attached to a result set using
+ * {@link Neighbours#setFilter(RowFilter)}, rejected rows are never added, hence indices keep pruning with the full number of
+ * neighbours instead of searching more of them.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public interface RowFilter {
+
+    /**
+     * Checks if the given row may be returned as neighbour.
+     *
+     * @param row Row index.
+     * @return <code>true</code> if the row is accepted.
+     */
+    boolean accept(int row);
+}
@@ -0,0 +1,247 @@
+package at.fhtw.ai.knn.index;
+
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A vantage point tree for exact nearest neighbour search in high dimensional data. Every node picks a vantage point and splits its rows
+ * at the median distance to it. Sub trees are pruned using the triangle inequality on the metric given by
+ * {@link DistanceFunction#toMetric(float)}, which works for every heuristic whose metric is a true distance, independent of the number
+ * of dimensions. The rows are copied in tree order, so every leaf is one contiguous block of memory.
+ * <p>
+ * The search returns the same neighbours as a {@link LinearScanIndex}. The distance function must not change after the tree was built.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class VpTree implements NeighbourIndex {
+
+    /**
+     * Default maximum number of rows in a leaf.
+     */
+    public static final int DEFAULT_LEAF_SIZE = 16;
+
+    /**
+     * Relative slack added to the pruning radius to compensate rounding errors of the metric.
+     */
+    private static final float SLACK = 1e-5f;
+
+    private final TrainingMatrix trainData;
+    private final DistanceFunction distanceFunction;
+    private final int dimensions;
+    private final int leafSize;
+
+    // Rows in tree order and their original row index
+    private final float[] points;
+    private final int[] rowIds;
+
+    // Node data, the vantage point of a node is the first row of its range, a radius of -1 marks a leaf
+    private float[] radii;
+    private int[] insideChildren, outsideChildren;
+    private int[] from, to;
+    private int nodes;
+
+    /**
+     * Creates a new vantage point tree using the default leaf size.
+     *
+     * @param trainData Train data matrix.
+     * @param distanceFunction Distance function, e.g. a heuristic computer.
+     */
+    public VpTree(TrainingMatrix trainData, DistanceFunction distanceFunction) {
+        this(trainData, distanceFunction, DEFAULT_LEAF_SIZE);
+    }
+
+    /**
+     * Creates a new vantage point tree.
+     *
+     * @param trainData Train data matrix.
+     * @param distanceFunction Distance function, e.g. a heuristic computer.
+     * @param leafSize Maximum number of rows in a leaf.
+     */
+    public VpTree(TrainingMatrix trainData, DistanceFunction distanceFunction, int leafSize) {
+        if (leafSize <= 0) {
+            throw new IllegalArgumentException("Leaf size must be positive!");
+        }
+
+        this.trainData = trainData;
+        this.distanceFunction = distanceFunction;
+        this.dimensions = trainData.getDimensions();
+        this.leafSize = leafSize;
+
+        int rows = trainData.getRows();
+        int capacity = 2 * (rows / leafSize) + 3;
+        radii = new float[capacity];
+        insideChildren = new int[capacity];
+        outsideChildren = new int[capacity];
+        from = new int[capacity];
+        to = new int[capacity];
+
+        rowIds = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            rowIds[i] = i;
+        }
+        build(0, rows, new float[rows], new float[dimensions], new float[dimensions], new Random(rows));
+
+        // Copy rows in tree order
+        points = new float[rows * dimensions];
+        for (int i = 0; i < rows; i++) {
+            trainData.copyRow(rowIds[i], points, i * dimensions);
+        }
+    }
+
+    /**
+     * Builds the sub tree of the rows <code>[start; end)</code>.
+     *
+     * @param start First row (inclusive).
+     * @param end Last row (exclusive).
+     * @param distances Scratch array for the metric distances.
+     * @param vantagePoint Scratch array for the vantage point attributes.
+     * @param row Scratch array for the attributes of the other rows.
+     * @param random Random used to pick vantage points.
+     * @return Node index.
+     */
+    private int build(int start, int end, float[] distances, float[] vantagePoint, float[] row, Random random) {
+        int node = nodes++;
+        ensureCapacity(nodes);
+        from[node] = start;
+        to[node] = end;
+        radii[node] = -1;
+
+        if (end - start <= leafSize) {
+            return node;
+        }
+
+        // Move a random vantage point to the front and compute the distances to it
+        swap(start, start + random.nextInt(end - start), distances);
+        trainData.copyRow(rowIds[start], vantagePoint);
+        for (int i = start + 1; i < end; i++) {
+            distances[i] = distanceFunction.toMetric(distanceFunction.distance(vantagePoint, trainData.copyRow(rowIds[i], row), 0));
+        }
+
+        // Rows up to the median distance are inside, all others outside
+        int middle = (start + 1 + end) >>> 1;
+        select(start + 1, end, middle, distances);
+        radii[node] = distances[middle];
+
+        int inside = build(start + 1, middle + 1, distances, vantagePoint, row, random);
+        int outside = build(middle + 1, end, distances, vantagePoint, row, random);
+        insideChildren[node] = inside;
+        outsideChildren[node] = outside;
+        return node;
+    }
+
+    /**
+     * Reorders the rows <code>[start; end)</code> such that the row at position <code>nth</code> has the distance it would have when
+     * sorted by distance, all rows before are nearer or equal and all rows after are farther or equal.
+     */
+    private void select(int start, int end, int nth, float[] distances) {
+        int lo = start;
+        int hi = end - 1;
+        while (lo < hi) {
+            float pivot = distances[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (distances[i] < pivot) {
+                    i++;
+                }
+                while (distances[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j, distances);
+                    i++;
+                    j--;
+                }
+            }
+            if (nth <= j) {
+                hi = j;
+            } else if (nth >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Swaps two rows and their distances.
+     */
+    private void swap(int i, int j, float[] distances) {
+        int row = rowIds[i];
+        rowIds[i] = rowIds[j];
+        rowIds[j] = row;
+        float distance = distances[i];
+        distances[i] = distances[j];
+        distances[j] = distance;
+    }
+
+    /**
+     * Grows the node arrays if needed.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= radii.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, radii.length * 2);
+        radii = Arrays.copyOf(radii, newCapacity);
+        insideChildren = Arrays.copyOf(insideChildren, newCapacity);
+        outsideChildren = Arrays.copyOf(outsideChildren, newCapacity);
+        from = Arrays.copyOf(from, newCapacity);
+        to = Arrays.copyOf(to, newCapacity);
+    }
+
+    @Override
+    public void search(float[] candidate, Neighbours result) {
+        result.clear();
+        if (rowIds.length > 0) {
+            search(0, candidate, result);
+        }
+    }
+
+    /**
+     * Searches the sub tree of the given node.
+     */
+    private void search(int node, float[] candidate, Neighbours result) {
+        int start = from[node];
+        float radius = radii[node];
+        if (radius < 0) {
+            for (int i = start, offset = i * dimensions; i < to[node]; i++, offset += dimensions) {
+                result.offer(rowIds[i], distanceFunction.distance(candidate, points, offset, result.worst()));
+            }
+            return;
+        }
+
+        float heuristic = distanceFunction.distance(candidate, points, start * dimensions);
+        result.offer(rowIds[start], heuristic);
+        float distance = distanceFunction.toMetric(heuristic);
+
+        // Visit the side of the candidate first, the other side only if the search ball crosses the median
+        if (distance < radius) {
+            search(insideChildren[node], candidate, result);
+            if (distance + tau(result) >= radius) {
+                search(outsideChildren[node], candidate, result);
+            }
+        } else {
+            search(outsideChildren[node], candidate, result);
+            if (distance - tau(result) <= radius) {
+                search(insideChildren[node], candidate, result);
+            }
+        }
+    }
+
+    /**
+     * Returns the metric search radius of the current result set.
+     */
+    private float tau(Neighbours result) {
+        float tau = distanceFunction.toMetric(result.worst());
+        return tau + tau * SLACK + Float.MIN_NORMAL;
+    }
+
+    @Override
+    public TrainingMatrix getTrainData() {
+        return trainData;
+    }
+}
@@ -0,0 +1,93 @@
+package at.fhtw.ai.knn.metrics;
+
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+
+/**
+ * Receives timings and counters of the prediction pipeline. Implementations bind the measurements to a metrics backend, e.g.
+ * {@link RecordingInstrumentation} keeps them in histograms. All methods are no-ops by default, so implementations only override what
+ * they need. Implementations must be thread safe, since parallel predictions report from every worker thread.
+ * <p>
+ * The pipeline only reads the clock if {@link #isEnabled()} returns <code>true</code>, hence {@link #NONE} costs nothing.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public interface Instrumentation {
+
+    /**
+     * Stages of the prediction pipeline.
+     */
+    public static enum Stage {
+
+        /**
+         * Loading and encoding the data, e.g. reading a CSV file or splitting the data into folds.
+         */
+        INGEST,
+        /**
+         * Building a neighbour index.
+         */
+        INDEX_BUILD,
+        /**
+         * Searching the nearest neighbours. The distance scan and the top-k selection run in a single pass, hence they are measured
+         * together.
+         */
+        SEARCH,
+        /**
+         * Voting the class of a candidate from its neighbours.
+         */
+        VOTING,
+        /**
+         * Updating the confusion matrix with a prediction.
+         */
+        MATRIX_UPDATE
+    }
+
+    /**
+     * Ignores all measurements.
+     */
+    public static final Instrumentation NONE = new Instrumentation() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * Returns if measurements should be taken at all.
+     *
+     * @return <code>true</code> if enabled.
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Records the time spent in a stage. Per query stages are recorded once per query, or once per block of queries searched by a
+     * {@link at.fhtw.ai.knn.index.BatchNeighbourIndex}.
+     *
+     * @param stage Stage.
+     * @param nanos Elapsed time in nanoseconds.
+     */
+    default void recordStage(Stage stage, long nanos) {
+    }
+
+    /**
+     * Records a predicted query. Queries searched as a block by a {@link at.fhtw.ai.knn.index.BatchNeighbourIndex} share the latency of
+     * the block evenly.
+     *
+     * @param nanos Latency of the query in nanoseconds.
+     * @param distanceEvaluations Number of distances computed to search the query.
+     */
+    default void recordQuery(long nanos, int distanceEvaluations) {
+    }
+
+    /**
+     * Records a completed fold of a k-fold cross validation.
+     *
+     * @param fold Completed fold (zero based).
+     * @param folds Number of folds.
+     * @param confusionMatrix Confusion matrix of the fold.
+     */
+    default void recordFold(int fold, int folds, ConfusionMatrix confusionMatrix) {
+    }
+}
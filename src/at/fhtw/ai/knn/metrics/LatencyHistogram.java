@@ -0,0 +1,178 @@
+package at.fhtw.ai.knn.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of non negative long values, e.g. latencies in nanoseconds. Like a HDR histogram, values are counted in
+ * buckets whose width grows with the magnitude of the value: every power of two is split into {@link #SUB_BUCKETS} equally wide
+ * buckets, which keeps the relative error of every reported value below <code>1 / SUB_BUCKETS</code> (about 3%) over the whole
+ * range of long, using a fixed 15 KB of memory.
+ * <p>
+ * Recording is wait free and may be done by any number of threads concurrently.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of bits used to split a power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * Number of buckets per power of two.
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of buckets covering all non negative long values.
+     */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     *
+     * @param value Value.
+     */
+    public void record(long value) {
+        value = Math.max(value, 0);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Adds all values of the other histogram to this histogram.
+     *
+     * @param other Other histogram.
+     */
+    public void add(LatencyHistogram other) {
+        if (other == null) {
+            throw new NullPointerException("The other histogram is null!");
+        }
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucketCount = other.counts.get(i);
+            if (bucketCount != 0) {
+                counts.addAndGet(i, bucketCount);
+            }
+        }
+        count.addAndGet(other.count.get());
+        total.addAndGet(other.total.get());
+
+        long otherMax = other.max.get();
+        long current = max.get();
+        while (otherMax > current && !max.compareAndSet(current, otherMax)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Returns the bucket of the given value.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the biggest value counted in the given bucket.
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns the value at the given percentile, i.e. the smallest value that is at least as big as the given share of all recorded
+     * values, within the precision of the buckets.
+     *
+     * @param percentile Percentile [0;100].
+     * @return Value or <code>0</code> if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be within [0;100]!");
+        }
+        long totalCount = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            totalCount += snapshot[i];
+        }
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return Count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the sum of all recorded values.
+     *
+     * @return Total.
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * Returns the mean of all recorded values.
+     *
+     * @return Mean or <code>0</code> if nothing was recorded.
+     */
+    public double getMean() {
+        long currentCount = count.get();
+        return currentCount == 0 ? 0.0 : total.get() / (double) currentCount;
+    }
+
+    /**
+     * Returns the biggest recorded value.
+     *
+     * @return Maximum or <code>0</code> if nothing was recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + (long) getMean() + ", p50=" + getValueAtPercentile(50) + ", p99="
+                + getValueAtPercentile(99) + ", max=" + getMax();
+    }
+}
@@ -0,0 +1,77 @@
+package at.fhtw.ai.knn.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Keeps all measurements in histograms: one per stage, one of the query latencies and one of the distance evaluations per query. The
+ * histograms can be read at any time, e.g. by a reporter exporting them to a metrics backend.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class RecordingInstrumentation implements Instrumentation {
+
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private final LatencyHistogram queryLatency = new LatencyHistogram();
+    private final LatencyHistogram distanceEvaluations = new LatencyHistogram();
+
+    /**
+     * Creates a new recording instrumentation.
+     */
+    public RecordingInstrumentation() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public void recordStage(Stage stage, long nanos) {
+        stages.get(stage).record(nanos);
+    }
+
+    @Override
+    public void recordQuery(long nanos, int distanceEvaluations) {
+        queryLatency.record(nanos);
+        this.distanceEvaluations.record(distanceEvaluations);
+    }
+
+    /**
+     * Returns the histogram of the time spent in the given stage in nanoseconds.
+     *
+     * @param stage Stage.
+     * @return Histogram.
+     */
+    public LatencyHistogram getStage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * Returns the histogram of the query latencies in nanoseconds.
+     *
+     * @return Histogram.
+     */
+    public LatencyHistogram getQueryLatency() {
+        return queryLatency;
+    }
+
+    /**
+     * Returns the histogram of the distance evaluations per query.
+     *
+     * @return Histogram.
+     */
+    public LatencyHistogram getDistanceEvaluations() {
+        return distanceEvaluations;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            result.append(stage).append(" [ns]: ").append(stages.get(stage)).append('\n');
+        }
+        result.append("Query latency [ns]: ").append(queryLatency).append('\n');
+        result.append("Distance evaluations: ").append(distanceEvaluations).append('\n');
+        return result.toString();
+    }
+}
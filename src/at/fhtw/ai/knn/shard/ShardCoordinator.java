@@ -0,0 +1,669 @@
+package at.fhtw.ai.knn.shard;
+
+import at.fhtw.ai.knn.LabelDictionary;
+import at.fhtw.ai.knn.MappedTrainingMatrix;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.index.Neighbours;
+import at.fhtw.ai.knn.voting.Voting;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Predicts over train data which is partitioned into shards, every shard served by a {@link ShardServer}, usually in its own process.
+ * Every query is sent to all shards at once, every shard searches its nearest k rows and the coordinator merges them into the nearest k
+ * rows of the whole train data before voting. Since the nearest k rows of the whole train data are among the nearest k rows of their
+ * shards, the prediction is the same as a prediction over the whole train data.
+ * <p>
+ * The coordinator waits for the shards until the timeout of the query expires. Shards which did not answer in time or whose connection
+ * failed are left out, the prediction is then based on the other shards only and reports the missing shards, see
+ * {@link ShardedPrediction#isPartial()}. A failed connection is reopened in the background, the delay between two attempts doubles from
+ * 100 ms up to 10 s. Until the shard is reachable again, it is missing from every prediction. A shard which comes back with a different
+ * number of rows or dimensions is not used any more.
+ * <p>
+ * The rows of the shards are numbered globally in the order of the shards, so the rows of the matrix split by
+ * {@link #writeShards(TrainingMatrix, Path...)} keep their row ids. The shards may use different label dictionaries, their class ids are
+ * translated into the label dictionary of the coordinator. A single coordinator may be used by many threads at the same time.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class ShardCoordinator implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ShardCoordinator.class.getName());
+
+    /**
+     * Delay before the first attempt to reopen a failed connection.
+     */
+    private static final long MIN_RECONNECT_MILLIS = 100;
+
+    /**
+     * Maximum delay between two attempts to reopen a failed connection.
+     */
+    private static final long MAX_RECONNECT_MILLIS = 10000;
+
+    private final InetSocketAddress[] addresses;
+    private final AtomicReferenceArray<Connection> connections;
+    private final ScheduledExecutorService reconnector;
+    private final int[] rowOffsets;
+    private final int dimensions;
+    private final int timeoutMillis;
+    private final LabelDictionary labels = new LabelDictionary();
+    private final AtomicInteger requestIds = new AtomicInteger();
+    private final ThreadLocal<Scratch> scratches = new ThreadLocal<>();
+    private volatile boolean closed;
+
+    /**
+     * Connects to the given shard servers.
+     *
+     * @param shards Addresses of the shard servers.
+     * @param timeoutMillis Timeout of connecting and of every query in milliseconds.
+     * @throws IOException If a shard server could not be reached or is not a shard server.
+     */
+    public ShardCoordinator(List<InetSocketAddress> shards, int timeoutMillis) throws IOException {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required!");
+        }
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive!");
+        }
+        this.timeoutMillis = timeoutMillis;
+        this.addresses = shards.toArray(new InetSocketAddress[shards.size()]);
+        this.connections = new AtomicReferenceArray<>(addresses.length);
+        this.rowOffsets = new int[addresses.length + 1];
+        this.reconnector = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "shard-reconnect");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            for (int i = 0; i < addresses.length; i++) {
+                connections.set(i, new Connection(i, addresses[i], timeoutMillis));
+                rowOffsets[i + 1] = rowOffsets[i] + connections.get(i).rows;
+            }
+        } catch (IOException | RuntimeException ex) {
+            close();
+            throw ex;
+        }
+        this.dimensions = connections.get(0).dimensions;
+        for (int i = 0; i < addresses.length; i++) {
+            if (connections.get(i).dimensions != dimensions) {
+                close();
+                throw new IllegalArgumentException("Shard " + i + " has " + connections.get(i).dimensions + " dimensions, expected "
+                        + dimensions + "!");
+            }
+        }
+        for (int i = 0; i < addresses.length; i++) {
+            connections.get(i).start();
+        }
+    }
+
+    /**
+     * Predicts the quality attribute of a single query using the nearest k rows of all shards which answer in time.
+     *
+     * @param features Attributes of the query.
+     * @param k Number of nearest neighbours.
+     * @param voting Voting strategy.
+     * @return Prediction, its neighbours are global row ids.
+     */
+    public ShardedPrediction predict(float[] features, int k, Voting voting) {
+        return predict(features, k, voting, new ShardedPrediction(k, addresses.length));
+    }
+
+    /**
+     * Predicts the quality attribute of a single query using the nearest k rows of all shards which answer in time, reusing the given
+     * prediction. The merge buffers are kept per thread, so apart from growing them and the responses of the shards nothing is allocated.
+     *
+     * @param features Attributes of the query.
+     * @param k Number of nearest neighbours.
+     * @param voting Voting strategy.
+     * @param result Receives the prediction, it must have been created for the number of shards of this coordinator.
+     * @return Given prediction, its neighbours are global row ids.
+     */
+    public ShardedPrediction predict(float[] features, int k, Voting voting, ShardedPrediction result) {
+        if (features.length != dimensions) {
+            throw new IllegalArgumentException("Query has " + features.length + " dimensions, expected " + dimensions + "!");
+        }
+        if (k <= 0 || k > ShardServer.MAX_NEIGHBOURS) {
+            throw new IllegalArgumentException("k must be between 1 and " + ShardServer.MAX_NEIGHBOURS + "!");
+        }
+        if (result.getShards() != addresses.length) {
+            throw new IllegalArgumentException("Prediction has " + result.getShards() + " shards, expected " + addresses.length + "!");
+        }
+        Scratch scratch = scratches.get();
+        if (scratch == null) {
+            scratch = new Scratch(addresses.length);
+            scratches.set(scratch);
+        }
+
+        // Scatter the query to all shards, a reopened connection is only used by later queries
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int requestId = requestIds.incrementAndGet();
+        List<CompletableFuture<Response>> futures = scratch.futures;
+        Connection[] sent = scratch.sent;
+        futures.clear();
+        for (int i = 0; i < sent.length; i++) {
+            sent[i] = connections.get(i);
+            futures.add(sent[i].send(requestId, k, features));
+        }
+
+        // Gather the nearest rows of every shard until the deadline
+        Response[] responses = scratch.responses;
+        int[] missing = scratch.missing;
+        int missingCount = 0;
+        int candidates = 0;
+        for (int i = 0; i < sent.length; i++) {
+            responses[i] = await(sent[i], requestId, futures.get(i), deadline);
+            if (responses[i] == null) {
+                missing[missingCount++] = i;
+            } else {
+                candidates += responses[i].count;
+            }
+        }
+        futures.clear();
+        scratch.ensureCapacity(candidates, k);
+        int[] rows = scratch.rows;
+        int[] classIds = scratch.classIds;
+        float[] distances = scratch.distances;
+        Neighbours merged = scratch.merged;
+        merged.clear();
+        int candidate = 0;
+        for (int i = 0; i < sent.length; i++) {
+            Response response = responses[i];
+            for (int j = 0; response != null && j < response.count; j++, candidate++) {
+                rows[candidate] = rowOffsets[i] + response.rows[j];
+                classIds[candidate] = sent[i].toGlobalClassId(response.classIds[j]);
+                distances[candidate] = response.distances[j];
+                merged.offer(candidate, response.heuristics[j]);
+            }
+            responses[i] = null;
+            sent[i] = null;
+        }
+
+        // Candidates with the same heuristic are ordered by shard and row, hence by global row id as in a single scan
+        merged.sort();
+        int scratchSize = Voting.scratchSize(labels.size(), k);
+        if (scratch.votes.length < scratchSize) {
+            scratch.votes = new float[scratchSize + (scratchSize >> 1)];
+        }
+        float value = Float.NaN;
+        int classId;
+        if (voting.isRegression()) {
+            value = voting.regress(merged, classIds, labels, scratch.votes);
+            classId = labels.nearestClassId(value);
+        } else {
+            classId = voting.vote(merged, classIds, labels, scratch.votes);
+        }
+        result.reset(classId, classId < 0 ? null : labels.getLabel(classId), value, merged.size(), missing, missingCount);
+        for (int i = 0; i < merged.size(); i++) {
+            int c = merged.getIndex(i);
+            result.addNeighbour(rows[c], distances[c]);
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the response of a shard until the deadline.
+     *
+     * @return Response or <code>null</code> if the shard did not answer in time or failed.
+     */
+    private Response await(Connection connection, int requestId, CompletableFuture<Response> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            LOGGER.log(Level.FINE, "Shard {0} did not answer in time!", connection.shard);
+            return null;
+        } catch (ExecutionException ex) {
+            LOGGER.log(Level.FINE, "Shard " + connection.shard + " failed!", ex.getCause());
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            connection.pending.remove(requestId);
+        }
+    }
+
+    /**
+     * Tries to reopen the connection to the given shard after the given delay.
+     *
+     * @param shard Shard index.
+     * @param delayMillis Delay in milliseconds.
+     */
+    private void reconnect(final int shard, final long delayMillis) {
+        if (closed) {
+            return;
+        }
+        try {
+            reconnector.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!open(shard)) {
+                        reconnect(shard, Math.min(MAX_RECONNECT_MILLIS, 2 * delayMillis));
+                    }
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // The coordinator was closed
+        }
+    }
+
+    /**
+     * Opens a new connection to the given shard and replaces the failed one.
+     *
+     * @param shard Shard index.
+     * @return <code>true</code> if the connection was opened or the coordinator was closed, <code>false</code> to try again later.
+     */
+    private boolean open(int shard) {
+        if (closed) {
+            return true;
+        }
+        Connection connection;
+        try {
+            connection = new Connection(shard, addresses[shard], timeoutMillis);
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.log(Level.FINE, "Reconnecting to shard " + shard + " failed!", ex);
+            return false;
+        }
+        int rows = rowOffsets[shard + 1] - rowOffsets[shard];
+        if (connection.dimensions != dimensions || connection.rows != rows) {
+            LOGGER.log(Level.SEVERE, "Shard {0} now has {1} rows and {2} dimensions, expected {3} rows and {4} dimensions!",
+                    new Object[]{shard, connection.rows, connection.dimensions, rows, dimensions});
+            connection.close();
+            return true;
+        }
+
+        connections.set(shard, connection);
+        connection.start();
+        if (closed) {
+            connection.close();
+        }
+        LOGGER.log(Level.INFO, "Reconnected to shard {0}", shard);
+        return true;
+    }
+
+    /**
+     * Writes the rows of the given matrix into one file per shard. The rows are split into contiguous ranges of about the same size, in
+     * the order of the files. Every file can be served by {@link ShardServer#main(String[])}.
+     *
+     * @param matrix Training matrix.
+     * @param files One file per shard.
+     * @throws IOException If a file could not be written.
+     */
+    public static void writeShards(TrainingMatrix matrix, Path... files) throws IOException {
+        if (files.length == 0) {
+            throw new IllegalArgumentException("At least one shard is required!");
+        }
+        int rows = matrix.getRows();
+        for (int i = 0; i < files.length; i++) {
+            int start = (int) ((long) rows * i / files.length);
+            int end = (int) ((long) rows * (i + 1) / files.length);
+            MappedTrainingMatrix.write(new RowRange(matrix, start, end), files[i]);
+        }
+    }
+
+    /**
+     * Returns the label dictionary of the predicted class ids.
+     *
+     * @return Label dictionary.
+     */
+    public LabelDictionary getLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return Number of shards.
+     */
+    public int getShards() {
+        return addresses.length;
+    }
+
+    /**
+     * Returns the global row id of the first row of the given shard.
+     *
+     * @param shard Shard index.
+     * @return Row id.
+     */
+    public int getRowOffset(int shard) {
+        return rowOffsets[shard];
+    }
+
+    /**
+     * Returns the number of rows of all shards.
+     *
+     * @return Rows.
+     */
+    public int getRows() {
+        return rowOffsets[addresses.length];
+    }
+
+    /**
+     * Returns the number of attributes per row.
+     *
+     * @return Dimensions.
+     */
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Closes the connections to all shards and stops reopening failed ones.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        reconnector.shutdownNow();
+        for (int i = 0; i < connections.length(); i++) {
+            Connection connection = connections.get(i);
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Buffers of a thread merging the responses of the shards.
+     */
+    private static final class Scratch {
+
+        final List<CompletableFuture<Response>> futures;
+        final Connection[] sent;
+        final Response[] responses;
+        final int[] missing;
+        int[] rows = new int[0];
+        int[] classIds = new int[0];
+        float[] distances = new float[0];
+        float[] votes = new float[0];
+        Neighbours merged = new Neighbours(1);
+
+        Scratch(int shards) {
+            futures = new ArrayList<>(shards);
+            sent = new Connection[shards];
+            responses = new Response[shards];
+            missing = new int[shards];
+        }
+
+        void ensureCapacity(int candidates, int k) {
+            if (rows.length < candidates) {
+                rows = new int[candidates];
+                classIds = new int[candidates];
+                distances = new float[candidates];
+            }
+            if (merged.capacity() != k) {
+                merged = new Neighbours(k);
+            }
+        }
+    }
+
+    /**
+     * The nearest rows of a single shard.
+     */
+    private static final class Response {
+
+        final int count;
+        final int[] rows;
+        final int[] classIds;
+        final float[] heuristics;
+        final float[] distances;
+
+        Response(int count) {
+            this.count = count;
+            this.rows = new int[count];
+            this.classIds = new int[count];
+            this.heuristics = new float[count];
+            this.distances = new float[count];
+        }
+    }
+
+    /**
+     * The connection to a single shard server. Requests are written by the predicting threads, responses are read by a daemon thread
+     * which completes the pending request with the same id. A failed connection is never used again, it is replaced by a new one.
+     */
+    private final class Connection {
+
+        final int shard;
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        final int dimensions;
+        final int rows;
+        final Map<Integer, CompletableFuture<Response>> pending = new ConcurrentHashMap<>();
+
+        // Class id of the coordinator for every class id of the shard
+        final int[] classIds;
+        volatile boolean failed;
+
+        Connection(int shard, InetSocketAddress address, int timeoutMillis) throws IOException {
+            this.shard = shard;
+            this.socket = new Socket();
+            try {
+                socket.connect(address, timeoutMillis);
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(timeoutMillis);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+                if (in.readInt() != ShardServer.MAGIC) {
+                    throw new IOException(address + " is not a shard server!");
+                }
+                int version = in.readInt();
+                if (version != ShardServer.VERSION) {
+                    throw new IOException("Unsupported shard protocol version " + version + "!");
+                }
+                dimensions = in.readInt();
+                rows = in.readInt();
+                classIds = new int[in.readInt()];
+                for (int i = 0; i < classIds.length; i++) {
+                    byte[] label = new byte[in.readInt()];
+                    in.readFully(label);
+                    classIds[i] = labels.classIdOf(LabelDictionary.decode(label));
+                }
+                socket.setSoTimeout(0);
+            } catch (IOException ex) {
+                socket.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Starts reading the responses.
+         */
+        void start() {
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    read();
+                }
+            }, "shard-coordinator-" + shard);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        /**
+         * Sends a query to the shard.
+         *
+         * @return Future of the response, completed exceptionally if the connection failed.
+         */
+        CompletableFuture<Response> send(int requestId, int k, float[] features) {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            if (failed) {
+                future.completeExceptionally(new IOException("Connection to shard " + shard + " failed!"));
+                return future;
+            }
+            pending.put(requestId, future);
+            if (failed) {
+                // The pending requests were already failed
+                pending.remove(requestId);
+                future.completeExceptionally(new IOException("Connection to shard " + shard + " failed!"));
+                return future;
+            }
+            try {
+                synchronized (out) {
+                    out.writeInt(requestId);
+                    out.writeInt(k);
+                    for (float feature : features) {
+                        out.writeFloat(feature);
+                    }
+                    out.flush();
+                }
+            } catch (IOException ex) {
+                fail(ex);
+            }
+            return future;
+        }
+
+        /**
+         * Reads the responses until the connection is closed.
+         */
+        private void read() {
+            try {
+                while (true) {
+                    int requestId = in.readInt();
+                    int count = in.readInt();
+                    if (count < 0) {
+                        String message = in.readUTF();
+                        complete(requestId, null, new IllegalArgumentException(message));
+                        continue;
+                    }
+                    Response response = new Response(count);
+                    for (int i = 0; i < count; i++) {
+                        response.rows[i] = in.readInt();
+                        response.classIds[i] = in.readInt();
+                        response.heuristics[i] = in.readFloat();
+                        response.distances[i] = in.readFloat();
+                    }
+                    complete(requestId, response, null);
+                }
+            } catch (IOException ex) {
+                fail(ex);
+            }
+        }
+
+        /**
+         * Completes a pending request, responses to requests which already timed out are dropped.
+         */
+        private void complete(int requestId, Response response, Exception error) {
+            CompletableFuture<Response> future = pending.remove(requestId);
+            if (future == null) {
+                return;
+            }
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(response);
+            }
+        }
+
+        /**
+         * Marks the connection as failed and fails all pending requests.
+         */
+        private void fail(IOException ex) {
+            boolean first;
+            synchronized (this) {
+                first = !failed;
+                failed = true;
+            }
+            if (first && !closed && !socket.isClosed()) {
+                LOGGER.log(Level.WARNING, "Connection to shard " + shard + " failed!", ex);
+            }
+            close();
+            for (Integer requestId : pending.keySet()) {
+                CompletableFuture<Response> future = pending.remove(requestId);
+                if (future != null) {
+                    future.completeExceptionally(ex);
+                }
+            }
+            if (first) {
+                reconnect(shard, MIN_RECONNECT_MILLIS);
+            }
+        }
+
+        /**
+         * Translates a class id of the shard into a class id of the coordinator.
+         */
+        int toGlobalClassId(int classId) {
+            return classId < 0 || classId >= classIds.length ? -1 : classIds[classId];
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * A contiguous range of rows of a training matrix.
+     */
+    private static final class RowRange extends TrainingMatrix {
+
+        private final TrainingMatrix matrix;
+        private final int start;
+
+        RowRange(TrainingMatrix matrix, int start, int end) {
+            super(matrix.getDimensions(), matrix.getLabels(), null, Arrays.copyOfRange(matrix.getClassIds(), start, end), end - start);
+            this.matrix = matrix;
+            this.start = start;
+        }
+
+        @Override
+        public float[] copyRow(int row, float[] target, int offset) {
+            return matrix.copyRow(start + row, target, offset);
+        }
+
+        @Override
+        public float[] copyRows(int row, int count, float[] target, int offset) {
+            return matrix.copyRows(start + row, count, target, offset);
+        }
+
+        @Override
+        public float get(int row, int column) {
+            return matrix.get(start + row, column);
+        }
+
+        @Override
+        public float[] getData() {
+            throw new UnsupportedOperationException("A row range has no attribute array!");
+        }
+
+        @Override
+        public boolean hasArray() {
+            return false;
+        }
+
+        @Override
+        public void set(int row, float[] values, Object label) {
+            throw new UnsupportedOperationException("A row range is read only!");
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package at.fhtw.ai.knn.shard;
+
+import at.fhtw.ai.knn.LabelDictionary;
+import at.fhtw.ai.knn.MappedTrainingMatrix;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.Distance;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.index.NeighbourIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A worker which answers neighbour searches over one shard of the training data. Every connection of a {@link ShardCoordinator} is read
+ * by its own thread, which passes every request to a pool of search threads, so the requests of a single connection are searched in
+ * parallel. The nearest rows are sent back with their class id and heuristic as soon as they are found.
+ * <p>
+ * The protocol is a binary stream of big endian values. After accepting a connection, the server sends its header: the magic number
+ * <code>KNNS</code>, the protocol version, the number of dimensions and rows and the label dictionary of the shard, every label encoded by
+ * {@link LabelDictionary#encode(Object)} and prefixed by its length. Every request consists of a request id, the number of neighbours and
+ * the attributes of the query. Every response consists of the request id and the number of neighbours, followed by the row, class id,
+ * heuristic and metric distance of every neighbour. A negative number of neighbours marks a failed request and is followed by the error
+ * message. Responses are sent in the order the searches finish, not in the order of the requests.
+ * <p>
+ * Use {@link #main(String[])} to run a worker process over a file written by {@link ShardCoordinator#writeShards}.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class ShardServer implements Closeable {
+
+    /**
+     * Magic number at the start of every connection, "KNNS".
+     */
+    static final int MAGIC = 0x4B4E4E53;
+
+    /**
+     * Protocol version.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Maximum number of neighbours of a single request.
+     */
+    static final int MAX_NEIGHBOURS = 1 << 16;
+
+    private static final Logger LOGGER = Logger.getLogger(ShardServer.class.getName());
+
+    private final NeighbourIndex index;
+    private final DistanceFunction distanceFunction;
+    private final ServerSocket serverSocket;
+    private final ExecutorService searchers;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Neighbours> searchResults = new ThreadLocal<>();
+    private volatile boolean closed;
+
+    /**
+     * Creates a new shard server listening on the loopback interface.
+     *
+     * @param index Neighbour index over the shard.
+     * @param distanceFunction Distance function of the index, used to convert the heuristics into metric distances.
+     * @param port Port or 0 for any free port.
+     * @throws IOException If the port could not be bound.
+     */
+    public ShardServer(NeighbourIndex index, DistanceFunction distanceFunction, int port) throws IOException {
+        this(index, distanceFunction, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Creates a new shard server listening on the given address, searching with one thread per available processor.
+     *
+     * @param index Neighbour index over the shard.
+     * @param distanceFunction Distance function of the index, used to convert the heuristics into metric distances.
+     * @param address Local address.
+     * @throws IOException If the address could not be bound.
+     */
+    public ShardServer(NeighbourIndex index, DistanceFunction distanceFunction, InetSocketAddress address) throws IOException {
+        this(index, distanceFunction, address, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new shard server listening on the given address.
+     *
+     * @param index Neighbour index over the shard.
+     * @param distanceFunction Distance function of the index, used to convert the heuristics into metric distances.
+     * @param address Local address.
+     * @param threads Number of search threads shared by all connections.
+     * @throws IOException If the address could not be bound.
+     */
+    public ShardServer(NeighbourIndex index, DistanceFunction distanceFunction, InetSocketAddress address, int threads) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of search threads must be positive!");
+        }
+        this.index = index;
+        this.distanceFunction = distanceFunction;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        final AtomicInteger searcherIds = new AtomicInteger();
+        this.searchers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread searcher = new Thread(runnable, "shard-search-" + getPort() + "-" + searcherIds.incrementAndGet());
+                searcher.setDaemon(true);
+                return searcher;
+            }
+        });
+    }
+
+    /**
+     * Starts accepting connections using a daemon thread.
+     *
+     * @return This server.
+     */
+    public ShardServer start() {
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "shard-server-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     */
+    private void accept() {
+        while (!closed) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException ex) {
+                if (!closed) {
+                    LOGGER.log(Level.SEVERE, "Shard server stopped accepting connections!", ex);
+                }
+                return;
+            }
+            connections.add(socket);
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            }, "shard-connection-" + socket.getRemoteSocketAddress());
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Reads the requests of a single connection until it is closed and passes them to the search threads.
+     */
+    private void serve(final Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            writeHeader(out);
+
+            int dimensions = index.getTrainData().getDimensions();
+            while (!closed) {
+                final int requestId;
+                try {
+                    requestId = in.readInt();
+                } catch (EOFException ex) {
+                    return;
+                }
+                final int k = in.readInt();
+                final float[] candidate = new float[dimensions];
+                for (int i = 0; i < candidate.length; i++) {
+                    candidate[i] = in.readFloat();
+                }
+
+                if (k <= 0 || k > MAX_NEIGHBOURS) {
+                    writeError(out, requestId, "Invalid number of neighbours " + k + "!");
+                    continue;
+                }
+                try {
+                    searchers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            answer(socket, out, requestId, k, candidate);
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    // The server was closed
+                    return;
+                }
+            }
+        } catch (IOException ex) {
+            if (!closed && !socket.isClosed()) {
+                LOGGER.log(Level.WARNING, "Shard connection failed!", ex);
+            }
+        } finally {
+            connections.remove(socket);
+            close(socket);
+        }
+    }
+
+    /**
+     * Searches the neighbours of a request and writes the response. A connection whose response cannot be written is closed, which also
+     * stops reading its requests.
+     */
+    private void answer(Socket socket, DataOutputStream out, int requestId, int k, float[] candidate) {
+        try {
+            Neighbours neighbours = searchResults.get();
+            if (neighbours == null || neighbours.capacity() != k) {
+                neighbours = new Neighbours(k);
+                searchResults.set(neighbours);
+            }
+            try {
+                index.search(candidate, neighbours);
+            } catch (RuntimeException ex) {
+                writeError(out, requestId, String.valueOf(ex.getMessage()));
+                return;
+            }
+
+            neighbours.sort();
+            TrainingMatrix trainData = index.getTrainData();
+            synchronized (out) {
+                out.writeInt(requestId);
+                out.writeInt(neighbours.size());
+                for (int i = 0; i < neighbours.size(); i++) {
+                    int row = neighbours.getIndex(i);
+                    out.writeInt(row);
+                    out.writeInt(trainData.getClassId(row));
+                    out.writeFloat(neighbours.getHeuristic(i));
+                    out.writeFloat(distanceFunction.toMetric(neighbours.getHeuristic(i)));
+                }
+                out.flush();
+            }
+        } catch (IOException ex) {
+            if (!closed && !socket.isClosed()) {
+                LOGGER.log(Level.WARNING, "Shard connection failed!", ex);
+            }
+            close(socket);
+        }
+    }
+
+    /**
+     * Writes the response of a failed request.
+     */
+    private static void writeError(DataOutputStream out, int requestId, String message) throws IOException {
+        synchronized (out) {
+            out.writeInt(requestId);
+            out.writeInt(-1);
+            out.writeUTF(message);
+            out.flush();
+        }
+    }
+
+    /**
+     * Closes the given socket, ignoring failures.
+     */
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // Already closed
+        }
+    }
+
+    /**
+     * Writes the header of a connection.
+     */
+    private void writeHeader(DataOutputStream out) throws IOException {
+        TrainingMatrix trainData = index.getTrainData();
+        LabelDictionary labels = trainData.getLabels();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(trainData.getDimensions());
+        out.writeInt(trainData.getRows());
+        int labelCount = labels.size();
+        out.writeInt(labelCount);
+        for (int i = 0; i < labelCount; i++) {
+            byte[] label = LabelDictionary.encode(labels.getLabel(i));
+            out.writeInt(label.length);
+            out.write(label);
+        }
+        out.flush();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return Port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the neighbour index over the shard.
+     *
+     * @return Neighbour index.
+     */
+    public NeighbourIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Stops accepting connections, closes all open connections and stops the search threads.
+     *
+     * @throws IOException If the server socket could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        searchers.shutdownNow();
+        serverSocket.close();
+        for (Socket socket : connections) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Runs a shard server over a training matrix file until the process is killed.
+     * <p>
+     * Usage: <code>ShardServer &lt;shard file&gt; &lt;port&gt; [Euklid|Manhatten]</code>
+     *
+     * @param args Command line arguments.
+     * @throws IOException If the file could not be opened or the port could not be bound.
+     * @throws InterruptedException If the main thread is interrupted.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: ShardServer <shard file> <port> [Euklid|Manhatten]");
+            System.exit(2);
+        }
+        HeuristicComputer.Heuristic heuristic = args.length > 2 ? HeuristicComputer.Heuristic.valueOf(args[2]) : HeuristicComputer.Heuristic.Euklid;
+        Distance distance = new Distance(heuristic, null);
+        MappedTrainingMatrix shard = MappedTrainingMatrix.open(Paths.get(args[0]));
+        ShardServer server = new ShardServer(new LinearScanIndex(shard, distance), distance, Integer.parseInt(args[1])).start();
+        System.out.println("Shard server with " + shard.getRows() + " rows listening on port " + server.getPort());
+        Thread.currentThread().join();
+    }
+}
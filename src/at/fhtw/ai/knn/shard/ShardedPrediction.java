@@ -0,0 +1,99 @@
+package at.fhtw.ai.knn.shard;
+
+import at.fhtw.ai.knn.Prediction;
+import java.util.Arrays;
+
+/**
+ * The result of a query over sharded train data. In addition to the prediction, it tells which shards answered in time. If a shard is
+ * missing, the prediction is based on the nearest neighbours of the other shards only.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class ShardedPrediction extends Prediction {
+
+    private final int shards;
+    private int[] missingShards = new int[0];
+
+    /**
+     * Creates a new empty prediction.
+     *
+     * @param capacity Expected number of neighbours.
+     * @param shards Number of shards.
+     */
+    public ShardedPrediction(int capacity, int shards) {
+        super(capacity);
+        this.shards = shards;
+    }
+
+    /**
+     * Clears the prediction and sets the shards which did not answer.
+     *
+     * @param classId Predicted class id or <code>-1</code>.
+     * @param label Predicted quality attribute.
+     * @param value Predicted numeric value or <code>NaN</code>.
+     * @param capacity Number of neighbours.
+     * @param missingShards Array containing the shards which did not answer in time or failed.
+     * @param missingCount Number of missing shards.
+     */
+    void reset(int classId, Object label, float value, int capacity, int[] missingShards, int missingCount) {
+        reset(classId, label, capacity);
+        setValue(value);
+        if (this.missingShards.length != missingCount) {
+            this.missingShards = new int[missingCount];
+        }
+        System.arraycopy(missingShards, 0, this.missingShards, 0, missingCount);
+    }
+
+    /**
+     * Appends a neighbour.
+     *
+     * @param row Global row id.
+     * @param distance Distance.
+     */
+    @Override
+    protected void addNeighbour(int row, float distance) {
+        super.addNeighbour(row, distance);
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return Number of shards.
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Returns the number of shards which answered in time.
+     *
+     * @return Number of shards.
+     */
+    public int getRespondedShards() {
+        return shards - missingShards.length;
+    }
+
+    /**
+     * Returns the shards which did not answer in time or failed.
+     *
+     * @return Shard indices in ascending order.
+     */
+    public int[] getMissingShards() {
+        return missingShards.clone();
+    }
+
+    /**
+     * Returns whether at least one shard is missing, i.e. the neighbours may not be the nearest of the whole train data.
+     *
+     * @return <code>true</code> if the prediction is partial.
+     */
+    public boolean isPartial() {
+        return missingShards.length != 0;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + (isPartial() ? " missing shards " + Arrays.toString(missingShards) : "");
+    }
+}
@@ -0,0 +1,30 @@
+package at.fhtw.ai.knn.voting;
+
+import at.fhtw.ai.knn.LabelDictionary;
+import at.fhtw.ai.knn.index.Neighbours;
+import java.util.Arrays;
+
+/**
+ * Distance weighted vote, every neighbour votes for its class with the inverse of its heuristic. For the Euklid heuristic this is the
+ * inverse squared distance. Neighbours with a heuristic of zero dominate all others.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class DistanceWeightedVoting extends Voting {
+
+    /**
+     * Added to every heuristic to prevent a division by zero.
+     */
+    private static final float EPSILON = 1e-6f;
+
+    @Override
+    public int vote(Neighbours neighbours, int[] classIds, LabelDictionary labels, float[] scratch) {
+        neighbours.sort();
+        Arrays.fill(scratch, 0, labels.size(), 0.0f);
+        for (int i = 0; i < neighbours.size(); i++) {
+            scratch[classIds[neighbours.getIndex(i)]] += 1.0f / (neighbours.getHeuristic(i) + EPSILON);
+        }
+        return best(neighbours, classIds, scratch);
+    }
+}
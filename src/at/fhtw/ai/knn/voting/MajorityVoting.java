@@ -0,0 +1,24 @@
+package at.fhtw.ai.knn.voting;
+
+import at.fhtw.ai.knn.LabelDictionary;
+import at.fhtw.ai.knn.index.Neighbours;
+import java.util.Arrays;
+
+/**
+ * Majority vote, the most often appearing class of the neighbours wins. Ties are won by the class of the nearer neighbour.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class MajorityVoting extends Voting {
+
+    @Override
+    public int vote(Neighbours neighbours, int[] classIds, LabelDictionary labels, float[] scratch) {
+        neighbours.sort();
+        Arrays.fill(scratch, 0, labels.size(), 0.0f);
+        for (int i = 0; i < neighbours.size(); i++) {
+            scratch[classIds[neighbours.getIndex(i)]]++;
+        }
+        return best(neighbours, classIds, scratch);
+    }
+}
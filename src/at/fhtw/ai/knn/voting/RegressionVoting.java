@@ -0,0 +1,100 @@
+package at.fhtw.ai.knn.voting;
+
+import at.fhtw.ai.knn.LabelDictionary;
+import at.fhtw.ai.knn.index.Neighbours;
+
+/**
+ * k-NN regression, the numeric labels of the neighbours are averaged. Neighbours with non numeric labels are ignored. The average is
+ * the predicted value, see {@link at.fhtw.ai.knn.Prediction#getValue()} and
+ * {@link at.fhtw.ai.knn.analysis.ConfusionMatrix#meanAbsoluteError()}. The class with the numeric label nearest to the average is
+ * still reported as vote, so a regression can be compared with a classification in the same confusion matrix.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class RegressionVoting extends Voting {
+
+    /**
+     * Contains the available averages.
+     *
+     * @author Daniel Kleebinder
+     * @since 0.2
+     */
+    public static enum Average {
+        Mean,
+        Median
+    }
+
+    private final Average average;
+
+    /**
+     * Creates a new regression voting.
+     *
+     * @param average Average used.
+     */
+    public RegressionVoting(Average average) {
+        this.average = average;
+    }
+
+    /**
+     * Returns the average used.
+     *
+     * @return Average.
+     */
+    public Average getAverage() {
+        return average;
+    }
+
+    @Override
+    public boolean isRegression() {
+        return true;
+    }
+
+    @Override
+    public int vote(Neighbours neighbours, int[] classIds, LabelDictionary labels, float[] scratch) {
+        return labels.nearestClassId(regress(neighbours, classIds, labels, scratch));
+    }
+
+    /**
+     * Computes the average of the numeric neighbour labels.
+     *
+     * @param neighbours Nearest neighbours of the candidate.
+     * @param classIds Class id of every train row.
+     * @param labels Label dictionary of the class ids.
+     * @param scratch Scratch memory with at least <code>neighbours.capacity()</code> elements.
+     * @return Average or <code>NaN</code> if no neighbour has a numeric label.
+     */
+    @Override
+    public float regress(Neighbours neighbours, int[] classIds, LabelDictionary labels, float[] scratch) {
+        int count = 0;
+        for (int i = 0; i < neighbours.size(); i++) {
+            float value = labels.getNumericValue(classIds[neighbours.getIndex(i)]);
+            if (!Float.isNaN(value)) {
+                scratch[count++] = value;
+            }
+        }
+        if (count == 0) {
+            return Float.NaN;
+        }
+
+        if (average == Average.Mean) {
+            float sum = 0.0f;
+            for (int i = 0; i < count; i++) {
+                sum += scratch[i];
+            }
+            return sum / count;
+        }
+
+        // Insertion sort, k is small
+        for (int i = 1; i < count; i++) {
+            float value = scratch[i];
+            int j = i - 1;
+            while (j >= 0 && scratch[j] > value) {
+                scratch[j + 1] = scratch[j];
+                j--;
+            }
+            scratch[j + 1] = value;
+        }
+        return (count & 1) == 1 ? scratch[count / 2] : (scratch[count / 2 - 1] + scratch[count / 2]) / 2.0f;
+    }
+}
@@ -0,0 +1,101 @@
+package at.fhtw.ai.knn.voting;
+
+import at.fhtw.ai.knn.LabelDictionary;
+import at.fhtw.ai.knn.index.Neighbours;
+
+/**
+ * A voting strategy decides the predicted class of a candidate from its nearest neighbours. Voting strategies do not keep any state and
+ * can be shared between threads, all scratch memory is given by the caller.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public abstract class Voting {
+
+    /**
+     * Every neighbour has one vote.
+     */
+    public static final Voting MAJORITY = new MajorityVoting();
+
+    /**
+     * Every neighbour votes with the inverse of its heuristic.
+     */
+    public static final Voting DISTANCE_WEIGHTED = new DistanceWeightedVoting();
+
+    /**
+     * Predicts the mean of the numeric neighbour labels.
+     */
+    public static final Voting MEAN = new RegressionVoting(RegressionVoting.Average.Mean);
+
+    /**
+     * Predicts the median of the numeric neighbour labels.
+     */
+    public static final Voting MEDIAN = new RegressionVoting(RegressionVoting.Average.Median);
+
+    /**
+     * Decides the class id of the candidate. The neighbours may be reordered.
+     *
+     * @param neighbours Nearest neighbours of the candidate.
+     * @param classIds Class id of every train row.
+     * @param labels Label dictionary of the class ids.
+     * @param scratch Scratch memory with at least <code>max(labels.size(), neighbours.capacity())</code> elements.
+     * @return Class id or <code>-1</code> if there are no neighbours.
+     */
+    public abstract int vote(Neighbours neighbours, int[] classIds, LabelDictionary labels, float[] scratch);
+
+    /**
+     * Returns if the strategy predicts numeric values, see {@link #regress(Neighbours, int[], LabelDictionary, float[])}. The class id
+     * voted by such a strategy is the class with the numeric label nearest to the value, see
+     * {@link LabelDictionary#nearestClassId(float)}, hence callers needing both only regress.
+     *
+     * @return <code>true</code> if the strategy predicts values.
+     */
+    public boolean isRegression() {
+        return false;
+    }
+
+    /**
+     * Predicts a numeric value of the candidate instead of a class, see {@link RegressionVoting}. Classification strategies do not predict
+     * a value.
+     *
+     * @param neighbours Nearest neighbours of the candidate.
+     * @param classIds Class id of every train row.
+     * @param labels Label dictionary of the class ids.
+     * @param scratch Scratch memory with at least <code>max(labels.size(), neighbours.capacity())</code> elements.
+     * @return Value or <code>NaN</code> if the strategy does not predict values or no neighbour has a numeric label.
+     */
+    public float regress(Neighbours neighbours, int[] classIds, LabelDictionary labels, float[] scratch) {
+        return Float.NaN;
+    }
+
+    /**
+     * Returns the scratch memory size required for the given number of classes and neighbours.
+     *
+     * @param classes Number of classes.
+     * @param k Number of neighbours.
+     * @return Scratch size.
+     */
+    public static int scratchSize(int classes, int k) {
+        return Math.max(classes, k);
+    }
+
+    /**
+     * Returns the class id with the biggest score. Scores are compared in the order of the neighbours, so ties are won by the class of
+     * the nearer neighbour.
+     *
+     * @param neighbours Nearest neighbours sorted by heuristic.
+     * @param classIds Class id of every train row.
+     * @param scores Score of every class id.
+     * @return Class id or <code>-1</code> if there are no neighbours.
+     */
+    protected static int best(Neighbours neighbours, int[] classIds, float[] scores) {
+        int result = -1;
+        for (int i = 0; i < neighbours.size(); i++) {
+            int classId = classIds[neighbours.getIndex(i)];
+            if (result < 0 || scores[classId] > scores[result]) {
+                result = classId;
+            }
+        }
+        return result;
+    }
+}
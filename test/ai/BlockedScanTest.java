@@ -0,0 +1,67 @@
+package ai;
+
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import at.fhtw.ai.knn.heuristic.FloatHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.BlockedScanIndex;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+
+/**
+ * Test main class comparing the neighbours found by the blocked scan, one query at a time and in blocks of queries, with a linear scan.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class BlockedScanTest {
+
+    private static final int K = 10;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        int[] dimensions = {3, 11, 33};
+        for (int d : dimensions) {
+            TrainingMatrix trainData = TestData.clusters(3000, d, 7, d);
+            TrainingMatrix queries = TestData.clusters(257, d, 7, d + 100);
+            for (DistanceFunction distance : TestData.distances(d, d)) {
+                LinearScanIndex exact = new LinearScanIndex(trainData, distance);
+                BlockedScanIndex blocked = new BlockedScanIndex(trainData, distance);
+                String message = "Blocked scan " + distance + ", " + d + " dimensions";
+                TestData.checkSame(exact, blocked, queries, K, message);
+
+                // Blocks of queries, the last one shorter than the others
+                Neighbours[] results = new Neighbours[64];
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = new Neighbours(K);
+                }
+                Neighbours expected = new Neighbours(K);
+                float[] query = new float[d];
+                for (int from = 0; from < queries.getRows(); from += results.length) {
+                    int to = Math.min(queries.getRows(), from + results.length);
+                    for (int q = from; q < to; q++) {
+                        results[q - from].clear();
+                    }
+                    blocked.search(queries, from, to, results);
+                    for (int q = from; q < to; q++) {
+                        expected.clear();
+                        exact.search(queries.copyRow(q, query, 0), expected);
+                        expected.sort();
+                        results[q - from].sort();
+                        TestData.checkSame(expected, results[q - from], message + ", batch query " + q);
+                    }
+                }
+            }
+        }
+
+        // Heuristic computers are resolved to their distance
+        TrainingMatrix trainData = TestData.clusters(500, 4, 3, 1);
+        FloatHeuristicComputer computer = new FloatHeuristicComputer();
+        computer.setHeuristic(HeuristicComputer.Heuristic.Manhatten);
+        TestData.checkSame(new LinearScanIndex(trainData, computer), new BlockedScanIndex(trainData, computer), trainData, K,
+                "Blocked scan heuristic computer");
+        System.out.println("Blocked scan neighbours match a linear scan");
+    }
+}
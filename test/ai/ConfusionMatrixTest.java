@@ -0,0 +1,225 @@
+package ai;
+
+import at.fhtw.ai.knn.LabelDictionary;
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import java.util.Arrays;
+
+/**
+ * Test main class checking the counts and scores of a confusion matrix against hand computed values, and that confusion matrices merged
+ * by many threads at the same time count every prediction exactly once.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class ConfusionMatrixTest {
+
+    /**
+     * Hand made predictions of the labels a, b and c by actual (row) and predicted (column) label. Two rows labelled a have no
+     * prediction.
+     */
+    private static final int[][] COUNTS = {
+        {5, 2, 1},
+        {1, 6, 1},
+        {0, 3, 4}
+    };
+    private static final String[] LABELS = {"a", "b", "c"};
+    private static final int UNPREDICTED = 2;
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 200;
+
+    /**
+     * @param args the command line arguments
+     * @throws InterruptedException If the main thread is interrupted.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        scores();
+        merges();
+        concurrentMerges();
+        System.out.println("Confusion matrix counts and scores match the hand computed values");
+    }
+
+    /**
+     * Checks the counts and scores of the hand made predictions.
+     */
+    private static void scores() {
+        ConfusionMatrix recorded = handMade(new LabelDictionary());
+        checkHandMade(recorded, "Recorded");
+
+        // Updating the cells by label gives the same counts, but no prediction counts
+        ConfusionMatrix updated = new ConfusionMatrix();
+        for (int x = 0; x < LABELS.length; x++) {
+            for (int y = 0; y < LABELS.length; y++) {
+                updated.updatePredictionMatrix(LABELS[x], LABELS[y], COUNTS[x][y]);
+            }
+        }
+        updated.updatePredictionMatrix("a", null, UNPREDICTED);
+        TestData.check(Arrays.deepEquals(recorded.confusionMatrix(), updated.confusionMatrix()) && updated.getNumberOfTotalPredictions() == 0,
+                "Updated matrix " + Arrays.deepToString(updated.confusionMatrix()));
+
+        // Precision of labels which were never predicted, recall of labels no row has and scores of empty matrices are undefined
+        ConfusionMatrix edges = new ConfusionMatrix();
+        edges.updatePredictionMatrix("a", "b", 3);
+        edges.updatePredictionMatrix("c", "c", 1);
+        TestData.check(Double.isNaN(edges.precision("a")) && edges.recall("a") == 0 && edges.f1("a") == 0, "Label a never predicted");
+        TestData.check(edges.precision("b") == 0 && Double.isNaN(edges.recall("b")) && Double.isNaN(edges.f1("b")), "Label b never actual");
+        TestData.check(Double.isNaN(edges.precision("unknown")) && Double.isNaN(edges.recall("unknown")) && edges.getCount("unknown", "a") == 0,
+                "Unknown label");
+        TestData.check(edges.macroF1() == 0.5, "Macro F1 " + edges.macroF1());
+        ConfusionMatrix empty = new ConfusionMatrix();
+        TestData.check(Double.isNaN(empty.macroF1()) && Double.isNaN(empty.accuracy()) && empty.confusionMatrix().length == 1
+                && Double.isNaN(empty.meanAbsoluteError()) && Double.isNaN(empty.rootMeanSquaredError()), "Empty matrix");
+    }
+
+    /**
+     * Records the hand made predictions using class ids of the given dictionary, plus the regression errors 1, 2 and 2.
+     */
+    private static ConfusionMatrix handMade(LabelDictionary labels) {
+        ConfusionMatrix result = new ConfusionMatrix(labels);
+        for (int x = 0; x < LABELS.length; x++) {
+            for (int y = 0; y < LABELS.length; y++) {
+                for (int i = 0; i < COUNTS[x][y]; i++) {
+                    result.record(labels.classIdOf(LABELS[x]), labels.classIdOf(LABELS[y]));
+                }
+            }
+        }
+        for (int i = 0; i < UNPREDICTED; i++) {
+            result.record(labels.classIdOf("a"), -1);
+        }
+        result.recordRegression(3, 4);
+        result.recordRegression(5, 3);
+        result.recordRegression(1, 3);
+        result.recordRegression(1, Float.NaN);
+        return result;
+    }
+
+    /**
+     * Checks the hand computed counts and scores of the hand made predictions.
+     */
+    private static void checkHandMade(ConfusionMatrix matrix, String message) {
+        Object[][] expected = {
+            {null, null, "a", "b", "c"},
+            {null, 0, 0, 0, 0},
+            {"a", UNPREDICTED, 5, 2, 1},
+            {"b", 0, 1, 6, 1},
+            {"c", 0, 0, 3, 4}
+        };
+        TestData.check(Arrays.deepEquals(matrix.confusionMatrix(), expected), message + ": " + Arrays.deepToString(matrix.confusionMatrix()));
+        TestData.check(matrix.getNumberOfCorrectPredictions() == 15 && matrix.getNumberOfWrongPredictions() == 10
+                && matrix.getNumberOfTotalPredictions() == 25 && matrix.accuracy() == 0.6, message + ": accuracy " + matrix.accuracy());
+        TestData.check(matrix.getCount("a", null) == UNPREDICTED && matrix.getCount("c", "b") == 3 && matrix.getCount(null, "a") == 0,
+                message + ": counts");
+
+        // Rows without prediction count for the recall, but not for the precision
+        check(matrix.precision("a"), 5.0 / 6, message + ": precision of a");
+        check(matrix.recall("a"), 5.0 / 10, message + ": recall of a");
+        check(matrix.f1("a"), 0.625, message + ": F1 of a");
+        check(matrix.precision("b"), 6.0 / 11, message + ": precision of b");
+        check(matrix.recall("b"), 6.0 / 8, message + ": recall of b");
+        check(matrix.f1("b"), 12.0 / 19, message + ": F1 of b");
+        check(matrix.precision("c"), 4.0 / 6, message + ": precision of c");
+        check(matrix.recall("c"), 4.0 / 7, message + ": recall of c");
+        check(matrix.f1("c"), 8.0 / 13, message + ": F1 of c");
+        check(matrix.macroF1(), (0.625 + 12.0 / 19 + 8.0 / 13) / 3, message + ": macro F1");
+
+        TestData.check(matrix.getNumberOfRegressions() == 3, message + ": " + matrix.getNumberOfRegressions() + " regressions");
+        check(matrix.meanAbsoluteError(), 5.0 / 3, message + ": MAE");
+        check(matrix.rootMeanSquaredError(), Math.sqrt(3), message + ": RMSE");
+    }
+
+    /**
+     * Checks that merged matrices add their counts, with shared and with different label dictionaries.
+     */
+    private static void merges() {
+        LabelDictionary shared = new LabelDictionary();
+        ConfusionMatrix first = handMade(shared);
+        first.merge(handMade(shared));
+        checkDoubled(first, "Shared dictionary");
+        check(first.macroF1(), (0.625 + 12.0 / 19 + 8.0 / 13) / 3, "Shared dictionary: macro F1");
+
+        // Other dictionaries are translated by label, new labels are added
+        LabelDictionary reversed = new LabelDictionary();
+        reversed.classIdOf("d");
+        reversed.classIdOf("c");
+        ConfusionMatrix second = handMade(new LabelDictionary());
+        ConfusionMatrix other = handMade(reversed);
+        other.record(reversed.classIdOf("d"), reversed.classIdOf("a"));
+        second.merge(other);
+        checkDoubled(second, "Other dictionary");
+        TestData.check(second.getCount("d", "a") == 1 && second.getNumberOfWrongPredictions() == 21 && second.recall("d") == 0,
+                "Merged label d");
+
+        // Updating only the prediction matrix keeps the prediction counts
+        ConfusionMatrix third = handMade(new LabelDictionary());
+        third.updatePredictionMatrix(handMade(reversed));
+        TestData.check(third.getCount("b", "b") == 12 && third.getNumberOfTotalPredictions() == 25 && third.getNumberOfRegressions() == 3,
+                "Updated prediction matrix");
+    }
+
+    /**
+     * Checks that the matrix contains the hand made predictions twice.
+     */
+    private static void checkDoubled(ConfusionMatrix matrix, String message) {
+        for (int x = 0; x < LABELS.length; x++) {
+            for (int y = 0; y < LABELS.length; y++) {
+                TestData.check(matrix.getCount(LABELS[x], LABELS[y]) == 2 * COUNTS[x][y], message + ": " + LABELS[x] + " predicted as "
+                        + LABELS[y] + " " + matrix.getCount(LABELS[x], LABELS[y]) + " times");
+            }
+        }
+        TestData.check(matrix.getCount("a", null) == 2 * UNPREDICTED && matrix.getNumberOfCorrectPredictions() == 30
+                && matrix.getNumberOfRegressions() == 6, message + ": prediction counts");
+        check(matrix.meanAbsoluteError(), 5.0 / 3, message + ": MAE");
+    }
+
+    /**
+     * Merges the predictions of many threads into one matrix at the same time, half of them using their own label dictionaries.
+     */
+    private static void concurrentMerges() throws InterruptedException {
+        final LabelDictionary shared = new LabelDictionary();
+        final ConfusionMatrix total = new ConfusionMatrix(shared);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int round = 0; round < ROUNDS; round++) {
+                        LabelDictionary labels = thread % 2 == 0 ? shared : new LabelDictionary();
+                        ConfusionMatrix matrix = handMade(labels);
+
+                        // Every thread adds a label of its own
+                        matrix.record(labels.classIdOf("thread " + thread), labels.classIdOf("a"));
+                        total.merge(matrix);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int merges = THREADS * ROUNDS;
+        for (int x = 0; x < LABELS.length; x++) {
+            for (int y = 0; y < LABELS.length; y++) {
+                TestData.check(total.getCount(LABELS[x], LABELS[y]) == (long) merges * COUNTS[x][y], "Concurrent merges: " + LABELS[x]
+                        + " predicted as " + LABELS[y] + " " + total.getCount(LABELS[x], LABELS[y]) + " times");
+            }
+        }
+        for (int t = 0; t < THREADS; t++) {
+            TestData.check(total.getCount("thread " + t, "a") == ROUNDS, "Concurrent merges: label of thread " + t + " counted "
+                    + total.getCount("thread " + t, "a") + " times");
+        }
+        TestData.check(total.getCount("a", null) == (long) merges * UNPREDICTED && total.getNumberOfCorrectPredictions() == merges * 15
+                && total.getNumberOfWrongPredictions() == merges * 11 && total.getNumberOfRegressions() == merges * 3, "Concurrent merges: "
+                + total.getNumberOfCorrectPredictions() + " correct and " + total.getNumberOfWrongPredictions() + " wrong predictions");
+        check(total.meanAbsoluteError(), 5.0 / 3, "Concurrent merges: MAE");
+    }
+
+    /**
+     * Checks that a score equals the hand computed value up to rounding errors.
+     */
+    private static void check(double actual, double expected, String message) {
+        TestData.check(Math.abs(actual - expected) <= 1e-12, message + " " + actual + ", expected " + expected);
+    }
+}
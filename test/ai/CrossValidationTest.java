@@ -0,0 +1,79 @@
+package ai;
+
+import at.fhtw.ai.knn.CrossValidation;
+import at.fhtw.ai.knn.Folds;
+import at.fhtw.ai.knn.KnnAI;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import at.fhtw.ai.knn.index.RowFilter;
+import at.fhtw.ai.knn.voting.Voting;
+
+/**
+ * Test main class comparing the single pass cross validation with predicting every fold separately, and its leave-one-out neighbours
+ * with a scan which skips the row itself.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class CrossValidationTest {
+
+    private static final int FOLDS = 5;
+    private static final int K = 9;
+    private static final Voting[] VOTINGS = {Voting.MAJORITY, Voting.DISTANCE_WEIGHTED, Voting.MEAN, Voting.MEDIAN};
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        TrainingMatrix data = TestData.clusters(2000, 7, 6, 22);
+        Folds folds = Folds.stratified(data, FOLDS, Folds.DEFAULT_SEED);
+        DistanceFunction[] distances = TestData.distances(7, 22);
+        for (int d = 0; d < distances.length; d++) {
+            CrossValidation crossValidation = CrossValidation.compute(data, folds, distances[d], K, true);
+            for (Voting voting : VOTINGS) {
+                String message = TestData.DISTANCE_NAMES[d] + " " + voting.getClass().getSimpleName();
+                ConfusionMatrix merged = new ConfusionMatrix(data.getLabels());
+                for (int fold = 0; fold < FOLDS; fold++) {
+                    ConfusionMatrix expected = predictFold(data, folds, fold, distances[d], voting);
+                    TestData.checkSame(expected, crossValidation.predictFold(fold, voting), message + ", fold " + fold);
+                    merged.merge(expected);
+                }
+                TestData.checkSame(merged, crossValidation.predict(voting), message);
+            }
+
+            // Leave-one-out neighbours are the nearest rows except the row itself
+            LinearScanIndex exact = new LinearScanIndex(data, distances[d]);
+            Neighbours expected = new Neighbours(K);
+            float[] query = new float[data.getDimensions()];
+            for (int row = 0; row < data.getRows(); row++) {
+                final int self = row;
+                expected.clear();
+                exact.search(data.copyRow(row, query, 0), expected, new RowFilter() {
+                    @Override
+                    public boolean accept(int row) {
+                        return row != self;
+                    }
+                });
+                expected.sort();
+                TestData.checkSame(expected, crossValidation.getLeaveOneOutNeighbours(row), TestData.DISTANCE_NAMES[d] + " leave-one-out row " + row);
+            }
+        }
+        System.out.println("Cross validation matches " + FOLDS + " separate predictions");
+    }
+
+    /**
+     * Predicts the given fold using a linear scan over the rows of the other folds.
+     */
+    private static ConfusionMatrix predictFold(TrainingMatrix data, Folds folds, int fold, DistanceFunction distance, Voting voting) {
+        TrainingMatrix trainData = new TrainingMatrix(data.getDimensions(), data.getRows(), data.getLabels());
+        TrainingMatrix testData = new TrainingMatrix(data.getDimensions(), data.getRows(), data.getLabels());
+        float[] row = new float[data.getDimensions()];
+        for (int r = 0; r < data.getRows(); r++) {
+            (folds.getFold(r) == fold ? testData : trainData).add(data.copyRow(r, row, 0), data.getQualityAttribute(r));
+        }
+        return KnnAI.predict(new LinearScanIndex(trainData, distance), testData, K, voting);
+    }
+}
@@ -0,0 +1,118 @@
+package ai;
+
+import at.fhtw.ai.knn.CsvLoader;
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.LabelDictionary;
+import at.fhtw.ai.knn.MappedTrainingMatrix;
+import at.fhtw.ai.knn.TrainingMatrix;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Test main class writing random rows as CSV and reading them back. The file spans several chunks, so rows cut at chunk borders are
+ * covered, sequentially and in parallel. Reading data sets needs <code>--add-opens java.base/java.util=ALL-UNNAMED</code>.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class CsvLoaderTest {
+
+    /**
+     * @param args the command line arguments
+     * @throws IOException If a file could not be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+        TrainingMatrix expected = TestData.clusters(40000, 9, 7, 12);
+        Path csv = Files.createTempFile("loader", ".csv");
+        Path mapped = Files.createTempFile("loader", ".knnm");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Semicolons, decimal points, a header and the label in the last column
+            write(expected, csv, ';', false, "\n");
+            CsvLoader loader = new CsvLoader();
+            check(expected, loader.readMatrix(csv), "Sequential");
+            check(expected, loader.readMatrix(csv, new LabelDictionary(), executor), "Parallel");
+
+            List<DataSet<Float>> dataSets = loader.readDataSets(csv);
+            TestData.check(dataSets.size() == expected.getRows(), dataSets.size() + " data sets");
+            for (int row = 0; row < expected.getRows(); row += 997) {
+                DataSet<Float> dataSet = dataSets.get(row);
+                TestData.check(String.valueOf(expected.getQualityAttribute(row)).equals(dataSet.getQualityAttribute()), "Data set " + row);
+                for (int i = 0; i < expected.getDimensions(); i++) {
+                    TestData.check(dataSet.getAttributes().get(i) == expected.get(row, i), "Data set " + row + " attribute " + i);
+                }
+            }
+
+            // Converted into a mapped file without a matrix on the heap
+            TestData.check(loader.convert(csv, mapped, executor) == expected.getRows(), "Converted row count");
+            check(expected, MappedTrainingMatrix.open(mapped), "Converted");
+
+            // A row with a missing column fails the conversion and leaves no file behind
+            Files.write(csv, "5;4\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            try {
+                loader.convert(csv, mapped, executor);
+                throw new AssertionError("Converted a broken file");
+            } catch (RuntimeException ex) {
+                TestData.check(!Files.exists(mapped), "Broken conversion left " + mapped);
+            }
+
+            // Tabs, decimal commas, Windows line endings and no header
+            loader.setSkipHeader(false);
+            loader.setSeparator('\t');
+            write(expected, csv, '\t', true, "\r\n");
+            loader.setDecimalComma(true);
+            check(expected, loader.readMatrix(csv, new LabelDictionary(), executor), "Decimal comma");
+        } finally {
+            executor.shutdown();
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(mapped);
+        }
+        System.out.println("CSV round trip of " + expected.getRows() + " rows succeeded");
+    }
+
+    /**
+     * Writes the matrix as CSV file, optionally with a header.
+     */
+    private static void write(TrainingMatrix matrix, Path file, char separator, boolean decimalComma, String lineEnd) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (!decimalComma) {
+                for (int i = 0; i < matrix.getDimensions(); i++) {
+                    writer.write("\"a" + i + "\"" + separator);
+                }
+                writer.write("\"quality\"" + lineEnd);
+            }
+            for (int row = 0; row < matrix.getRows(); row++) {
+                for (int i = 0; i < matrix.getDimensions(); i++) {
+                    String value = Float.toString(matrix.get(row, i));
+                    writer.write(decimalComma ? value.replace('.', ',') : value);
+                    writer.write(separator);
+                }
+                writer.write(String.valueOf(matrix.getQualityAttribute(row)));
+                writer.write(lineEnd);
+            }
+        }
+    }
+
+    /**
+     * Checks that the matrix read from the file has the same values and labels as the written one.
+     */
+    private static void check(TrainingMatrix expected, TrainingMatrix actual, String message) {
+        TestData.check(actual.getRows() == expected.getRows() && actual.getDimensions() == expected.getDimensions(),
+                message + ": " + actual.getRows() + " rows, " + actual.getDimensions() + " dimensions");
+        for (int row = 0; row < expected.getRows(); row++) {
+            TestData.check(String.valueOf(expected.getQualityAttribute(row)).equals(actual.getQualityAttribute(row)),
+                    message + ": label of row " + row + " is " + actual.getQualityAttribute(row));
+            for (int i = 0; i < expected.getDimensions(); i++) {
+                TestData.check(actual.get(row, i) == expected.get(row, i),
+                        message + ": row " + row + " attribute " + i + " is " + actual.get(row, i) + ", expected " + expected.get(row, i));
+            }
+        }
+    }
+}
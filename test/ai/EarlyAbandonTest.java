@@ -0,0 +1,192 @@
+package ai;
+
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import at.fhtw.ai.knn.heuristic.FloatHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Test main class checking that bounded distances return the exact distance of every row within the bound, that reordered distance
+ * functions compute the same distances on reordered rows, and that scans with reordered attributes find the same neighbours. Needs
+ * <code>--add-opens java.base/java.util=ALL-UNNAMED</code> for the data sets.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class EarlyAbandonTest {
+
+    private static final int ROWS = 2000;
+    private static final int[] DIMENSIONS = {3, 16, 40, 101};
+    private static final int[] KS = {1, 10};
+    private static final int DATA_SET_DIMENSIONS = 17;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        for (int dimensions : DIMENSIONS) {
+            TrainingMatrix trainData = TestData.clusters(ROWS, dimensions, 5, dimensions);
+            TrainingMatrix queries = TestData.clusters(30, dimensions, 5, dimensions + 1);
+            DistanceFunction[] distances = TestData.distances(dimensions, dimensions);
+            for (int d = 0; d < distances.length; d++) {
+                String message = TestData.DISTANCE_NAMES[d] + " with " + dimensions + " attributes";
+                bounded(distances[d], trainData, queries, message);
+                reordered(distances[d], trainData, queries, message);
+
+                // Reordered scans abandon other rows, but find the same neighbours
+                LinearScanIndex plain = new LinearScanIndex(trainData, distances[d]);
+                LinearScanIndex reordering = new LinearScanIndex(trainData, distances[d], true);
+                for (int k : KS) {
+                    TestData.checkSame(plain, reordering, queries, k, message + ", reordered scan, k " + k);
+                }
+            }
+            heuristicComputers(trainData, queries, dimensions);
+        }
+
+        // Distance functions without reordering support are rejected by reordering scans
+        try {
+            new LinearScanIndex(TestData.clusters(10, 2, 2, 1), new DistanceFunction() {
+                @Override
+                public float distance(float[] query, int queryOffset, float[] data, int offset, int length) {
+                    return 0;
+                }
+
+                @Override
+                public float distance(int attribute, float diff) {
+                    return 0;
+                }
+
+                @Override
+                public float toMetric(float distance) {
+                    return distance;
+                }
+            }, true);
+            throw new AssertionError("Distance function without reordering support reordered");
+        } catch (UnsupportedOperationException ex) {
+            // expected
+        }
+        System.out.println("Bounded and reordered distances match the full distances");
+    }
+
+    /**
+     * Checks that the bounded distance of every query and row is the full distance, unless the full distance exceeds the bound.
+     */
+    private static void bounded(DistanceFunction distance, TrainingMatrix trainData, TrainingMatrix queries, String message) {
+        float[] data = trainData.getData();
+        int dimensions = trainData.getDimensions();
+        float[] query = new float[dimensions];
+        for (int q = 0; q < queries.getRows(); q++) {
+            queries.copyRow(q, query, 0);
+            for (int r = 0, offset = 0; r < trainData.getRows(); r++, offset += dimensions) {
+                float full = distance.distance(query, data, offset);
+                for (float bound : new float[]{Float.POSITIVE_INFINITY, full, full * 0.5f, 0}) {
+                    float bounded = distance.distance(query, data, offset, bound);
+                    TestData.check(full <= bound ? bounded == full : bounded > bound, message + ": query " + q + ", row " + r + " with bound "
+                            + bound + " returned " + bounded + ", full distance " + full);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that a distance function reordered by a random permutation computes the same distances on the reordered rows.
+     */
+    private static void reordered(DistanceFunction distance, TrainingMatrix trainData, TrainingMatrix queries, String message) {
+        int dimensions = trainData.getDimensions();
+        int[] order = permutation(new Random(dimensions), dimensions);
+        DistanceFunction reordered = distance.reorder(order);
+        float[] query = new float[dimensions];
+        float[] row = new float[dimensions];
+        float[] reorderedQuery = new float[dimensions];
+        float[] reorderedRow = new float[dimensions];
+        for (int q = 0; q < queries.getRows(); q++) {
+            queries.copyRow(q, query, 0);
+            reorder(query, order, reorderedQuery);
+            for (int r = 0; r < trainData.getRows(); r += 7) {
+                trainData.copyRow(r, row, 0);
+                reorder(row, order, reorderedRow);
+                float expected = distance.distance(query, row);
+                float actual = reordered.distance(reorderedQuery, reorderedRow);
+                TestData.check(Math.abs(expected - actual) <= 1e-4f * Math.max(1, expected), message + ": reordered distance of query " + q
+                        + " and row " + r + " is " + actual + ", expected " + expected);
+                for (int a = 0; a < dimensions; a++) {
+                    float diff = query[order[a]] - row[order[a]];
+                    TestData.check(reordered.distance(a, diff) == distance.distance(order[a], diff), message + ": share of attribute " + a);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the bounded heuristics of a heuristic computer on data sets and primitive rows, and that reordering it gives the same
+     * neighbours as reordering its distance.
+     */
+    private static void heuristicComputers(TrainingMatrix trainData, TrainingMatrix queries, int dimensions) {
+        List<DataSet<Float>> trainDataSets = TestData.dataSets(trainData);
+        List<DataSet<Float>> queryDataSets = TestData.dataSets(queries);
+        Random random = new Random(dimensions);
+        List<Float> weights = new ArrayList<>();
+        for (int i = 0; i < dimensions; i++) {
+            weights.add(0.5f + random.nextFloat());
+        }
+
+        for (HeuristicComputer.Heuristic heuristic : new HeuristicComputer.Heuristic[]{HeuristicComputer.Heuristic.Euklid,
+            HeuristicComputer.Heuristic.Manhatten}) {
+            for (List<Float> w : new List[]{null, weights}) {
+                FloatHeuristicComputer computer = new FloatHeuristicComputer();
+                computer.setHeuristic(heuristic);
+                computer.setWeights(w);
+                String message = heuristic + (w == null ? "" : ", weighted") + " heuristic computer with " + dimensions + " attributes";
+                bounded(computer, trainData, queries, message);
+
+                // Data sets keep the initial attribute array of their list, so they only hold few attributes
+                for (int q = 0; dimensions <= DATA_SET_DIMENSIONS && q < queryDataSets.size(); q++) {
+                    DataSet<Float> candidate = queryDataSets.get(q);
+                    for (int r = 0; r < trainDataSets.size(); r += 3) {
+                        float full = computer.computeHeuristic(candidate, trainDataSets.get(r));
+                        for (float bound : new float[]{Float.POSITIVE_INFINITY, full, full * 0.5f, 0}) {
+                            float bounded = computer.computeHeuristic(candidate, trainDataSets.get(r), bound);
+                            TestData.check(full <= bound ? bounded == full : bounded > bound, message + ": data set " + q + ", row " + r
+                                    + " with bound " + bound + " returned " + bounded + ", full heuristic " + full);
+                        }
+                    }
+                }
+
+                LinearScanIndex plain = new LinearScanIndex(trainData, computer);
+                LinearScanIndex reordering = new LinearScanIndex(trainData, computer, true);
+                TestData.checkSame(plain, reordering, queries, KS[1], message + ", reordered scan");
+            }
+        }
+    }
+
+    /**
+     * Creates a random permutation of the attribute indices.
+     */
+    private static int[] permutation(Random random, int length) {
+        int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = i;
+        }
+        for (int i = length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = result[i];
+            result[i] = result[j];
+            result[j] = swap;
+        }
+        return result;
+    }
+
+    /**
+     * Copies the attributes in the given order.
+     */
+    private static void reorder(float[] source, int[] order, float[] target) {
+        for (int i = 0; i < order.length; i++) {
+            target[i] = source[order[i]];
+        }
+    }
+}
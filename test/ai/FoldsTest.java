@@ -0,0 +1,166 @@
+package ai;
+
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.Folds;
+import at.fhtw.ai.knn.TrainingMatrix;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test main class checking that folds are reproducible, stratified and contain every row exactly once, and that the train and test views
+ * show the shared data without copying it. Needs <code>--add-opens java.base/java.util=ALL-UNNAMED</code> for the data sets.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class FoldsTest {
+
+    private static final int LABELS = 7;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        for (int rows : new int[]{0, 1, 4, 10, 97, 1000}) {
+            TrainingMatrix data = TestData.clusters(rows, 2, LABELS, rows);
+            for (int folds : new int[]{1, 2, 5, 10}) {
+                String message = rows + " rows in " + folds + " folds";
+                Folds stratified = Folds.stratified(data, folds, 11);
+                checkPartition(stratified, rows, folds, message);
+                checkPartition(Folds.of(rows, folds, 11), rows, folds, message + " without stratification");
+                checkStratified(stratified, data, message);
+                checkViews(stratified, rows, message);
+
+                // The same seed gives the same folds, for matrices and data sets with the same labels
+                checkSame(stratified, Folds.stratified(data, folds, 11), message + ", same seed");
+                checkSame(stratified, Folds.stratified(TestData.dataSets(data), folds, 11), message + ", data sets");
+            }
+        }
+
+        // Other seeds shuffle differently
+        Folds folds = Folds.of(1000, 5, 1);
+        Folds other = Folds.of(1000, 5, 2);
+        boolean different = false;
+        for (int position = 0; position < folds.getRows(); position++) {
+            different |= folds.getRow(position) != other.getRow(position);
+        }
+        TestData.check(different, "Seeds 1 and 2 gave the same folds");
+
+        try {
+            Folds.of(10, 0, 1);
+            throw new AssertionError("No folds created");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            folds.test(new ArrayList<Integer>(), 0);
+            throw new AssertionError("View of data with the wrong number of rows created");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        System.out.println("Folds are reproducible, stratified and contain every row once");
+    }
+
+    /**
+     * Checks that every row is a test row of exactly one fold and that the fold sizes differ by at most one row.
+     */
+    private static void checkPartition(Folds folds, int rows, int count, String message) {
+        TestData.check(folds.getRows() == rows && folds.getFolds() == count, message + ": " + folds.getRows() + " rows in " + folds.getFolds()
+                + " folds");
+        int[] seen = new int[rows];
+        for (int fold = 0; fold < count; fold++) {
+            TestData.check(folds.getTestSize(fold) == folds.getTestEnd(fold) - folds.getTestStart(fold)
+                    && Math.abs(folds.getTestSize(fold) - rows / count) <= 1, message + ": fold " + fold + " has " + folds.getTestSize(fold)
+                    + " test rows");
+            for (int position = folds.getTestStart(fold); position < folds.getTestEnd(fold); position++) {
+                int row = folds.getRow(position);
+                seen[row]++;
+                TestData.check(folds.getFold(row) == fold, message + ": row " + row + " is in fold " + folds.getFold(row) + ", expected " + fold);
+            }
+        }
+        TestData.check(folds.getTestStart(0) == 0 && folds.getTestEnd(count - 1) == rows, message + ": positions");
+        for (int row = 0; row < rows; row++) {
+            TestData.check(seen[row] == 1, message + ": row " + row + " is a test row of " + seen[row] + " folds");
+        }
+    }
+
+    /**
+     * Checks that the rows of every label are spread evenly over the folds.
+     */
+    private static void checkStratified(Folds folds, TrainingMatrix data, String message) {
+        int[][] counts = new int[folds.getFolds()][LABELS];
+        for (int row = 0; row < data.getRows(); row++) {
+            counts[folds.getFold(row)][data.getClassIds()[row]]++;
+        }
+        for (int classId = 0; classId < data.getLabels().size(); classId++) {
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            for (int[] fold : counts) {
+                min = Math.min(min, fold[classId]);
+                max = Math.max(max, fold[classId]);
+            }
+            TestData.check(max - min <= 1, message + ": label " + data.getLabels().getLabel(classId) + " has " + min + " to " + max
+                    + " rows per fold");
+        }
+    }
+
+    /**
+     * Checks that the train and test views of every fold contain the expected rows up to the last one, and that they show the data instead
+     * of a copy.
+     */
+    private static void checkViews(Folds folds, int rows, String message) {
+        List<Integer> data = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            data.add(row);
+        }
+        for (int fold = 0; fold < folds.getFolds(); fold++) {
+            List<Integer> test = folds.test(data, fold);
+            List<Integer> train = folds.train(data, fold);
+            String foldMessage = message + ", fold " + fold;
+            TestData.check(test.size() == folds.getTestSize(fold) && train.size() == rows - test.size(), foldMessage + ": " + train.size()
+                    + " train and " + test.size() + " test rows");
+            boolean[] seen = new boolean[rows];
+            for (int i = 0; i < test.size(); i++) {
+                TestData.check(folds.getFold(test.get(i)) == fold && !seen[test.get(i)], foldMessage + ": test row " + test.get(i));
+                seen[test.get(i)] = true;
+            }
+            for (int i = 0; i < train.size(); i++) {
+                TestData.check(folds.getFold(train.get(i)) != fold && !seen[train.get(i)], foldMessage + ": train row " + train.get(i));
+                seen[train.get(i)] = true;
+            }
+            for (List<Integer> view : new List[]{test, train}) {
+                try {
+                    view.get(view.size());
+                    throw new AssertionError(foldMessage + ": row after the last row returned");
+                } catch (IndexOutOfBoundsException ex) {
+                    // expected
+                }
+                try {
+                    view.set(0, -1);
+                    throw new AssertionError(foldMessage + ": view changed");
+                } catch (UnsupportedOperationException | IndexOutOfBoundsException ex) {
+                    // expected
+                }
+            }
+
+            // Changes of the data show through the views
+            if (!train.isEmpty()) {
+                int last = train.get(train.size() - 1);
+                data.set(last, -last - 1);
+                TestData.check(train.get(train.size() - 1) == -last - 1, foldMessage + ": train view copied the data");
+                data.set(last, last);
+            }
+        }
+    }
+
+    /**
+     * Checks that both folds contain the same rows in the same order.
+     */
+    private static void checkSame(Folds expected, Folds actual, String message) {
+        TestData.check(expected.getRows() == actual.getRows() && expected.getFolds() == actual.getFolds(), message + ": sizes");
+        for (int position = 0; position < expected.getRows(); position++) {
+            TestData.check(expected.getRow(position) == actual.getRow(position), message + ": position " + position + " is row "
+                    + actual.getRow(position) + ", expected " + expected.getRow(position));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package ai;
+
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.KnnAI;
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.FloatHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test main class running a heuristic computer written against the candidate based API through the stateless adapter. Needs
+ * <code>--add-opens java.base/java.util=ALL-UNNAMED</code> for the data sets.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class HeuristicAdapterTest {
+
+    private static final int DIMENSIONS = 4;
+
+    /**
+     * Heuristic computer which only implements the candidate based heuristic, like subclasses written before the stateless API.
+     */
+    public static class LegacyHeuristicComputer extends HeuristicComputer<Float, Float> {
+
+        @Override
+        public float computeHeuristic(DataSet<Float> ds) {
+            float dist = 0;
+            for (int i = 0; i < ds.getDimensions(); i++) {
+                float weight = weights != null ? weights.get(i) : 1;
+                float diff = (ds.getAttributes().get(i) - candidate.getAttributes().get(i)) * weight;
+                dist += heuristic == Heuristic.Manhatten ? Math.abs(diff) : diff * diff;
+            }
+            return dist;
+        }
+    }
+
+    /**
+     * Heuristic computer without a no argument constructor, which cannot be copied by the default implementation.
+     */
+    public static class ScaledHeuristicComputer extends LegacyHeuristicComputer {
+
+        private final float scale;
+
+        public ScaledHeuristicComputer(float scale) {
+            this.scale = scale;
+        }
+
+        @Override
+        public float computeHeuristic(DataSet<Float> ds) {
+            return super.computeHeuristic(ds) * scale;
+        }
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws Exception {
+        List<DataSet<Float>> trainData = dataSets(600, 1);
+        List<DataSet<Float>> testData = dataSets(150, 2);
+        List<Float> weights = Arrays.asList(0.5f, 1.5f, 1f, 2f);
+
+        // The stateless heuristic restores the current candidate of the legacy computer
+        final LegacyHeuristicComputer legacy = new LegacyHeuristicComputer();
+        legacy.setWeights(weights);
+        DataSet<Float> current = testData.get(0);
+        legacy.setCandidate(current);
+        float expected = legacy.computeHeuristic(trainData.get(1));
+        legacy.setCandidate(trainData.get(2));
+        float adapted = legacy.computeHeuristic(current, trainData.get(1));
+        TestData.check(adapted == expected && legacy.getCandidate() == trainData.get(2), "Adapter heuristic " + adapted + ", expected "
+                + expected + ", candidate " + legacy.getCandidate());
+
+        // Many threads share one legacy computer through the adapter
+        final List<DataSet<Float>> train = trainData;
+        final List<DataSet<Float>> test = testData;
+        LegacyHeuristicComputer single = new LegacyHeuristicComputer();
+        single.setWeights(weights);
+        float sum = 0;
+        for (DataSet<Float> query : testData) {
+            single.setCandidate(query);
+            for (DataSet<Float> row : trainData) {
+                sum += single.computeHeuristic(row);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Float>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(new Callable<Float>() {
+                    @Override
+                    public Float call() {
+                        float sum = 0;
+                        for (DataSet<Float> query : test) {
+                            for (DataSet<Float> row : train) {
+                                sum += legacy.computeHeuristic(query, row);
+                            }
+                        }
+                        return sum;
+                    }
+                }));
+            }
+            for (Future<Float> future : futures) {
+                TestData.check(future.get() == sum, "Concurrent adapter sum " + future.get() + ", expected " + sum);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // The default copy keeps the type, heuristic and weights
+        legacy.setHeuristic(HeuristicComputer.Heuristic.Manhatten);
+        HeuristicComputer<Float, Float> copy = legacy.copy();
+        TestData.check(copy instanceof LegacyHeuristicComputer && copy != legacy && copy.getHeuristic() == HeuristicComputer.Heuristic.Manhatten
+                && copy.getWeights() == weights, "Copy " + copy);
+        try {
+            new ScaledHeuristicComputer(2).copy();
+            throw new AssertionError("Copy without a no argument constructor");
+        } catch (UnsupportedOperationException ex) {
+            // expected
+        }
+
+        // Predictions using the legacy computer match the built in computer
+        for (HeuristicComputer.Heuristic heuristic : HeuristicComputer.Heuristic.values()) {
+            ConfusionMatrix expectedMatrix = KnnAI.predict(trainData, testData, new FloatHeuristicComputer(), 7, weights, heuristic);
+            ConfusionMatrix actualMatrix = KnnAI.predict(trainData, testData, new LegacyHeuristicComputer(), 7, weights, heuristic);
+            TestData.checkSame(expectedMatrix, actualMatrix, "Legacy computer " + heuristic);
+        }
+        System.out.println("Legacy heuristic computers work through the adapter");
+    }
+
+    /**
+     * Creates random data sets with one of three labels.
+     */
+    private static List<DataSet<Float>> dataSets(int rows, long seed) {
+        Random random = new Random(seed);
+        List<DataSet<Float>> result = new ArrayList<>(rows);
+        for (int r = 0; r < rows; r++) {
+            int label = random.nextInt(3);
+            DataSet<Float> ds = new DataSet<>();
+            for (int i = 0; i < DIMENSIONS; i++) {
+                ds.getAttributes().add(label * 2 + (float) random.nextGaussian());
+            }
+            ds.setQualityAttribute(label);
+            result.add(ds);
+        }
+        return result;
+    }
+}
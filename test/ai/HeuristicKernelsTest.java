@@ -0,0 +1,150 @@
+package ai;
+
+import at.fhtw.ai.knn.heuristic.HeuristicKernels;
+import java.util.Random;
+
+/**
+ * Test main class comparing the distance kernels with a scalar reference in double precision, for all lengths around the vector width
+ * and unaligned offsets. Started with <code>--add-modules jdk.incubator.vector</code> the SIMD kernels are tested, started with
+ * <code>-Dknn.vector=false</code> the scalar kernels.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class HeuristicKernelsTest {
+
+    private static final int MAX_LENGTH = 67;
+    private static final int TILE_ROWS = 13;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        boolean vectorize = Boolean.parseBoolean(System.getProperty("knn.vector", "true"));
+        TestData.check(HeuristicKernels.isVectorized() == vectorize, "Vectorized kernels " + HeuristicKernels.isVectorized() + ", expected "
+                + vectorize);
+
+        Random random = new Random(7);
+        float[] a = randomArray(random, MAX_LENGTH + 5);
+        float[] b = randomArray(random, MAX_LENGTH + 5);
+        float[] weights = new float[MAX_LENGTH];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 0.25f + random.nextFloat() * 2;
+        }
+
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            for (int aOffset = 0; aOffset < 3; aOffset++) {
+                int bOffset = (aOffset * 2 + length) % 5;
+                String message = "Length " + length + ", offsets " + aOffset + " and " + bOffset;
+                float euklid = HeuristicKernels.euklid(a, aOffset, b, bOffset, length);
+                float manhatten = HeuristicKernels.manhatten(a, aOffset, b, bOffset, length);
+                float weightedEuklid = HeuristicKernels.weightedEuklid(a, aOffset, b, bOffset, weights, length);
+                float weightedManhatten = HeuristicKernels.weightedManhatten(a, aOffset, b, bOffset, weights, length);
+                checkClose(reference(false, a, aOffset, b, bOffset, null, length), euklid, message + ", Euklid");
+                checkClose(reference(true, a, aOffset, b, bOffset, null, length), manhatten, message + ", Manhatten");
+                checkClose(reference(false, a, aOffset, b, bOffset, weights, length), weightedEuklid, message + ", weighted Euklid");
+                checkClose(reference(true, a, aOffset, b, bOffset, weights, length), weightedManhatten, message + ", weighted Manhatten");
+                checkClose(dot(a, aOffset, b, bOffset, length, false), dot(a, aOffset, b, bOffset, length, true), HeuristicKernels.dot(a, aOffset, b,
+                        bOffset, length), message + ", dot");
+
+                // Bounded kernels return the unbounded distance unless it exceeds the bound
+                float[] unbounded = {euklid, manhatten, weightedEuklid, weightedManhatten};
+                for (int kernel = 0; kernel < unbounded.length; kernel++) {
+                    boolean isManhatten = kernel % 2 == 1;
+                    float[] kernelWeights = kernel < 2 ? null : weights;
+                    for (float bound : new float[]{Float.POSITIVE_INFINITY, unbounded[kernel], unbounded[kernel] * 0.5f, 0}) {
+                        float bounded = isManhatten ? HeuristicKernels.boundedManhatten(a, aOffset, b, bOffset, kernelWeights, length, bound)
+                                : HeuristicKernels.boundedEuklid(a, aOffset, b, bOffset, kernelWeights, length, bound);
+                        TestData.check(unbounded[kernel] <= bound ? bounded == unbounded[kernel] : bounded > bound, message + ", bounded kernel "
+                                + kernel + " with bound " + bound + " returned " + bounded + ", unbounded " + unbounded[kernel]);
+                    }
+                }
+            }
+
+            // Transposed tiles of rows
+            float[] tile = randomArray(random, TILE_ROWS * length + 3);
+            float[] result = new float[TILE_ROWS];
+            float[] row = new float[length];
+            for (float[] tileWeights : new float[][]{null, weights}) {
+                String message = "Tile of length " + length + (tileWeights == null ? "" : ", weighted");
+                HeuristicKernels.euklidTile(a, 1, tile, 3, TILE_ROWS, tileWeights, length, result);
+                for (int r = 0; r < TILE_ROWS; r++) {
+                    checkClose(reference(false, a, 1, transposedRow(tile, 3, r, length, row), 0, tileWeights, length), result[r], message
+                            + ", Euklid row " + r);
+                }
+                HeuristicKernels.manhattenTile(a, 1, tile, 3, TILE_ROWS, tileWeights, length, result);
+                for (int r = 0; r < TILE_ROWS; r++) {
+                    checkClose(reference(true, a, 1, transposedRow(tile, 3, r, length, row), 0, tileWeights, length), result[r], message
+                            + ", Manhatten row " + r);
+                }
+            }
+            HeuristicKernels.dotTile(a, 1, tile, 3, TILE_ROWS, length, result);
+            for (int r = 0; r < TILE_ROWS; r++) {
+                transposedRow(tile, 3, r, length, row);
+                checkClose(dot(a, 1, row, 0, length, false), dot(a, 1, row, 0, length, true), result[r], "Tile of length " + length + ", dot row "
+                        + r);
+            }
+        }
+        System.out.println((HeuristicKernels.isVectorized() ? "Vector" : "Scalar") + " kernels match the reference for all lengths up to "
+                + MAX_LENGTH);
+    }
+
+    /**
+     * Creates an array of random values.
+     */
+    private static float[] randomArray(Random random, int length) {
+        float[] result = new float[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (float) random.nextGaussian() * 3;
+        }
+        return result;
+    }
+
+    /**
+     * Copies a row of a transposed tile.
+     */
+    private static float[] transposedRow(float[] tile, int tileOffset, int row, int length, float[] target) {
+        for (int i = 0; i < length; i++) {
+            target[i] = tile[tileOffset + i * TILE_ROWS + row];
+        }
+        return target;
+    }
+
+    /**
+     * Computes a distance in double precision.
+     */
+    private static double reference(boolean manhatten, float[] a, int aOffset, float[] b, int bOffset, float[] weights, int length) {
+        double dist = 0;
+        for (int i = 0; i < length; i++) {
+            double diff = ((double) a[aOffset + i] - b[bOffset + i]) * (weights == null ? 1 : weights[i]);
+            dist += manhatten ? Math.abs(diff) : diff * diff;
+        }
+        return dist;
+    }
+
+    /**
+     * Computes a dot product in double precision, or the sum of the absolute products.
+     */
+    private static double dot(float[] a, int aOffset, float[] b, int bOffset, int length, boolean absolute) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            double product = (double) a[aOffset + i] * b[bOffset + i];
+            sum += absolute ? Math.abs(product) : product;
+        }
+        return sum;
+    }
+
+    /**
+     * Checks that a distance in single precision is close to the reference.
+     */
+    private static void checkClose(double expected, float actual, String message) {
+        checkClose(expected, expected, actual, message);
+    }
+
+    /**
+     * Checks that a single precision result is close to the reference, relative to the sum of the absolute terms.
+     */
+    private static void checkClose(double expected, double magnitude, float actual, String message) {
+        TestData.check(Math.abs(expected - actual) <= 1e-5 * Math.max(1, magnitude), message + ": " + actual + ", expected " + expected);
+    }
+}
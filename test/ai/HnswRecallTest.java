@@ -0,0 +1,62 @@
+package ai;
+
+import at.fhtw.ai.knn.MappedTrainingMatrix;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.analysis.Recall;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import at.fhtw.ai.knn.index.HnswIndex;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Test main class measuring the recall of the HNSW graph against a linear scan, over a heap matrix and a memory mapped matrix.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class HnswRecallTest {
+
+    private static final int K = 10;
+    private static final double MIN_RECALL = 0.95;
+
+    /**
+     * @param args the command line arguments
+     * @throws IOException If the mapped matrix could not be written.
+     */
+    public static void main(String[] args) throws IOException {
+        TrainingMatrix trainData = TestData.clusters(10000, 16, 10, 6);
+        TrainingMatrix queries = TestData.clusters(200, 16, 10, 7);
+        Path file = Files.createTempFile("hnsw", ".knnm");
+        try {
+            MappedTrainingMatrix.write(trainData, file);
+            MappedTrainingMatrix mapped = MappedTrainingMatrix.open(file);
+            DistanceFunction[] distances = TestData.distances(16, 6);
+            for (int d = 0; d < distances.length; d++) {
+                DistanceFunction distance = distances[d];
+                LinearScanIndex exact = new LinearScanIndex(trainData, distance);
+                HnswIndex heap = new HnswIndex(trainData, distance);
+                HnswIndex mappedIndex = new HnswIndex(mapped, distance);
+
+                double previous = 0;
+                for (int ef : new int[]{10, 50, 200}) {
+                    heap.setEfSearch(ef);
+                    mappedIndex.setEfSearch(ef);
+                    double recall = Recall.measure(heap, exact, queries, K);
+                    double mappedRecall = Recall.measure(mappedIndex, exact, queries, K);
+                    System.out.println("HNSW " + TestData.DISTANCE_NAMES[d] + ", ef " + ef + ": recall " + recall + ", mapped " + mappedRecall);
+
+                    // The same graph is built from the same rows, wherever they are stored
+                    TestData.check(recall == mappedRecall, "Mapped recall " + mappedRecall + " differs from " + recall);
+                    TestData.check(recall >= previous - 0.01, "Recall " + recall + " dropped with ef " + ef);
+                    previous = recall;
+                }
+                TestData.check(previous >= MIN_RECALL, TestData.DISTANCE_NAMES[d] + " recall " + previous + " below " + MIN_RECALL);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("HNSW recall is at least " + MIN_RECALL);
+    }
+}
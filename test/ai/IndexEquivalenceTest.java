@@ -0,0 +1,232 @@
+package ai;
+
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import at.fhtw.ai.knn.index.KdTree;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.index.NeighbourIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import at.fhtw.ai.knn.index.VpTree;
+import java.util.Arrays;
+
+/**
+ * Test main class comparing the neighbours found by every exact tree index with a linear scan, followed by the cases which are hard for
+ * a single index.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class IndexEquivalenceTest {
+
+    /**
+     * Creates the tested index over a training matrix.
+     */
+    private interface IndexFactory {
+
+        /**
+         * @return Name of the index.
+         */
+        String getName();
+
+        /**
+         * @return Numbers of dimensions the index is tested with.
+         */
+        int[] getDimensions();
+
+        /**
+         * Creates the index.
+         *
+         * @param trainData Train data.
+         * @param distance Distance function.
+         * @param leafSize Maximum number of rows in a leaf, <code>0</code> for the default.
+         * @return Index.
+         */
+        NeighbourIndex create(TrainingMatrix trainData, DistanceFunction distance, int leafSize);
+    }
+
+    private static final IndexFactory KD_TREE = new IndexFactory() {
+        @Override
+        public String getName() {
+            return "KD-tree";
+        }
+
+        @Override
+        public int[] getDimensions() {
+            return new int[]{2, 5, 11};
+        }
+
+        @Override
+        public NeighbourIndex create(TrainingMatrix trainData, DistanceFunction distance, int leafSize) {
+            return leafSize > 0 ? new KdTree(trainData, distance, leafSize) : new KdTree(trainData, distance);
+        }
+    };
+
+    private static final IndexFactory VP_TREE = new IndexFactory() {
+        @Override
+        public String getName() {
+            return "VP-tree";
+        }
+
+        @Override
+        public int[] getDimensions() {
+            return new int[]{2, 11, 40};
+        }
+
+        @Override
+        public NeighbourIndex create(TrainingMatrix trainData, DistanceFunction distance, int leafSize) {
+            return leafSize > 0 ? new VpTree(trainData, distance, leafSize) : new VpTree(trainData, distance);
+        }
+    };
+
+    private static final IndexFactory[] INDICES = {KD_TREE, VP_TREE};
+
+    /**
+     * Distance function counting the rows it compares.
+     */
+    private static class CountingDistance implements DistanceFunction {
+
+        private final DistanceFunction distance;
+        private int rows;
+
+        CountingDistance(DistanceFunction distance) {
+            this.distance = distance;
+        }
+
+        @Override
+        public float distance(float[] query, int queryOffset, float[] data, int offset, int length) {
+            rows++;
+            return distance.distance(query, queryOffset, data, offset, length);
+        }
+
+        @Override
+        public float distance(float[] query, int queryOffset, float[] data, int offset, int length, float bound) {
+            rows++;
+            return distance.distance(query, queryOffset, data, offset, length, bound);
+        }
+
+        @Override
+        public float distance(int attribute, float diff) {
+            return distance.distance(attribute, diff);
+        }
+
+        @Override
+        public float toMetric(float distance) {
+            return this.distance.toMetric(distance);
+        }
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        for (IndexFactory factory : INDICES) {
+            for (int d : factory.getDimensions()) {
+                TrainingMatrix trainData = TestData.clusters(4000, d, 7, d);
+                TrainingMatrix queries = TestData.clusters(300, d, 7, d + 100);
+                for (DistanceFunction distance : TestData.distances(d, d)) {
+                    LinearScanIndex exact = new LinearScanIndex(trainData, distance);
+                    for (int leafSize : new int[]{1, 16}) {
+                        NeighbourIndex index = factory.create(trainData, distance, leafSize);
+                        for (int k : new int[]{1, 10}) {
+                            TestData.checkSame(exact, index, queries, k, factory.getName() + " " + distance + ", " + d + " dimensions, leaf size "
+                                    + leafSize + ", k " + k);
+                        }
+                    }
+                }
+            }
+
+            // Duplicate rows and a single row
+            TrainingMatrix duplicates = new TrainingMatrix(3, 100);
+            for (int i = 0; i < 100; i++) {
+                duplicates.add(new float[]{i % 4, 1, 2}, i % 3);
+            }
+            DistanceFunction distance = TestData.distances(3, 0)[0];
+            TestData.checkSame(new LinearScanIndex(duplicates, distance), factory.create(duplicates, distance, 0), duplicates, 10,
+                    factory.getName() + " duplicates");
+            TrainingMatrix single = TestData.clusters(1, 3, 1, 0);
+            TestData.checkSame(new LinearScanIndex(single, distance), factory.create(single, distance, 0), duplicates, 5,
+                    factory.getName() + " single row");
+        }
+
+        degenerateKdTreeSplits();
+        equalVpTreeDistances();
+        System.out.println("Tree index neighbours match a linear scan");
+    }
+
+    /**
+     * Splits of a KD-tree whose split value is shared by many rows on both sides must still find the nearest rows, and still prune.
+     */
+    private static void degenerateKdTreeSplits() {
+        int rows = 4096;
+        TrainingMatrix trainData = new TrainingMatrix(3, rows);
+        for (int i = 0; i < rows; i++) {
+            trainData.add(new float[]{i % 2, (i / 2) % 64, 0}, i % 3);
+        }
+        TrainingMatrix queries = new TrainingMatrix(3, 64);
+        for (int q = 0; q < 64; q++) {
+            queries.add(new float[]{q % 3 * 0.5f, q + (q % 5 - 2) * 0.25f, 0}, 0);
+        }
+
+        for (DistanceFunction distance : TestData.distances(3, 3)) {
+            CountingDistance counting = new CountingDistance(distance);
+            for (int leafSize : new int[]{1, 16}) {
+                KdTree tree = new KdTree(trainData, counting, leafSize);
+                TestData.checkSame(new LinearScanIndex(trainData, distance), tree, queries, 5, "KD-tree degenerate splits " + distance
+                        + ", leaf size " + leafSize);
+
+                Neighbours result = new Neighbours(5);
+                float[] query = new float[3];
+                counting.rows = 0;
+                for (int q = 0; q < queries.getRows(); q++) {
+                    tree.search(queries.copyRow(q, query, 0), result);
+                }
+                int evaluations = counting.rows / queries.getRows();
+                TestData.check(evaluations < rows / 16, "KD-tree degenerate splits " + distance + ", leaf size " + leafSize + " compared "
+                        + evaluations + " of " + rows + " rows per query");
+            }
+        }
+    }
+
+    /**
+     * Every vantage point of a VP-tree sees all other rows at the same distance, so all rows share the median distance.
+     */
+    private static void equalVpTreeDistances() {
+        int dimensions = 40;
+        TrainingMatrix unitRows = new TrainingMatrix(dimensions, 400);
+        TrainingMatrix equalRows = new TrainingMatrix(dimensions, 400);
+        float[] row = new float[dimensions];
+        for (int i = 0; i < 400; i++) {
+            Arrays.fill(row, 0);
+            row[i % dimensions] = 1;
+            unitRows.add(row, i % 3);
+            Arrays.fill(row, 0.5f);
+            equalRows.add(row, i % 3);
+        }
+
+        // The origin is equally far from all unit rows, the unit rows are equally far from each other
+        TrainingMatrix queries = new TrainingMatrix(dimensions, 50);
+        queries.add(new float[dimensions], 0);
+        for (int q = 0; q < dimensions; q++) {
+            Arrays.fill(row, 0);
+            row[q] = 1;
+            queries.add(row, 0);
+        }
+        TrainingMatrix clusters = TestData.clusters(9, dimensions, 3, 40);
+        for (int q = 0; q < clusters.getRows(); q++) {
+            queries.add(clusters.copyRow(q, row, 0), 0);
+        }
+
+        for (DistanceFunction distance : TestData.distances(dimensions, 40)) {
+            for (TrainingMatrix trainData : new TrainingMatrix[]{unitRows, equalRows}) {
+                LinearScanIndex exact = new LinearScanIndex(trainData, distance);
+                for (int leafSize : new int[]{1, 16}) {
+                    VpTree tree = new VpTree(trainData, distance, leafSize);
+                    for (int k : new int[]{1, 10, 50}) {
+                        TestData.checkSame(exact, tree, queries, k, "VP-tree equal distances " + distance + ", "
+                                + (trainData == unitRows ? "unit" : "equal") + " rows, leaf size " + leafSize + ", k " + k);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package ai;
+
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.KnnAI;
+import at.fhtw.ai.knn.KnnModel;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.FloatHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.KdTree;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.index.NeighbourIndex;
+import at.fhtw.ai.knn.metrics.Instrumentation;
+import at.fhtw.ai.knn.metrics.LatencyHistogram;
+import at.fhtw.ai.knn.metrics.RecordingInstrumentation;
+import at.fhtw.ai.knn.voting.Voting;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test main class checking the percentiles of the latency histogram, and that predictions record every stage and query exactly once.
+ * Needs <code>--add-opens java.base/java.util=ALL-UNNAMED</code> for the data sets.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class InstrumentationTest {
+
+    private static final int K = 7;
+
+    /**
+     * @param args the command line arguments
+     * @throws InterruptedException If the main thread is interrupted.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        histogram();
+        counts();
+        System.out.println("Instrumentation records every stage and query once");
+    }
+
+    /**
+     * Checks the percentiles of the histogram against exactly known values.
+     */
+    private static void histogram() throws InterruptedException {
+        // Small values are counted exactly
+        LatencyHistogram small = new LatencyHistogram();
+        for (int value = 0; value < LatencyHistogram.SUB_BUCKETS; value++) {
+            small.record(value);
+        }
+        for (int value = 0; value < LatencyHistogram.SUB_BUCKETS; value++) {
+            double percentile = 100.0 * (value + 1) / LatencyHistogram.SUB_BUCKETS;
+            TestData.check(small.getValueAtPercentile(percentile) == value, "Percentile " + percentile + " is "
+                    + small.getValueAtPercentile(percentile) + ", expected " + value);
+        }
+
+        // Bigger values are within the relative precision of the buckets, the count, total, mean and maximum are exact
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100000; value++) {
+            histogram.record(value);
+        }
+        TestData.check(histogram.getCount() == 100000 && histogram.getTotal() == 5000050000L && histogram.getMean() == 50000.5
+                && histogram.getMax() == 100000, "Histogram " + histogram);
+        for (double percentile : new double[]{1, 25, 50, 90, 99, 99.9}) {
+            long expected = (long) Math.ceil(percentile * 1000);
+            long actual = histogram.getValueAtPercentile(percentile);
+            TestData.check(actual >= expected && actual <= expected * (1 + 1.0 / LatencyHistogram.SUB_BUCKETS), "Percentile " + percentile
+                    + " is " + actual + ", expected " + expected);
+        }
+        TestData.check(histogram.getValueAtPercentile(100) == 100000 && histogram.getValueAtPercentile(0) == 1, "Minimum and maximum");
+
+        // Negative values count as zero, huge values are kept
+        LatencyHistogram extremes = new LatencyHistogram();
+        TestData.check(extremes.getValueAtPercentile(50) == 0 && extremes.getMean() == 0, "Empty histogram " + extremes);
+        extremes.record(-5);
+        extremes.record(Long.MAX_VALUE);
+        TestData.check(extremes.getValueAtPercentile(50) == 0 && extremes.getValueAtPercentile(100) == Long.MAX_VALUE, "Extremes " + extremes);
+        try {
+            extremes.getValueAtPercentile(101);
+            throw new AssertionError("Percentile above 100 accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        // Histograms recorded by many threads and added up count every value
+        final LatencyHistogram shared = new LatencyHistogram();
+        LatencyHistogram merged = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int value = 1 + offset; value <= 100000; value += 4) {
+                        shared.record(value);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        merged.add(small);
+        merged.add(shared);
+        TestData.check(shared.getCount() == 100000 && shared.getTotal() == histogram.getTotal() && shared.getValueAtPercentile(50)
+                == histogram.getValueAtPercentile(50), "Concurrent histogram " + shared);
+        TestData.check(merged.getCount() == 100000 + LatencyHistogram.SUB_BUCKETS && merged.getMax() == 100000
+                && merged.getValueAtPercentile(0) == 0, "Merged histogram " + merged);
+    }
+
+    /**
+     * Checks the number of recorded stages, queries and distance evaluations of the prediction paths.
+     */
+    private static void counts() {
+        TrainingMatrix trainData = TestData.clusters(1000, 5, 4, 17);
+        TrainingMatrix testData = TestData.clusters(150, 5, 4, 18);
+        int queries = testData.getRows();
+
+        // Data sets are searched one by one, every train row is compared once per query
+        List<DataSet<Float>> trainDataSets = TestData.dataSets(trainData);
+        List<DataSet<Float>> testDataSets = TestData.dataSets(testData);
+        RecordingInstrumentation recording = new RecordingInstrumentation();
+        KnnAI.predict(trainDataSets, testDataSets, new FloatHeuristicComputer(), K, null, HeuristicComputer.Heuristic.Euklid, Voting.MAJORITY,
+                recording);
+        checkCounts(recording, 1, 0, queries, queries, queries, "Data sets");
+        TestData.check(recording.getDistanceEvaluations().getTotal() == (long) queries * trainData.getRows()
+                && recording.getDistanceEvaluations().getMax() == trainData.getRows(), "Data sets evaluations " + recording.getDistanceEvaluations());
+
+        // Matrices are searched block by block, every block records one search
+        recording = new RecordingInstrumentation();
+        LinearScanIndex index = new LinearScanIndex(trainData, new FloatHeuristicComputer());
+        KnnAI.predict(index, testData, K, Voting.MEAN, recording);
+        checkCounts(recording, 0, 0, 2, queries / 2, queries, "Matrix");
+        TestData.check(recording.getDistanceEvaluations().getTotal() == (long) queries * trainData.getRows(), "Matrix evaluations "
+                + recording.getDistanceEvaluations());
+
+        // A model records its index builds and single queries
+        recording = new RecordingInstrumentation();
+        KnnModel model = new KnnModel(trainData, new FloatHeuristicComputer(), new KnnModel.IndexFactory() {
+            @Override
+            public NeighbourIndex create(TrainingMatrix trainData, HeuristicComputer heuristicComputer) {
+                return new KdTree(trainData, heuristicComputer);
+            }
+        });
+        model.setInstrumentation(recording);
+        model.rebuild();
+        float[] query = new float[testData.getDimensions()];
+        for (int q = 0; q < queries; q++) {
+            model.predict(testData.copyRow(q, query, 0));
+        }
+        checkCounts(recording, 0, 1, queries, queries, queries, "Model");
+        TestData.check(recording.getStage(Instrumentation.Stage.MATRIX_UPDATE).getCount() == 0, "Model updated a confusion matrix");
+        TestData.check(recording.getDistanceEvaluations().getMax() < trainData.getRows(), "KD-tree compared all rows");
+
+        // Cross validations record every fold once, disabled instrumentations nothing
+        final AtomicInteger folds = new AtomicInteger();
+        final AtomicInteger foldPredictions = new AtomicInteger();
+        ConfusionMatrix crossValidation = KnnAI.predict(trainDataSets, new FloatHeuristicComputer(), 5, null, HeuristicComputer.Heuristic.Euklid,
+                Voting.MAJORITY, new Instrumentation() {
+            @Override
+            public void recordFold(int fold, int count, ConfusionMatrix confusionMatrix) {
+                TestData.check(fold == folds.getAndIncrement() && count == 5, "Fold " + fold + " of " + count);
+                foldPredictions.addAndGet(confusionMatrix.getNumberOfTotalPredictions());
+            }
+        });
+        TestData.check(folds.get() == 5 && foldPredictions.get() == crossValidation.getNumberOfTotalPredictions(), folds.get() + " folds with "
+                + foldPredictions.get() + " predictions");
+        TestData.check(!Instrumentation.NONE.isEnabled() && new RecordingInstrumentation().isEnabled(), "Enabled flags");
+    }
+
+    /**
+     * Checks the number of recorded stages and queries.
+     */
+    private static void checkCounts(RecordingInstrumentation recording, int ingests, int builds, int minSearches, int maxSearches, int queries, String message) {
+        TestData.check(recording.getStage(Instrumentation.Stage.INGEST).getCount() == ingests, message + ": ingests "
+                + recording.getStage(Instrumentation.Stage.INGEST));
+        TestData.check(recording.getStage(Instrumentation.Stage.INDEX_BUILD).getCount() == builds, message + ": index builds "
+                + recording.getStage(Instrumentation.Stage.INDEX_BUILD));
+        long searches = recording.getStage(Instrumentation.Stage.SEARCH).getCount();
+        TestData.check(searches >= minSearches && searches <= maxSearches, message + ": searches "
+                + recording.getStage(Instrumentation.Stage.SEARCH));
+        TestData.check(recording.getStage(Instrumentation.Stage.VOTING).getCount() == queries, message + ": votings "
+                + recording.getStage(Instrumentation.Stage.VOTING));
+        TestData.check(recording.getQueryLatency().getCount() == queries && recording.getDistanceEvaluations().getCount() == queries, message
+                + ": queries " + recording.getQueryLatency());
+        if (recording.getStage(Instrumentation.Stage.MATRIX_UPDATE).getCount() > 0) {
+            TestData.check(recording.getStage(Instrumentation.Stage.MATRIX_UPDATE).getCount() == queries, message + ": matrix updates "
+                    + recording.getStage(Instrumentation.Stage.MATRIX_UPDATE));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package ai;
+
+import at.fhtw.ai.knn.KnnModel;
+import at.fhtw.ai.knn.Prediction;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.FloatHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.KdTree;
+import at.fhtw.ai.knn.index.NeighbourIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test main class adding, updating and deleting rows of a model while other threads predict. Afterwards the model must find the same
+ * neighbours as a scan over its live rows, before and after the index is rebuilt.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class KnnModelConcurrencyTest {
+
+    private static final int DIMENSIONS = 6;
+    private static final int K = 10;
+    private static final int WRITERS = 2;
+    private static final int READERS = 4;
+    private static final int CHANGES = 6000;
+
+    /**
+     * @param args the command line arguments
+     * @throws InterruptedException If the main thread is interrupted.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        final TrainingMatrix initial = TestData.clusters(5000, DIMENSIONS, 5, 13);
+        final TrainingMatrix rows = TestData.clusters(WRITERS * CHANGES, DIMENSIONS, 5, 14);
+        final TrainingMatrix queries = TestData.clusters(300, DIMENSIONS, 5, 15);
+        final KnnModel model = new KnnModel(initial, new FloatHeuristicComputer(), new KnnModel.IndexFactory() {
+            @Override
+            public NeighbourIndex create(TrainingMatrix trainData, HeuristicComputer heuristicComputer) {
+                return new KdTree(trainData, heuristicComputer);
+            }
+        });
+        model.setK(K);
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Thread> writers = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            writers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(writer);
+                    List<Integer> added = new ArrayList<>();
+                    float[] row = new float[DIMENSIONS];
+                    for (int i = 0; i < CHANGES && failure.get() == null; i++) {
+                        int source = writer * CHANGES + i;
+                        rows.copyRow(source, row, 0);
+                        int change = random.nextInt(4);
+                        if (change == 0 && !added.isEmpty()) {
+                            model.delete(added.remove(random.nextInt(added.size())));
+                        } else if (change == 1 && !added.isEmpty()) {
+                            model.update(added.get(random.nextInt(added.size())), row, rows.getQualityAttribute(source));
+                        } else {
+                            added.add(model.add(row, rows.getQualityAttribute(source)));
+                        }
+                    }
+                }
+            }));
+        }
+        for (int r = 0; r < READERS; r++) {
+            final int reader = r;
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Prediction prediction = new Prediction(K);
+                    float[] query = new float[DIMENSIONS];
+                    for (int q = 0; writing.get() && failure.get() == null; q = (q + 1) % queries.getRows()) {
+                        if (reader == 0 && q == 0) {
+                            // Blocks of queries take the read lock per block
+                            ConfusionMatrix confusionMatrix = model.predict(queries, executor);
+                            TestData.check(confusionMatrix.getNumberOfTotalPredictions() == queries.getRows(), "Block prediction count");
+                        }
+                        model.predict(queries.copyRow(q, query, 0), prediction);
+                        TestData.check(prediction.getNeighbourCount() == K && prediction.getLabel() != null, "Prediction " + prediction);
+                    }
+                }
+            }));
+        }
+
+        Thread.UncaughtExceptionHandler handler = new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable ex) {
+                failure.compareAndSet(null, ex);
+            }
+        };
+        for (Thread thread : readers) {
+            thread.setUncaughtExceptionHandler(handler);
+            thread.start();
+        }
+        for (Thread thread : writers) {
+            thread.setUncaughtExceptionHandler(handler);
+            thread.start();
+        }
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        writing.set(false);
+        for (Thread thread : readers) {
+            thread.join();
+        }
+        executor.shutdown();
+        if (failure.get() != null) {
+            throw new AssertionError("Concurrent change or prediction failed", failure.get());
+        }
+
+        check(model, queries, "Concurrent changes");
+        model.rebuild();
+        check(model, queries, "Rebuilt index");
+        System.out.println("Model with " + model.size() + " rows survived concurrent changes and predictions");
+    }
+
+    /**
+     * Checks that the model finds the same neighbours as a scan over its live rows.
+     */
+    private static void check(KnnModel model, TrainingMatrix queries, String message) {
+        HeuristicComputer heuristicComputer = new FloatHeuristicComputer();
+        TrainingMatrix store = model.getTrainData();
+        Neighbours expected = new Neighbours(K);
+        Neighbours actual = new Neighbours(K);
+        float[] query = new float[DIMENSIONS];
+        float[] row = new float[DIMENSIONS];
+        for (int q = 0; q < queries.getRows(); q++) {
+            queries.copyRow(q, query, 0);
+            expected.clear();
+            for (int r = 0; r < store.getRows(); r++) {
+                if (model.contains(r)) {
+                    expected.offer(r, heuristicComputer.computeHeuristic(query, model.get(r, row), 0));
+                }
+            }
+            actual.clear();
+            model.search(query, actual);
+            expected.sort();
+            actual.sort();
+            TestData.checkSame(expected, actual, message + ", query " + q);
+        }
+    }
+}
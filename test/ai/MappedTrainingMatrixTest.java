@@ -0,0 +1,104 @@
+package ai;
+
+import at.fhtw.ai.knn.LabelDictionary;
+import at.fhtw.ai.knn.MappedTrainingMatrix;
+import at.fhtw.ai.knn.TrainingMatrix;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Test main class writing training matrices into memory mapped files and reading them back, including the label types.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class MappedTrainingMatrixTest {
+
+    /**
+     * @param args the command line arguments
+     * @throws IOException If a file could not be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("matrix", ".knnm");
+        try {
+            // Labels keep their type, unknown types become strings
+            Object[] labels = {7, 7L, 7.5f, 7.5, "seven", "", "\u00DCbung", null, Integer.MIN_VALUE, Double.NaN};
+            for (Object label : labels) {
+                Object decoded = LabelDictionary.decode(LabelDictionary.encode(label));
+                TestData.check(Objects.equals(label, decoded), "Label " + label + " decoded as " + decoded);
+            }
+            TestData.check("[1, 2]".equals(LabelDictionary.decode(LabelDictionary.encode(Arrays.asList(1, 2)))), "List label");
+
+            // Written from a heap matrix, the class ids and unused labels are kept
+            TrainingMatrix expected = TestData.clusters(20000, 13, 3, 11);
+            LabelDictionary dictionary = expected.getLabels();
+            float[] row = new float[13];
+            for (Object label : labels) {
+                expected.add(row, label);
+            }
+            dictionary.classIdOf("unused");
+            MappedTrainingMatrix.write(expected, file);
+            MappedTrainingMatrix actual = MappedTrainingMatrix.open(file);
+            check(expected, actual, "Written matrix");
+            TestData.check(actual.getLabels().size() == dictionary.size(), actual.getLabels().size() + " labels");
+            for (int i = 0; i < dictionary.size(); i++) {
+                TestData.check(Objects.equals(dictionary.getLabel(i), actual.getLabels().getLabel(i)), "Label of class id " + i);
+            }
+            float[] block = actual.copyRows(100, 50, new float[50 * 13], 0);
+            for (int i = 0; i < block.length; i++) {
+                TestData.check(block[i] == expected.get(100 + i / 13, i % 13), "Copied rows at " + i);
+            }
+
+            // Streamed row by row
+            try (MappedTrainingMatrix.Writer writer = new MappedTrainingMatrix.Writer(file, 13)) {
+                for (int r = 0; r < expected.getRows(); r++) {
+                    writer.add(expected.copyRow(r, row), expected.getQualityAttribute(r));
+                }
+            }
+            check(expected, MappedTrainingMatrix.open(file), "Streamed matrix");
+
+            // No rows at all
+            new MappedTrainingMatrix.Writer(file, 4).close();
+            TestData.check(MappedTrainingMatrix.open(file).getRows() == 0, "Empty matrix");
+
+            // Other versions are rejected
+            MappedTrainingMatrix.write(expected, file);
+            ByteBuffer version = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(2);
+            version.flip();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(version, 4);
+            }
+            try {
+                MappedTrainingMatrix.open(file);
+                throw new AssertionError("Opened a file of version 2");
+            } catch (IOException ex) {
+                // expected
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("Mapped training matrix round trips succeeded");
+    }
+
+    /**
+     * Checks that both matrices contain the same rows and labels.
+     */
+    private static void check(TrainingMatrix expected, TrainingMatrix actual, String message) {
+        TestData.check(actual.getRows() == expected.getRows() && actual.getDimensions() == expected.getDimensions(),
+                message + ": " + actual.getRows() + " rows, " + actual.getDimensions() + " dimensions");
+        for (int row = 0; row < expected.getRows(); row++) {
+            TestData.check(Objects.equals(expected.getQualityAttribute(row), actual.getQualityAttribute(row)),
+                    message + ": label of row " + row + " is " + actual.getQualityAttribute(row));
+            for (int i = 0; i < expected.getDimensions(); i++) {
+                TestData.check(actual.get(row, i) == expected.get(row, i), message + ": row " + row + " attribute " + i);
+            }
+        }
+    }
+}
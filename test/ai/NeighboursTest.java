@@ -0,0 +1,154 @@
+package ai;
+
+import at.fhtw.ai.knn.index.Neighbours;
+import at.fhtw.ai.knn.index.RowFilter;
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Test main class comparing the bounded heap of nearest neighbours with sorting all rows, including many equal heuristics, and checking
+ * that offering rows does not allocate.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class NeighboursTest {
+
+    private static final int ROWS = 2000;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        Random random = new Random(9);
+        float[] heuristics = new float[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            // Few distinct values, so many rows are only ordered by their index
+            heuristics[i] = random.nextInt(50) * 0.5f;
+        }
+        Integer[] order = new Integer[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            order[i] = i;
+        }
+        final float[] sortKeys = heuristics;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int result = Float.compare(sortKeys[a], sortKeys[b]);
+                return result != 0 ? result : Integer.compare(a, b);
+            }
+        });
+
+        for (int k : new int[]{1, 3, 10, 64, ROWS, ROWS + 5}) {
+            Neighbours neighbours = new Neighbours(k);
+            int expectedSize = Math.min(k, ROWS);
+
+            // Rows offered in ascending, descending and random order give the same result
+            for (int pass = 0; pass < 3; pass++) {
+                neighbours.clear();
+                int[] offered = permutation(random, pass);
+                for (int i = 0; i < ROWS; i++) {
+                    float worst = neighbours.worst();
+                    TestData.check(neighbours.isFull() || worst == Float.POSITIVE_INFINITY, "Worst heuristic " + worst + " before the heap is full");
+                    boolean added = neighbours.offer(offered[i], heuristics[offered[i]]);
+                    TestData.check(!added || neighbours.size() <= k, "Heap grew beyond " + k);
+                }
+                TestData.check(neighbours.getEvaluations() == ROWS, "Evaluations " + neighbours.getEvaluations() + ", expected " + ROWS);
+                checkSorted(neighbours, order, expectedSize, heuristics, "k " + k + ", pass " + pass);
+            }
+
+            // Offering rows after sorting restores the heap
+            neighbours.clear();
+            for (int i = 0; i < ROWS / 2; i++) {
+                neighbours.offer(i, heuristics[i]);
+            }
+            neighbours.sort();
+            for (int i = ROWS / 2; i < ROWS; i++) {
+                neighbours.offer(i, heuristics[i]);
+            }
+            checkSorted(neighbours, order, expectedSize, heuristics, "k " + k + " after an intermediate sort");
+        }
+
+        // Filtered rows are counted but never added, the filter survives clearing
+        Neighbours filtered = new Neighbours(5);
+        filtered.setFilter(new RowFilter() {
+            @Override
+            public boolean accept(int row) {
+                return row % 2 == 1;
+            }
+        });
+        filtered.clear();
+        for (int i = 0; i < ROWS; i++) {
+            filtered.offer(i, heuristics[i]);
+        }
+        filtered.sort();
+        TestData.check(filtered.getEvaluations() == ROWS && filtered.size() == 5, "Filtered heap has " + filtered.size() + " rows");
+        for (int i = 0, j = 0; i < filtered.size(); i++, j++) {
+            while (order[j] % 2 == 0) {
+                j++;
+            }
+            TestData.check(filtered.getIndex(i) == order[j], "Filtered neighbour " + i + " is row " + filtered.getIndex(i) + ", expected " + order[j]);
+        }
+
+        try {
+            new Neighbours(0);
+            throw new AssertionError("Empty heap created");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        // Offering and sorting does not allocate once the code is compiled
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Neighbours neighbours = new Neighbours(10);
+        long allocated = 0;
+        for (int round = 0; round < 20; round++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int query = 0; query < 100; query++) {
+                neighbours.clear();
+                for (int i = 0; i < ROWS; i++) {
+                    neighbours.offer(i, heuristics[(i + query) % ROWS]);
+                }
+                neighbours.sort();
+            }
+            allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        }
+        TestData.check(allocated < 1024, "100 queries allocated " + allocated + " bytes");
+        System.out.println("Neighbours match a full sort of " + ROWS + " rows");
+    }
+
+    /**
+     * Creates the rows in ascending, descending or random order.
+     */
+    private static int[] permutation(Random random, int pass) {
+        int[] result = new int[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            result[i] = pass == 1 ? ROWS - 1 - i : i;
+        }
+        if (pass == 2) {
+            for (int i = ROWS - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = result[i];
+                result[i] = result[j];
+                result[j] = swap;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sorts the neighbours and checks that they are the first rows of the expected order.
+     */
+    private static void checkSorted(Neighbours neighbours, Integer[] order, int size, float[] heuristics, String message) {
+        TestData.check(neighbours.size() == size, message + ": " + neighbours.size() + " neighbours, expected " + size);
+        TestData.check(neighbours.worst() == (size < neighbours.capacity() ? Float.POSITIVE_INFINITY : heuristics[order[size - 1]]),
+                message + ": worst heuristic " + neighbours.worst());
+        neighbours.sort();
+        for (int i = 0; i < size; i++) {
+            TestData.check(neighbours.getIndex(i) == order[i] && neighbours.getHeuristic(i) == heuristics[order[i]], message + ": neighbour "
+                    + i + " is row " + neighbours.getIndex(i) + ", expected " + order[i]);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package ai;
+
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.KnnAI;
+import at.fhtw.ai.knn.Normalizer;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.Distance;
+import at.fhtw.ai.knn.heuristic.DoubleHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Test main class checking that normalizers scale and weight every attribute, that transformed rows are restored by the inverse
+ * transformation, and that predictions on normalized matrices equal weighted predictions on manually scaled matrices. Needs
+ * <code>--add-opens java.base/java.util=ALL-UNNAMED</code> for the data sets.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class NormalizerTest {
+
+    private static final int DIMENSIONS = 5;
+    private static final int K = 9;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        TrainingMatrix trainData = rawUnits(TestData.clusters(2000, DIMENSIONS, 4, 41));
+        TrainingMatrix testData = rawUnits(TestData.clusters(300, DIMENSIONS, 4, 42));
+        float[] weights = {1, 2, 0.5f, 0, 3};
+
+        for (Normalizer.Scaling scaling : Normalizer.Scaling.values()) {
+            for (float[] w : new float[][]{null, weights}) {
+                String message = scaling + (w == null ? "" : ", weighted");
+                Normalizer normalizer = Normalizer.fit(trainData, scaling, w);
+                TrainingMatrix transformed = normalizer.transform(trainData);
+                checkScaled(trainData, transformed, scaling, w, message);
+                checkInverse(normalizer, trainData, transformed, w, message);
+
+                // The unweighted heuristic of normalized rows is the weighted heuristic of the scaled rows
+                float[] ranges = ranges(trainData, scaling);
+                float[] offsets = normalizer.getOffsets();
+                TrainingMatrix scaledTrainData = scale(trainData, offsets, ranges);
+                TrainingMatrix scaledTestData = scale(testData, offsets, ranges);
+                for (HeuristicComputer.Heuristic heuristic : new HeuristicComputer.Heuristic[]{HeuristicComputer.Heuristic.Euklid,
+                    HeuristicComputer.Heuristic.Manhatten}) {
+                    LinearScanIndex weighted = new LinearScanIndex(scaledTrainData, new Distance(heuristic, w));
+                    ConfusionMatrix expected = KnnAI.predict(weighted, scaledTestData, K);
+                    ConfusionMatrix actual = KnnAI.predict(trainData, testData, normalizer, K, heuristic);
+                    TestData.checkSame(expected, actual, message + ", " + heuristic + " prediction");
+                    checkNeighbours(weighted, scaledTestData, new LinearScanIndex(transformed, new Distance(heuristic, null)),
+                            normalizer.transform(testData), message + ", " + heuristic + " neighbours");
+                }
+            }
+        }
+
+        // Constant attributes are only weighted, wrong numbers of weights and attributes are rejected
+        TrainingMatrix constant = new TrainingMatrix(2, 3);
+        for (int i = 0; i < 3; i++) {
+            constant.add(new float[]{4, i}, i);
+        }
+        Normalizer normalizer = Normalizer.fit(constant, Normalizer.Scaling.MIN_MAX, new float[]{2, 1});
+        float[] row = normalizer.transform(new float[]{5, 1});
+        TestData.check(row[0] == 2 && row[1] == 0.5f, "Constant attribute transformed to " + row[0] + ", " + row[1]);
+        try {
+            Normalizer.fit(constant, Normalizer.Scaling.Z_SCORE, new float[]{1});
+            throw new AssertionError("Wrong number of weights accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            normalizer.transform(trainData);
+            throw new AssertionError("Matrix with the wrong number of attributes transformed");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        doubleWeights();
+        System.out.println("Normalized predictions match weighted predictions on scaled matrices");
+    }
+
+    /**
+     * Multiplies every attribute with a different unit, so unscaled attributes would dominate the heuristic.
+     */
+    private static TrainingMatrix rawUnits(TrainingMatrix matrix) {
+        TrainingMatrix result = new TrainingMatrix(DIMENSIONS, matrix.getRows(), matrix.getLabels());
+        float[] row = new float[DIMENSIONS];
+        for (int r = 0; r < matrix.getRows(); r++) {
+            matrix.copyRow(r, row);
+            for (int a = 0; a < DIMENSIONS; a++) {
+                row[a] = row[a] * (float) Math.pow(10, a - 1) + a;
+            }
+            result.add(row, matrix.getQualityAttribute(r));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the range of every attribute independent of the normalizer: the difference of minimum and maximum or the standard
+     * deviation.
+     */
+    private static float[] ranges(TrainingMatrix matrix, Normalizer.Scaling scaling) {
+        float[] result = new float[DIMENSIONS];
+        for (int a = 0; a < DIMENSIONS; a++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            for (int r = 0; r < matrix.getRows(); r++) {
+                min = Math.min(min, matrix.get(r, a));
+                max = Math.max(max, matrix.get(r, a));
+                sum += matrix.get(r, a);
+            }
+            double mean = sum / matrix.getRows();
+            double squares = 0;
+            for (int r = 0; r < matrix.getRows(); r++) {
+                squares += (matrix.get(r, a) - mean) * (matrix.get(r, a) - mean);
+            }
+            result[a] = scaling == Normalizer.Scaling.NONE ? 1 : scaling == Normalizer.Scaling.MIN_MAX ? (float) (max - min)
+                    : (float) Math.sqrt(squares / matrix.getRows());
+        }
+        return result;
+    }
+
+    /**
+     * Scales every attribute without weights.
+     */
+    private static TrainingMatrix scale(TrainingMatrix matrix, float[] offsets, float[] ranges) {
+        TrainingMatrix result = new TrainingMatrix(DIMENSIONS, matrix.getRows(), matrix.getLabels());
+        float[] row = new float[DIMENSIONS];
+        for (int r = 0; r < matrix.getRows(); r++) {
+            matrix.copyRow(r, row);
+            for (int a = 0; a < DIMENSIONS; a++) {
+                row[a] = (row[a] - offsets[a]) / ranges[a];
+            }
+            result.add(row, matrix.getQualityAttribute(r));
+        }
+        return result;
+    }
+
+    /**
+     * Checks the minimum and maximum or the mean and standard deviation of every transformed attribute.
+     */
+    private static void checkScaled(TrainingMatrix raw, TrainingMatrix transformed, Normalizer.Scaling scaling, float[] weights, String message) {
+        TestData.check(transformed.getRows() == raw.getRows() && transformed.getLabels() == raw.getLabels(), message + ": transformed matrix");
+        float[] rawRanges = ranges(raw, Normalizer.Scaling.MIN_MAX);
+        float[] minMax = ranges(transformed, Normalizer.Scaling.MIN_MAX);
+        float[] deviations = ranges(transformed, Normalizer.Scaling.Z_SCORE);
+        for (int a = 0; a < DIMENSIONS; a++) {
+            float weight = weights == null ? 1 : weights[a];
+            double min = Double.POSITIVE_INFINITY;
+            double sum = 0;
+            for (int r = 0; r < transformed.getRows(); r++) {
+                min = Math.min(min, transformed.get(r, a));
+                sum += transformed.get(r, a);
+                TestData.check(transformed.getClassIds()[r] == raw.getClassIds()[r], message + ": class of row " + r);
+            }
+            String attribute = message + ": attribute " + a;
+            switch (scaling) {
+                case NONE:
+                    TestData.check(close(minMax[a], rawRanges[a] * weight), attribute + " range " + minMax[a]);
+                    break;
+                case MIN_MAX:
+                    TestData.check(close(min, 0) && close(minMax[a], weight), attribute + " minimum " + min + ", range " + minMax[a]);
+                    break;
+                case Z_SCORE:
+                    TestData.check(close(sum / transformed.getRows(), 0) && close(deviations[a], weight), attribute + " mean "
+                            + sum / transformed.getRows() + ", deviation " + deviations[a]);
+                    break;
+                default:
+                    throw new AssertionError(scaling);
+            }
+        }
+    }
+
+    /**
+     * Checks that the inverse transformation restores every attribute with a weight.
+     */
+    private static void checkInverse(Normalizer normalizer, TrainingMatrix raw, TrainingMatrix transformed, float[] weights, String message) {
+        float[] row = new float[DIMENSIONS];
+        float[] offsets = normalizer.getOffsets();
+        for (int r = 0; r < raw.getRows(); r++) {
+            float[] restored = normalizer.inverse(transformed.copyRow(r, row));
+            for (int a = 0; a < DIMENSIONS; a++) {
+                float expected = weights != null && weights[a] == 0 ? offsets[a] : raw.get(r, a);
+                TestData.check(Math.abs(restored[a] - expected) <= 1e-5f * Math.max(Math.abs(expected), Math.pow(10, a - 1)), message
+                        + ": row " + r + ", attribute " + a + " restored as " + restored[a] + ", expected " + expected);
+            }
+        }
+    }
+
+    /**
+     * Checks that the weighted scan of the scaled rows and the unweighted scan of the normalized rows find the same neighbours.
+     */
+    private static void checkNeighbours(LinearScanIndex expected, TrainingMatrix expectedQueries, LinearScanIndex actual,
+            TrainingMatrix actualQueries, String message) {
+        Neighbours expectedResult = new Neighbours(K);
+        Neighbours actualResult = new Neighbours(K);
+        float[] query = new float[DIMENSIONS];
+        for (int q = 0; q < expectedQueries.getRows(); q++) {
+            expectedResult.clear();
+            actualResult.clear();
+            expected.search(expectedQueries.copyRow(q, query), expectedResult);
+            actual.search(actualQueries.copyRow(q, query), actualResult);
+            expectedResult.sort();
+            actualResult.sort();
+            for (int i = 0; i < K; i++) {
+                // Weighted heuristics subtract the weighted values, which cancels more digits on rows in raw units
+                TestData.check(expectedResult.getIndex(i) == actualResult.getIndex(i) && close(expectedResult.getHeuristic(i),
+                        actualResult.getHeuristic(i), 1e-3), message + ", query " + q + ": neighbour " + i + " is " + actualResult + ", expected "
+                        + expectedResult);
+            }
+        }
+    }
+
+    /**
+     * Checks that data sets with double attributes are compared using the weights in double precision. Weights rounded to float change
+     * the last bit of many heuristics.
+     */
+    private static void doubleWeights() {
+        Random random = new Random(43);
+        List<Double> weights = new ArrayList<>();
+        for (int a = 0; a < DIMENSIONS; a++) {
+            weights.add(1.0 / (3 + a));
+        }
+        DoubleHeuristicComputer computer = new DoubleHeuristicComputer();
+        computer.setWeights(weights);
+        for (HeuristicComputer.Heuristic heuristic : new HeuristicComputer.Heuristic[]{HeuristicComputer.Heuristic.Euklid,
+            HeuristicComputer.Heuristic.Manhatten}) {
+            computer.setHeuristic(heuristic);
+            DoubleHeuristicComputer copy = computer.copy();
+            for (int i = 0; i < 1000; i++) {
+                DataSet<Double> candidate = new DataSet<>();
+                DataSet<Double> dataSet = new DataSet<>();
+                double expected = 0;
+                for (int a = 0; a < DIMENSIONS; a++) {
+                    candidate.getAttributes().add(random.nextGaussian() * 1e4);
+                    dataSet.getAttributes().add(random.nextGaussian() * 1e4);
+                    double diff = dataSet.getAttributes().get(a) * weights.get(a) - candidate.getAttributes().get(a) * weights.get(a);
+                    expected += heuristic == HeuristicComputer.Heuristic.Manhatten ? Math.abs(diff) : diff * diff;
+                }
+                float actual = computer.computeHeuristic(candidate, dataSet);
+                TestData.check(actual == (float) expected && copy.computeHeuristic(candidate, dataSet) == actual, heuristic
+                        + " heuristic with double weights " + actual + ", expected " + (float) expected);
+            }
+        }
+    }
+
+    /**
+     * Checks if both values are equal up to rounding errors.
+     */
+    private static boolean close(double expected, double actual) {
+        return close(expected, actual, 1e-4);
+    }
+
+    /**
+     * Checks if both values are equal up to the given relative error.
+     */
+    private static boolean close(double expected, double actual, double error) {
+        return Math.abs(expected - actual) <= error * Math.max(1, Math.abs(expected));
+    }
+}
@@ -0,0 +1,57 @@
+package ai;
+
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.KnnAI;
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.FloatHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.metrics.Instrumentation;
+import at.fhtw.ai.knn.voting.Voting;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Test main class comparing the cross validation of data sets predicting all folds concurrently with predicting them one after another.
+ * Needs <code>--add-opens java.base/java.util=ALL-UNNAMED</code> for the data sets.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class ParallelCrossValidationTest {
+
+    private static final int FOLDS = 5;
+    private static final Voting[] VOTINGS = {Voting.MAJORITY, Voting.DISTANCE_WEIGHTED, Voting.MEAN};
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        List<DataSet<Float>> data = TestData.dataSets(TestData.clusters(1500, 5, 4, 3));
+        List<Float> weights = Arrays.asList(0.5f, 2f, 1f, 1.5f, 1f);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (HeuristicComputer.Heuristic heuristic : HeuristicComputer.Heuristic.values()) {
+                for (List<Float> currentWeights : Arrays.asList(null, weights)) {
+                    for (Voting voting : VOTINGS) {
+                        String message = heuristic + (currentWeights == null ? "" : " weighted") + " " + voting.getClass().getSimpleName();
+
+                        // The computer is shared by all folds, but never reconfigured
+                        FloatHeuristicComputer computer = new FloatHeuristicComputer();
+                        ConfusionMatrix sequential = KnnAI.predict(data, computer, FOLDS, currentWeights, heuristic, voting, Instrumentation.NONE);
+                        ConfusionMatrix parallel = KnnAI.predict(data, computer, FOLDS, currentWeights, heuristic, voting, executor);
+                        TestData.checkSame(sequential, parallel, message);
+                        TestData.check(parallel.getNumberOfTotalPredictions() == data.size(), message + ": " + parallel.getNumberOfTotalPredictions()
+                                + " predictions, expected " + data.size());
+                        TestData.check(computer.getHeuristic() == HeuristicComputer.Heuristic.Euklid && computer.getWeights() == null,
+                                message + ": computer was reconfigured");
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        System.out.println("Parallel cross validation matches " + FOLDS + " sequential folds");
+    }
+}
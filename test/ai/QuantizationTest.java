@@ -0,0 +1,87 @@
+package ai;
+
+import at.fhtw.ai.knn.QuantizedTrainingMatrix;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.analysis.Recall;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.index.QuantizedScanIndex;
+import java.util.Random;
+
+/**
+ * Test main class checking the FLOAT16 and INT8 encodings: the half precision conversion against every half precision value, the
+ * rounding error of both encodings and the scan over the codes against a scan over the decoded rows.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class QuantizationTest {
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        // Every half precision value converts back to itself
+        for (int half = 0; half < 1 << 16; half++) {
+            float value = QuantizedTrainingMatrix.halfValue((short) half);
+            short result = QuantizedTrainingMatrix.floatToHalf(value);
+            if (Float.isNaN(value)) {
+                TestData.check(Float.isNaN(QuantizedTrainingMatrix.halfValue(result)), "NaN " + Integer.toHexString(half));
+            } else {
+                TestData.check((result & 0xFFFF) == half, "Half " + Integer.toHexString(half) + " became " + Integer.toHexString(result & 0xFFFF));
+            }
+        }
+        TestData.check(QuantizedTrainingMatrix.halfValue(QuantizedTrainingMatrix.floatToHalf(65504)) == 65504, "Largest half");
+        TestData.check(QuantizedTrainingMatrix.halfValue(QuantizedTrainingMatrix.floatToHalf(70000)) == Float.POSITIVE_INFINITY, "Overflow");
+        TestData.check(QuantizedTrainingMatrix.halfValue(QuantizedTrainingMatrix.floatToHalf(-1e-9f)) == 0, "Underflow");
+
+        // Random floats round to the nearest half precision value
+        Random random = new Random(20);
+        for (int i = 0; i < 1000000; i++) {
+            float value = (float) ((random.nextDouble() - 0.5) * Math.pow(2, random.nextInt(40) - 25));
+            int half = QuantizedTrainingMatrix.floatToHalf(value) & 0xFFFF;
+            float error = Math.abs(QuantizedTrainingMatrix.halfValue((short) half) - value);
+            for (int neighbour : new int[]{half - 1, half + 1}) {
+                if ((neighbour & 0x7FFF) < 0x7C00 && (neighbour >>> 15) == (half >>> 15)) {
+                    float other = Math.abs(QuantizedTrainingMatrix.halfValue((short) neighbour) - value);
+                    TestData.check(error <= other, value + " rounded to " + Integer.toHexString(half) + " instead of " + Integer.toHexString(neighbour));
+                }
+            }
+        }
+
+        TrainingMatrix trainData = TestData.clusters(5000, 12, 7, 21);
+        TrainingMatrix queries = TestData.clusters(200, 12, 7, 22);
+        for (QuantizedTrainingMatrix.Encoding encoding : QuantizedTrainingMatrix.Encoding.values()) {
+            QuantizedTrainingMatrix quantized = QuantizedTrainingMatrix.quantize(trainData, encoding);
+            TestData.check(quantized.getRows() == trainData.getRows(), encoding + " rows");
+
+            // Every value is decoded within half a step of its code
+            float[] scales = quantized.getScales();
+            TrainingMatrix decoded = new TrainingMatrix(trainData.getDimensions(), trainData.getRows(), trainData.getLabels());
+            float[] row = new float[trainData.getDimensions()];
+            for (int r = 0; r < trainData.getRows(); r++) {
+                TestData.check(quantized.getClassId(r) == trainData.getClassId(r), encoding + " class id of row " + r);
+                for (int a = 0; a < row.length; a++) {
+                    float value = trainData.get(r, a);
+                    float maxError = encoding == QuantizedTrainingMatrix.Encoding.INT8 ? scales[a] * 0.5001f : Math.max(Math.ulp(value) * (1 << 12), 0x1p-25f);
+                    TestData.check(Math.abs(quantized.get(r, a) - value) <= maxError,
+                            encoding + " row " + r + " attribute " + a + " is " + quantized.get(r, a) + ", expected " + value);
+                }
+                decoded.add(quantized.copyRow(r, row, 0), trainData.getQualityAttribute(r));
+            }
+
+            // Scanning the codes finds the neighbours of the decoded rows, re-ranking restores the full precision neighbours
+            DistanceFunction[] distances = TestData.distances(12, 21);
+            for (int d = 0; d < distances.length; d++) {
+                String message = encoding + " " + TestData.DISTANCE_NAMES[d];
+                QuantizedScanIndex scan = new QuantizedScanIndex(quantized, distances[d]);
+                TestData.checkSame(new LinearScanIndex(decoded, distances[d]), scan, queries, 10, message);
+
+                LinearScanIndex exact = new LinearScanIndex(trainData, distances[d]);
+                double recall = Recall.measure(new QuantizedScanIndex(quantized, distances[d], trainData, 40), exact, queries, 10);
+                TestData.check(recall >= 0.99, message + " re-ranked recall " + recall);
+            }
+        }
+        System.out.println("FLOAT16 and INT8 encode and decode correctly");
+    }
+}
@@ -0,0 +1,174 @@
+package ai;
+
+import at.fhtw.ai.knn.MappedTrainingMatrix;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.Distance;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import at.fhtw.ai.knn.shard.ShardCoordinator;
+import at.fhtw.ai.knn.shard.ShardServer;
+import at.fhtw.ai.knn.shard.ShardedPrediction;
+import at.fhtw.ai.knn.voting.Voting;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test main class running shard servers and a coordinator on localhost. The sharded predictions must equal the predictions of a single
+ * linear scan over the whole training data.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class ShardTest {
+
+    private static final int SHARDS = 3;
+    private static final int K = 7;
+    private static final int THREADS = 4;
+
+    /**
+     * @param args the command line arguments
+     * @throws IOException If the shards could not be written or served.
+     */
+    public static void main(String[] args) throws IOException {
+        TrainingMatrix trainData = TestData.clusters(3000, 8, 5, 25);
+        TrainingMatrix queries = TestData.clusters(200, 8, 5, 26);
+        Distance distance = new Distance(HeuristicComputer.Heuristic.Euklid, null);
+        LinearScanIndex exact = new LinearScanIndex(trainData, distance);
+
+        Path[] files = new Path[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            files[i] = Files.createTempFile("shard" + i, ".knnm");
+        }
+        ShardServer[] servers = new ShardServer[SHARDS];
+        try {
+            ShardCoordinator.writeShards(trainData, files);
+            List<InetSocketAddress> addresses = new ArrayList<>();
+            for (int i = 0; i < SHARDS; i++) {
+                MappedTrainingMatrix shard = MappedTrainingMatrix.open(files[i]);
+                InetSocketAddress local = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+                servers[i] = new ShardServer(new LinearScanIndex(shard, distance), distance, local, THREADS).start();
+                addresses.add(new InetSocketAddress("localhost", servers[i].getPort()));
+            }
+
+            try (ShardCoordinator coordinator = new ShardCoordinator(addresses, 5000)) {
+                TestData.check(coordinator.getRows() == trainData.getRows(), "Coordinator has " + coordinator.getRows() + " rows");
+                Neighbours expected = new Neighbours(K);
+                ShardedPrediction reused = new ShardedPrediction(K, SHARDS);
+                float[] query = new float[queries.getDimensions()];
+                for (int q = 0; q < queries.getRows(); q++) {
+                    queries.copyRow(q, query, 0);
+                    expected.clear();
+                    exact.search(query, expected);
+                    expected.sort();
+
+                    ShardedPrediction prediction = coordinator.predict(query, K, Voting.MAJORITY);
+                    coordinator.predict(query, K, Voting.MAJORITY, reused);
+                    for (ShardedPrediction p : new ShardedPrediction[]{prediction, reused}) {
+                        TestData.check(!p.isPartial(), "Query " + q + " is partial: " + p);
+                        TestData.check(p.getNeighbourCount() == K, "Query " + q + " has " + p.getNeighbourCount() + " neighbours");
+                        for (int i = 0; i < K; i++) {
+                            TestData.check(p.getNeighbour(i) == expected.getIndex(i), "Query " + q + ": " + p + ", expected " + expected);
+                        }
+                        TestData.check(p.getLabel() instanceof Integer, "Label type lost: " + p.getLabel());
+                    }
+                    TestData.check(prediction.getLabel().equals(reused.getLabel()), "Reused prediction differs: " + reused);
+                }
+
+                // Queries of many threads are searched in parallel by the servers and matched by request id
+                final ShardCoordinator sharedCoordinator = coordinator;
+                final TrainingMatrix sharedQueries = queries;
+                final int[][] nearest = new int[queries.getRows()][K];
+                for (int q = 0; q < queries.getRows(); q++) {
+                    expected.clear();
+                    exact.search(queries.copyRow(q, query, 0), expected);
+                    expected.sort();
+                    for (int i = 0; i < K; i++) {
+                        nearest[q][i] = expected.getIndex(i);
+                    }
+                }
+                ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+                try {
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (int t = 0; t < THREADS; t++) {
+                        final int offset = t;
+                        futures.add(executor.submit(new Callable<Void>() {
+                            @Override
+                            public Void call() {
+                                ShardedPrediction p = new ShardedPrediction(K, SHARDS);
+                                float[] features = new float[sharedQueries.getDimensions()];
+                                for (int i = 0; i < sharedQueries.getRows(); i++) {
+                                    int q = (i + offset * 50) % sharedQueries.getRows();
+                                    sharedCoordinator.predict(sharedQueries.copyRow(q, features, 0), K, Voting.MAJORITY, p);
+                                    TestData.check(!p.isPartial(), "Concurrent query " + q + " is partial: " + p);
+                                    for (int j = 0; j < K; j++) {
+                                        TestData.check(p.getNeighbour(j) == nearest[q][j], "Concurrent query " + q + ": " + p);
+                                    }
+                                }
+                                return null;
+                            }
+                        }));
+                    }
+                    for (Future<?> future : futures) {
+                        future.get();
+                    }
+                } catch (InterruptedException | ExecutionException ex) {
+                    throw new AssertionError("Concurrent queries failed!", ex);
+                } finally {
+                    executor.shutdown();
+                }
+
+                // A stopped shard is reported as missing, the others still answer
+                servers[SHARDS - 1].close();
+                coordinator.predict(queries.copyRow(0, query, 0), K, Voting.MEAN, reused);
+                TestData.check(reused.isPartial() && reused.getMissingShards()[0] == SHARDS - 1, "Stopped shard not missing: " + reused);
+                TestData.check(reused.getNeighbourCount() == K && !Float.isNaN(reused.getValue()), "Partial prediction is empty: " + reused);
+
+                // The coordinator reconnects once the shard is served again on the same port
+                MappedTrainingMatrix shard = MappedTrainingMatrix.open(files[SHARDS - 1]);
+                InetSocketAddress local = new InetSocketAddress(InetAddress.getLoopbackAddress(), servers[SHARDS - 1].getPort());
+                servers[SHARDS - 1] = new ShardServer(new LinearScanIndex(shard, distance), distance, local, THREADS).start();
+                long deadline = System.currentTimeMillis() + 15000;
+                do {
+                    sleep(50);
+                    coordinator.predict(queries.copyRow(0, query, 0), K, Voting.MAJORITY, reused);
+                } while (reused.isPartial() && System.currentTimeMillis() < deadline);
+                TestData.check(!reused.isPartial(), "Restarted shard still missing: " + reused);
+                for (int i = 0; i < K; i++) {
+                    TestData.check(reused.getNeighbour(i) == nearest[0][i], "Query after reconnect: " + reused);
+                }
+            }
+            System.out.println("Sharded predictions of " + queries.getRows() + " queries over " + SHARDS + " shards match a single scan");
+        } finally {
+            for (ShardServer server : servers) {
+                if (server != null) {
+                    server.close();
+                }
+            }
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Waits for the given time.
+     */
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            throw new AssertionError("Interrupted!", ex);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ai;
+
+import at.fhtw.ai.knn.KnnModel;
+import at.fhtw.ai.knn.Prediction;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.Distance;
+import at.fhtw.ai.knn.heuristic.FloatHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import at.fhtw.ai.knn.voting.Voting;
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Test main class comparing single query predictions of a model with a scan and vote of the same rows, and checking that reused
+ * predictions do not allocate.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class SingleQueryTest {
+
+    private static final int DIMENSIONS = 6;
+    private static final int K = 9;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        TrainingMatrix trainData = TestData.clusters(3000, DIMENSIONS, 5, 31);
+        TrainingMatrix queries = TestData.clusters(200, DIMENSIONS, 5, 32);
+        LinearScanIndex exact = new LinearScanIndex(trainData, new Distance(HeuristicComputer.Heuristic.Euklid, null));
+        KnnModel model = new KnnModel(TestData.clusters(3000, DIMENSIONS, 5, 31), new FloatHeuristicComputer(), null);
+        model.setK(K);
+
+        Neighbours expected = new Neighbours(K);
+        float[] scratch = new float[Voting.scratchSize(trainData.getLabels().size(), K)];
+        float[][] features = new float[queries.getRows()][DIMENSIONS];
+        Prediction reused = new Prediction(1);
+        for (Voting voting : new Voting[]{Voting.MAJORITY, Voting.DISTANCE_WEIGHTED, Voting.MEAN}) {
+            model.setVoting(voting);
+            int correct = 0;
+            for (int q = 0; q < queries.getRows(); q++) {
+                queries.copyRow(q, features[q], 0);
+                String message = voting.getClass().getSimpleName() + " query " + q;
+                expected.clear();
+                exact.search(features[q], expected);
+                float value = voting.regress(expected, trainData.getClassIds(), trainData.getLabels(), scratch);
+                int classId = voting.vote(expected, trainData.getClassIds(), trainData.getLabels(), scratch);
+                expected.sort();
+
+                Prediction prediction = model.predict(features[q]);
+                TestData.check(model.predict(features[q], reused) == reused, message + ": prediction not reused");
+                for (Prediction p : new Prediction[]{prediction, reused}) {
+                    TestData.check(p.getClassId() == classId && p.getLabel().equals(trainData.getLabels().getLabel(classId)), message + ": " + p
+                            + ", expected class " + classId);
+                    TestData.check(Float.compare(p.getValue(), value) == 0, message + ": value " + p.getValue() + ", expected " + value);
+                    TestData.check(p.getNeighbourCount() == K, message + ": " + p.getNeighbourCount() + " neighbours");
+                    for (int i = 0; i < K; i++) {
+                        TestData.check(p.getNeighbour(i) == expected.getIndex(i) && Math.abs(p.getDistance(i) - (float) Math.sqrt(
+                                expected.getHeuristic(i))) <= 1e-5f * Math.max(1, p.getDistance(i)), message + ": " + p);
+                    }
+                }
+                if (prediction.getLabel().equals(queries.getQualityAttribute(q))) {
+                    correct++;
+                }
+            }
+
+            // The batch sees the same rows as the single queries, and so does the confusion matrix
+            Prediction[] batch = model.predict(features);
+            for (int q = 0; q < queries.getRows(); q++) {
+                TestData.check(batch[q].getClassId() == model.predict(features[q]).getClassId(), "Batch query " + q + ": " + batch[q]);
+            }
+            ConfusionMatrix confusionMatrix = model.predict(queries);
+            TestData.check(confusionMatrix.getNumberOfCorrectPredictions() == correct, voting.getClass().getSimpleName() + ": "
+                    + confusionMatrix.getNumberOfCorrectPredictions() + " correct predictions, expected " + correct);
+        }
+
+        try {
+            model.predict(new float[DIMENSIONS + 1]);
+            throw new AssertionError("Query with the wrong number of attributes accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        // Reused predictions do not allocate once the code is compiled
+        model.setVoting(Voting.MAJORITY);
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = 0;
+        for (int round = 0; round < 20; round++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (float[] query : features) {
+                model.predict(query, reused);
+            }
+            allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        }
+        TestData.check(allocated < 1024, features.length + " predictions allocated " + allocated + " bytes");
+        System.out.println("Single query predictions match a scan of " + trainData.getRows() + " rows");
+    }
+}
@@ -0,0 +1,55 @@
+package ai;
+
+import at.fhtw.ai.knn.CrossValidation;
+import at.fhtw.ai.knn.Folds;
+import at.fhtw.ai.knn.KnnAI;
+import at.fhtw.ai.knn.Sweep;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.voting.Voting;
+
+/**
+ * Test main class comparing every combination of a sweep with a separate prediction using the same distance function, k and voting
+ * strategy.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class SweepTest {
+
+    private static final int K_MAX = 8;
+    private static final Voting[] VOTINGS = {Voting.MAJORITY, Voting.DISTANCE_WEIGHTED, Voting.MEAN, Voting.MEDIAN};
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        TrainingMatrix data = TestData.clusters(1500, 5, 6, 23);
+
+        // Train and test data share the label dictionary
+        TrainingMatrix trainData = new TrainingMatrix(data.getDimensions(), data.getRows(), data.getLabels());
+        TrainingMatrix testData = new TrainingMatrix(data.getDimensions(), data.getRows(), data.getLabels());
+        float[] row = new float[data.getDimensions()];
+        for (int r = 0; r < data.getRows(); r++) {
+            (r % 4 == 0 ? testData : trainData).add(data.copyRow(r, row, 0), data.getQualityAttribute(r));
+        }
+
+        DistanceFunction[] distances = TestData.distances(data.getDimensions(), 23);
+        Folds folds = Folds.stratified(data, 4, Folds.DEFAULT_SEED);
+        Sweep sweep = Sweep.run(trainData, testData, distances, K_MAX, VOTINGS);
+        Sweep crossValidated = Sweep.crossValidate(data, folds, distances, K_MAX, VOTINGS);
+        for (int d = 0; d < distances.length; d++) {
+            LinearScanIndex index = new LinearScanIndex(trainData, distances[d]);
+            for (int k = 1; k <= K_MAX; k++) {
+                CrossValidation crossValidation = CrossValidation.compute(data, folds, distances[d], k, false);
+                for (int v = 0; v < VOTINGS.length; v++) {
+                    String message = TestData.DISTANCE_NAMES[d] + ", k " + k + ", " + VOTINGS[v].getClass().getSimpleName();
+                    TestData.checkSame(KnnAI.predict(index, testData, k, VOTINGS[v]), sweep.get(d, k, v), message);
+                    TestData.checkSame(crossValidation.predict(VOTINGS[v]), crossValidated.get(d, k, v), message + " cross validated");
+                }
+            }
+        }
+        System.out.println("Sweep matches " + distances.length * K_MAX * VOTINGS.length + " separate predictions");
+    }
+}
@@ -0,0 +1,179 @@
+package ai;
+
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.Distance;
+import at.fhtw.ai.knn.heuristic.DistanceFunction;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.NeighbourIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random training data and checks shared by the test main classes.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+final class TestData {
+
+    /**
+     * Names of the distance functions returned by {@link #distances(int, long)}.
+     */
+    static final String[] DISTANCE_NAMES = {"Euklid", "Manhatten", "weighted Euklid", "weighted Manhatten"};
+
+    private TestData() {
+    }
+
+    /**
+     * Creates a training matrix of rows scattered around one random center per label. Labels are the integers
+     * <code>0</code> to <code>labels - 1</code>.
+     *
+     * @param rows Number of rows.
+     * @param dimensions Number of attributes.
+     * @param labels Number of labels.
+     * @param seed Random seed.
+     * @return Training matrix.
+     */
+    static TrainingMatrix clusters(int rows, int dimensions, int labels, long seed) {
+        Random random = new Random(seed);
+        float[][] centers = new float[labels][dimensions];
+        for (float[] center : centers) {
+            for (int i = 0; i < dimensions; i++) {
+                center[i] = random.nextFloat() * 10;
+            }
+        }
+
+        TrainingMatrix matrix = new TrainingMatrix(dimensions, rows);
+        float[] row = new float[dimensions];
+        for (int r = 0; r < rows; r++) {
+            int label = random.nextInt(labels);
+            for (int i = 0; i < dimensions; i++) {
+                row[i] = centers[label][i] + (float) random.nextGaussian() * 2;
+            }
+            matrix.add(row, label);
+        }
+        return matrix;
+    }
+
+    /**
+     * Converts the rows of a training matrix into data sets with boxed attributes, labelled with the quality attributes of the rows.
+     *
+     * @param matrix Training matrix.
+     * @return Data sets.
+     */
+    static List<DataSet<Float>> dataSets(TrainingMatrix matrix) {
+        List<DataSet<Float>> result = new ArrayList<>(matrix.getRows());
+        for (int r = 0; r < matrix.getRows(); r++) {
+            DataSet<Float> dataSet = new DataSet<>();
+            for (int i = 0; i < matrix.getDimensions(); i++) {
+                dataSet.getAttributes().add(matrix.get(r, i));
+            }
+            dataSet.setQualityAttribute(matrix.getQualityAttribute(r));
+            result.add(dataSet);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the distance functions every index is tested with: Euklid and Manhatten, with and without random weights.
+     *
+     * @param dimensions Number of attributes.
+     * @param seed Random seed of the weights.
+     * @return Distance functions.
+     */
+    static DistanceFunction[] distances(int dimensions, long seed) {
+        Random random = new Random(seed);
+        float[] weights = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            weights[i] = 0.5f + random.nextFloat();
+        }
+        return new DistanceFunction[]{
+            new Distance(HeuristicComputer.Heuristic.Euklid, null),
+            new Distance(HeuristicComputer.Heuristic.Manhatten, null),
+            new Distance(HeuristicComputer.Heuristic.Euklid, weights),
+            new Distance(HeuristicComputer.Heuristic.Manhatten, weights)
+        };
+    }
+
+    /**
+     * Checks that an index finds the same nearest rows as another index for every query.
+     *
+     * @param expected Exact index, e.g. a linear scan.
+     * @param actual Tested index.
+     * @param queries Queries.
+     * @param k Number of nearest neighbours.
+     * @param message Message of a failure.
+     */
+    static void checkSame(NeighbourIndex expected, NeighbourIndex actual, TrainingMatrix queries, int k, String message) {
+        Neighbours expectedResult = new Neighbours(k);
+        Neighbours actualResult = new Neighbours(k);
+        float[] query = new float[queries.getDimensions()];
+        for (int q = 0; q < queries.getRows(); q++) {
+            queries.copyRow(q, query, 0);
+            expectedResult.clear();
+            actualResult.clear();
+            expected.search(query, expectedResult);
+            actual.search(query, actualResult);
+            expectedResult.sort();
+            actualResult.sort();
+            checkSame(expectedResult, actualResult, message + ", query " + q);
+        }
+    }
+
+    /**
+     * Checks that both results contain the same rows in the same order with the same heuristics.
+     *
+     * @param expected Expected neighbours, sorted.
+     * @param actual Actual neighbours, sorted.
+     * @param message Message of the failure.
+     */
+    static void checkSame(Neighbours expected, Neighbours actual, String message) {
+        check(expected.size() == actual.size(), message + ": " + actual.size() + " neighbours, expected " + expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            check(expected.getIndex(i) == actual.getIndex(i) && Math.abs(expected.getHeuristic(i) - actual.getHeuristic(i))
+                    <= 1e-4f * Math.max(1, expected.getHeuristic(i)), message + ": neighbour " + i + " is " + actual + ", expected " + expected);
+        }
+    }
+
+    /**
+     * Checks that both confusion matrices contain the same counts and regression errors.
+     *
+     * @param expected Expected confusion matrix.
+     * @param actual Actual confusion matrix.
+     * @param message Message of the failure.
+     */
+    static void checkSame(ConfusionMatrix expected, ConfusionMatrix actual, String message) {
+        check(Arrays.deepEquals(expected.confusionMatrix(), actual.confusionMatrix()), message + ": " + Arrays.deepToString(
+                actual.confusionMatrix()) + ", expected " + Arrays.deepToString(expected.confusionMatrix()));
+        check(expected.getNumberOfCorrectPredictions() == actual.getNumberOfCorrectPredictions()
+                && expected.getNumberOfWrongPredictions() == actual.getNumberOfWrongPredictions(), message + ": prediction counts");
+        check(expected.getNumberOfRegressions() == actual.getNumberOfRegressions()
+                && same(expected.meanAbsoluteError(), actual.meanAbsoluteError())
+                && same(expected.rootMeanSquaredError(), actual.rootMeanSquaredError()), message + ": MAE "
+                + actual.meanAbsoluteError() + ", expected " + expected.meanAbsoluteError());
+    }
+
+    /**
+     * Checks if both values are equal up to rounding errors or both are <code>NaN</code>.
+     */
+    private static boolean same(double expected, double actual) {
+        return Double.isNaN(expected) ? Double.isNaN(actual) : Math.abs(expected - actual) <= 1e-6 * Math.max(1, Math.abs(expected));
+    }
+
+    /**
+     * Throws an error if the condition does not hold.
+     *
+     * @param condition Condition.
+     * @param message Message of the failure.
+     */
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
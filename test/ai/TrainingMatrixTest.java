@@ -0,0 +1,122 @@
+package ai;
+
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.KnnAI;
+import at.fhtw.ai.knn.LabelDictionary;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.DoubleHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.FloatHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test main class checking that the primitive training matrix stores the rows and labels of data sets, and predicts like the data sets.
+ * Needs <code>--add-opens java.base/java.util=ALL-UNNAMED</code> for the data sets.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class TrainingMatrixTest {
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        // Float and double data sets are stored as the same primitive rows with the same class ids
+        TrainingMatrix clusters = TestData.clusters(500, 6, 4, 1);
+        List<DataSet<Float>> floats = TestData.dataSets(clusters);
+        List<DataSet<Double>> doubles = new ArrayList<>(floats.size());
+        for (DataSet<Float> dataSet : floats) {
+            DataSet<Double> copy = new DataSet<>();
+            for (Float value : dataSet.getAttributes()) {
+                copy.getAttributes().add(value.doubleValue());
+            }
+            copy.setQualityAttribute("quality " + dataSet.getQualityAttribute());
+            doubles.add(copy);
+        }
+        TrainingMatrix fromFloats = TrainingMatrix.of(floats);
+        TrainingMatrix fromDoubles = TrainingMatrix.of(doubles);
+        TestData.check(fromFloats.getRows() == 500 && fromFloats.getDimensions() == 6 && fromDoubles.getRows() == 500,
+                "Matrix has " + fromFloats.getRows() + " rows and " + fromFloats.getDimensions() + " dimensions");
+        for (int r = 0; r < 500; r++) {
+            for (int i = 0; i < 6; i++) {
+                float expected = floats.get(r).getAttributes().get(i);
+                TestData.check(fromFloats.get(r, i) == expected && fromFloats.getData()[fromFloats.offset(r) + i] == expected
+                        && fromDoubles.get(r, i) == expected, "Row " + r + ", attribute " + i + " is " + fromFloats.get(r, i));
+            }
+            TestData.check(fromFloats.getClassId(r) == fromDoubles.getClassId(r), "Class ids of row " + r + " differ");
+            TestData.check(fromFloats.getQualityAttribute(r).equals(floats.get(r).getQualityAttribute())
+                    && fromDoubles.getQualityAttribute(r).equals(doubles.get(r).getQualityAttribute()), "Label of row " + r + " lost");
+        }
+        TestData.check(fromFloats.getLabels().size() == 4, "Matrix has " + fromFloats.getLabels().size() + " labels");
+
+        // Rows grow past the initial capacity, can be copied in blocks and replaced
+        TrainingMatrix grown = new TrainingMatrix(3, 1);
+        for (int r = 0; r < 1000; r++) {
+            TestData.check(grown.add(new float[]{r, -r, r * 0.5f}, r % 7) == r, "Row " + r + " added at the wrong index");
+        }
+        float[] block = grown.copyRows(10, 3, new float[10], 1);
+        TestData.check(block[0] == 0 && block[1] == 10 && block[2] == -10 && block[3] == 5 && block[7] == 12 && block[9] == 6,
+                "Copied block of rows is wrong");
+        grown.set(999, new float[]{1, 2, 3}, "replaced");
+        TestData.check(grown.get(999, 2) == 3 && "replaced".equals(grown.getQualityAttribute(999)) && grown.getLabels().size() == 8,
+                "Row was not replaced");
+        try {
+            grown.add(new float[2], 0);
+            throw new AssertionError("Row with the wrong number of attributes accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        // Labels keep their class ids while the dictionary grows, unknown class ids are rejected
+        LabelDictionary labels = new LabelDictionary();
+        for (int i = 0; i < 1000; i++) {
+            TestData.check(labels.classIdOf(i == 500 ? null : "label " + i) == i, "Label " + i + " has the wrong class id");
+        }
+        for (int i = 0; i < 1000; i++) {
+            Object label = i == 500 ? null : "label " + i;
+            TestData.check(labels.classIdOf(label) == i && labels.find(label) == i && (i == 500 ? labels.getLabel(i) == null
+                    : labels.getLabel(i).equals(label)), "Label " + i + " changed its class id");
+        }
+        TestData.check(labels.size() == 1000 && labels.find("unknown") == -1, "Dictionary has " + labels.size() + " labels");
+        try {
+            labels.getLabel(1000);
+            throw new AssertionError("Unknown class id accepted");
+        } catch (IndexOutOfBoundsException ex) {
+            // expected
+        }
+
+        // Predicting from the matrices equals predicting from the data sets
+        List<DataSet<Float>> trainData = floats.subList(0, 400);
+        List<DataSet<Float>> testData = floats.subList(400, 500);
+        TrainingMatrix trainMatrix = TrainingMatrix.of(trainData);
+        TrainingMatrix testMatrix = TrainingMatrix.of(testData, trainMatrix.getLabels());
+        for (HeuristicComputer.Heuristic heuristic : HeuristicComputer.Heuristic.values()) {
+            ConfusionMatrix expected = KnnAI.predict(trainData, testData, new FloatHeuristicComputer(), 7, null, heuristic);
+            checkSameCounts(expected, KnnAI.predict(trainMatrix, testMatrix, new FloatHeuristicComputer(), 7, heuristic), trainMatrix.getLabels(),
+                    "Matrix " + heuristic);
+            checkSameCounts(expected, KnnAI.predict(trainMatrix, testMatrix, new DoubleHeuristicComputer(), 7, heuristic), trainMatrix.getLabels(),
+                    "Matrix with double computer " + heuristic);
+        }
+        System.out.println("Training matrices store and predict like data sets");
+    }
+
+    /**
+     * Checks that both confusion matrices count the same predictions of every pair of labels, the order of the labels may differ.
+     */
+    private static void checkSameCounts(ConfusionMatrix expected, ConfusionMatrix actual, LabelDictionary labels, String message) {
+        for (int i = 0; i < labels.size(); i++) {
+            for (int j = 0; j < labels.size(); j++) {
+                Object actualLabel = labels.getLabel(i);
+                Object predictedLabel = labels.getLabel(j);
+                TestData.check(expected.getCount(actualLabel, predictedLabel) == actual.getCount(actualLabel, predictedLabel), message + ": "
+                        + actualLabel + " predicted as " + predictedLabel + " " + actual.getCount(actualLabel, predictedLabel) + " times, expected "
+                        + expected.getCount(actualLabel, predictedLabel));
+            }
+        }
+        TestData.check(expected.getNumberOfCorrectPredictions() == actual.getNumberOfCorrectPredictions()
+                && expected.getNumberOfTotalPredictions() == actual.getNumberOfTotalPredictions(), message + ": prediction counts");
+    }
+}
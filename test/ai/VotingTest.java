@@ -0,0 +1,143 @@
+package ai;
+
+import at.fhtw.ai.knn.DataSet;
+import at.fhtw.ai.knn.KnnAI;
+import at.fhtw.ai.knn.LabelDictionary;
+import at.fhtw.ai.knn.TrainingMatrix;
+import at.fhtw.ai.knn.analysis.ConfusionMatrix;
+import at.fhtw.ai.knn.heuristic.Distance;
+import at.fhtw.ai.knn.heuristic.FloatHeuristicComputer;
+import at.fhtw.ai.knn.heuristic.HeuristicComputer;
+import at.fhtw.ai.knn.index.LinearScanIndex;
+import at.fhtw.ai.knn.index.Neighbours;
+import at.fhtw.ai.knn.voting.Voting;
+import java.util.List;
+
+/**
+ * Test main class checking the voting strategies on hand made neighbours, and that predictions use exactly k neighbours. Needs
+ * <code>--add-opens java.base/java.util=ALL-UNNAMED</code> for the data sets.
+ *
+ * @author Daniel Kleebinder
+ * @since 0.2
+ */
+public class VotingTest {
+
+    /**
+     * Offsets of the train rows of every test row, and their labels. The nearest row votes 1, the nearest 5 rows vote 3, the nearest 11
+     * rows vote 1 and the nearest 19 rows vote 3.
+     */
+    private static final float[] OFFSETS = {0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f, 0.7f, 0.8f, 0.9f, 1.0f, 1.1f, 1.2f, 1.3f, 1.4f, 1.5f, 1.6f, 1.7f,
+        1.8f, 1.9f};
+    private static final int[] LABELS = {1, 3, 3, 3, 3, 1, 1, 1, 1, 1, 1, 3, 3, 3, 3, 3, 3, 3, 3};
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        votings();
+        honoursK();
+        System.out.println("Votings decide on exactly k neighbours");
+    }
+
+    /**
+     * Checks every voting on neighbours with known heuristics.
+     */
+    private static void votings() {
+        LabelDictionary labels = new LabelDictionary();
+        int three = labels.classIdOf("3");
+        int five = labels.classIdOf(5);
+        int six = labels.classIdOf(6.0);
+        int text = labels.classIdOf("text");
+        int[] classIds = {three, five, five, six, text, three};
+        float[] scratch = new float[Voting.scratchSize(labels.size(), 6)];
+        Neighbours neighbours = new Neighbours(6);
+
+        // Two far rows outvote one near row, unless the votes are weighted by distance
+        offer(neighbours, new int[]{0, 1, 2}, new float[]{0.1f, 2, 3});
+        TestData.check(Voting.MAJORITY.vote(neighbours, classIds, labels, scratch) == five, "Majority of two far rows");
+        offer(neighbours, new int[]{0, 1, 2}, new float[]{0.1f, 2, 3});
+        TestData.check(Voting.DISTANCE_WEIGHTED.vote(neighbours, classIds, labels, scratch) == three, "Weighted vote of the near row");
+        offer(neighbours, new int[]{0, 1, 2}, new float[]{1, 1.5f, 1.5f});
+        TestData.check(Voting.DISTANCE_WEIGHTED.vote(neighbours, classIds, labels, scratch) == five, "Weighted vote of two rows");
+
+        // Ties are won by the class of the nearer row, independent of the offering order
+        offer(neighbours, new int[]{3, 0}, new float[]{2, 1});
+        TestData.check(Voting.MAJORITY.vote(neighbours, classIds, labels, scratch) == three, "Tie not won by the near row 0");
+        offer(neighbours, new int[]{0, 3}, new float[]{2, 1});
+        TestData.check(Voting.MAJORITY.vote(neighbours, classIds, labels, scratch) == six, "Tie not won by the near row 3");
+
+        // Mean and median of the numeric labels 3, 5, 5, 6 and 3, the text label is ignored
+        int[] rows = {0, 1, 2, 3, 4, 5};
+        float[] heuristics = {1, 2, 3, 4, 5, 6};
+        offer(neighbours, rows, heuristics);
+        float mean = Voting.MEAN.regress(neighbours, classIds, labels, scratch);
+        TestData.check(Math.abs(mean - 4.4f) < 1e-6f, "Mean " + mean);
+        offer(neighbours, rows, heuristics);
+        TestData.check(Voting.MEAN.vote(neighbours, classIds, labels, scratch) == five, "Class of the mean");
+        offer(neighbours, rows, heuristics);
+        TestData.check(Voting.MEDIAN.regress(neighbours, classIds, labels, scratch) == 5, "Median of an odd number of labels");
+        offer(neighbours, new int[]{0, 1, 2, 3}, new float[]{1, 2, 3, 4});
+        TestData.check(Voting.MEDIAN.regress(neighbours, classIds, labels, scratch) == 5, "Median of an even number of labels");
+        offer(neighbours, new int[]{0, 3}, new float[]{1, 2});
+        TestData.check(Voting.MEDIAN.regress(neighbours, classIds, labels, scratch) == 4.5f, "Median of two labels");
+
+        // Only regressions predict values, nothing is predicted without neighbours
+        TestData.check(Voting.MEAN.isRegression() && Voting.MEDIAN.isRegression() && !Voting.MAJORITY.isRegression()
+                && !Voting.DISTANCE_WEIGHTED.isRegression(), "Regression flags");
+        TestData.check(Float.isNaN(Voting.MAJORITY.regress(neighbours, classIds, labels, scratch)), "Majority predicted a value");
+        offer(neighbours, new int[]{4}, new float[]{1});
+        TestData.check(Float.isNaN(Voting.MEAN.regress(neighbours, classIds, labels, scratch)), "Mean of a text label");
+        TestData.check(Voting.MEAN.vote(neighbours, classIds, labels, scratch) == -1, "Class of the mean of a text label");
+        neighbours.clear();
+        for (Voting voting : new Voting[]{Voting.MAJORITY, Voting.DISTANCE_WEIGHTED, Voting.MEAN, Voting.MEDIAN}) {
+            TestData.check(voting.vote(neighbours, classIds, labels, scratch) == -1, voting.getClass().getSimpleName() + " without neighbours");
+        }
+    }
+
+    /**
+     * Offers the given rows to the cleared neighbours.
+     */
+    private static void offer(Neighbours neighbours, int[] rows, float[] heuristics) {
+        neighbours.clear();
+        for (int i = 0; i < rows.length; i++) {
+            neighbours.offer(rows[i], heuristics[i]);
+        }
+    }
+
+    /**
+     * Checks that the predictions change with k exactly as the labels of the nearest rows do.
+     */
+    private static void honoursK() {
+        TrainingMatrix trainData = new TrainingMatrix(2, OFFSETS.length * 20);
+        TrainingMatrix testData = new TrainingMatrix(2, 20, trainData.getLabels());
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < OFFSETS.length; j++) {
+                trainData.add(new float[]{i * 100 + OFFSETS[j], 0}, LABELS[j]);
+            }
+            testData.add(new float[]{i * 100, 0}, 1);
+        }
+        List<DataSet<Float>> trainDataSets = TestData.dataSets(trainData);
+        List<DataSet<Float>> testDataSets = TestData.dataSets(testData);
+        LinearScanIndex index = new LinearScanIndex(trainData, new Distance(HeuristicComputer.Heuristic.Euklid, null));
+
+        int[] ks = {1, 5, 11, 19};
+        int[] correct = {20, 0, 20, 0};
+        for (int i = 0; i < ks.length; i++) {
+            int k = ks[i];
+            ConfusionMatrix fromDataSets = KnnAI.predict(trainDataSets, testDataSets, new FloatHeuristicComputer(), k);
+            ConfusionMatrix fromIndex = KnnAI.predict(index, testData, k);
+            TestData.check(fromDataSets.getNumberOfCorrectPredictions() == correct[i] && fromIndex.getNumberOfCorrectPredictions() == correct[i],
+                    "k " + k + ": " + fromDataSets.getNumberOfCorrectPredictions() + " and " + fromIndex.getNumberOfCorrectPredictions()
+                    + " correct predictions, expected " + correct[i]);
+        }
+
+        // The mean of the nearest 5 labels is 2.6 and their median is 3
+        ConfusionMatrix mean = KnnAI.predict(index, testData, 5, Voting.MEAN);
+        ConfusionMatrix median = KnnAI.predict(index, testData, 5, Voting.MEDIAN);
+        TestData.check(mean.getNumberOfRegressions() == 20 && Math.abs(mean.meanAbsoluteError() - 1.6) < 1e-5, "Mean MAE "
+                + mean.meanAbsoluteError());
+        TestData.check(median.getNumberOfRegressions() == 20 && Math.abs(median.meanAbsoluteError() - 2) < 1e-5, "Median MAE "
+                + median.meanAbsoluteError());
+        TestData.check(mean.getNumberOfCorrectPredictions() == 0 && median.getNumberOfCorrectPredictions() == 0, "Regressed classes");
+    }
+}
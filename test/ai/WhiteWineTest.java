@@ -1,5 +1,6 @@
 package ai;
 
+import at.fhtw.ai.knn.CsvLoader;
 import at.fhtw.ai.knn.DataSet;
 import at.fhtw.ai.knn.KnnAI;
 import at.fhtw.ai.knn.analysis.ConfusionMatrix;
@@ -7,11 +8,9 @@ import at.fhtw.ai.knn.heuristic.FloatHeuristicComputer;
 
 import java.io.IOException;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -28,38 +27,22 @@ public class WhiteWineTest {
     /**
      * @param args the command line arguments
      */
+    @SuppressWarnings("deprecation")
     public static void main(String[] args) {
         Path dataFile = Paths.get("./data/wine/winequality-white.csv");
 //        Path dataFile = Paths.get("./data/wine/winequality-white-10k.csv");
 //        Path dataFile = Paths.get("./data/iris/iris_new.txt");
 //        Path dataFile = Paths.get("./data/iris/iris_new_large.txt");
-        byte[] bytes = null;
+        CsvLoader loader = new CsvLoader();
+        loader.setSkipHeader(SKIP_FIRST_LINE);
+        loader.setDecimalComma(true);
+
+        List<DataSet<Float>> data = null;
         try {
-            bytes = Files.readAllBytes(dataFile);
+            data = loader.readDataSets(dataFile);
         } catch (IOException ex) {
             Logger.getLogger(WhiteWineTest.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        String[] lines = new String(bytes).split("\n");
-
-        String[] entries;
-        List<DataSet<Float>> data = new ArrayList<>(2048);
-        boolean first = true;
-        for (String current : lines) {
-            if (SKIP_FIRST_LINE && first) {
-                first = false;
-                continue;
-            }
-            entries = current.split(";");
-
-            // Skip last element. The last element is used as quality indicator
-            DataSet<Float> dds = new DataSet<>();
-            for (int i = 0; i < entries.length - 1; i++) {
-                String entry = entries[i];
-                entry = entry.replaceAll(",", ".");
-                dds.getAttributes().add(Float.parseFloat(entry));
-            }
-            dds.setQualityAttribute(entries[entries.length - 1]);
-            data.add(dds);
+            return;
         }
 
         // Run k-NN AI algorithm